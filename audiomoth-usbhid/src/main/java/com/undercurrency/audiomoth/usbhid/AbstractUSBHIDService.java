@@ -23,11 +23,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.hardware.usb.UsbConstants;
 import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbDeviceConnection;
-import android.hardware.usb.UsbEndpoint;
-import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
 import android.os.Handler;
 import android.os.IBinder;
@@ -38,8 +34,11 @@ import com.undercurrency.audiomoth.usbhid.events.DeviceReadyEvent;
 import com.undercurrency.audiomoth.usbhid.events.PrepareDevicesListEvent;
 import com.undercurrency.audiomoth.usbhid.events.SelectDeviceEvent;
 import com.undercurrency.audiomoth.usbhid.events.USBDataSendEvent;
+import com.undercurrency.audiomoth.usbhid.transport.HidTransport;
+import com.undercurrency.audiomoth.usbhid.transport.UsbHidTransport;
 
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -54,15 +53,14 @@ public class AbstractUSBHIDService extends Service {
     public static final int REPORT_TYPE_INPUT = 0x0100;
     public static final int REPORT_TYPE_OUTPUT = 0x0200;
     public static final int REPORT_TYPE_FEATURE = 0x0300;
+    private static final int RECEIVE_POOL_SIZE = 8;
 
-    private USBThreadDataReceiver usbThreadDataReceiver;
+    private ReportReceiver usbThreadDataReceiver;
 
     private final Handler uiHandler = new Handler();
 
-    private List<UsbInterface> interfacesList = null;
-
     private UsbManager mUsbManager;
-    private UsbDeviceConnection connection;
+    private volatile HidTransport transport;
     private UsbDevice device;
 
     private IntentFilter filter;
@@ -80,6 +78,7 @@ public class AbstractUSBHIDService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
+        mUsbManager = (UsbManager) getSystemService(Context.USB_SERVICE);
         mPermissionIntent = PendingIntent.getBroadcast(this, 0, new Intent(getString(R.string.ACTION_USB_PERMISSION)), 0);
         filter = new IntentFilter(getString(R.string.ACTION_USB_PERMISSION));
         filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
@@ -102,60 +101,33 @@ public class AbstractUSBHIDService extends Service {
         eventBus.unregister(this);
         super.onDestroy();
         if (usbThreadDataReceiver != null) {
-            usbThreadDataReceiver.stopThis();
+            usbThreadDataReceiver.stopReceiving();
+        }
+        if (transport != null) {
+            transport.close();
         }
         unregisterReceiver(mUsbReceiver);
     }
 
-    private class USBThreadDataReceiver extends Thread {
-
-        private volatile boolean isStopped;
-
-        public USBThreadDataReceiver() {
-        }
-
-        @Override
-        public void run() {
-            try {
-                if (connection != null) {
-                    while (!isStopped) {
-                        for (UsbInterface intf: interfacesList) {
-                            for (int i = 0; i < intf.getEndpointCount(); i++) {
-                                UsbEndpoint endPointRead = intf.getEndpoint(i);
-                                if (UsbConstants.USB_DIR_IN == endPointRead.getDirection()) {
-                                    final byte[] buffer = new byte[endPointRead.getMaxPacketSize()];
-                                    final int status = connection.bulkTransfer(endPointRead, buffer, buffer.length, 100);
-                                    if (status > 0) {
-                                        uiHandler.post(new Runnable() {
-                                            @Override
-                                            public void run() {
-                                                onUSBDataReceive(buffer);
-                                            }
-                                        });
-                                    } else {
-                                        int transfer = connection.controlTransfer(0xA0, REQUEST_GET_REPORT, REPORT_TYPE_OUTPUT, 0x00, buffer, buffer.length, 100);
-                                        if (transfer > 0) {
-                                            uiHandler.post(new Runnable() {
-                                                @Override
-                                                public void run() {
-                                                    onUSBDataReceive(buffer);
-                                                }
-                                            });
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error in receive thread", e);
+    /**
+     * Starts receiving the HID input reports of the transport, they reach onUSBDataReceive on the
+     * main thread. Handler.post() takes its Message from the Android Message pool and the deliveries
+     * are pooled by the ReportReceiver, so the receive path produces no garbage per report.
+     */
+    private ReportReceiver startReceiving(HidTransport transport) {
+        ReportReceiver receiver = new ReportReceiver(transport, RECEIVE_POOL_SIZE, new ReportReceiver.Dispatcher() {
+            @Override
+            public void dispatch(Runnable delivery) {
+                uiHandler.post(delivery);
             }
-        }
-
-        public void stopThis() {
-            isStopped = true;
-        }
+        }, new ReportReceiver.Listener() {
+            @Override
+            public void onReport(byte[] buffer, int length) {
+                onUSBDataReceive(buffer, length);
+            }
+        });
+        receiver.start();
+        return receiver;
     }
 
     public void onEventMainThread(USBDataSendEvent event){
@@ -179,20 +151,23 @@ public class AbstractUSBHIDService extends Service {
         onShowDevicesList(devicesName);
     }
 
+    protected UsbManager getUsbManager() {
+        return mUsbManager;
+    }
+
     protected void sendData(byte[] data) {
+        sendData(data, data.length);
+    }
+
+    /**
+     * Sends the first length bytes of data as one report
+     */
+    protected void sendData(byte[] data, int length) {
         Log.d(TAG,"sendData");
-        if (device != null && mUsbManager.hasPermission(device) && data.length>0) {
-            for (UsbInterface intf: interfacesList) {
-                for (int i = 0; i < intf.getEndpointCount(); i++) {
-                    UsbEndpoint endPointWrite = intf.getEndpoint(i);
-                    if (UsbConstants.USB_DIR_OUT == endPointWrite.getDirection()) {
-                        int status = connection.bulkTransfer(endPointWrite, data, data.length, 250);
-                        onUSBDataSended(status, data);
-                        status = connection.controlTransfer(0x21, REQUEST_SET_REPORT, REPORT_TYPE_OUTPUT, 0x02, data, data.length, 250);
-                        onUSBDataSended(status, data);
-                    }
-                }
-            }
+        HidTransport current = transport;
+        if (device != null && current != null && mUsbManager.hasPermission(device) && length>0) {
+            int status = current.sendReport(data, length);
+            onUSBDataSended(status, data);
         }
     }
 
@@ -212,11 +187,16 @@ public class AbstractUSBHIDService extends Service {
                 }
             }
             if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
+                UsbDevice detached = (UsbDevice) intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                if (detached != null) {
+                    onUsbDeviceDetached(detached);
+                }
                 if (device != null) {
                     device = null;
                     if (usbThreadDataReceiver != null) {
-                        usbThreadDataReceiver.stopThis();
+                        usbThreadDataReceiver.stopReceiving();
                     }
+                    transport = null;
                     onDeviceDisconnected(device);
                 }
             }
@@ -226,20 +206,18 @@ public class AbstractUSBHIDService extends Service {
             device = (UsbDevice) intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
             if (device != null && intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
                 onDeviceSelected(device);
-                connection = mUsbManager.openDevice(device);
-                if (connection == null) {
-                    return;
+                if (usbThreadDataReceiver != null) {
+                    usbThreadDataReceiver.stopReceiving();
                 }
-                interfacesList = new LinkedList();
-                for(int i = 0; i < device.getInterfaceCount(); i++) {
-                    UsbInterface intf = device.getInterface(i);
-                    if(intf.getInterfaceClass()==3) {
-                        connection.claimInterface(intf, true);
-                        interfacesList.add(intf);
-                    }
+                transport = new UsbHidTransport(mUsbManager, device);
+                try {
+                    transport.open();
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to open the device", e);
+                    transport = null;
+                    return;
                 }
-                usbThreadDataReceiver = new USBThreadDataReceiver();
-                usbThreadDataReceiver.start();
+                usbThreadDataReceiver = startReceiving(transport);
                 onDeviceAttached(device);
             }
         }
@@ -248,9 +226,24 @@ public class AbstractUSBHIDService extends Service {
     public void onCommand(Intent intent, String action, int flags, int startId) {
     }
 
+    /**
+     * Called on the main thread for every input report.
+     * The buffer belongs to the receive pool and is reused once this method returns,
+     * implementations that keep the data must copy it.
+     * @param buffer the report bytes
+     */
     public void onUSBDataReceive(byte[] buffer) {
     }
 
+    /**
+     * Called on the main thread for every input report, it calls onUSBDataReceive(buffer) by default
+     * @param buffer the report bytes, only the first length are part of the report
+     * @param length the number of bytes received
+     */
+    public void onUSBDataReceive(byte[] buffer, int length) {
+        onUSBDataReceive(buffer);
+    }
+
     public void onDeviceConnected(UsbDevice device) {
     }
 
@@ -260,6 +253,13 @@ public class AbstractUSBHIDService extends Service {
     public void onDeviceSelected(UsbDevice device) {
     }
 
+    /**
+     * Called for every detached USB device, selected or not
+     * @param usbDevice the device that was removed
+     */
+    public void onUsbDeviceDetached(UsbDevice usbDevice) {
+    }
+
     public void onDeviceAttached(UsbDevice device) {
     }
 
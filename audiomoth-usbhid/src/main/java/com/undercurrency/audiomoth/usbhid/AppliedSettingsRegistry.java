@@ -0,0 +1,105 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettingsView;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The AppliedSettingsRegistry remembers the configuration packet each AudioMoth echoed on its last
+ * SET_APP_PACKET, keyed by the unique id and the firmware version the device reports in GET_APP_PACKET.
+ * AudioMoth can not send its configuration back, the echo is the packet the firmware actually stored,
+ * and it survives an unplug as long as the device keeps its batteries. Entries are not dropped when a
+ * device is detached or attached again, a device reflashed with another firmware version no longer
+ * matches its entry.
+ *
+ * One registry can be shared by several AudioMothClient, AudioMothSessionManager gives the same one
+ * to every session so a device is recognised whatever USB port it comes back on.
+ */
+public class AppliedSettingsRegistry {
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * Records the packet echoed by a device
+     * @param deviceInfo the device the packet was written to, ignored if it has no id
+     * @param echo the packet echoed by the device
+     */
+    public void record(DeviceInfo deviceInfo, RecordingSettingsView echo) {
+        if (deviceInfo == null || deviceInfo.getDeviceId() == null) {
+            return;
+        }
+        Entry entry = new Entry(deviceInfo.getFirmwareVersion(), echo);
+        synchronized (entries) {
+            entries.put(deviceInfo.getDeviceId(), entry);
+        }
+    }
+
+    /**
+     * @param deviceInfo the device as it reports itself
+     * @return the packet echoed on the last write to that device with the same firmware, or null
+     */
+    public RecordingSettingsView get(DeviceInfo deviceInfo) {
+        if (deviceInfo == null || deviceInfo.getDeviceId() == null) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(deviceInfo.getDeviceId());
+        }
+        if (entry == null || !sameVersion(entry.firmwareVersion, deviceInfo.getFirmwareVersion())) {
+            return null;
+        }
+        return entry.echo;
+    }
+
+    /**
+     * Forgets a device, its next applySettingsIfChanged() writes the configuration
+     */
+    public void forget(String deviceId) {
+        synchronized (entries) {
+            entries.remove(deviceId);
+        }
+    }
+
+    /**
+     * Forgets every device
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static boolean sameVersion(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static class Entry {
+        private final String firmwareVersion;
+        private final RecordingSettingsView echo;
+
+        private Entry(String firmwareVersion, RecordingSettingsView echo) {
+            this.firmwareVersion = firmwareVersion;
+            this.echo = echo;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.AudioMothOperations;
+import com.undercurrency.audiomoth.usbhid.model.ConfigDiff;
+import com.undercurrency.audiomoth.usbhid.model.ConfigPacketCodec;
+import com.undercurrency.audiomoth.usbhid.model.DateSettings;
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettingsView;
+
+import java.util.Date;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.readDateFromByteArray;
+
+/**
+ * The AudioMothClient exposes the AudioMoth commands as asynchronous calls.
+ * Every call returns an AudioMothFuture that is completed with the decoded reply, or failed with
+ * a TimeoutException if the device does not answer in time, so calls can be chained directly
+ * instead of correlating the EventBus receive events by hand.
+ *
+ * <pre>
+ * client.setTime(new Date())
+ *       .thenCompose(date -&gt; client.applySettings(rs))
+ *       .addCallback(...);
+ * </pre>
+ */
+public class AudioMothClient {
+
+    private static final Logger LOGGER = Logger.getLogger(AudioMothClient.class.getName());
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = CommandCorrelator.DEFAULT_TIMEOUT_MILLIS;
+
+    private final CommandCorrelator correlator;
+    private volatile boolean localTime;
+    private final AppliedSettingsRegistry appliedSettings;
+
+    public AudioMothClient(CommandCorrelator correlator) {
+        this(correlator, new AppliedSettingsRegistry());
+    }
+
+    /**
+     * @param appliedSettings where the packets echoed by the devices are remembered, it may be shared with other clients
+     */
+    public AudioMothClient(CommandCorrelator correlator, AppliedSettingsRegistry appliedSettings) {
+        this.correlator = correlator;
+        this.appliedSettings = appliedSettings;
+    }
+
+    /**
+     * Reads the date, serial number, battery level and firmware version
+     * @return a future with the DeviceInfo
+     */
+    public AudioMothFuture<DeviceInfo> getDeviceInfo() {
+        return getDeviceInfo(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public AudioMothFuture<DeviceInfo> getDeviceInfo(long timeoutMillis) {
+        AudioMothOperations op = AudioMothOperations.USB_MSG_TYPE_GET_APP_PACKET;
+        byte[] report = correlator.getReportBuilder().build(op);
+        return submit(op, report, ReportBuilder.PAYLOAD_OFFSET, timeoutMillis, new ReplyDecoder<DeviceInfo>() {
+            @Override
+            public DeviceInfo decode(byte[] buffer) {
+                return new DeviceInfo(buffer, localTime);
+            }
+        });
+    }
+
+    /**
+     * Reads the device clock
+     * @return a future with the device date, in whole seconds
+     */
+    public AudioMothFuture<Date> getTime() {
+        return getTime(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public AudioMothFuture<Date> getTime(long timeoutMillis) {
+        AudioMothOperations op = AudioMothOperations.USB_MSG_TYPE_GET_TIME;
+        byte[] report = correlator.getReportBuilder().build(op);
+        return submit(op, report, ReportBuilder.PAYLOAD_OFFSET, timeoutMillis, new ReplyDecoder<Date>() {
+            @Override
+            public Date decode(byte[] buffer) {
+                return readDateFromByteArray(buffer, 1);
+            }
+        });
+    }
+
+    /**
+     * Sets the device clock
+     * @param date the date to set, AudioMoth keeps whole seconds only
+     * @return a future with the date echoed by the device
+     */
+    public AudioMothFuture<Date> setTime(Date date) {
+        return setTime(date, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public AudioMothFuture<Date> setTime(Date date, long timeoutMillis) {
+        AudioMothOperations op = AudioMothOperations.USB_MSG_TYPE_SET_TIME;
+        byte[] report = correlator.getReportBuilder().build(op, new DateSettings(date));
+        return submit(op, report, ReportBuilder.PAYLOAD_OFFSET + DateSettings.PACKET_SIZE, timeoutMillis, new ReplyDecoder<Date>() {
+            @Override
+            public Date decode(byte[] buffer) {
+                return readDateFromByteArray(buffer, 1);
+            }
+        });
+    }
+
+    /**
+     * Sends a configuration to the device
+     * @param rs the settings, they must hold the DeviceInfo of the target device
+     * @return a future with the settings rebuilt from the packet echoed by the device
+     */
+    public AudioMothFuture<RecordingSettings> applySettings(RecordingSettings rs) {
+        return applySettings(rs, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public AudioMothFuture<RecordingSettings> applySettings(RecordingSettings rs, long timeoutMillis) {
+        return applySettingsView(rs, timeoutMillis).thenApply(new AudioMothFuture.Transformation<RecordingSettingsView, RecordingSettings>() {
+            @Override
+            public RecordingSettings apply(RecordingSettingsView view) {
+                return view.toRecordingSettings();
+            }
+        });
+    }
+
+    /**
+     * Sends a configuration to the device without decoding the echoed packet.
+     * The packet is encoded in the layout of the firmware reported by the DeviceInfo of the settings.
+     * @param rs the settings, they must hold the DeviceInfo of the target device
+     * @return a future with a lazy view over a copy of the packet echoed by the device
+     */
+    public AudioMothFuture<RecordingSettingsView> applySettingsView(RecordingSettings rs) {
+        return applySettingsView(rs, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public AudioMothFuture<RecordingSettingsView> applySettingsView(RecordingSettings rs, long timeoutMillis) {
+        AudioMothOperations op = AudioMothOperations.USB_MSG_TYPE_SET_APP_PACKET;
+        final ConfigPacketCodec codec = ConfigPacketCodec.forSettings(rs);
+        final DeviceInfo deviceInfo = rs.getDeviceInfo();
+        byte[] report = correlator.getReportBuilder().build(op, rs, codec);
+        return submit(op, report, ReportBuilder.PAYLOAD_OFFSET + codec.getPacketLength(), timeoutMillis, new ReplyDecoder<RecordingSettingsView>() {
+            @Override
+            public RecordingSettingsView decode(byte[] buffer) {
+                RecordingSettingsView view = codec.decodeView(buffer, ReportBuilder.PAYLOAD_OFFSET);
+                appliedSettings.record(deviceInfo, view);
+                return view;
+            }
+        });
+    }
+
+    /**
+     * Sends a configuration only if the device does not hold it already.
+     * The device is identified first with GET_APP_PACKET, the settings are encoded for the firmware it
+     * reports and their ConfigFingerprint is compared with the packet that device echoed on its last
+     * write, as remembered by the AppliedSettingsRegistry, so the check holds across unplug and replug.
+     * AudioMoth can not send its configuration back, a device configured by another host since then
+     * must be forgotten with invalidateSettings().
+     * The clock is always written: when nothing changed SET_TIME is sent instead of SET_APP_PACKET,
+     * the time embedded in the configuration packet is how a full write would have set it, and the
+     * future completes with the settings already on the device.
+     * @param rs the settings to apply, their DeviceInfo is replaced by the one read from the device
+     * @return a future with the settings held by the device
+     */
+    public AudioMothFuture<RecordingSettings> applySettingsIfChanged(RecordingSettings rs) {
+        return applySettingsIfChanged(rs, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public AudioMothFuture<RecordingSettings> applySettingsIfChanged(RecordingSettings rs, final long timeoutMillis) {
+        final RecordingSettings desired = new RecordingSettings(rs);
+        return getDeviceInfo(timeoutMillis).thenCompose(new AudioMothFuture.Continuation<DeviceInfo, RecordingSettings>() {
+            @Override
+            public AudioMothFuture<RecordingSettings> then(DeviceInfo deviceInfo) {
+                desired.setDeviceInfo(deviceInfo);
+                final RecordingSettingsView held = appliedSettings.get(deviceInfo);
+                if (held == null || held.getFingerprint() != desired.getFingerprint()) {
+                    return applySettings(desired, timeoutMillis);
+                }
+                LOGGER.fine("Configuration unchanged, sending " + AudioMothOperations.USB_MSG_TYPE_SET_TIME
+                        + " instead of " + AudioMothOperations.USB_MSG_TYPE_SET_APP_PACKET);
+                return setTime(new Date(), timeoutMillis).thenApply(new AudioMothFuture.Transformation<Date, RecordingSettings>() {
+                    @Override
+                    public RecordingSettings apply(Date date) {
+                        return held.toRecordingSettings();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Compares the settings with the packet echoed by their device on its last successful write
+     * @return the changed fields, or null if nothing was applied yet to the device and firmware of the settings
+     */
+    public ConfigDiff diff(RecordingSettings rs) {
+        RecordingSettingsView held = appliedSettings.get(rs.getDeviceInfo());
+        return held == null ? null : ConfigDiff.compare(rs, held);
+    }
+
+    /**
+     * Forgets the configuration of every device in the registry, so the next applySettingsIfChanged()
+     * always writes. Call it when the devices may have been configured by another host.
+     */
+    public void invalidateSettings() {
+        appliedSettings.clear();
+    }
+
+    public AppliedSettingsRegistry getAppliedSettings() {
+        return appliedSettings;
+    }
+
+    public boolean isLocalTime() {
+        return localTime;
+    }
+
+    /**
+     * @param localTime whether DeviceInfo replies are decoded with the local timezone
+     */
+    public void setLocalTime(boolean localTime) {
+        this.localTime = localTime;
+    }
+
+    private <T> AudioMothFuture<T> submit(AudioMothOperations op, byte[] report, int length, long timeoutMillis, final ReplyDecoder<T> decoder) {
+        final AudioMothFuture<T> future = new AudioMothFuture<T>();
+        correlator.submit(op, report, length, timeoutMillis, new CommandCorrelator.ReplyListener() {
+            @Override
+            public void onReply(AudioMothOperations op, byte[] buffer) {
+                T value;
+                try {
+                    value = decoder.decode(buffer);
+                } catch (RuntimeException e) {
+                    future.fail(e);
+                    return;
+                }
+                future.complete(value);
+            }
+
+            @Override
+            public void onTimeout(AudioMothOperations op) {
+                future.fail(new TimeoutException("No reply for " + op));
+            }
+
+            @Override
+            public void onFailure(AudioMothOperations op, Throwable error) {
+                future.fail(error);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Turns a reply buffer into a value, the buffer is only valid during the call
+     */
+    private interface ReplyDecoder<T> {
+        T decode(byte[] buffer);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The AudioMothFuture holds the result of an asynchronous AudioMoth operation.
+ * CompletableFuture needs API 24 and this library supports API 22, so this class provides the
+ * small subset we need: blocking get with timeout, completion callbacks and composition.
+ *
+ * Callbacks run on the thread that completes the future, usually the thread delivering the
+ * USB replies, never block on get() from that thread. An exception thrown by a callback is
+ * logged and swallowed, so it can not kill the thread delivering the replies.
+ *
+ * @param <T> the result type
+ */
+public class AudioMothFuture<T> implements Future<T> {
+
+    /**
+     * Receives the outcome of a future, exactly one of the methods is called
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Throwable error);
+    }
+
+    /**
+     * Maps a result to another value
+     */
+    public interface Transformation<T, R> {
+        R apply(T value) throws Exception;
+    }
+
+    /**
+     * Starts the next asynchronous operation from a result
+     */
+    public interface Continuation<T, R> {
+        AudioMothFuture<R> then(T value) throws Exception;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(AudioMothFuture.class.getName());
+
+    private T result;
+    private Throwable error;
+    private boolean done;
+    private boolean cancelled;
+    private List<Callback<? super T>> callbacks = new ArrayList<Callback<? super T>>(2);
+
+    /**
+     * @return a future already completed with value
+     */
+    public static <T> AudioMothFuture<T> completed(T value) {
+        AudioMothFuture<T> future = new AudioMothFuture<T>();
+        future.complete(value);
+        return future;
+    }
+
+    /**
+     * @return a future already failed with error
+     */
+    public static <T> AudioMothFuture<T> failed(Throwable error) {
+        AudioMothFuture<T> future = new AudioMothFuture<T>();
+        future.fail(error);
+        return future;
+    }
+
+    /**
+     * Completes the future with a value
+     * @return false if the future was already done
+     */
+    public boolean complete(T value) {
+        return finish(value, null, false);
+    }
+
+    /**
+     * Completes the future with an error
+     * @return false if the future was already done
+     */
+    public boolean fail(Throwable throwable) {
+        return finish(null, throwable, false);
+    }
+
+    /**
+     * Moves the future to its final state in one step, so a cancellation racing with a
+     * completion either wins entirely or has no effect
+     */
+    private boolean finish(T value, Throwable throwable, boolean cancel) {
+        List<Callback<? super T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            result = value;
+            error = throwable;
+            cancelled = cancel;
+            done = true;
+            toNotify = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+        for (Callback<? super T> callback : toNotify) {
+            dispatch(callback, value, throwable);
+        }
+        return true;
+    }
+
+    private static <T> void dispatch(Callback<? super T> callback, T value, Throwable throwable) {
+        try {
+            if (throwable != null) {
+                callback.onFailure(throwable);
+            } else {
+                callback.onSuccess(value);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "AudioMothFuture callback failed", e);
+        }
+    }
+
+    /**
+     * Registers a callback, it runs immediately if the future is already done
+     * @return this future
+     */
+    public AudioMothFuture<T> addCallback(Callback<? super T> callback) {
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        dispatch(callback, result, error);
+        return this;
+    }
+
+    /**
+     * @return a future completed with the transformed result of this one
+     */
+    public <R> AudioMothFuture<R> thenApply(final Transformation<? super T, ? extends R> transformation) {
+        final AudioMothFuture<R> next = new AudioMothFuture<R>();
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                try {
+                    next.complete(transformation.apply(value));
+                } catch (Exception e) {
+                    next.fail(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                next.fail(throwable);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * @return a future completed with the outcome of the operation started from this result
+     */
+    public <R> AudioMothFuture<R> thenCompose(final Continuation<? super T, R> continuation) {
+        final AudioMothFuture<R> next = new AudioMothFuture<R>();
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                AudioMothFuture<R> stage;
+                try {
+                    stage = continuation.then(value);
+                } catch (Exception e) {
+                    next.fail(e);
+                    return;
+                }
+                stage.addCallback(new Callback<R>() {
+                    @Override
+                    public void onSuccess(R result) {
+                        next.complete(result);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable throwable) {
+                        next.fail(throwable);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                next.fail(throwable);
+            }
+        });
+        return next;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(null, new CancellationException(), true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.transport.HidTransport;
+
+import java.io.IOException;
+
+/**
+ * The AudioMothSession ties one HidTransport to its own receive thread, CommandCorrelator and
+ * AudioMothClient. It has no Android dependencies, with a SimulatedAudioMoth behind it the whole
+ * protocol stack runs on a plain JVM.
+ *
+ * Replies are decoded on the receive thread, so the futures of the client complete there.
+ */
+public class AudioMothSession {
+
+    private static final int RECEIVE_POOL_SIZE = 8;
+
+    private final HidTransport transport;
+    private final CommandCorrelator correlator;
+    private final AudioMothClient client;
+    private ReceiveThread receiveThread;
+    private boolean closed;
+    private volatile DeviceInfo deviceInfo;
+
+    public AudioMothSession(HidTransport transport) {
+        this(transport, CommandCorrelator.DEFAULT_MAX_OUTSTANDING);
+    }
+
+    /**
+     * @param transport the connection to the device, it is opened by open()
+     * @param maxOutstanding number of commands sent without waiting for their replies
+     */
+    public AudioMothSession(final HidTransport transport, int maxOutstanding) {
+        this(transport, maxOutstanding, new AppliedSettingsRegistry());
+    }
+
+    /**
+     * @param transport the connection to the device, it is opened by open()
+     * @param maxOutstanding number of commands sent without waiting for their replies
+     * @param appliedSettings the registry used by the client of the session, it may be shared
+     */
+    public AudioMothSession(final HidTransport transport, int maxOutstanding, AppliedSettingsRegistry appliedSettings) {
+        this.transport = transport;
+        this.correlator = new CommandCorrelator(new CommandCorrelator.Transmitter() {
+            @Override
+            public void transmit(byte[] report, int length) {
+                transport.sendReport(report, length);
+            }
+        }, maxOutstanding);
+        this.client = new AudioMothClient(correlator, appliedSettings);
+    }
+
+    /**
+     * Opens the transport and starts receiving
+     * @throws IOException if the transport can not be opened
+     */
+    public synchronized void open() throws IOException {
+        if (closed) {
+            throw new IOException("The session has been closed");
+        }
+        if (receiveThread != null) {
+            return;
+        }
+        transport.open();
+        receiveThread = new ReceiveThread(new ReportBufferPool(RECEIVE_POOL_SIZE, transport.getReportSize()));
+        receiveThread.start();
+    }
+
+    /**
+     * Closes the transport, pending commands fail with an IOException and the session can not be opened again
+     */
+    public synchronized void close() {
+        closed = true;
+        transport.close();
+        correlator.shutdown();
+        receiveThread = null;
+    }
+
+    /**
+     * Reads the DeviceInfo once and keeps it for the lifetime of the session
+     * @return a future with the DeviceInfo of this device
+     */
+    public AudioMothFuture<DeviceInfo> identify() {
+        DeviceInfo known = deviceInfo;
+        if (known != null) {
+            return AudioMothFuture.completed(known);
+        }
+        return client.getDeviceInfo().thenApply(new AudioMothFuture.Transformation<DeviceInfo, DeviceInfo>() {
+            @Override
+            public DeviceInfo apply(DeviceInfo value) {
+                deviceInfo = value;
+                return value;
+            }
+        });
+    }
+
+    /**
+     * @return the DeviceInfo read by identify(), or null if it has not been read yet
+     */
+    public DeviceInfo getDeviceInfo() {
+        return deviceInfo;
+    }
+
+    public AudioMothClient getClient() {
+        return client;
+    }
+
+    public HidTransport getTransport() {
+        return transport;
+    }
+
+    private class ReceiveThread extends Thread {
+
+        private final ReportBufferPool pool;
+
+        ReceiveThread(ReportBufferPool pool) {
+            super("AudioMoth-Receive");
+            setDaemon(true);
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte[] buffer = pool.acquire();
+                    try {
+                        int length = transport.receiveReport(buffer);
+                        if (length < 0) {
+                            return;
+                        }
+                        if (length > 0) {
+                            correlator.onReply(buffer);
+                        }
+                    } finally {
+                        pool.release(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                correlator.shutdown();
+            }
+        }
+    }
+}
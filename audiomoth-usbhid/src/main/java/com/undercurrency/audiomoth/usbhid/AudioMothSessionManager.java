@@ -0,0 +1,317 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+
+import com.undercurrency.audiomoth.usbhid.model.ClockSyncResult;
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.transport.HidTransport;
+import com.undercurrency.audiomoth.usbhid.transport.UsbHidTransport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The AudioMothSessionManager keeps one AudioMothSession per attached AudioMoth, so several
+ * devices connected through a hub can be provisioned at the same time.
+ * Sessions are keyed by the USB device id, every session has its own connection, receive thread
+ * and correlation state, so fleet operations fan out to all devices in parallel.
+ *
+ * A device managed here must not be selected through SelectDeviceEvent as well,
+ * both paths would claim the same interfaces.
+ */
+public class AudioMothSessionManager {
+
+    private static final Logger LOGGER = Logger.getLogger(AudioMothSessionManager.class.getName());
+
+    private final Map<Integer, AudioMothSession> sessions = new LinkedHashMap<Integer, AudioMothSession>();
+    private final AppliedSettingsRegistry appliedSettings = new AppliedSettingsRegistry();
+    private volatile DriftTracker driftTracker;
+    private volatile ClockSynchronizer driftSynchronizer;
+
+    /**
+     * Opens a session on an Android USB device, the permission must have been granted already
+     * @return the new session, or the existing one if the device is already open
+     * @throws IOException if the device can not be opened
+     */
+    public AudioMothSession open(UsbManager usbManager, UsbDevice device) throws IOException {
+        return open(device.getDeviceId(), new UsbHidTransport(usbManager, device));
+    }
+
+    /**
+     * Opens a session on any transport
+     * @param usbDeviceId key of the session
+     * @param transport the connection to the device
+     * @return the new session, or the existing one if the key is already open
+     * @throws IOException if the transport can not be opened
+     */
+    public synchronized AudioMothSession open(int usbDeviceId, HidTransport transport) throws IOException {
+        AudioMothSession session = sessions.get(usbDeviceId);
+        if (session != null) {
+            return session;
+        }
+        session = new AudioMothSession(transport, CommandCorrelator.DEFAULT_MAX_OUTSTANDING, appliedSettings);
+        session.open();
+        sessions.put(usbDeviceId, session);
+        if (driftTracker != null) {
+            measureOnConnection(session);
+        }
+        return session;
+    }
+
+    /**
+     * Measures the clock of every device opened from now on and records it in the tracker,
+     * clock sets done by synchronizeClocks() are recorded as well
+     * @param tracker the tracker, or null to stop recording
+     * @param synchronizer the procedure used to measure the clocks
+     */
+    public void setDriftTracker(DriftTracker tracker, ClockSynchronizer synchronizer) {
+        this.driftSynchronizer = synchronizer;
+        this.driftTracker = tracker;
+    }
+
+    public DriftTracker getDriftTracker() {
+        return driftTracker;
+    }
+
+    /**
+     * @return the registry shared by all sessions, it outlives them so a device that is unplugged and
+     * plugged again is not reconfigured by applySettings() if it still holds the configuration
+     */
+    public AppliedSettingsRegistry getAppliedSettings() {
+        return appliedSettings;
+    }
+
+    private void measureOnConnection(final AudioMothSession session) {
+        final ClockSynchronizer synchronizer = driftSynchronizer;
+        session.identify().addCallback(new AudioMothFuture.Callback<DeviceInfo>() {
+            @Override
+            public void onSuccess(DeviceInfo deviceInfo) {
+                runClockTask(session, deviceInfo, synchronizer, false).addCallback(new AudioMothFuture.Callback<ClockSyncResult>() {
+                    @Override
+                    public void onSuccess(ClockSyncResult result) {
+                    }
+
+                    @Override
+                    public void onFailure(Throwable error) {
+                        LOGGER.log(Level.WARNING, "Unable to measure the clock drift", error);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                LOGGER.log(Level.WARNING, "Unable to identify the device to measure its clock", error);
+            }
+        });
+    }
+
+    public synchronized AudioMothSession getSession(int usbDeviceId) {
+        return sessions.get(usbDeviceId);
+    }
+
+    /**
+     * @return a snapshot of the open sessions
+     */
+    public synchronized List<AudioMothSession> getSessions() {
+        return new ArrayList<AudioMothSession>(sessions.values());
+    }
+
+    public synchronized void close(int usbDeviceId) {
+        AudioMothSession session = sessions.remove(usbDeviceId);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    public synchronized void closeAll() {
+        for (AudioMothSession session : sessions.values()) {
+            session.close();
+        }
+        sessions.clear();
+    }
+
+    /**
+     * Reads the DeviceInfo of every open device
+     * @return a future completed once every device answered or failed
+     */
+    public AudioMothFuture<FleetResult<DeviceInfo>> identifyAll() {
+        return fanOut(new SessionOperation<DeviceInfo>() {
+            @Override
+            public AudioMothFuture<DeviceInfo> run(AudioMothSession session, DeviceInfo deviceInfo) {
+                return AudioMothFuture.completed(deviceInfo);
+            }
+        });
+    }
+
+    /**
+     * Sends the same configuration to every open device in parallel.
+     * Each device gets its own copy of the settings carrying its own DeviceInfo, so the packet
+     * matches the firmware of every unit. Devices that already hold the configuration, as echoed on their
+     * last write through any session of this manager, only get their clock set.
+     * @param rs the settings to apply
+     * @return a future completed once every device answered or failed
+     */
+    public AudioMothFuture<FleetResult<RecordingSettings>> applySettings(final RecordingSettings rs) {
+        return fanOut(new SessionOperation<RecordingSettings>() {
+            @Override
+            public AudioMothFuture<RecordingSettings> run(AudioMothSession session, DeviceInfo deviceInfo) {
+                RecordingSettings copy = new RecordingSettings(rs);
+                copy.setDeviceInfo(deviceInfo);
+                return session.getClient().applySettingsIfChanged(copy);
+            }
+        });
+    }
+
+    /**
+     * Synchronizes the clock of every open device, each on its own thread so all devices are set
+     * on the same second
+     * @param synchronizer the procedure to run on every device
+     * @return a future completed once every device is synchronized or failed
+     */
+    public AudioMothFuture<FleetResult<ClockSyncResult>> synchronizeClocks(final ClockSynchronizer synchronizer) {
+        return fanOut(new SessionOperation<ClockSyncResult>() {
+            @Override
+            public AudioMothFuture<ClockSyncResult> run(AudioMothSession session, DeviceInfo deviceInfo) {
+                return runClockTask(session, deviceInfo, synchronizer, true);
+            }
+        });
+    }
+
+    /**
+     * Measures the clock of every open device without setting it, recorded in the drift tracker if any
+     * @param synchronizer the procedure to run on every device
+     * @return a future completed once every device is measured or failed
+     */
+    public AudioMothFuture<FleetResult<ClockSyncResult>> measureClocks(final ClockSynchronizer synchronizer) {
+        return fanOut(new SessionOperation<ClockSyncResult>() {
+            @Override
+            public AudioMothFuture<ClockSyncResult> run(AudioMothSession session, DeviceInfo deviceInfo) {
+                return runClockTask(session, deviceInfo, synchronizer, false);
+            }
+        });
+    }
+
+    /**
+     * Runs the synchronizer on its own thread, it blocks and the caller may be the receive thread
+     * that completes its commands. The result is recorded in the drift tracker if any.
+     */
+    private AudioMothFuture<ClockSyncResult> runClockTask(final AudioMothSession session, final DeviceInfo deviceInfo,
+                                                         final ClockSynchronizer synchronizer, final boolean set) {
+        final AudioMothFuture<ClockSyncResult> future = new AudioMothFuture<ClockSyncResult>();
+        Thread thread = new Thread("AudioMoth-Clock-" + deviceInfo.getDeviceId()) {
+            @Override
+            public void run() {
+                try {
+                    ClockSyncResult result = set ? synchronizer.synchronize(session.getClient())
+                            : synchronizer.measure(session.getClient());
+                    DriftTracker tracker = driftTracker;
+                    if (tracker != null && deviceInfo.getDeviceId() != null) {
+                        tracker.record(deviceInfo.getDeviceId(), result);
+                    }
+                    future.complete(result);
+                } catch (ExecutionException e) {
+                    future.fail(e.getCause());
+                } catch (Exception e) {
+                    future.fail(e);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Identifies every session and then runs the operation on it, all sessions at once
+     */
+    private <T> AudioMothFuture<FleetResult<T>> fanOut(final SessionOperation<T> operation) {
+        final Map<Integer, AudioMothSession> snapshot;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<Integer, AudioMothSession>(sessions);
+        }
+        final FleetResult<T> fleetResult = new FleetResult<T>();
+        final AudioMothFuture<FleetResult<T>> future = new AudioMothFuture<FleetResult<T>>();
+        if (snapshot.isEmpty()) {
+            future.complete(fleetResult);
+            return future;
+        }
+        final AtomicInteger remaining = new AtomicInteger(snapshot.size());
+        for (Map.Entry<Integer, AudioMothSession> entry : snapshot.entrySet()) {
+            final String usbKey = "usb:" + entry.getKey();
+            final AudioMothSession session = entry.getValue();
+            session.identify().addCallback(new AudioMothFuture.Callback<DeviceInfo>() {
+                @Override
+                public void onSuccess(final DeviceInfo deviceInfo) {
+                    if (!fleetResult.claim(deviceInfo.getDeviceId())) {
+                        fleetResult.addFailure(usbKey, new IOException(deviceInfo.getDeviceId() == null
+                                ? "The device did not report its id" : "Duplicate device id " + deviceInfo.getDeviceId()));
+                        done();
+                        return;
+                    }
+                    AudioMothFuture<T> stage;
+                    try {
+                        stage = operation.run(session, deviceInfo);
+                    } catch (RuntimeException e) {
+                        stage = AudioMothFuture.failed(e);
+                    }
+                    stage.addCallback(new AudioMothFuture.Callback<T>() {
+                        @Override
+                        public void onSuccess(T result) {
+                            fleetResult.addResult(deviceInfo.getDeviceId(), result);
+                            done();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable error) {
+                            fleetResult.addFailure(deviceInfo.getDeviceId(), error);
+                            done();
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(Throwable error) {
+                    fleetResult.addFailure(usbKey, error);
+                    done();
+                }
+
+                private void done() {
+                    if (remaining.decrementAndGet() == 0) {
+                        future.complete(fleetResult);
+                    }
+                }
+            });
+        }
+        return future;
+    }
+
+    private interface SessionOperation<T> {
+        AudioMothFuture<T> run(AudioMothSession session, DeviceInfo deviceInfo);
+    }
+}
@@ -18,20 +18,20 @@
 
 package com.undercurrency.audiomoth.usbhid;
 
-import java.math.BigDecimal;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Arrays;
 import java.util.Date;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 
 /**
  * The ByteJugglingUtils provides functions to read and write integers to byte arrays,
  * deals with the issues of signed/unsigned integers in Java.
  * Java is a signed integers and big endian programming language
+ *
+ * All the conversions work in place over the caller's array with plain shifts,
+ * they do not allocate.
  */
 public  class ByteJugglingUtils {
+
+    private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+
     /**
      * Converts a single byte to integer
      * @param b
@@ -60,11 +60,7 @@ public  class ByteJugglingUtils {
      * @return an int
      */
     public static int readShortFromLittleEndian(byte[] buffer, int start){
-       ByteBuffer bb = ByteBuffer.wrap(Arrays.copyOfRange(buffer,start,start+2));
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        int data = bb.getShort();
-        if(data < 0) return data &0xFFFF;
-            return data;
+        return (buffer[start] & 0xFF) | (buffer[start + 1] & 0xFF) << 8;
     }
 
     /**
@@ -74,9 +70,20 @@ public  class ByteJugglingUtils {
      * @return an int
      */
     public static int readIntFromLittleEndian(byte[] buffer, int start){
-        ByteBuffer bb = ByteBuffer.wrap(Arrays.copyOfRange(buffer,start,start+4));
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        return bb.getInt();
+        return (buffer[start] & 0xFF)
+                | (buffer[start + 1] & 0xFF) << 8
+                | (buffer[start + 2] & 0xFF) << 16
+                | (buffer[start + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Translates a 4 byte array to an unsigned 32 bit value
+     * @param buffer a byte array
+     * @param start index from which to start the conversion
+     * @return a long between 0 and 0xFFFFFFFF
+     */
+    public static long readUnsignedIntFromLittleEndian(byte[] buffer, int start){
+        return readIntFromLittleEndian(buffer, start) & 0xFFFFFFFFL;
     }
 
     /**
@@ -86,13 +93,10 @@ public  class ByteJugglingUtils {
      * @param value an integer number
      */
     public static void writeIntToLittleEndian(byte[] buffer, int start,int value){
-        ByteBuffer bb = ByteBuffer.allocate(4);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.putInt((int) value );
-        byte[] le =  bb.array();
-        for (int i = 0; i < 4; i++) {
-            buffer[start + i] = le[i];
-        }
+        buffer[start] = (byte) value;
+        buffer[start + 1] = (byte) (value >>> 8);
+        buffer[start + 2] = (byte) (value >>> 16);
+        buffer[start + 3] = (byte) (value >>> 24);
     }
 
     /**
@@ -102,13 +106,7 @@ public  class ByteJugglingUtils {
      * @param value an integer number
      */
     public static void writeLongToLittleEndian(byte[] buffer, int start, long value){
-        ByteBuffer bb= ByteBuffer.allocate(8);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.putLong(value);
-        byte[] le = bb.array();
-        for (int i = 0; i < 4; i++) {
-            buffer[start + i] = le[i];
-        }
+        writeIntToLittleEndian(buffer, start, (int) value);
     }
 
     /**
@@ -118,13 +116,8 @@ public  class ByteJugglingUtils {
      * @param value an integer number
      */
     public static void writeShortToLittleEndian(byte[] buffer, int start, short value){
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.putShort( value );
-        byte[] le =  bb.array();
-        for (int i = 0; i < 2; i++) {
-            buffer[start + i] = le[i];
-        }
+        buffer[start] = (byte) value;
+        buffer[start + 1] = (byte) (value >>> 8);
     }
 
     /**
@@ -134,35 +127,13 @@ public  class ByteJugglingUtils {
      * @return Date
      */
     public static Date readDateFromByteArray(byte[] buffer, int start){
-        byte[] fakeLongArray = Arrays.copyOfRange(buffer,start,start+4);
-        byte[] longArray = new byte[8];
-        for(int i=0; i<4;i++){
-            longArray[i]=fakeLongArray[i];
-        }
-        for(int i=4; i<8;i++){
-            longArray[i]=0;
-        }
-        ByteBuffer bb = ByteBuffer.wrap(longArray);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        long timestamp = bb.getLong();
+        long timestamp = readUnsignedIntFromLittleEndian(buffer, start);
         if(timestamp==0) return  null;
-        Date date =new Date(timestamp*1000L);
-        return date;
+        return new Date(timestamp*1000L);
     }
 
     public static Long readMillisFromByteArray(byte[] buffer, int start){
-        byte[] fakeLongArray = Arrays.copyOfRange(buffer,start,start+4);
-        byte[] longArray = new byte[8];
-        for(int i=0; i<4;i++){
-            longArray[i]=fakeLongArray[i];
-        }
-        for(int i=4; i<8;i++){
-            longArray[i]=0;
-        }
-        ByteBuffer bb = ByteBuffer.wrap(longArray);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        Date date = new Date();
-        long timestamp = bb.getLong();
+        long timestamp = readUnsignedIntFromLittleEndian(buffer, start);
         if(timestamp==0) return  null;
         return timestamp*1000L;
     }
@@ -173,12 +144,19 @@ public  class ByteJugglingUtils {
      * @return a little endian byte array representation of the date, loses time resolution
      */
     public static byte[] writeDateToByteArray(Date aDate){
-        BigDecimal bigDecimal = new BigDecimal(String.valueOf(aDate.getTime()/1000));
-        int timestamp = bigDecimal.intValue();
-        ByteBuffer bb = ByteBuffer.allocate(4);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-        bb.putInt(timestamp);
-        return bb.array();
+        byte[] bytes = new byte[4];
+        writeDateToLittleEndian(bytes, 0, aDate);
+        return bytes;
+    }
+
+    /**
+     * Writes a Date as a 4 byte unix timestamp, loses time resolution
+     * @param buffer a byte array to write in
+     * @param start index from which to start writing bytes
+     * @param aDate a date
+     */
+    public static void writeDateToLittleEndian(byte[] buffer, int start, Date aDate){
+        writeIntToLittleEndian(buffer, start, (int) (aDate.getTime() / 1000));
     }
 
 
@@ -188,8 +166,7 @@ public  class ByteJugglingUtils {
      * @return an String with the format ## ##
      */
     public static String byteToHexString(byte[] buffer){
-        StringBuffer sb = new StringBuffer();
-        final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+        StringBuilder sb = new StringBuilder(buffer.length * 3);
         for (int j = 0; j < buffer.length; j++) {
             int v = buffer[j] & 0xFF;
             sb.append(HEX_ARRAY[v >>> 4]);
@@ -0,0 +1,198 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.ClockSyncResult;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * The ClockSynchronizer sets the clock of an AudioMoth as close to the host clock as the USB link allows.
+ *
+ * <ol>
+ * <li>GET_TIME probes measure the round-trip latency of the link.</li>
+ * <li>SET_TIME is sent half the shortest round trip before a whole second, so it lands on the boundary.
+ * AudioMoth only keeps whole seconds, a date sent at any other time is off by the fraction.</li>
+ * <li>GET_TIME probes spanning a whole second measure the residual offset. Every reply bounds the offset
+ * between the send and the receive time of its probe, the bounds are intersected.</li>
+ * </ol>
+ *
+ * measure() only runs the first and last step, to follow the drift of a clock without touching it.
+ * The calls block, run them on a worker thread, never on the main thread.
+ *
+ * Every run anchors the host time on the wall clock once at its start, then follows it with
+ * System.nanoTime(). nanoTime stops in deep sleep and ignores NTP corrections, so a synchronizer
+ * kept for days still reads the real host time on every run.
+ */
+public class ClockSynchronizer {
+
+    private static final Logger LOGGER = Logger.getLogger(ClockSynchronizer.class.getName());
+
+    public static final int DEFAULT_PROBE_COUNT = 8;
+    /* Time left to prepare the SET_TIME before the target second */
+    private static final long LEAD_MILLIS = 200L;
+    /* Sleeping is too coarse for the last milliseconds, the wait spins */
+    private static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(3);
+    /* The residual probes cover a whole second plus some margin */
+    private static final long RESIDUAL_WINDOW_MILLIS = 1200L;
+
+    private final int probeCount;
+    private final long timeoutMillis;
+
+    public ClockSynchronizer() {
+        this(DEFAULT_PROBE_COUNT, AudioMothClient.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param probeCount the GET_TIME probes used to measure the latency
+     * @param timeoutMillis the timeout of every command
+     */
+    public ClockSynchronizer(int probeCount, long timeoutMillis) {
+        if (probeCount <= 0) {
+            throw new IllegalArgumentException("At least one probe is needed");
+        }
+        this.probeCount = probeCount;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Measures the latency, sets the device clock and measures the residual offset
+     * @throws ExecutionException if a command fails
+     * @throws TimeoutException if the device does not answer
+     */
+    public ClockSyncResult synchronize(AudioMothClient client) throws InterruptedException, ExecutionException, TimeoutException {
+        return run(client, true);
+    }
+
+    /**
+     * Measures the latency and the offset of the device clock without setting it
+     * @throws ExecutionException if a command fails
+     * @throws TimeoutException if the device does not answer
+     */
+    public ClockSyncResult measure(AudioMothClient client) throws InterruptedException, ExecutionException, TimeoutException {
+        return run(client, false);
+    }
+
+    private ClockSyncResult run(AudioMothClient client, boolean set) throws InterruptedException, ExecutionException, TimeoutException {
+        HostClock clock = new HostClock();
+        double[] roundTrips = new double[probeCount];
+        OffsetBounds initial = new OffsetBounds();
+        for (int i = 0; i < probeCount; i++) {
+            roundTrips[i] = probe(client, clock, initial);
+        }
+        Arrays.sort(roundTrips);
+        double minRoundTrip = roundTrips[0];
+        double medianRoundTrip = roundTrips[probeCount / 2];
+
+        Date setTime = null;
+        if (set) {
+            /* The first whole second that leaves time to prepare, sent to arrive exactly on it */
+            double latency = minRoundTrip / 2;
+            long targetSecond = (long) Math.ceil((clock.hostMillis(System.nanoTime()) + latency + LEAD_MILLIS) / 1000.0);
+            setTime = new Date(targetSecond * 1000L);
+            clock.waitUntil(targetSecond * 1000.0 - latency);
+            client.setTime(setTime, timeoutMillis).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        OffsetBounds residual = new OffsetBounds();
+        double end = clock.hostMillis(System.nanoTime()) + RESIDUAL_WINDOW_MILLIS;
+        int residualProbes = 0;
+        double now;
+        do {
+            probe(client, clock, residual);
+            residualProbes++;
+            now = clock.hostMillis(System.nanoTime());
+        } while (now < end);
+        ClockSyncResult result = new ClockSyncResult((long) now, probeCount + residualProbes, minRoundTrip, medianRoundTrip,
+                initial.getCentre(), initial.getHalfWidth(), setTime,
+                residual.getCentre(), residual.getHalfWidth(), residual.isConsistent());
+        LOGGER.fine(result.toString());
+        return result;
+    }
+
+    /**
+     * Reads the device clock once and narrows the bounds
+     * @return the round trip in milliseconds
+     */
+    private double probe(AudioMothClient client, HostClock clock, OffsetBounds bounds) throws InterruptedException, ExecutionException, TimeoutException {
+        long sent = System.nanoTime();
+        Date device = client.getTime(timeoutMillis).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        long received = System.nanoTime();
+        if (device != null) {
+            /* The device read its clock, somewhere in [seconds, seconds + 1), between sent and received */
+            double deviceMillis = device.getTime();
+            bounds.add(deviceMillis - clock.hostMillis(received), deviceMillis + 1000.0 - clock.hostMillis(sent));
+        }
+        return (received - sent) / 1e6;
+    }
+
+    /**
+     * The host wall clock read once at the start of a run, intervals are measured with System.nanoTime()
+     */
+    private static class HostClock {
+        private final long wallBase = System.currentTimeMillis();
+        private final long nanoBase = System.nanoTime();
+
+        double hostMillis(long nanos) {
+            return wallBase + (nanos - nanoBase) / 1e6;
+        }
+
+        void waitUntil(double hostMillis) throws InterruptedException {
+            long deadline = nanoBase + (long) ((hostMillis - wallBase) * 1e6);
+            long remaining = deadline - System.nanoTime();
+            if (remaining > SPIN_NANOS) {
+                TimeUnit.NANOSECONDS.sleep(remaining - SPIN_NANOS);
+            }
+            while (System.nanoTime() < deadline) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+
+    /**
+     * The intersection of the offset intervals of the probes
+     */
+    private static class OffsetBounds {
+        private double low = Double.NEGATIVE_INFINITY;
+        private double high = Double.POSITIVE_INFINITY;
+
+        void add(double low, double high) {
+            this.low = Math.max(this.low, low);
+            this.high = Math.min(this.high, high);
+        }
+
+        boolean isConsistent() {
+            return low <= high;
+        }
+
+        double getCentre() {
+            return (low + high) / 2;
+        }
+
+        double getHalfWidth() {
+            return Math.abs(high - low) / 2;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.AudioMothOperations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CommandCorrelator matches every AudioMoth reply with the command that caused it.
+ * AudioMoth echoes the opcode of the command in the first byte of the reply, so replies are
+ * paired with the oldest in-flight command carrying the same opcode.
+ *
+ * Up to maxOutstanding commands are sent back to back without waiting for their replies,
+ * the rest wait in submission order and go out as soon as a slot is freed by a reply or a timeout.
+ *
+ * Submitted reports are owned by the correlator, they are given back to its ReportBuilder
+ * as soon as they have been transmitted.
+ *
+ * Reports are transmitted in order by a dedicated sender thread, outside the correlator lock,
+ * so neither submit() nor onReply() ever waits for the USB write of another command.
+ *
+ * Every submitted command ends in exactly one listener call: its reply, its timeout, or a failure
+ * when the transmitter throws or the correlator is shut down.
+ */
+public class CommandCorrelator {
+
+    public static final int DEFAULT_MAX_OUTSTANDING = 4;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 1000L;
+
+    /**
+     * Sends a complete report, opcode included, to the device
+     */
+    public interface Transmitter {
+        /**
+         * @param report the report, only valid during the call
+         * @param length number of bytes to send
+         */
+        void transmit(byte[] report, int length);
+    }
+
+    /**
+     * Receives the outcome of a submitted command, it is called exactly once
+     */
+    public interface ReplyListener {
+        /**
+         * @param op the command the reply belongs to
+         * @param buffer the reply, only valid during the call
+         */
+        void onReply(AudioMothOperations op, byte[] buffer);
+
+        void onTimeout(AudioMothOperations op);
+
+        /**
+         * @param op the command that could not be completed
+         * @param error what the transmitter threw, or an IOException if the correlator was shut down
+         */
+        void onFailure(AudioMothOperations op, Throwable error);
+    }
+
+    private final Transmitter transmitter;
+    private final int maxOutstanding;
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService sender;
+    private final ReportBuilder reportBuilder = new ReportBuilder();
+    private final LinkedList<PendingCommand> inFlight = new LinkedList<PendingCommand>();
+    private final LinkedList<PendingCommand> waiting = new LinkedList<PendingCommand>();
+    private boolean shutdown;
+
+    public CommandCorrelator(Transmitter transmitter) {
+        this(transmitter, DEFAULT_MAX_OUTSTANDING);
+    }
+
+    public CommandCorrelator(Transmitter transmitter, int maxOutstanding) {
+        this.transmitter = transmitter;
+        this.maxOutstanding = maxOutstanding;
+        this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AudioMoth-CommandTimeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.sender = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AudioMoth-Send");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submits a command with the default timeout
+     * @param op the operation, its opcode must be the first byte of the report
+     * @param report the complete report to send
+     * @param length number of bytes of the report to send
+     * @param listener receives the reply or the timeout
+     */
+    public void submit(AudioMothOperations op, byte[] report, int length, ReplyListener listener) {
+        submit(op, report, length, DEFAULT_TIMEOUT_MILLIS, listener);
+    }
+
+    /**
+     * Submits a command, it is sent at once if there is a free slot or queued otherwise
+     * @param op the operation, its opcode must be the first byte of the report
+     * @param report the complete report to send, usually built with getReportBuilder()
+     * @param length number of bytes of the report to send
+     * @param timeoutMillis time allowed for the reply, counted from the moment the report is sent
+     * @param listener receives the reply or the timeout
+     */
+    public void submit(AudioMothOperations op, byte[] report, int length, long timeoutMillis, ReplyListener listener) {
+        synchronized (this) {
+            if (!shutdown) {
+                waiting.add(new PendingCommand(op, report, length, timeoutMillis, listener));
+                sendWaiting();
+                return;
+            }
+        }
+        reportBuilder.release(report);
+        listener.onFailure(op, new IOException("Session closed"));
+    }
+
+    /**
+     * @return the builder whose pooled reports are recycled by this correlator
+     */
+    public ReportBuilder getReportBuilder() {
+        return reportBuilder;
+    }
+
+    /**
+     * Routes a reply to its pending command
+     * @param buffer the reply as it came from the device
+     * @return true if a pending command was waiting for it, false otherwise
+     */
+    public boolean onReply(byte[] buffer) {
+        if (buffer == null || buffer.length == 0) {
+            return false;
+        }
+        AudioMothOperations op = AudioMothOperations.fromOpcode(buffer[0]);
+        PendingCommand matched = null;
+        synchronized (this) {
+            Iterator<PendingCommand> it = inFlight.iterator();
+            while (it.hasNext()) {
+                PendingCommand command = it.next();
+                if (command.op == op) {
+                    it.remove();
+                    matched = command;
+                    break;
+                }
+            }
+            if (matched == null) {
+                return false;
+            }
+            if (matched.timeout != null) {
+                matched.timeout.cancel(false);
+            }
+            sendWaiting();
+        }
+        matched.listener.onReply(op, buffer);
+        return true;
+    }
+
+    /**
+     * @return the number of commands sent and still waiting for their reply
+     */
+    public synchronized int getOutstanding() {
+        return inFlight.size();
+    }
+
+    /**
+     * Stops the sender and the timeout timer, the pending commands and the ones submitted from now
+     * on fail with an IOException
+     */
+    public void shutdown() {
+        List<PendingCommand> pending;
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            pending = new ArrayList<PendingCommand>(inFlight.size() + waiting.size());
+            pending.addAll(inFlight);
+            pending.addAll(waiting);
+            inFlight.clear();
+            waiting.clear();
+            sender.shutdownNow();
+            timer.shutdownNow();
+            for (PendingCommand command : pending) {
+                if (command.timeout != null) {
+                    command.timeout.cancel(false);
+                }
+                /* Reports not taken by the sender thread yet */
+                if (command.report != null) {
+                    reportBuilder.release(command.report);
+                    command.report = null;
+                }
+            }
+        }
+        for (PendingCommand command : pending) {
+            command.listener.onFailure(command.op, new IOException("Session closed"));
+        }
+    }
+
+    /**
+     * Moves the waiting commands to the free slots and hands them to the sender thread,
+     * it must be called holding the lock
+     */
+    private void sendWaiting() {
+        while (inFlight.size() < maxOutstanding && !waiting.isEmpty() && !sender.isShutdown()) {
+            final PendingCommand command = waiting.removeFirst();
+            inFlight.add(command);
+            sender.execute(new Runnable() {
+                @Override
+                public void run() {
+                    transmit(command);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs on the sender thread, the timeout starts once the report is on the wire
+     */
+    private void transmit(final PendingCommand command) {
+        byte[] report;
+        boolean pending;
+        synchronized (this) {
+            report = command.report;
+            command.report = null;
+            pending = inFlight.contains(command);
+        }
+        if (!pending) {
+            reportBuilder.release(report);
+            return;
+        }
+        try {
+            transmitter.transmit(report, command.length);
+        } catch (RuntimeException e) {
+            /* The command will never be answered, its slot goes to the next one */
+            boolean removed;
+            synchronized (this) {
+                removed = inFlight.remove(command);
+                sendWaiting();
+            }
+            if (removed) {
+                command.listener.onFailure(command.op, e);
+            }
+            return;
+        } finally {
+            reportBuilder.release(report);
+        }
+        synchronized (this) {
+            if (inFlight.contains(command) && !timer.isShutdown()) {
+                command.timeout = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        expire(command);
+                    }
+                }, command.timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void expire(PendingCommand command) {
+        synchronized (this) {
+            if (!inFlight.remove(command)) {
+                return;
+            }
+            sendWaiting();
+        }
+        command.listener.onTimeout(command.op);
+    }
+
+    private static class PendingCommand {
+        private final AudioMothOperations op;
+        private byte[] report;
+        private final int length;
+        private final long timeoutMillis;
+        private final ReplyListener listener;
+        private ScheduledFuture<?> timeout;
+
+        PendingCommand(AudioMothOperations op, byte[] report, int length, long timeoutMillis, ReplyListener listener) {
+            this.op = op;
+            this.report = report;
+            this.length = length;
+            this.timeoutMillis = timeoutMillis;
+            this.listener = listener;
+        }
+    }
+}
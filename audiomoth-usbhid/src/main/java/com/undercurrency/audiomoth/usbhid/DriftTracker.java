@@ -0,0 +1,241 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.ClockSyncResult;
+import com.undercurrency.audiomoth.usbhid.model.DriftEstimate;
+import com.undercurrency.audiomoth.usbhid.store.DriftLogReader;
+import com.undercurrency.audiomoth.usbhid.store.DriftLogWriter;
+import com.undercurrency.audiomoth.usbhid.store.DriftRecord;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The DriftTracker follows how far the clock of every AudioMoth drifts from the host clock, so the
+ * timestamps of recordings made in the field can be corrected when the units come back.
+ *
+ * Every reading of a device clock updates a least squares fit of its offset against the host time,
+ * one fit per period between two clock sets. The fit is incremental, a reading costs the same however
+ * many came before. With a file the readings are also appended to a DriftLog, and replayed when
+ * the tracker is created again. A record torn by a crash while it was appended is dropped, the
+ * file is cut back to the last complete record before new ones are appended.
+ *
+ * The tracker is thread safe.
+ */
+public class DriftTracker implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(DriftTracker.class.getName());
+
+    private final Map<String, List<Fit>> segments = new LinkedHashMap<String, List<Fit>>();
+    private final DriftLogWriter writer;
+
+    /**
+     * A tracker that keeps its readings in memory only
+     */
+    public DriftTracker() {
+        this.writer = null;
+    }
+
+    /**
+     * Replays the readings of the log file, if any, and appends the new ones to it
+     */
+    public DriftTracker(File file) throws IOException {
+        if (file.exists() && file.length() > 0) {
+            replay(file);
+        }
+        this.writer = DriftLogWriter.append(file);
+    }
+
+    private void replay(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        long completeLength = 0;
+        try {
+            DriftLogReader reader = new DriftLogReader(in);
+            try {
+                DriftRecord record;
+                while ((record = reader.read()) != null) {
+                    add(record.getDeviceId(), record.getHostMillis(), record.getOffsetMillis(), record.isClockSet());
+                }
+                return;
+            } catch (EOFException e) {
+                completeLength = reader.getCompleteLength();
+            }
+        } catch (EOFException e) {
+            /* Torn inside the header, the log starts over */
+        } finally {
+            in.close();
+        }
+        LOGGER.warning("Drift log " + file + " ends with a torn record, cut from " + file.length() + " to " + completeLength + " bytes");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(completeLength);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Records the outcome of a ClockSynchronizer run, a set starts a new fit
+     * @return false if the result was not consistent and was left out
+     */
+    public boolean record(String deviceId, ClockSyncResult result) throws IOException {
+        if (!result.isConsistent()) {
+            return false;
+        }
+        record(deviceId, result.getMeasuredAt(), result.getResidualOffsetMillis(),
+                result.getResidualUncertaintyMillis(), result.isClockSet());
+        return true;
+    }
+
+    /**
+     * @param hostMillis the host time of the reading, unix millis
+     * @param offsetMillis the device clock minus the host clock
+     * @param uncertaintyMillis the half width of the offset interval, kept in the log
+     * @param clockSet true if the device clock was just set, earlier readings no longer apply
+     */
+    public synchronized void record(String deviceId, long hostMillis, double offsetMillis, double uncertaintyMillis,
+                                    boolean clockSet) throws IOException {
+        if (writer != null) {
+            writer.write(deviceId, hostMillis, (float) offsetMillis, (float) uncertaintyMillis, clockSet);
+            writer.flush();
+        }
+        /* Rounded like the log, so a replayed tracker gives the same estimates */
+        add(deviceId, hostMillis, (float) offsetMillis, clockSet);
+    }
+
+    private void add(String deviceId, long hostMillis, float offsetMillis, boolean clockSet) {
+        List<Fit> fits = segments.get(deviceId);
+        if (fits == null) {
+            fits = new ArrayList<Fit>();
+            segments.put(deviceId, fits);
+        }
+        if (clockSet || fits.isEmpty()) {
+            fits.add(new Fit(hostMillis));
+        }
+        fits.get(fits.size() - 1).add(hostMillis, offsetMillis);
+    }
+
+    public synchronized Set<String> getDeviceIds() {
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(segments.keySet()));
+    }
+
+    /**
+     * @return the drift since the last clock set, or null if the device has no reading
+     */
+    public synchronized DriftEstimate getEstimate(String deviceId) {
+        List<Fit> fits = segments.get(deviceId);
+        return fits == null ? null : fits.get(fits.size() - 1).toEstimate(deviceId);
+    }
+
+    /**
+     * @return the drift of the period between clock sets that holds the host time, or null if the
+     * device has no reading
+     */
+    public synchronized DriftEstimate getEstimate(String deviceId, long hostMillis) {
+        List<Fit> fits = segments.get(deviceId);
+        if (fits == null) {
+            return null;
+        }
+        for (int i = fits.size() - 1; i > 0; i--) {
+            if (fits.get(i).start <= hostMillis) {
+                return fits.get(i).toEstimate(deviceId);
+            }
+        }
+        return fits.get(0).toEstimate(deviceId);
+    }
+
+    /**
+     * Corrects a timestamp of the device with the fit of the period it was taken in
+     * @param deviceMillis a device time, unix millis
+     * @return the host time, or deviceMillis unchanged if the device has no reading
+     */
+    public synchronized long toHostMillis(String deviceId, long deviceMillis) {
+        List<Fit> fits = segments.get(deviceId);
+        if (fits == null) {
+            return deviceMillis;
+        }
+        for (int i = fits.size() - 1; i > 0; i--) {
+            long hostMillis = fits.get(i).toHostMillis(deviceMillis);
+            if (hostMillis >= fits.get(i).start) {
+                return hostMillis;
+            }
+        }
+        return fits.get(0).toHostMillis(deviceMillis);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * A running least squares fit of the offset against the host time, updated one reading at a
+     * time with Welford's method. Host times are taken from the start of the period to keep the
+     * precision of the sums.
+     */
+    private static class Fit {
+        private final long start;
+        private int count;
+        private double meanX;
+        private double meanY;
+        private double sxx;
+        private double sxy;
+
+        Fit(long start) {
+            this.start = start;
+        }
+
+        void add(long hostMillis, double offsetMillis) {
+            double x = hostMillis - start;
+            count++;
+            double dx = x - meanX;
+            meanX += dx / count;
+            meanY += (offsetMillis - meanY) / count;
+            sxx += dx * (x - meanX);
+            sxy += dx * (offsetMillis - meanY);
+        }
+
+        double getSlope() {
+            return sxx > 0 ? sxy / sxx : 0;
+        }
+
+        long toHostMillis(long deviceMillis) {
+            double slope = getSlope();
+            return Math.round((deviceMillis - meanY + slope * (start + meanX)) / (1 + slope));
+        }
+
+        DriftEstimate toEstimate(String deviceId) {
+            return new DriftEstimate(deviceId, count, start, start + meanX, meanY, getSlope());
+        }
+    }
+}
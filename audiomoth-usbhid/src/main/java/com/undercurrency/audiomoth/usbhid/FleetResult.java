@@ -0,0 +1,76 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The FleetResult collects the outcome of one operation run on every open session.
+ * Results and failures are keyed by the deviceId reported in DeviceInfo, devices that could not
+ * be identified are keyed by "usb:" followed by their USB device id.
+ * A device without a deviceId, or reporting the id of a device already in the result, is not
+ * operated on and is recorded as a failure under its USB key, so no entry is ever overwritten.
+ *
+ * @param <T> the result type of the operation
+ */
+public class FleetResult<T> {
+
+    private final Map<String, T> results = new LinkedHashMap<String, T>();
+    private final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+    private final Set<String> claimed = new HashSet<String>();
+
+    /**
+     * Reserves the key of a device before the operation runs on it
+     * @return false if the id is null or already taken by another device
+     */
+    synchronized boolean claim(String deviceId) {
+        return deviceId != null && claimed.add(deviceId);
+    }
+
+    synchronized void addResult(String deviceId, T result) {
+        results.put(deviceId, result);
+    }
+
+    synchronized void addFailure(String deviceId, Throwable error) {
+        failures.put(deviceId, error);
+    }
+
+    public synchronized Map<String, T> getResults() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, T>(results));
+    }
+
+    public synchronized Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Throwable>(failures));
+    }
+
+    public synchronized boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FleetResult{" +
+                "results=" + results.keySet() +
+                ", failures=" + failures.keySet() +
+                '}';
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+/**
+ * The ReportBufferPool keeps a fixed set of preallocated HID report buffers.
+ * A buffer is taken with acquire() once a transfer has completed and must be given back with
+ * release() when the consumer is done with it, so the receive path does not produce garbage.
+ * If every slot is in use a fresh buffer is handed out, it is dropped on release.
+ */
+public class ReportBufferPool {
+
+    private final int reportSize;
+    private final byte[][] slots;
+    private int available;
+
+    /**
+     * Creates a pool with all its slots preallocated
+     * @param slotCount number of buffers kept by the pool
+     * @param reportSize length in bytes of every buffer
+     */
+    public ReportBufferPool(int slotCount, int reportSize) {
+        this.reportSize = reportSize;
+        this.slots = new byte[slotCount][];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new byte[reportSize];
+        }
+        this.available = slotCount;
+    }
+
+    /**
+     * Takes a buffer from the pool
+     * @return a buffer of getReportSize() bytes, its contents are undefined
+     */
+    public synchronized byte[] acquire() {
+        if (available == 0) {
+            return new byte[reportSize];
+        }
+        byte[] buffer = slots[--available];
+        slots[available] = null;
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool, the caller must not touch it afterwards
+     * @param buffer a buffer obtained from acquire()
+     */
+    public synchronized void release(byte[] buffer) {
+        if (buffer == null || buffer.length != reportSize || available == slots.length) {
+            return;
+        }
+        slots[available++] = buffer;
+    }
+
+    public int getReportSize() {
+        return reportSize;
+    }
+
+    public synchronized int getAvailable() {
+        return available;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.AudioMothOperations;
+import com.undercurrency.audiomoth.usbhid.model.ConfigPacketCodec;
+import com.undercurrency.audiomoth.usbhid.model.DateSettings;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+
+/**
+ * The ReportBuilder writes the opcode and the payload of a command straight into one pooled
+ * HID report, so sending a command makes no intermediate copies.
+ * Reports are handed to the CommandCorrelator, which gives them back with release() once they
+ * have been transmitted.
+ */
+public class ReportBuilder {
+
+    public static final int REPORT_SIZE = 64;
+    public static final int PAYLOAD_OFFSET = 1;
+    private static final int POOL_SIZE = 8;
+
+    private final ReportBufferPool pool = new ReportBufferPool(POOL_SIZE, REPORT_SIZE);
+
+    /**
+     * @return a report holding only the opcode, its length is PAYLOAD_OFFSET
+     */
+    public byte[] build(AudioMothOperations op) {
+        byte[] report = pool.acquire();
+        report[0] = op.getOpcode();
+        return report;
+    }
+
+    /**
+     * @return a report holding the opcode and the date, its length is PAYLOAD_OFFSET + DateSettings.PACKET_SIZE
+     */
+    public byte[] build(AudioMothOperations op, DateSettings date) {
+        byte[] report = build(op);
+        date.serializeTo(report, PAYLOAD_OFFSET);
+        return report;
+    }
+
+    /**
+     * @return a report holding the opcode and the configuration in the layout of the codec,
+     * its length is PAYLOAD_OFFSET + codec.getPacketLength()
+     */
+    public byte[] build(AudioMothOperations op, RecordingSettings rs, ConfigPacketCodec codec) {
+        byte[] report = build(op);
+        codec.encode(rs, report, PAYLOAD_OFFSET);
+        return report;
+    }
+
+    /**
+     * Gives a report back to the pool, the caller must not touch it afterwards
+     */
+    public void release(byte[] report) {
+        pool.release(report);
+    }
+}
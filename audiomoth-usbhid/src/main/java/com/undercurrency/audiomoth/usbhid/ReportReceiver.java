@@ -0,0 +1,154 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.transport.HidTransport;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The ReportReceiver reads the HID input reports of a transport on its own thread and hands each one
+ * to a Listener through a Dispatcher, AbstractUSBHIDService dispatches them to the main thread.
+ * The transport blocks until a report actually arrives, so an idle AudioMoth costs no CPU time.
+ *
+ * Every report travels in a pooled Delivery that owns the report buffer and is itself the Runnable
+ * given to the Dispatcher, it returns to the pool once the Listener is done with it, so steady-state
+ * reception allocates nothing per report. If every Delivery is in use a fresh one is handed out,
+ * it is dropped once delivered.
+ */
+public class ReportReceiver extends Thread {
+
+    private static final Logger LOGGER = Logger.getLogger(ReportReceiver.class.getName());
+
+    /**
+     * Runs a delivery, usually on another thread, for example with Handler.post()
+     */
+    public interface Dispatcher {
+        void dispatch(Runnable delivery);
+    }
+
+    public interface Listener {
+        /**
+         * Called by the delivery for every input report.
+         * The buffer belongs to the pool and is reused once this method returns,
+         * implementations that keep the data must copy it.
+         * @param buffer the report bytes, only the first length are part of the report
+         * @param length the number of bytes received
+         */
+        void onReport(byte[] buffer, int length);
+    }
+
+    private final HidTransport transport;
+    private final Dispatcher dispatcher;
+    private final Listener listener;
+    private final int reportSize;
+    private final Delivery[] slots;
+    private int available;
+    private volatile boolean isStopped;
+
+    /**
+     * @param transport an open transport
+     * @param slotCount number of deliveries kept by the pool
+     * @param dispatcher runs the deliveries
+     * @param listener receives the reports
+     */
+    public ReportReceiver(HidTransport transport, int slotCount, Dispatcher dispatcher, Listener listener) {
+        super("AudioMoth-Receive");
+        setDaemon(true);
+        this.transport = transport;
+        this.dispatcher = dispatcher;
+        this.listener = listener;
+        this.reportSize = transport.getReportSize();
+        this.slots = new Delivery[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Delivery(true);
+        }
+        this.available = slotCount;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isStopped) {
+                Delivery delivery = acquire();
+                int length = transport.receiveReport(delivery.buffer);
+                if (length < 0 || isStopped) {
+                    release(delivery);
+                    break;
+                }
+                delivery.length = length;
+                dispatcher.dispatch(delivery);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error in receive thread", e);
+        }
+    }
+
+    /**
+     * Closes the transport so a pending receiveReport returns and the thread finishes
+     */
+    public void stopReceiving() {
+        isStopped = true;
+        transport.close();
+    }
+
+    /**
+     * @return the number of deliveries waiting in the pool
+     */
+    public synchronized int getAvailable() {
+        return available;
+    }
+
+    private synchronized Delivery acquire() {
+        if (available == 0) {
+            return new Delivery(false);
+        }
+        Delivery delivery = slots[--available];
+        slots[available] = null;
+        return delivery;
+    }
+
+    private synchronized void release(Delivery delivery) {
+        if (delivery.pooled) {
+            slots[available++] = delivery;
+        }
+    }
+
+    /**
+     * One received report on its way to the Listener
+     */
+    private class Delivery implements Runnable {
+        private final byte[] buffer = new byte[reportSize];
+        private final boolean pooled;
+        private int length;
+
+        Delivery(boolean pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public void run() {
+            try {
+                listener.onReport(buffer, length);
+            } finally {
+                release(this);
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ package com.undercurrency.audiomoth.usbhid;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
 import android.hardware.usb.UsbDevice;
 import android.util.Log;
 
@@ -36,10 +38,13 @@ import com.undercurrency.audiomoth.usbhid.events.DeviceDetachedEvent;
 import com.undercurrency.audiomoth.usbhid.events.ShowDevicesListEvent;
 import com.undercurrency.audiomoth.usbhid.events.USBDataReceiveEvent;
 import com.undercurrency.audiomoth.usbhid.model.AudioMothOperations;
-import com.undercurrency.audiomoth.usbhid.model.DateSettings;
 import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
 import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
 import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.byteToHexString;
 
 /**
@@ -58,16 +63,52 @@ public class USBHidTool extends AbstractUSBHIDService {
 
     private static final String TAG = "USBHidTool";
 
-    private AudioMothOperations lastOp;
+    private CommandCorrelator correlator;
+    private AudioMothClient client;
+    private final AudioMothSessionManager sessionManager = new AudioMothSessionManager();
+    private final IBinder binder = new LocalBinder();
     private Boolean localTime=false;
 
 
     @Override
     public void onCreate() {
         super.onCreate();
+        correlator = new CommandCorrelator(new CommandCorrelator.Transmitter() {
+            @Override
+            public void transmit(byte[] report, int length) {
+                sendData(report, length);
+            }
+        });
+        client = new AudioMothClient(correlator, sessionManager.getAppliedSettings());
         setupNotifications();
     }
 
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * Gives bound components direct access to the AudioMothClient of this service
+     * and to the sessions used to provision several devices at once
+     */
+    public class LocalBinder extends Binder {
+        public AudioMothClient getClient() {
+            return client;
+        }
+
+        public AudioMothSessionManager getSessionManager() {
+            return sessionManager;
+        }
+
+        /**
+         * Opens a fleet session on a device whose USB permission has been granted
+         */
+        public AudioMothSession openSession(UsbDevice device) throws IOException {
+            return sessionManager.open(getUsbManager(), device);
+        }
+    }
+
     @Override
     public void onCommand(Intent intent, String action, int flags, int startId) {
         super.onCommand(intent, action, flags, startId);
@@ -75,6 +116,8 @@ public class USBHidTool extends AbstractUSBHIDService {
 
     @Override
     public void onDestroy() {
+        correlator.shutdown();
+        sessionManager.closeAll();
         super.onDestroy();
     }
 
@@ -83,35 +126,48 @@ public class USBHidTool extends AbstractUSBHIDService {
      * @param event
      */
     public void onEvent(AudioMothConfigEvent event) {
-        lastOp = AudioMothOperations.USB_MSG_TYPE_SET_APP_PACKET;
-        byte[] data = event.getRecordingSettings().serializeToBytes();
-        byte[] payload = new byte[data.length + 1];
-        payload[0] = lastOp.getOpcode();
-        System.arraycopy(data, 0, payload, 1, data.length);
-        Log.d(TAG, lastOp.toString());
-        Log.d(TAG,"Original JSON");
-        Log.d(TAG, ByteJugglingUtils.byteToHexString(payload));
-        sendData(payload);
+        Log.d(TAG, AudioMothOperations.USB_MSG_TYPE_SET_APP_PACKET.toString());
+        client.applySettingsIfChanged(event.getRecordingSettings()).addCallback(new EventCallback<RecordingSettings>() {
+            @Override
+            public void onSuccess(RecordingSettings result) {
+                eventBus.post(new AudioMothConfigReceiveEvent(result));
+            }
+        });
     }
 
     public void onEvent(AudioMothSetDateEvent event) {
-        DateSettings ds = new DateSettings(event.getDate());
-        lastOp = AudioMothOperations.USB_MSG_TYPE_SET_TIME;
-        byte[] data = ds.serializeToBytes();
-        byte[] payload = new byte[data.length + 1];
-        payload[0] = lastOp.getOpcode();
-        System.arraycopy(data, 0, payload, 1, data.length);
-        Log.d(TAG, lastOp.toString());
-        Log.d(TAG, ByteJugglingUtils.byteToHexString(payload));
-        sendData(payload);
+        Log.d(TAG, AudioMothOperations.USB_MSG_TYPE_SET_TIME.toString());
+        final long requestedSeconds = event.getDate().getTime() / 1000L;
+        client.setTime(event.getDate()).addCallback(new EventCallback<Date>() {
+            @Override
+            public void onSuccess(Date result) {
+                /* The clock may tick between the write and the echo */
+                if (result == null || Math.abs(result.getTime() / 1000L - requestedSeconds) > 1) {
+                    Log.w(TAG, "The device echoed " + result + " for a time of " + new Date(requestedSeconds * 1000L));
+                }
+                eventBus.post(new AudioMothSetDateReceiveEvent(result));
+            }
+        });
     }
 
     public void onEvent(AudioMothPacketEvent event) {
-        lastOp = AudioMothOperations.USB_MSG_TYPE_GET_APP_PACKET;
-        byte[] payload = {lastOp.getOpcode()};
-        Log.d(TAG, lastOp.toString());
-        Log.d(TAG, ByteJugglingUtils.byteToHexString(payload));
-        sendData(payload);
+        Log.d(TAG, AudioMothOperations.USB_MSG_TYPE_GET_APP_PACKET.toString());
+        client.getDeviceInfo().addCallback(new EventCallback<DeviceInfo>() {
+            @Override
+            public void onSuccess(DeviceInfo result) {
+                eventBus.post(new AudioMothPacketReceiveEvent(result));
+            }
+        });
+    }
+
+    /**
+     * Posts the replies of the EventBus commands, failures are only logged
+     */
+    private abstract static class EventCallback<T> implements AudioMothFuture.Callback<T> {
+        @Override
+        public void onFailure(Throwable error) {
+            Log.e(TAG, error.getMessage() != null ? error.getMessage() : error.toString());
+        }
     }
 
     @Override
@@ -125,6 +181,11 @@ public class USBHidTool extends AbstractUSBHIDService {
         eventBus.post(new DeviceDetachedEvent());
     }
 
+    @Override
+    public void onUsbDeviceDetached(UsbDevice usbDevice) {
+        sessionManager.close(usbDevice.getDeviceId());
+    }
+
     @Override
     public void onDeviceAttached(UsbDevice device) {
         Log.d(TAG,"onDeviceAttached");
@@ -157,40 +218,18 @@ public class USBHidTool extends AbstractUSBHIDService {
     }
 
     @Override
-    public void onUSBDataReceive(byte[] buffer) {
-        Log.d(TAG, lastOp.toString());
+    public void onUSBDataReceive(byte[] buffer, int length) {
         Log.d(TAG, ByteJugglingUtils.byteToHexString(buffer));
-        switch (lastOp) {
-            case USB_MSG_TYPE_GET_APP_PACKET:
-                Log.d(TAG,"GET_APP_PACKET Received BUFFER");
-                Log.d(TAG,byteToHexString(buffer));
-                eventBus.post(new AudioMothPacketReceiveEvent(new DeviceInfo(buffer,localTime)));
-                break;
-            case USB_MSG_TYPE_SET_TIME:
-                Log.d(TAG,"SET_TIME Received BUFFER");
-                Log.d(TAG,byteToHexString(buffer));
-                byte[] recTime = new byte[64];
-                System.arraycopy(buffer,1,recTime,0,4);
-                eventBus.post(new AudioMothSetDateReceiveEvent(recTime));
-                break;
-            case USB_MSG_TYPE_SET_APP_PACKET:
-                Log.d(TAG,"Received BUFFER");
-                Log.d(TAG,byteToHexString(buffer));
-                byte[] rec = new byte[64];
-                System.arraycopy(buffer,1,rec,0,58);
-
-                eventBus.post(new AudioMothConfigReceiveEvent(new RecordingSettings(rec)));
-                break;
-            default:
-                eventBus.post(new USBDataReceiveEvent(buffer, buffer.length));
+        if (length > 0 && !correlator.onReply(buffer)) {
+            eventBus.post(new USBDataReceiveEvent(Arrays.copyOf(buffer, length), length));
         }
-
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
        if(intent.getExtras()!=null){
-            localTime = (Boolean) intent.getExtras().get("localTime");
+            localTime = intent.getExtras().getBoolean("localTime", false);
+            client.setLocalTime(localTime);
        }
         return super.onStartCommand(intent, flags, startId);
     }
@@ -0,0 +1,133 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.dsp;
+
+import com.undercurrency.audiomoth.usbhid.model.FilterType;
+
+/**
+ * A second order IIR filter, designed as a Butterworth low or high pass, or as a band pass between
+ * two frequencies, like the filters of the AudioMoth firmware.
+ * The filter keeps its state between calls, so a stream can be filtered chunk by chunk.
+ */
+public class BiquadFilter {
+
+    private final double b0;
+    private final double b1;
+    private final double b2;
+    private final double a1;
+    private final double a2;
+    private double x1;
+    private double x2;
+    private double y1;
+    private double y2;
+
+    private BiquadFilter(double b0, double b1, double b2, double a0, double a1, double a2) {
+        this.b0 = b0 / a0;
+        this.b1 = b1 / a0;
+        this.b2 = b2 / a0;
+        this.a1 = a1 / a0;
+        this.a2 = a2 / a0;
+    }
+
+    /**
+     * @param filterType the kind of filter
+     * @param sampleRate the sample rate in Hz
+     * @param lowerFilter the cut-off of a high pass, or the lower edge of a band pass, in Hz
+     * @param higherFilter the cut-off of a low pass, or the upper edge of a band pass, in Hz
+     */
+    public static BiquadFilter design(FilterType filterType, int sampleRate, int lowerFilter, int higherFilter) {
+        switch (filterType) {
+            case LOW:
+                return lowPass(sampleRate, higherFilter);
+            case HIGH:
+                return highPass(sampleRate, lowerFilter);
+            case BAND:
+                return bandPass(sampleRate, lowerFilter, higherFilter);
+        }
+        throw new IllegalArgumentException("Unknown filter type " + filterType);
+    }
+
+    public static BiquadFilter lowPass(int sampleRate, int frequency) {
+        double w = omega(sampleRate, frequency);
+        double alpha = Math.sin(w) / Math.sqrt(2);
+        double cos = Math.cos(w);
+        return new BiquadFilter((1 - cos) / 2, 1 - cos, (1 - cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    public static BiquadFilter highPass(int sampleRate, int frequency) {
+        double w = omega(sampleRate, frequency);
+        double alpha = Math.sin(w) / Math.sqrt(2);
+        double cos = Math.cos(w);
+        return new BiquadFilter((1 + cos) / 2, -(1 + cos), (1 + cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /**
+     * A band pass with unit gain at the geometric centre of the two frequencies
+     */
+    public static BiquadFilter bandPass(int sampleRate, int lowerFrequency, int higherFrequency) {
+        if (lowerFrequency <= 0 || higherFrequency <= lowerFrequency) {
+            throw new IllegalArgumentException("Invalid band " + lowerFrequency + " - " + higherFrequency + " Hz");
+        }
+        double w = omega(sampleRate, (int) Math.round(Math.sqrt((double) lowerFrequency * higherFrequency)));
+        double bandwidth = Math.log((double) higherFrequency / lowerFrequency) / Math.log(2);
+        double sin = Math.sin(w);
+        double alpha = sin * Math.sinh(Math.log(2) / 2 * bandwidth * w / sin);
+        double cos = Math.cos(w);
+        return new BiquadFilter(alpha, 0, -alpha, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    private static double omega(int sampleRate, int frequency) {
+        if (frequency <= 0 || 2 * frequency >= sampleRate) {
+            throw new IllegalArgumentException("Frequency " + frequency + " Hz out of range for " + sampleRate + " Hz");
+        }
+        return 2 * Math.PI * frequency / sampleRate;
+    }
+
+    /**
+     * Filters the samples in place
+     */
+    public void process(float[] samples, int off, int len) {
+        double x1 = this.x1;
+        double x2 = this.x2;
+        double y1 = this.y1;
+        double y2 = this.y2;
+        for (int i = off, end = off + len; i < end; i++) {
+            double x = samples[i];
+            double y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+            x2 = x1;
+            x1 = x;
+            y2 = y1;
+            y1 = y;
+            samples[i] = (float) y;
+        }
+        this.x1 = x1;
+        this.x2 = x2;
+        this.y1 = y1;
+        this.y2 = y2;
+    }
+
+    /**
+     * Clears the state, to filter a new stream
+     */
+    public void reset() {
+        x1 = 0;
+        x2 = 0;
+        y1 = 0;
+        y2 = 0;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.dsp;
+
+import com.undercurrency.audiomoth.usbhid.model.FilterType;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ThresholdPreview runs a reference recording through the filter and amplitude threshold of a
+ * configuration and measures how much of it AudioMoth would write to the SD card.
+ * The audio is split in blocks, a block is written when the filtered amplitude of any of its samples
+ * exceeds the threshold, and dropped otherwise. Without thresholding every block is written.
+ *
+ * Samples are pushed chunk by chunk with process(), or read from a WAV stream by run(). Buffers are
+ * allocated once, so hours of audio go through without garbage.
+ */
+public class ThresholdPreview {
+
+    public static final int DEFAULT_BLOCK_SIZE = 512;
+    /* Full scale of the 16-bit samples the threshold is expressed in */
+    private static final float FULL_SCALE = 32768f;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final BiquadFilter filter;
+    private final float threshold;
+    private final int blockSize;
+    private final float[] chunk = new float[CHUNK_SIZE];
+    private int blockFill;
+    private boolean blockTriggered;
+    private long totalSamples;
+    private long writtenSamples;
+    private long totalBlocks;
+    private long writtenBlocks;
+
+    /**
+     * @param filter the filter applied before the threshold, or null
+     * @param amplitudeThreshold the threshold on the 16-bit sample amplitude, 0 writes everything
+     * @param blockSize the samples in a block, written or dropped as a whole
+     */
+    public ThresholdPreview(BiquadFilter filter, int amplitudeThreshold, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid block size " + blockSize);
+        }
+        this.filter = filter;
+        this.threshold = amplitudeThreshold / FULL_SCALE;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Uses the filter and amplitude threshold of the settings.
+     * The settings are made for the sample rate of the device, the reference audio may have a lower
+     * one. A filter edge at 0 Hz or at the Nyquist frequency of the reference or above does not cut
+     * anything the reference holds, so it is left open: a band pass becomes a low or a high pass,
+     * and a filter without any edge left is not applied.
+     * @param sampleRate the sample rate of the reference audio, in Hz
+     * @throws IllegalArgumentException if the filter stops the whole band of the reference, or
+     * its upper edge is not above its lower one
+     */
+    public static ThresholdPreview forSettings(RecordingSettings rs, int sampleRate) {
+        BiquadFilter filter = rs.isPassFiltersEnabled() && rs.getFilterType() != null
+                ? filterFor(rs.getFilterType(), sampleRate, rs.getLowerFilter(), rs.getHigherFilter())
+                : null;
+        int threshold = rs.isAmplitudeThresholdingEnabled() ? rs.getAmplitudeThreshold() : 0;
+        return new ThresholdPreview(filter, threshold, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @return the filter of the settings with its open edges dropped, null if it passes everything
+     */
+    private static BiquadFilter filterFor(FilterType filterType, int sampleRate, int lowerFilter, int higherFilter) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rate " + sampleRate);
+        }
+        boolean hasLower = filterType != FilterType.LOW && lowerFilter > 0;
+        boolean hasHigher = filterType != FilterType.HIGH && 2 * higherFilter < sampleRate;
+        if ((filterType != FilterType.LOW && 2 * lowerFilter >= sampleRate)
+                || (filterType != FilterType.HIGH && higherFilter <= 0)) {
+            throw new IllegalArgumentException("Filter " + filterType + " " + lowerFilter + " - " + higherFilter
+                    + " Hz stops everything at " + sampleRate + " Hz");
+        }
+        if (filterType == FilterType.BAND && higherFilter <= lowerFilter) {
+            throw new IllegalArgumentException("Invalid band " + lowerFilter + " - " + higherFilter + " Hz");
+        }
+        if (hasLower && hasHigher) {
+            return BiquadFilter.bandPass(sampleRate, lowerFilter, higherFilter);
+        }
+        if (hasLower) {
+            return BiquadFilter.highPass(sampleRate, lowerFilter);
+        }
+        if (hasHigher) {
+            return BiquadFilter.lowPass(sampleRate, higherFilter);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a whole WAV stream through the filter and threshold of the settings
+     * @return the preview, with the fraction written
+     */
+    public static ThresholdPreview run(RecordingSettings rs, InputStream wav) throws IOException {
+        WavReader reader = new WavReader(wav);
+        try {
+            ThresholdPreview preview = forSettings(rs, reader.getSampleRate());
+            preview.run(reader);
+            return preview;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Processes the remaining samples of the reader and finishes the last block
+     */
+    public void run(WavReader reader) throws IOException {
+        int n;
+        while ((n = reader.read(chunk, 0, chunk.length)) > 0) {
+            process(chunk, 0, n);
+        }
+        finish();
+    }
+
+    /**
+     * Processes the next samples of the stream, scaled to -1..1. They are filtered in place.
+     */
+    public void process(float[] samples, int off, int len) {
+        if (filter != null) {
+            filter.process(samples, off, len);
+        }
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            int n = Math.min(blockSize - blockFill, end - i);
+            if (!blockTriggered) {
+                for (int k = i; k < i + n; k++) {
+                    float s = samples[k];
+                    if (s > threshold || -s > threshold) {
+                        blockTriggered = true;
+                        break;
+                    }
+                }
+            }
+            i += n;
+            blockFill += n;
+            if (blockFill == blockSize) {
+                endBlock();
+            }
+        }
+    }
+
+    /**
+     * Ends the block in progress at the end of the stream
+     */
+    public void finish() {
+        if (blockFill > 0) {
+            endBlock();
+        }
+    }
+
+    private void endBlock() {
+        totalSamples += blockFill;
+        totalBlocks++;
+        if (blockTriggered || threshold <= 0) {
+            writtenSamples += blockFill;
+            writtenBlocks++;
+        }
+        blockFill = 0;
+        blockTriggered = false;
+    }
+
+    /**
+     * Clears the counters and the filter state, to preview a new stream
+     */
+    public void reset() {
+        if (filter != null) {
+            filter.reset();
+        }
+        blockFill = 0;
+        blockTriggered = false;
+        totalSamples = 0;
+        writtenSamples = 0;
+        totalBlocks = 0;
+        writtenBlocks = 0;
+    }
+
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public long getWrittenSamples() {
+        return writtenSamples;
+    }
+
+    public long getTotalBlocks() {
+        return totalBlocks;
+    }
+
+    public long getWrittenBlocks() {
+        return writtenBlocks;
+    }
+
+    /**
+     * @return the fraction of the audio that would be written, 1 if nothing was processed
+     */
+    public double getWrittenFraction() {
+        return totalSamples == 0 ? 1 : (double) writtenSamples / totalSamples;
+    }
+
+    /**
+     * Scales an "up to" size, like the ones of LifeSpan, by the fraction written
+     * @param bytes the size if everything was written
+     */
+    public long estimateBytes(long bytes) {
+        return (long) (bytes * getWrittenFraction());
+    }
+
+    @Override
+    public String toString() {
+        return "ThresholdPreview{" +
+                "totalSamples=" + totalSamples +
+                ", writtenSamples=" + writtenSamples +
+                ", writtenFraction=" + getWrittenFraction() +
+                '}';
+    }
+}
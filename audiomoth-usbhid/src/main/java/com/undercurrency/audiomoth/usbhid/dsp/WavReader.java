@@ -0,0 +1,168 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.dsp;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The WavReader streams the samples of a 16-bit PCM WAV file, like the ones AudioMoth writes.
+ * Multi-channel files are reduced to their first channel. The samples are read chunk by chunk into
+ * a caller buffer, through a byte buffer allocated once.
+ */
+public class WavReader implements Closeable {
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    private final DataInputStream in;
+    private int sampleRate;
+    private int channels;
+    private long remainingBytes;
+    private final byte[] bytes;
+
+    public WavReader(InputStream in) throws IOException {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the header, the stream is left at the first sample
+     * @param bufferSize the size in bytes of the read buffer
+     */
+    public WavReader(InputStream in, int bufferSize) throws IOException {
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        if (readTag() != tag("RIFF")) {
+            throw new IOException("Not a RIFF file");
+        }
+        readIntLE();
+        if (readTag() != tag("WAVE")) {
+            throw new IOException("Not a WAVE file");
+        }
+        boolean formatRead = false;
+        while (true) {
+            int chunk = readTag();
+            long size = readIntLE() & 0xFFFFFFFFL;
+            if (chunk == tag("fmt ")) {
+                int format = readShortLE();
+                channels = readShortLE();
+                sampleRate = readIntLE();
+                readIntLE();
+                readShortLE();
+                int bits = readShortLE();
+                if ((format != FORMAT_PCM && format != FORMAT_EXTENSIBLE) || bits != 16 || channels < 1) {
+                    throw new IOException("Only 16-bit PCM is supported, format " + format + " with " + bits + " bits");
+                }
+                skip(size - 16 + (size & 1));
+                formatRead = true;
+            } else if (chunk == tag("data")) {
+                if (!formatRead) {
+                    throw new IOException("Data chunk before the format chunk");
+                }
+                remainingBytes = size - size % (2 * channels);
+                break;
+            } else {
+                skip(size + (size & 1));
+            }
+        }
+        this.bytes = new byte[Math.max(2 * channels, bufferSize - bufferSize % (2 * channels))];
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return the samples of the first channel not read yet
+     */
+    public long getRemainingSamples() {
+        return remainingBytes / (2 * channels);
+    }
+
+    /**
+     * Reads up to len samples of the first channel, scaled to -1..1
+     * @return the number of samples read, or -1 at the end of the data
+     */
+    public int read(float[] samples, int off, int len) throws IOException {
+        int frameSize = 2 * channels;
+        int frames = (int) Math.min(Math.min(len, bytes.length / frameSize), remainingBytes / frameSize);
+        if (frames == 0) {
+            return len == 0 ? 0 : -1;
+        }
+        int count = frames * frameSize;
+        int read = 0;
+        while (read < count) {
+            int n = in.read(bytes, read, count - read);
+            if (n < 0) {
+                /* A file cut short, keep the whole frames */
+                remainingBytes = 0;
+                count = read - read % frameSize;
+                if (count == 0) {
+                    return -1;
+                }
+                break;
+            }
+            read += n;
+        }
+        remainingBytes -= count;
+        frames = count / frameSize;
+        for (int i = 0, b = 0; i < frames; i++, b += frameSize) {
+            samples[off + i] = (short) ((bytes[b] & 0xFF) | (bytes[b + 1] << 8)) / 32768f;
+        }
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int readTag() throws IOException {
+        return in.readInt();
+    }
+
+    private static int tag(String s) {
+        return (s.charAt(0) << 24) | (s.charAt(1) << 16) | (s.charAt(2) << 8) | s.charAt(3);
+    }
+
+    private int readIntLE() throws IOException {
+        return Integer.reverseBytes(in.readInt());
+    }
+
+    private int readShortLE() throws IOException {
+        return Short.reverseBytes(in.readShort()) & 0xFFFF;
+    }
+
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            n -= skipped;
+        }
+    }
+}
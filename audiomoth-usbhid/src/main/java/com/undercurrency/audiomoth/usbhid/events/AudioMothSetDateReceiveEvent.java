@@ -29,6 +29,10 @@ public class AudioMothSetDateReceiveEvent {
         this.date= readDateFromByteArray(buffer,0);
     }
 
+    public AudioMothSetDateReceiveEvent(Date date){
+        this.date = date;
+    }
+
     public Date getDate(){
         return this.date;
     }
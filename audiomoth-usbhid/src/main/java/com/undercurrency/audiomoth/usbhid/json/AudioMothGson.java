@@ -0,0 +1,56 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.FilterType;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.model.TimePeriods;
+
+/**
+ * AudioMothGson registers the streaming TypeAdapters of the model package,
+ * so Gson reads and writes the configurations without reflection.
+ *
+ * <pre>
+ * Gson gson = AudioMothGson.registerTypeAdapters(new GsonBuilder()).setPrettyPrinting().create();
+ * RecordingSettings rs = gson.fromJson(json, RecordingSettings.class);
+ * </pre>
+ */
+public final class AudioMothGson {
+
+    private AudioMothGson() {
+    }
+
+    public static GsonBuilder registerTypeAdapters(GsonBuilder builder) {
+        TimePeriodsTypeAdapter timePeriodsAdapter = new TimePeriodsTypeAdapter();
+        FilterTypeTypeAdapter filterTypeAdapter = new FilterTypeTypeAdapter();
+        return builder.registerTypeAdapter(TimePeriods.class, timePeriodsAdapter)
+                .registerTypeAdapter(FilterType.class, filterTypeAdapter)
+                .registerTypeAdapter(DeviceInfo.class, new DeviceInfoTypeAdapter())
+                .registerTypeAdapter(RecordingSettings.class, new RecordingSettingsTypeAdapter(timePeriodsAdapter, filterTypeAdapter));
+    }
+
+    /**
+     * @return a Gson with the model TypeAdapters registered
+     */
+    public static Gson create() {
+        return registerTypeAdapters(new GsonBuilder()).create();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes a DeviceInfo with the same names as the reflective Gson serialization.
+ * The localTime flag belongs to the connection and is not part of the JSON.
+ */
+public class DeviceInfoTypeAdapter extends TypeAdapter<DeviceInfo> {
+
+    @Override
+    public void write(JsonWriter out, DeviceInfo value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("deviceId").value(value.getDeviceId());
+        out.name("firmwareVersion").value(value.getFirmwareVersion());
+        out.name("battery").value(value.getBattery());
+        out.name("date").value(value.getDate());
+        out.endObject();
+    }
+
+    @Override
+    public DeviceInfo read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        DeviceInfo deviceInfo = new DeviceInfo();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            if ("deviceId".equals(name)) {
+                deviceInfo.setDeviceId(in.nextString());
+            } else if ("firmwareVersion".equals(name)) {
+                deviceInfo.setFirmwareVersion(in.nextString());
+            } else if ("battery".equals(name)) {
+                deviceInfo.setBattery(in.nextString());
+            } else if ("date".equals(name)) {
+                deviceInfo.setDate(in.nextString());
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return deviceInfo;
+    }
+}
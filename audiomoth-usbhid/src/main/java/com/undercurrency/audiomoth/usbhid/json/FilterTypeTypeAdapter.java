@@ -0,0 +1,58 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.undercurrency.audiomoth.usbhid.model.FilterType;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes a FilterType as its value, "low", "band" or "high".
+ * The enum names are accepted too, in any case.
+ */
+public class FilterTypeTypeAdapter extends TypeAdapter<FilterType> {
+
+    @Override
+    public void write(JsonWriter out, FilterType value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(value.getValue());
+    }
+
+    @Override
+    public FilterType read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String value = in.nextString();
+        for (FilterType filterType : FilterType.values()) {
+            if (filterType.getValue().equalsIgnoreCase(value)) {
+                return filterType;
+            }
+        }
+        throw new JsonSyntaxException("Unknown filter type " + value + " at " + in.getPath());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.json;
+
+import com.google.gson.stream.JsonReader;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The RecordingSettingsArrayReader parses a JSON array of configurations one element at a time,
+ * so a bulk import never holds more than one RecordingSettings of the array in memory.
+ *
+ * <pre>
+ * RecordingSettingsArrayReader reader = new RecordingSettingsArrayReader(in);
+ * while (reader.hasNext()) {
+ *     RecordingSettings rs = reader.next();
+ * }
+ * reader.close();
+ * </pre>
+ */
+public class RecordingSettingsArrayReader implements Closeable {
+
+    private final JsonReader in;
+    private final RecordingSettingsTypeAdapter adapter;
+    private boolean started;
+
+    public RecordingSettingsArrayReader(Reader reader) {
+        this(reader, new RecordingSettingsTypeAdapter());
+    }
+
+    public RecordingSettingsArrayReader(Reader reader, RecordingSettingsTypeAdapter adapter) {
+        this.in = new JsonReader(reader);
+        this.adapter = adapter;
+    }
+
+    /**
+     * @return true if the array has more elements
+     */
+    public boolean hasNext() throws IOException {
+        if (!started) {
+            in.beginArray();
+            started = true;
+        }
+        return in.hasNext();
+    }
+
+    /**
+     * @return the next RecordingSettings of the array, null for a null element
+     */
+    public RecordingSettings next() throws IOException {
+        if (!hasNext()) {
+            throw new IllegalStateException("No more elements at " + in.getPath());
+        }
+        return adapter.read(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
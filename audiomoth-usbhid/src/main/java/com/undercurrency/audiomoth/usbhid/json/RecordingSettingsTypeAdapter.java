@@ -0,0 +1,209 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.undercurrency.audiomoth.usbhid.model.PackedTimePeriods;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Reads and writes a RecordingSettings with the same names as the reflective Gson serialization,
+ * so the existing configuration templates keep working.
+ *
+ * The transient fields are rebuilt after reading, the recording dates are enabled when they are
+ * present and the time periods take the localTime flag of the settings.
+ * Dates are written as local dates, "2020-11-29", AudioMoth only uses the day. Reading also accepts
+ * ISO 8601 date times, unix milliseconds and the default format of the reflective Gson serialization.
+ * The DeviceInfo is not part of the JSON, it belongs to the connected device.
+ */
+public class RecordingSettingsTypeAdapter extends TypeAdapter<RecordingSettings> {
+
+    private static final String[] GSON_DATE_PATTERNS = {"MMM d, yyyy h:mm:ss a", "MMM d, yyyy, h:mm:ss a"};
+
+    private final TimePeriodsTypeAdapter timePeriodsAdapter;
+    private final FilterTypeTypeAdapter filterTypeAdapter;
+
+    public RecordingSettingsTypeAdapter() {
+        this(new TimePeriodsTypeAdapter(), new FilterTypeTypeAdapter());
+    }
+
+    public RecordingSettingsTypeAdapter(TimePeriodsTypeAdapter timePeriodsAdapter, FilterTypeTypeAdapter filterTypeAdapter) {
+        this.timePeriodsAdapter = timePeriodsAdapter;
+        this.filterTypeAdapter = filterTypeAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, RecordingSettings value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("timePeriods");
+        out.beginArray();
+        PackedTimePeriods timePeriods = value.getPackedTimePeriods();
+        for (int i = 0; i < timePeriods.size(); i++) {
+            timePeriodsAdapter.write(out, timePeriods.getStartMins(i), timePeriods.getEndMins(i));
+        }
+        out.endArray();
+        out.name("ledEnabled").value(value.isLedEnabled());
+        out.name("lowVoltageCutoffEnabled").value(value.isLowVoltageCutoffEnabled());
+        out.name("batteryLevelCheckEnabled").value(value.isBatteryLevelCheckEnabled());
+        out.name("sampleRate").value(value.getSampleRate());
+        out.name("gain").value(value.getGain());
+        out.name("recordDuration").value(value.getRecordDuration());
+        out.name("sleepDuration").value(value.getSleepDuration());
+        out.name("localTime").value(value.isLocalTime());
+        out.name("firstRecordingDate");
+        writeDate(out, value.getFirstRecordingDate());
+        out.name("lastRecordingDate");
+        writeDate(out, value.getLastRecordingDate());
+        out.name("dutyEnabled").value(value.isDutyEnabled());
+        out.name("passFiltersEnabled").value(value.isPassFiltersEnabled());
+        out.name("filterType");
+        filterTypeAdapter.write(out, value.getFilterType());
+        out.name("lowerFilter").value(value.getLowerFilter());
+        out.name("higherFilter").value(value.getHigherFilter());
+        out.name("amplitudeThresholdingEnabled").value(value.isAmplitudeThresholdingEnabled());
+        out.name("amplitudeThreshold").value(value.getAmplitudeThreshold());
+        out.endObject();
+    }
+
+    @Override
+    public RecordingSettings read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        RecordingSettings rs = new RecordingSettings();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            if ("timePeriods".equals(name)) {
+                readTimePeriods(in, rs.getPackedTimePeriods());
+            } else if ("ledEnabled".equals(name)) {
+                rs.setLedEnabled(in.nextBoolean());
+            } else if ("lowVoltageCutoffEnabled".equals(name)) {
+                rs.setLowVoltageCutoffEnabled(in.nextBoolean());
+            } else if ("batteryLevelCheckEnabled".equals(name)) {
+                rs.setBatteryLevelCheckEnabled(in.nextBoolean());
+            } else if ("sampleRate".equals(name)) {
+                rs.setSampleRate(in.nextInt());
+            } else if ("gain".equals(name)) {
+                rs.setGain((byte) in.nextInt());
+            } else if ("recordDuration".equals(name)) {
+                rs.setRecordDuration(in.nextInt());
+            } else if ("sleepDuration".equals(name)) {
+                rs.setSleepDuration(in.nextInt());
+            } else if ("localTime".equals(name)) {
+                rs.setLocalTime(in.nextBoolean());
+            } else if ("firstRecordingDate".equals(name)) {
+                rs.setFirstRecordingDate(readDate(in));
+            } else if ("lastRecordingDate".equals(name)) {
+                rs.setLastRecordingDate(readDate(in));
+            } else if ("dutyEnabled".equals(name)) {
+                rs.setDutyEnabled(in.nextBoolean());
+            } else if ("passFiltersEnabled".equals(name)) {
+                rs.setPassFiltersEnabled(in.nextBoolean());
+            } else if ("filterType".equals(name)) {
+                rs.setFilterType(filterTypeAdapter.read(in));
+            } else if ("lowerFilter".equals(name)) {
+                rs.setLowerFilter(in.nextInt());
+            } else if ("higherFilter".equals(name)) {
+                rs.setHigherFilter(in.nextInt());
+            } else if ("amplitudeThresholdingEnabled".equals(name)) {
+                rs.setAmplitudeThresholdingEnabled(in.nextBoolean());
+            } else if ("amplitudeThreshold".equals(name)) {
+                rs.setAmplitudeThreshold(in.nextInt());
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        rs.setFirstRecordingEnable(rs.getFirstRecordingDate() != null);
+        rs.setLastRecordingEnable(rs.getLastRecordingDate() != null);
+        rs.getPackedTimePeriods().setLocalTime(rs.isLocalTime());
+        return rs;
+    }
+
+    private void readTimePeriods(JsonReader in, PackedTimePeriods timePeriods) throws IOException {
+        timePeriods.clear();
+        in.beginArray();
+        while (in.hasNext()) {
+            timePeriodsAdapter.read(in, timePeriods);
+        }
+        in.endArray();
+    }
+
+    private static void writeDate(JsonWriter out, Date date) throws IOException {
+        if (date == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(new LocalDate(date.getTime()).toString());
+    }
+
+    private static Date readDate(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NUMBER) {
+            return new Date(in.nextLong());
+        }
+        String value = in.nextString();
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).toDate();
+            }
+            return DateTime.parse(value).toDate();
+        } catch (IllegalArgumentException e) {
+            return readGsonDate(in, value);
+        }
+    }
+
+    /**
+     * Parses the default date format of the reflective Gson serialization, it depends on the platform
+     * that wrote it: older ones have no comma before the time and recent JDKs put a narrow no-break
+     * space before AM/PM
+     */
+    private static Date readGsonDate(JsonReader in, String value) {
+        String normalized = value.replace('\u202f', ' ');
+        for (String pattern : GSON_DATE_PATTERNS) {
+            try {
+                return new SimpleDateFormat(pattern, Locale.US).parse(normalized);
+            } catch (ParseException e) {
+                /* Try the next one */
+            }
+        }
+        throw new JsonSyntaxException("Invalid date " + value + " at " + in.getPath());
+    }
+}
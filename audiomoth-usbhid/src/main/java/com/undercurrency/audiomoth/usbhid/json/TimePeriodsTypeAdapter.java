@@ -0,0 +1,86 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.undercurrency.audiomoth.usbhid.model.PackedTimePeriods;
+import com.undercurrency.audiomoth.usbhid.model.TimePeriods;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes a TimePeriods as {"startMins":360,"endMins":540}.
+ * The localTime flag is not part of the JSON, RecordingSettingsTypeAdapter sets it from the settings.
+ */
+public class TimePeriodsTypeAdapter extends TypeAdapter<TimePeriods> {
+
+    @Override
+    public void write(JsonWriter out, TimePeriods value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        write(out, value.getStartMins(), value.getEndMins());
+    }
+
+    void write(JsonWriter out, int startMins, int endMins) throws IOException {
+        out.beginObject();
+        out.name("startMins").value(startMins);
+        out.name("endMins").value(endMins);
+        out.endObject();
+    }
+
+    @Override
+    public TimePeriods read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        PackedTimePeriods timePeriods = new PackedTimePeriods(1);
+        read(in, timePeriods);
+        return timePeriods.get(0);
+    }
+
+    /**
+     * Reads a period straight into a packed list, a null period is skipped
+     */
+    void read(JsonReader in, PackedTimePeriods timePeriods) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return;
+        }
+        int startMins = 0;
+        int endMins = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("startMins".equals(name)) {
+                startMins = in.nextInt();
+            } else if ("endMins".equals(name)) {
+                endMins = in.nextInt();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        timePeriods.add(startMins, endMins, false);
+    }
+}
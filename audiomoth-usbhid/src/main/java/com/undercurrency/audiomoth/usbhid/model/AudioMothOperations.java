@@ -25,4 +25,20 @@ public enum AudioMothOperations {
     public byte getOpcode(){
         return opcode;
     }
+
+    /**
+     * Finds the operation for an opcode, AudioMoth echoes it in the first byte of every reply
+     * @param opcode the command byte
+     * @return the matching operation or NO_OPERATION if it is unknown
+     */
+    public static AudioMothOperations fromOpcode(byte opcode){
+        for (AudioMothOperations op : VALUES) {
+            if (op.opcode == opcode) {
+                return op;
+            }
+        }
+        return NO_OPERATION;
+    }
+
+    private static final AudioMothOperations[] VALUES = values();
 }
@@ -0,0 +1,136 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.util.Date;
+
+/**
+ * The outcome of a clock synchronization of one AudioMoth.
+ * Offsets are the device clock minus the host clock in milliseconds. AudioMoth only reports whole
+ * seconds, so an offset is known as an interval, given here as its centre and its half width.
+ */
+public class ClockSyncResult {
+
+    private final int probeCount;
+    private final double minRoundTripMillis;
+    private final double medianRoundTripMillis;
+    private final double initialOffsetMillis;
+    private final double initialUncertaintyMillis;
+    private final Date setTime;
+    private final double residualOffsetMillis;
+    private final double residualUncertaintyMillis;
+    private final boolean consistent;
+    private final long measuredAt;
+
+    public ClockSyncResult(long measuredAt, int probeCount, double minRoundTripMillis, double medianRoundTripMillis,
+                           double initialOffsetMillis, double initialUncertaintyMillis, Date setTime,
+                           double residualOffsetMillis, double residualUncertaintyMillis, boolean consistent) {
+        this.measuredAt = measuredAt;
+        this.probeCount = probeCount;
+        this.minRoundTripMillis = minRoundTripMillis;
+        this.medianRoundTripMillis = medianRoundTripMillis;
+        this.initialOffsetMillis = initialOffsetMillis;
+        this.initialUncertaintyMillis = initialUncertaintyMillis;
+        this.setTime = setTime;
+        this.residualOffsetMillis = residualOffsetMillis;
+        this.residualUncertaintyMillis = residualUncertaintyMillis;
+        this.consistent = consistent;
+    }
+
+    /**
+     * @return the host time the residual offset was measured at, unix millis
+     */
+    public long getMeasuredAt() {
+        return measuredAt;
+    }
+
+    /**
+     * @return the number of GET_TIME probes used
+     */
+    public int getProbeCount() {
+        return probeCount;
+    }
+
+    public double getMinRoundTripMillis() {
+        return minRoundTripMillis;
+    }
+
+    public double getMedianRoundTripMillis() {
+        return medianRoundTripMillis;
+    }
+
+    /**
+     * @return the offset of the device before its clock was set
+     */
+    public double getInitialOffsetMillis() {
+        return initialOffsetMillis;
+    }
+
+    public double getInitialUncertaintyMillis() {
+        return initialUncertaintyMillis;
+    }
+
+    /**
+     * @return true if the device clock was set, false if it was only measured
+     */
+    public boolean isClockSet() {
+        return setTime != null;
+    }
+
+    /**
+     * @return the second the device clock was set to, it was sent to arrive at that host time,
+     * or null if the clock was only measured
+     */
+    public Date getSetTime() {
+        return setTime;
+    }
+
+    /**
+     * @return the offset of the device after its clock was set, or the measured offset if it was not set
+     */
+    public double getResidualOffsetMillis() {
+        return residualOffsetMillis;
+    }
+
+    public double getResidualUncertaintyMillis() {
+        return residualUncertaintyMillis;
+    }
+
+    /**
+     * @return false if the probes after the set did not agree on an offset, the device clock
+     * probably moved while it was measured
+     */
+    public boolean isConsistent() {
+        return consistent;
+    }
+
+    @Override
+    public String toString() {
+        return "ClockSyncResult{" +
+                "measuredAt=" + measuredAt +
+                ", probeCount=" + probeCount +
+                ", minRoundTripMillis=" + minRoundTripMillis +
+                ", medianRoundTripMillis=" + medianRoundTripMillis +
+                ", initialOffsetMillis=" + initialOffsetMillis +
+                ", setTime=" + setTime +
+                ", residualOffsetMillis=" + residualOffsetMillis +
+                " +/- " + residualUncertaintyMillis +
+                ", consistent=" + consistent +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ConfigDiff lists the fields of two configuration packets that differ.
+ * Fields are compared byte by byte in the layout of a codec, the leading timestamp is ignored
+ * because it changes on every serialization.
+ */
+public class ConfigDiff {
+
+    private final List<ConfigField> changedFields;
+
+    private ConfigDiff(List<ConfigField> changedFields) {
+        this.changedFields = changedFields;
+    }
+
+    /**
+     * Compares two packets of the same layout
+     * @param desired the packet we want on the device
+     * @param current the packet the device holds, usually the echo of the last SET_APP_PACKET
+     * @param codec the layout of both packets
+     */
+    public static ConfigDiff compare(byte[] desired, int desiredOffset, byte[] current, int currentOffset, ConfigPacketCodec codec) {
+        List<ConfigField> changed = null;
+        for (ConfigField field : codec.getFields()) {
+            if (field == ConfigField.TIME) {
+                continue;
+            }
+            int start = field.getOffset();
+            for (int i = start; i < field.getEnd(); i++) {
+                if (desired[desiredOffset + i] != current[currentOffset + i]) {
+                    if (changed == null) {
+                        changed = new ArrayList<ConfigField>();
+                    }
+                    changed.add(field);
+                    break;
+                }
+            }
+        }
+        return new ConfigDiff(changed == null ? Collections.<ConfigField>emptyList() : Collections.unmodifiableList(changed));
+    }
+
+    /**
+     * Compares the settings, encoded for the firmware of their DeviceInfo, with a packet read back from the device
+     */
+    public static ConfigDiff compare(RecordingSettings desired, RecordingSettingsView current) {
+        ConfigPacketCodec codec = ConfigPacketCodec.forSettings(desired);
+        byte[] packet = new byte[RecordingSettings.PACKET_SIZE];
+        codec.encode(desired, packet, 0);
+        return compare(packet, 0, current.getBuffer(), current.getOffset(), codec);
+    }
+
+    /**
+     * @return true if both packets hold the same configuration
+     */
+    public boolean isEmpty() {
+        return changedFields.isEmpty();
+    }
+
+    /**
+     * @return the fields that differ, in packet order
+     */
+    public List<ConfigField> getChangedFields() {
+        return changedFields;
+    }
+
+    public boolean hasChanged(ConfigField field) {
+        return changedFields.contains(field);
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigDiff{" +
+                "changedFields=" + changedFields +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+/**
+ * The ConfigField enum describes the layout of the AudioMoth configuration packet,
+ * the configSettings_t struct of the firmware, offsets are relative to the start of the packet.
+ * @see <a href="https://github.com/OpenAcousticDevices/AudioMoth-Firmware-Basic/blob/1.4.4/main.c"></a>
+ */
+public enum ConfigField {
+    TIME(0, 4),
+    GAIN(4, 1),
+    CLOCK_DIVIDER(5, 1),
+    ACQUISITION_CYCLES(6, 1),
+    OVERSAMPLE_RATE(7, 1),
+    SAMPLE_RATE(8, 4),
+    SAMPLE_RATE_DIVIDER(12, 1),
+    SLEEP_DURATION(13, 2),
+    RECORD_DURATION(15, 2),
+    ENABLE_LED(17, 1),
+    ACTIVE_START_STOP_PERIODS(18, 1),
+    START_STOP_PERIODS(19, 20),
+    TIMEZONE_HOURS(39, 1),
+    ENABLE_LOW_VOLTAGE_CUTOFF(40, 1),
+    DISABLE_BATTERY_LEVEL_DISPLAY(41, 1),
+    TIMEZONE_MINUTES(42, 1),
+    DISABLE_SLEEP_RECORD_CYCLE(43, 1),
+    EARLIEST_RECORDING_TIME(44, 4),
+    LATEST_RECORDING_TIME(48, 4),
+    LOWER_FILTER_FREQ(52, 2),
+    HIGHER_FILTER_FREQ(54, 2),
+    AMPLITUDE_THRESHOLD(56, 2)
+    ;
+
+    private final int offset;
+    private final int length;
+
+    ConfigField(int offset, int length) {
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the offset of the first byte after this field
+     */
+    public int getEnd() {
+        return offset + length;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+/**
+ * The ConfigFingerprint is a stable 64 bit FNV-1a hash of a configuration packet.
+ * The canonical packet is the RecordingSettings.PACKET_SIZE bytes of the latest layout without
+ * the leading timestamp, bytes past the layout of an older firmware count as zero, so the
+ * settings and the packet echoed by the device get the same fingerprint.
+ */
+public final class ConfigFingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ConfigFingerprint() {
+    }
+
+    /**
+     * @param packet holds the packet
+     * @param offset index of the first byte of the packet
+     * @param length number of bytes of the packet, the ones after it are hashed as zero
+     * @return the fingerprint
+     */
+    public static long compute(byte[] packet, int offset, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        int available = Math.min(length, RecordingSettings.PACKET_SIZE);
+        for (int i = ConfigField.TIME.getEnd(); i < RecordingSettings.PACKET_SIZE; i++) {
+            int b = i < available ? packet[offset + i] & 0xFF : 0;
+            hash ^= b;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the fingerprint as 16 hexadecimal digits
+     */
+    public static String toHexString(long fingerprint) {
+        String hex = Long.toHexString(fingerprint).toUpperCase();
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ConfigPacketCodec encodes and decodes the configuration packet for one firmware layout.
+ * There is one codec per PacketLength, built once with the fields that layout holds, and
+ * forFirmware() picks it from the version reported in DeviceInfo, so devices with different
+ * firmware can be configured in the same pass, each one receiving only the bytes it expects.
+ *
+ * Fields missing from an older layout decode as zero, which is the firmware default for all of them.
+ * Firmware older than 1.4.0 also runs the ADC from a slower clock, its codecs write the sample rate
+ * fields from the Configurations.OLD_SAMPLE_RATE_ entries.
+ */
+public class ConfigPacketCodec {
+
+    private static final Map<PacketLength, ConfigPacketCodec> REGISTRY = new EnumMap<PacketLength, ConfigPacketCodec>(PacketLength.class);
+
+    static {
+        for (PacketLength layout : PacketLength.values()) {
+            REGISTRY.put(layout, new ConfigPacketCodec(layout));
+        }
+    }
+
+    private final PacketLength layout;
+    private final int packetLength;
+    private final List<ConfigField> fields;
+    private final boolean oldSampleRates;
+
+    private ConfigPacketCodec(PacketLength layout) {
+        this.layout = layout;
+        this.packetLength = layout.getPacketLength();
+        this.oldSampleRates = PacketLength.compareVersions(layout.getFirmwareVersion(),
+                PacketLength.ONE_FOUR.getFirmwareVersion()) < 0;
+        List<ConfigField> supported = new ArrayList<ConfigField>();
+        for (ConfigField field : ConfigField.values()) {
+            if (field.getEnd() <= packetLength) {
+                supported.add(field);
+            }
+        }
+        this.fields = Collections.unmodifiableList(supported);
+    }
+
+    public static ConfigPacketCodec forLayout(PacketLength layout) {
+        return REGISTRY.get(layout);
+    }
+
+    /**
+     * @param firmwareVersion the version reported by the device, null for the latest layout
+     * @return the codec of the layout used by that firmware
+     */
+    public static ConfigPacketCodec forFirmware(String firmwareVersion) {
+        return REGISTRY.get(PacketLength.forFirmware(firmwareVersion));
+    }
+
+    /**
+     * @return the codec for the device the settings are meant for, the latest one if it is unknown
+     */
+    public static ConfigPacketCodec forSettings(RecordingSettings rs) {
+        DeviceInfo deviceInfo = rs.getDeviceInfo();
+        return forFirmware(deviceInfo == null ? null : deviceInfo.getFirmwareVersion());
+    }
+
+    public PacketLength getLayout() {
+        return layout;
+    }
+
+    public int getPacketLength() {
+        return packetLength;
+    }
+
+    /**
+     * @return the fields held by this layout, in packet order
+     */
+    public List<ConfigField> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return true if the sample rate fields are written from the table of the firmware older than 1.4.0
+     */
+    public boolean usesOldSampleRates() {
+        return oldSampleRates;
+    }
+
+    public boolean supports(ConfigField field) {
+        return field.getEnd() <= packetLength;
+    }
+
+    /**
+     * Writes the packet for this layout
+     * @param dst the destination, it must have RecordingSettings.PACKET_SIZE bytes available from offset,
+     *            the bytes past getPacketLength() are scratch space and are not part of the packet
+     * @param offset index of the first byte of the packet
+     * @return the number of bytes that belong to the packet
+     */
+    public int encode(RecordingSettings rs, byte[] dst, int offset) {
+        rs.serializeTo(dst, offset, oldSampleRates);
+        return packetLength;
+    }
+
+    /**
+     * Decodes a packet of this layout
+     * @param src holds the packet, only getPacketLength() bytes are read
+     * @param offset index of the first byte of the packet
+     */
+    public RecordingSettings decode(byte[] src, int offset) {
+        return decodeView(src, offset).toRecordingSettings();
+    }
+
+    /**
+     * @return a view over a zero padded copy of the packet, safe to keep after src is reused
+     */
+    public RecordingSettingsView decodeView(byte[] src, int offset) {
+        byte[] packet = new byte[RecordingSettings.PACKET_SIZE];
+        System.arraycopy(src, offset, packet, 0, packetLength);
+        return new RecordingSettingsView(packet, 0);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ConfigurationOptimizer finds the recording configurations that fit a deployment: a battery
+ * capacity, an SD card and a number of days, recording during the required coverage windows.
+ *
+ * The result is the Pareto front over the sample rate and the seconds recorded each day, at most
+ * one Solution per sample rate, from the highest rate down. Every Solution records more each day
+ * than any Solution with a higher sample rate.
+ *
+ * For every sample rate and cycle length the energy and the bytes of a day grow with the record
+ * duration, so the longest record duration within the budget is found by a binary search over
+ * LifeSpanEngine evaluations. A sample rate is skipped without a search when even the shortest
+ * recording does not fit, and the search stops once a higher sample rate already records the whole
+ * coverage.
+ *
+ * The budget is checked against the exact daily energy, not the rounded figure LifeSpan shows,
+ * so a Solution never goes over the battery by up to a rounding step.
+ */
+public class ConfigurationOptimizer {
+
+    /* Cycle lengths tried by default, in seconds */
+    private static final int[] DEFAULT_CYCLE_LENGTHS = {60, 120, 300, 600, 900, 1200, 1800, 3600};
+
+    private final float batteryCapacity;
+    private final long cardCapacity;
+    private final int deploymentDays;
+    private final PackedTimePeriods coverage;
+    private final long coverageSeconds;
+    private int[] cycleLengths = DEFAULT_CYCLE_LENGTHS;
+    private Configurations[] sampleRates = LifeSpanSweep.allSampleRates();
+
+    /**
+     * @param batteryCapacity the battery capacity in mAh
+     * @param cardCapacity the SD card size in bytes
+     * @param deploymentDays the days the device has to record
+     * @param coverage the periods of the day that must be recorded, overlapping periods are merged
+     */
+    public ConfigurationOptimizer(float batteryCapacity, long cardCapacity, int deploymentDays, List<? extends TimePeriods> coverage) {
+        if (batteryCapacity <= 0 || cardCapacity <= 0 || deploymentDays <= 0) {
+            throw new IllegalArgumentException("Battery, card and deployment length must be positive");
+        }
+        this.batteryCapacity = batteryCapacity;
+        this.cardCapacity = cardCapacity;
+        this.deploymentDays = deploymentDays;
+        ScheduleBitmap schedule = ScheduleBitmap.of(coverage);
+        if (schedule.isEmpty()) {
+            throw new IllegalArgumentException("The coverage has no recording period");
+        }
+        this.coverage = schedule.toPeriods();
+        if (this.coverage.size() > RecordingSettings.MAX_PERIODS) {
+            throw new IllegalArgumentException("The coverage needs " + this.coverage.size()
+                    + " periods, AudioMoth holds " + RecordingSettings.MAX_PERIODS);
+        }
+        this.coverageSeconds = schedule.getCoveredMinutes() * 60L;
+    }
+
+    public int[] getCycleLengths() {
+        return cycleLengths.clone();
+    }
+
+    /**
+     * @param cycleLengths the record plus sleep durations to try, in seconds
+     */
+    public void setCycleLengths(int[] cycleLengths) {
+        for (int cycleLength : cycleLengths) {
+            if (cycleLength <= 0) {
+                throw new IllegalArgumentException("Invalid cycle length: " + cycleLength);
+            }
+        }
+        this.cycleLengths = cycleLengths.clone();
+    }
+
+    public Configurations[] getSampleRates() {
+        return sampleRates.clone();
+    }
+
+    /**
+     * @param sampleRates the sample rate configurations to try
+     */
+    public void setSampleRates(Configurations[] sampleRates) {
+        this.sampleRates = sampleRates.clone();
+    }
+
+    /**
+     * The energy a day may use to last the deployment, in mAh
+     */
+    public float getDailyEnergyBudget() {
+        return batteryCapacity / deploymentDays;
+    }
+
+    /**
+     * The bytes a day may write to last the deployment
+     */
+    public long getDailyStorageBudget() {
+        return cardCapacity / deploymentDays;
+    }
+
+    /**
+     * @return the Pareto optimal solutions, from the highest sample rate down, empty if nothing fits
+     */
+    public List<Solution> optimize() {
+        Configurations[] rates = sampleRates.clone();
+        sortByRateDescending(rates);
+        float energyBudget = getDailyEnergyBudget();
+        long storageBudget = getDailyStorageBudget();
+        LifeSpanEngine.Result result = new LifeSpanEngine.Result();
+        List<Solution> solutions = new ArrayList<Solution>();
+        long bestSeconds = 0;
+        for (Configurations config : rates) {
+            if (bestSeconds >= coverageSeconds) {
+                break;
+            }
+            Solution best = null;
+            for (int cycleLength : cycleLengths) {
+                /* Shortest recording first, if it does not fit no longer one will */
+                if (!fits(config, 1, cycleLength - 1, energyBudget, storageBudget, result)) {
+                    continue;
+                }
+                int low = 1;
+                int high = cycleLength;
+                while (low < high) {
+                    int middle = (low + high + 1) >>> 1;
+                    if (fits(config, middle, cycleLength - middle, energyBudget, storageBudget, result)) {
+                        low = middle;
+                    } else {
+                        high = middle - 1;
+                    }
+                }
+                LifeSpanEngine.evaluate(config, low, cycleLength - low, true, false, coverage, result);
+                if (best == null || isBetter(result, best)) {
+                    best = new Solution(config, low, cycleLength - low, result, coverage.toList());
+                }
+            }
+            if (best != null && best.recordedSeconds > bestSeconds) {
+                solutions.add(best);
+                bestSeconds = best.recordedSeconds;
+            }
+        }
+        return solutions;
+    }
+
+    private boolean fits(Configurations config, int recordDuration, int sleepDuration, float energyBudget, long storageBudget,
+                         LifeSpanEngine.Result result) {
+        LifeSpanEngine.evaluate(config, recordDuration, sleepDuration, true, false, coverage, result);
+        return result.getExactEnergyUsed() <= energyBudget && result.getTotalSize() <= storageBudget && !result.isSizeWarning();
+    }
+
+    /**
+     * More seconds recorded, or as many for less energy
+     */
+    private static boolean isBetter(LifeSpanEngine.Result result, Solution best) {
+        if (result.getTotalRecLength() != best.recordedSeconds) {
+            return result.getTotalRecLength() > best.recordedSeconds;
+        }
+        return result.getExactEnergyUsed() < best.energyUsed;
+    }
+
+    private static void sortByRateDescending(Configurations[] rates) {
+        for (int i = 1; i < rates.length; i++) {
+            Configurations config = rates[i];
+            int j = i - 1;
+            while (j >= 0 && getTrueRate(rates[j]) < getTrueRate(config)) {
+                rates[j + 1] = rates[j];
+                j--;
+            }
+            rates[j + 1] = config;
+        }
+    }
+
+    /**
+     * The sample rate in Hz, getTrueSampleRate() overflows a byte above 127 kHz
+     */
+    static int getTrueRate(Configurations config) {
+        return config.getSampleRate() / config.getSampleRateDivider();
+    }
+
+    /**
+     * A configuration within the budget and its daily figures
+     */
+    public static class Solution {
+        private final Configurations configuration;
+        private final int recordDuration;
+        private final int sleepDuration;
+        private final long recordedSeconds;
+        private final long totalRecCount;
+        private final float energyUsed;
+        private final long dailyBytes;
+        private final long fileSizeBytes;
+        private final List<TimePeriods> timePeriods;
+
+        Solution(Configurations configuration, int recordDuration, int sleepDuration, LifeSpanEngine.Result result,
+                 List<TimePeriods> timePeriods) {
+            this.configuration = configuration;
+            this.recordDuration = recordDuration;
+            this.sleepDuration = sleepDuration;
+            this.recordedSeconds = result.getTotalRecLength();
+            this.totalRecCount = result.getTotalRecCount();
+            this.energyUsed = result.getExactEnergyUsed();
+            this.dailyBytes = result.getTotalSize();
+            this.fileSizeBytes = result.getFileSizeBytes();
+            this.timePeriods = timePeriods;
+        }
+
+        public Configurations getConfiguration() {
+            return configuration;
+        }
+
+        /**
+         * @return the sample rate in Hz
+         */
+        public int getSampleRate() {
+            return getTrueRate(configuration);
+        }
+
+        public int getRecordDuration() {
+            return recordDuration;
+        }
+
+        public int getSleepDuration() {
+            return sleepDuration;
+        }
+
+        /**
+         * @return the seconds recorded each day
+         */
+        public long getRecordedSeconds() {
+            return recordedSeconds;
+        }
+
+        public long getTotalRecCount() {
+            return totalRecCount;
+        }
+
+        /**
+         * @return the energy used in a day in mAh, without the rounding LifeSpan applies for display
+         */
+        public float getEnergyUsed() {
+            return energyUsed;
+        }
+
+        /**
+         * @return the bytes written to the SD card in a day
+         */
+        public long getDailyBytes() {
+            return dailyBytes;
+        }
+
+        public long getFileSizeBytes() {
+            return fileSizeBytes;
+        }
+
+        /**
+         * @return new settings with the sample rate, the duty cycle and the coverage periods of the solution
+         */
+        public RecordingSettings toRecordingSettings() {
+            RecordingSettings rs = new RecordingSettings();
+            rs.setSampleRate(getSampleRate());
+            rs.setRecordDuration(recordDuration);
+            rs.setSleepDuration(sleepDuration);
+            rs.setDutyEnabled(true);
+            rs.setTimePeriods(timePeriods);
+            return rs;
+        }
+
+        @Override
+        public String toString() {
+            return "Solution{" +
+                    "sampleRate=" + getSampleRate() +
+                    ", recordDuration=" + recordDuration +
+                    ", sleepDuration=" + sleepDuration +
+                    ", recordedSeconds=" + recordedSeconds +
+                    ", energyUsed=" + energyUsed +
+                    ", dailyBytes=" + dailyBytes +
+                    '}';
+        }
+    }
+}
@@ -2,11 +2,17 @@ package com.undercurrency.audiomoth.usbhid.model;
 
 import java.util.Date;
 import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.writeDateToByteArray;
+import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.writeDateToLittleEndian;
 /**
  * The DateSettings class represents a value holder
  */
 public class DateSettings {
 
+    /**
+     * Size in bytes of a serialized date, a 32 bit unix timestamp
+     */
+    public static final int PACKET_SIZE = 4;
+
     private Date date;
 
     public DateSettings(byte[] buffer){
@@ -25,4 +31,15 @@ public class DateSettings {
         return writeDateToByteArray(getDate());
 
     }
+
+    /**
+     * Writes the date into a caller supplied buffer
+     * @param dst the destination, it must have PACKET_SIZE bytes available from offset
+     * @param offset index of the first byte
+     * @return the number of bytes written, always PACKET_SIZE
+     */
+    public int serializeTo(byte[] dst, int offset){
+        writeDateToLittleEndian(dst, offset, getDate());
+        return PACKET_SIZE;
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+/**
+ * The day by day forecast of a deployment computed by the DeploymentSimulator.
+ * Day i is the local date getDate(i) in the timezone of the simulation, starting at its local
+ * midnight getDayStart(i), the figures are cumulative up to its end. A day across a daylight
+ * saving change lasts 23 or 25 hours.
+ */
+public class DeploymentForecast {
+
+    private final DateTimeZone zone;
+    private final LocalDate firstDay;
+    private final float batteryCapacity;
+    private final long cardCapacity;
+    private final double[] cumulativeEnergy;
+    private final long[] cumulativeBytes;
+    private final long[] recCount;
+    private int depletionDay = -1;
+    private int cardFullDay = -1;
+
+    DeploymentForecast(DateTimeZone zone, LocalDate firstDay, int days, float batteryCapacity, long cardCapacity) {
+        this.zone = zone;
+        this.firstDay = firstDay;
+        this.batteryCapacity = batteryCapacity;
+        this.cardCapacity = cardCapacity;
+        this.cumulativeEnergy = new double[days];
+        this.cumulativeBytes = new long[days];
+        this.recCount = new long[days];
+    }
+
+    void set(int day, double energy, long bytes, long count) {
+        cumulativeEnergy[day] = energy;
+        cumulativeBytes[day] = bytes;
+        recCount[day] = count;
+        if (depletionDay < 0 && energy > batteryCapacity) {
+            depletionDay = day;
+        }
+        if (cardFullDay < 0 && bytes > cardCapacity) {
+            cardFullDay = day;
+        }
+    }
+
+    public int getDayCount() {
+        return cumulativeEnergy.length;
+    }
+
+    /**
+     * @return the instant day starts, local midnight in the timezone, in milliseconds
+     */
+    public long getDayStart(int day) {
+        return getDate(day).toDateTimeAtStartOfDay(zone).getMillis();
+    }
+
+    /**
+     * @return the date of the day in the timezone
+     */
+    public LocalDate getDate(int day) {
+        return firstDay.plusDays(day);
+    }
+
+    /**
+     * @return the energy used from the start of the deployment to the end of day, in mAh
+     */
+    public double getCumulativeEnergy(int day) {
+        return cumulativeEnergy[day];
+    }
+
+    /**
+     * @return the bytes written from the start of the deployment to the end of day
+     */
+    public long getCumulativeBytes(int day) {
+        return cumulativeBytes[day];
+    }
+
+    public double getEnergyUsed(int day) {
+        return day == 0 ? cumulativeEnergy[0] : cumulativeEnergy[day] - cumulativeEnergy[day - 1];
+    }
+
+    public long getBytes(int day) {
+        return day == 0 ? cumulativeBytes[0] : cumulativeBytes[day] - cumulativeBytes[day - 1];
+    }
+
+    public long getTotalRecCount(int day) {
+        return recCount[day];
+    }
+
+    public double getTotalEnergy() {
+        return cumulativeEnergy.length == 0 ? 0 : cumulativeEnergy[cumulativeEnergy.length - 1];
+    }
+
+    public long getTotalBytes() {
+        return cumulativeBytes.length == 0 ? 0 : cumulativeBytes[cumulativeBytes.length - 1];
+    }
+
+    /**
+     * @return the first day the battery capacity is exceeded, or -1 if it lasts the deployment
+     */
+    public int getDepletionDay() {
+        return depletionDay;
+    }
+
+    /**
+     * @return the first day the card capacity is exceeded, or -1 if it holds the deployment
+     */
+    public int getCardFullDay() {
+        return cardFullDay;
+    }
+
+    /**
+     * @return the start of the day the battery runs out, or null if it lasts the deployment
+     */
+    public DateTime getDepletionDate() {
+        return depletionDay < 0 ? null : getDate(depletionDay).toDateTimeAtStartOfDay(zone);
+    }
+
+    /**
+     * @return the start of the day the SD card fills up, or null if it holds the deployment
+     */
+    public DateTime getCardFullDate() {
+        return cardFullDay < 0 ? null : getDate(cardFullDay).toDateTimeAtStartOfDay(zone);
+    }
+
+    @Override
+    public String toString() {
+        return "DeploymentForecast{" +
+                "days=" + getDayCount() +
+                ", totalEnergy=" + getTotalEnergy() +
+                ", totalBytes=" + getTotalBytes() +
+                ", depletionDate=" + getDepletionDate() +
+                ", cardFullDate=" + getCardFullDate() +
+                '}';
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+/**
+ * DeploymentSimulator walks a deployment day by day and forecasts the energy drawn from the battery
+ * and the bytes written to the SD card, with the dates the battery runs out and the card fills up.
+ *
+ * AudioMoth repeats its recording periods every UTC day, the timezone of a local time configuration
+ * only names the files, so every whole day of the deployment costs the same and is computed once.
+ * Only the days cut by the first and last recording dates, or by a local midnight, are evaluated on
+ * their own. Those dates start and end at local midnight in the given timezone, with the offset in
+ * force on each date, so a deployment that crosses a daylight saving change gains or loses the hour
+ * on the right side.
+ *
+ * The recording periods are merged first, the way they are written to the device, and a period cut
+ * by the first or last recording date starts its duty cycle at the cut.
+ *
+ * The forecast is given by local day in the timezone, the figures of a local day are the ones
+ * accumulated up to its end, with the UTC day holding that local midnight evaluated up to it.
+ */
+public class DeploymentSimulator {
+
+    private static final long MILLIS_PER_DAY = DateTimeConstants.MILLIS_PER_DAY;
+    private static final long MILLIS_PER_MINUTE = DateTimeConstants.MILLIS_PER_MINUTE;
+
+    private final Configurations config;
+    private final int recordDuration;
+    private final int sleepDuration;
+    private final boolean dutyEnabled;
+    private final boolean amplitudeThresholdingEnabled;
+    private final PackedTimePeriods schedule;
+    private final DateTimeZone zone;
+    private final LocalDate firstRecordingDate;
+    private final LocalDate lastRecordingDate;
+    private float batteryCapacity = Float.MAX_VALUE;
+    private long cardCapacity = Long.MAX_VALUE;
+
+    /* A whole day, evaluated on first use */
+    private LifeSpanEngine.Result fullDay;
+    private final LifeSpanEngine.Result partialDay = new LifeSpanEngine.Result();
+    private final PackedTimePeriods clipped = new PackedTimePeriods(2 * RecordingSettings.MAX_PERIODS);
+
+    /**
+     * Uses the default timezone, like RecordingSettings does for the first and last recording dates
+     */
+    public DeploymentSimulator(RecordingSettings rs) {
+        this(rs, DateTimeZone.getDefault());
+    }
+
+    /**
+     * @param rs the settings, their first and last recording dates bound the deployment if enabled
+     * @param zone the timezone the first and last recording dates are local to
+     */
+    public DeploymentSimulator(RecordingSettings rs, DateTimeZone zone) {
+        this.config = Configurations.getConfig(rs.getSampleRate() / 1000, false);
+        this.recordDuration = rs.getRecordDuration();
+        this.sleepDuration = rs.getSleepDuration();
+        this.dutyEnabled = rs.isDutyEnabled();
+        this.amplitudeThresholdingEnabled = rs.isAmplitudeThresholdingEnabled();
+        this.schedule = ScheduleBitmap.of(rs.getPackedTimePeriods()).toPeriods();
+        this.zone = zone;
+        this.firstRecordingDate = rs.isFirstRecordingEnable() && rs.getFirstRecordingDate() != null
+                ? new LocalDate(rs.getFirstRecordingDate().getTime(), zone) : null;
+        this.lastRecordingDate = rs.isLastRecordingEnable() && rs.getLastRecordingDate() != null
+                ? new LocalDate(rs.getLastRecordingDate().getTime(), zone) : null;
+    }
+
+    public float getBatteryCapacity() {
+        return batteryCapacity;
+    }
+
+    /**
+     * @param batteryCapacity the battery capacity in mAh, used for the depletion date
+     */
+    public void setBatteryCapacity(float batteryCapacity) {
+        this.batteryCapacity = batteryCapacity;
+    }
+
+    public long getCardCapacity() {
+        return cardCapacity;
+    }
+
+    /**
+     * @param cardCapacity the SD card size in bytes, used for the card full date
+     */
+    public void setCardCapacity(long cardCapacity) {
+        this.cardCapacity = cardCapacity;
+    }
+
+    /**
+     * Simulates from the first to the last recording date of the settings
+     * @throws IllegalStateException if the settings do not enable both dates
+     */
+    public DeploymentForecast simulate() {
+        if (firstRecordingDate == null || lastRecordingDate == null) {
+            throw new IllegalStateException("The settings have no first and last recording dates");
+        }
+        return simulate(firstRecordingDate, lastRecordingDate);
+    }
+
+    /**
+     * Simulates a deployment from the start of the first day to the end of the last day, local to
+     * the timezone. The device records only within the first and last recording dates of the settings,
+     * if enabled, and sleeps the rest of the time.
+     * @param from the day the device is deployed
+     * @param to the last day of the deployment, inclusive
+     */
+    public DeploymentForecast simulate(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The deployment ends before it starts: " + from + " - " + to);
+        }
+        long deployStart = startOfDay(from);
+        long deployEnd = startOfDay(to.plusDays(1));
+        long recordStart = firstRecordingDate == null ? deployStart : Math.max(deployStart, startOfDay(firstRecordingDate));
+        long recordEnd = lastRecordingDate == null ? deployEnd : Math.min(deployEnd, startOfDay(lastRecordingDate.plusDays(1)));
+
+        int days = Days.daysBetween(from, to).getDays() + 1;
+        DeploymentForecast forecast = new DeploymentForecast(zone, from, days, batteryCapacity, cardCapacity);
+        /* The device repeats its schedule on UTC days, the totals are kept for the whole UTC days walked */
+        long utcDay = floorDiv(deployStart, MILLIS_PER_DAY) * MILLIS_PER_DAY;
+        double energy = 0;
+        long bytes = 0;
+        long count = 0;
+        long previousCount = 0;
+        for (int day = 0; day < days; day++) {
+            long dayEnd = startOfDay(from.plusDays(day + 1));
+            while (utcDay + MILLIS_PER_DAY <= dayEnd) {
+                LifeSpanEngine.Result result = evaluateDay(utcDay, deployStart, utcDay + MILLIS_PER_DAY, recordStart, recordEnd);
+                energy += energy(result, utcDay, deployStart, utcDay + MILLIS_PER_DAY);
+                bytes += result.getTotalSize();
+                count += result.getTotalRecCount();
+                utcDay += MILLIS_PER_DAY;
+            }
+            double dayEnergy = energy;
+            long dayBytes = bytes;
+            long dayCount = count;
+            if (utcDay < dayEnd) {
+                LifeSpanEngine.Result result = evaluateDay(utcDay, deployStart, dayEnd, recordStart, recordEnd);
+                dayEnergy += energy(result, utcDay, deployStart, dayEnd);
+                dayBytes += result.getTotalSize();
+                dayCount += result.getTotalRecCount();
+            }
+            forecast.set(day, dayEnergy, dayBytes, dayCount - previousCount);
+            previousCount = dayCount;
+        }
+        return forecast;
+    }
+
+    /**
+     * The figures of the UTC day starting at dayStart while the device is on, from onStart to onEnd,
+     * recording only between recordStart and recordEnd
+     */
+    private LifeSpanEngine.Result evaluateDay(long dayStart, long onStart, long onEnd, long recordStart, long recordEnd) {
+        recordStart = Math.max(recordStart, onStart);
+        recordEnd = Math.min(recordEnd, onEnd);
+        int fromMins = (int) clamp(floorDiv(recordStart - dayStart, MILLIS_PER_MINUTE), 0, ScheduleBitmap.MINUTES_IN_DAY);
+        int toMins = (int) clamp(floorDiv(recordEnd - dayStart + MILLIS_PER_MINUTE - 1, MILLIS_PER_MINUTE), 0, ScheduleBitmap.MINUTES_IN_DAY);
+        if (fromMins == 0 && toMins == ScheduleBitmap.MINUTES_IN_DAY) {
+            if (fullDay == null) {
+                fullDay = evaluate(schedule, new LifeSpanEngine.Result());
+            }
+            return fullDay;
+        }
+        clipped.clear();
+        for (int i = 0; i < schedule.size(); i++) {
+            int start = Math.max(schedule.getStartMins(i), fromMins);
+            int end = Math.min(schedule.getEndMins(i), toMins);
+            if (start < end) {
+                clipped.add(start, end, false);
+            }
+        }
+        return evaluate(clipped, partialDay);
+    }
+
+    private LifeSpanEngine.Result evaluate(PackedTimePeriods periods, LifeSpanEngine.Result out) {
+        return LifeSpanEngine.evaluate(config, recordDuration, sleepDuration, dutyEnabled, amplitudeThresholdingEnabled, periods, out);
+    }
+
+    /**
+     * The energy of a UTC day evaluated by evaluateDay(), without the sleep of the time the device is off
+     */
+    private static double energy(LifeSpanEngine.Result result, long dayStart, long onStart, long onEnd) {
+        long on = Math.min(dayStart + MILLIS_PER_DAY, onEnd) - Math.max(dayStart, onStart);
+        return result.getExactEnergyUsed() - sleepEnergy(MILLIS_PER_DAY - on);
+    }
+
+    private long startOfDay(LocalDate date) {
+        return date.toDateTimeAtStartOfDay(zone).getMillis();
+    }
+
+    /**
+     * The sleep energy of a span the device is not powered, in mAh
+     */
+    private static double sleepEnergy(long millis) {
+        return millis / 1000.0 * LifeSpanEngine.SLEEP_ENERGY / 3600.0;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return value < min ? min : value > max ? max : value;
+    }
+
+    /**
+     * Math.floorDiv needs API 24
+     */
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            q--;
+        }
+        return q;
+    }
+}
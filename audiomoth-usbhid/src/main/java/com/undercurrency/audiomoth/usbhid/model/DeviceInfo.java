@@ -49,6 +49,12 @@ public class DeviceInfo implements Serializable {
     private String date;
     private transient boolean localTime=false;
 
+    /**
+     * Create an empty DeviceInfo, to be filled with the setters
+     */
+    public DeviceInfo() {
+    }
+
     /**
      * Create DeviceInfo from byte array
      * @param fromArray
@@ -102,22 +108,7 @@ public class DeviceInfo implements Serializable {
      * @return true if the current version is minor than SEMANTIC_VERSION, false otherwise
      */
     public boolean isOlderSemanticVersion () {
-
-        String[] aVersionArr, bVersionArr;
-        Integer aVersionNum, bVersionNum;
-        aVersionArr = firmwareVersion.split(".");
-        bVersionArr = SEMANTIC_VERSION.split(".");
-
-        for (int i = 0; i < aVersionArr.length; i++) {
-            aVersionNum = Integer.parseInt(aVersionArr[i]);
-            bVersionNum = Integer.parseInt(bVersionArr[i]);
-            if (aVersionNum > bVersionNum) {
-                return false;
-            } else if (aVersionNum < bVersionNum) {
-                return true;
-            }
-        }
-        return false;
+        return PacketLength.compareVersions(firmwareVersion, SEMANTIC_VERSION) < 0;
     }
 
     public String getDeviceId() {
@@ -0,0 +1,111 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+/**
+ * The drift of one device clock since it was last set, fitted by least squares on its readings.
+ * The offset is the device clock minus the host clock, it changes linearly with the drift rate.
+ */
+public class DriftEstimate {
+
+    private final String deviceId;
+    private final int sampleCount;
+    private final long segmentStart;
+    private final double referenceHostMillis;
+    private final double referenceOffsetMillis;
+    private final double driftRate;
+
+    /**
+     * @param segmentStart the host time of the first reading since the clock was set
+     * @param referenceHostMillis the mean host time of the readings
+     * @param referenceOffsetMillis the mean offset of the readings
+     * @param driftRate the offset change per host millisecond
+     */
+    public DriftEstimate(String deviceId, int sampleCount, long segmentStart, double referenceHostMillis,
+                         double referenceOffsetMillis, double driftRate) {
+        this.deviceId = deviceId;
+        this.sampleCount = sampleCount;
+        this.segmentStart = segmentStart;
+        this.referenceHostMillis = referenceHostMillis;
+        this.referenceOffsetMillis = referenceOffsetMillis;
+        this.driftRate = driftRate;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the host time of the first reading since the clock was set, unix millis
+     */
+    public long getSegmentStart() {
+        return segmentStart;
+    }
+
+    /**
+     * @return the offset change per host millisecond, 0 with a single reading
+     */
+    public double getDriftRate() {
+        return driftRate;
+    }
+
+    /**
+     * @return the drift in parts per million, positive if the device clock runs fast
+     */
+    public double getDriftPpm() {
+        return driftRate * 1e6;
+    }
+
+    /**
+     * @return the expected device clock minus host clock at a host time
+     */
+    public double getOffsetMillis(long hostMillis) {
+        return referenceOffsetMillis + driftRate * (hostMillis - referenceHostMillis);
+    }
+
+    /**
+     * Corrects a timestamp of the device, like the time in the name of a recording
+     * @param deviceMillis a device time, unix millis
+     * @return the host time it corresponds to
+     */
+    public long toHostMillis(long deviceMillis) {
+        return Math.round((deviceMillis - referenceOffsetMillis + driftRate * referenceHostMillis) / (1 + driftRate));
+    }
+
+    /**
+     * @return the device time at a host time
+     */
+    public long toDeviceMillis(long hostMillis) {
+        return Math.round(hostMillis + getOffsetMillis(hostMillis));
+    }
+
+    @Override
+    public String toString() {
+        return "DriftEstimate{" +
+                "deviceId='" + deviceId + '\'' +
+                ", sampleCount=" + sampleCount +
+                ", segmentStart=" + segmentStart +
+                ", offsetMillis=" + referenceOffsetMillis +
+                ", driftPpm=" + getDriftPpm() +
+                '}';
+    }
+}
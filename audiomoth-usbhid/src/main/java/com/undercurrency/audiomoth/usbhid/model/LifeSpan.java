@@ -26,7 +26,8 @@ public class LifeSpan {
     long totalRecCount=0;
     boolean plural= false;
     boolean upTo=false;
-    String fileSizeInUnits ="0 MB";
+    /* Formatted on first use, see getFileSizeInUnits() */
+    volatile String fileSizeInUnits ="0 MB";
     float energyUsed=0.0F;
     long fileSizeBytes = 0L;
 
@@ -41,16 +42,18 @@ public class LifeSpan {
         this.energyUsed = energyUsed;
     }
 
-
-    private static float getStartCurrent(int rateIndex) {
-        float startCurrent = Configurations.getConfig(rateIndex/1000, false).getStartCurrent();
-        return startCurrent;
+    /**
+     * The file size is formatted only when getFileSizeInUnits() is first called
+     */
+    public LifeSpan(long totalRecCount, boolean plural, boolean upTo, long fileSizeBytes, float energyUsed) {
+        this.totalRecCount = totalRecCount;
+        this.plural = plural;
+        this.upTo = upTo;
+        this.fileSizeInUnits = null;
+        this.fileSizeBytes = fileSizeBytes;
+        this.energyUsed = energyUsed;
     }
 
-    private static float getRecordCurrent(int rateIndex) {
-        float recordCurrent = Configurations.getConfig(rateIndex/1000, false).getRecordCurrent();
-        return recordCurrent;
-    }
 
     @Override
     public String toString() {
@@ -58,7 +61,7 @@ public class LifeSpan {
                 "totalRecCount=" + totalRecCount +
                 ", plural=" + plural +
                 ", upTo=" + upTo +
-                ", fileSizeInUnits='" + fileSizeInUnits + '\'' +
+                ", fileSizeInUnits='" + getFileSizeInUnits() + '\'' +
                 ", energyUsed=" + energyUsed +
                 '}';
     }
@@ -76,7 +79,12 @@ public class LifeSpan {
     }
 
     public String getFileSizeInUnits() {
-        return fileSizeInUnits;
+        String formatted = fileSizeInUnits;
+        if (formatted == null) {
+            formatted = formatFileSize(fileSizeBytes);
+            fileSizeInUnits = formatted;
+        }
+        return formatted;
     }
 
     public float getEnergyUsed() {
@@ -87,128 +95,20 @@ public class LifeSpan {
         return fileSizeBytes;
     }
 
-    private static byte getSampleRateDivider(int rateIndex) {
-        return Configurations.getConfig(rateIndex/1000, false).getSampleRateDivider();
-    }
-
-    private static int getSampleRateConfig(int rateIndex){
-        return Configurations.getConfig(rateIndex/1000,false).getSampleRate();
-    }
-
-
-
+    /**
+     * Computes the daily figures of the settings
+     * @see LifeSpanEngine
+     */
     public static LifeSpan getLifeSpan(RecordingSettings rs) {
-        long MAX_WAV_LENGTH =4294966806L;
-        int START_UP_TIME = 2;
-        float SLEEP_ENERGY = 0.125F;
-        //out variables
-        float energyUsed = 0;
-        String formatFileSize = "";
-        long totalRecCount = 0;
-        long completeRecCount = 0;
-        boolean upToFile = false;
-        boolean upToTotal = false;
-        String upToFileSize = "MB";
-        long totalSize = 0;
-        long scheduleLength = 0;
-        long upToSize=0;
-        long maxFileSize =0;
-        long recordingSize=0;
-        boolean sizeWarn = false;
-
-        //Auxiliaries
-        long truncatedRecCount =0;
-        long truncatedRecTime =0;
-        long totalRecLength = 0;
-        long recLength = 0;
-        long recSize=0;
-        long truncatedRecordingSize=0;
-        long maxLength =0;
-        int energyPrecision=0;
-
-        upToFile = rs.isAmplitudeThresholdingEnabled();
-        upToTotal = rs.isAmplitudeThresholdingEnabled();
-
-
-
-        if (rs.getTimePeriods().size() != 0) {
-            if(rs.isDutyEnabled()){
-                long[] countResponse = getDailyCount(rs);
-                completeRecCount = countResponse[0];
-                truncatedRecCount = countResponse[1];
-                truncatedRecTime = countResponse[2];
-                totalRecLength = (completeRecCount * rs.getRecordDuration()) + truncatedRecTime;
-
-                /* Calculate the size of a days worth of recordings */
-                recSize = (long) (((float)getSampleRateConfig(rs.getSampleRate()) / (float)getSampleRateDivider(rs.getSampleRate())) * 2 * rs.getRecordDuration());
-                truncatedRecordingSize = (long) ((float)truncatedRecTime * (float)getSampleRateConfig(rs.getSampleRate()) / getSampleRateDivider(rs.getSampleRate()) * 2);
-                totalSize = (recSize * completeRecCount) + truncatedRecordingSize;
-            } else{
-                completeRecCount = rs.getTimePeriods().size();
-                truncatedRecCount=0;
-                truncatedRecTime = 0;
-                totalRecLength=0;
-                maxLength = 0;
-
-                for(int i =0; i<completeRecCount; i++){
-                    TimePeriods period = rs.getTimePeriods().get(i);
-                    long length = period.getEndMins() - period.getStartMins();
-                    if(i >0 && !rs.isAmplitudeThresholdingEnabled()){
-                        TimePeriods prevPeriod = rs.getTimePeriods().get(i - 1);
-                        long prevLenght = prevPeriod.getEndMins() - prevPeriod.getStartMins();
-                        if(length!=prevLenght){
-                            upToFile = true;
-                        }
-                    }
-                    totalRecLength +=length;
-                    maxLength = (length> maxLength)?length:maxLength;
-                }
-                totalRecLength *= 60;
-                totalSize = (long) ((float)getSampleRateConfig(rs.getSampleRate())/(float)getSampleRateDivider(rs.getSampleRate())*2*totalRecLength);
-
-            }
-            totalRecCount = completeRecCount + truncatedRecCount;
-
-            if(completeRecCount > 1){
-                if(rs.isDutyEnabled()){
-                    upToSize = recSize;
-                } else {
-                    maxFileSize = (long) ((float)getSampleRateConfig(rs.getSampleRate())/ (float)getSampleRateDivider(rs.getSampleRate())*2*maxLength*60);
-                    upToSize= maxFileSize;
-                }
-            }
-            recordingSize = (completeRecCount>1)?upToSize:totalSize;
-
-            if(recordingSize>MAX_WAV_LENGTH){
-                sizeWarn = true;
-            }
-
-            /* Calculate amount of energy used both recording a sleeping over the course of a day */
-            energyUsed = Math.min(86400 - totalRecCount*START_UP_TIME,totalRecLength)* getRecordCurrent(rs.getSampleRate())/3600f;
-            energyUsed += totalRecCount*START_UP_TIME*getRecordCurrent(rs.getSampleRate())/3600f;
-            energyUsed += Math.max(0,86400-totalRecCount*START_UP_TIME-totalRecLength)*SLEEP_ENERGY/3600f;
-            energyPrecision = energyUsed > 100 ? 10 : energyUsed > 50 ? 5 : energyUsed > 20 ? 2 : 1;
-            energyUsed = Math.round((float)energyUsed/(float)energyPrecision)*energyPrecision;
-
-            return new LifeSpan(totalRecCount,totalRecCount>1,
-                    rs.isAmplitudeThresholdingEnabled(),
-                    completeRecCount>1?formatFileSize(upToSize):formatFileSize(totalSize),
-                    completeRecCount>1?upToSize:totalSize,energyUsed);
-
+        LifeSpanEngine.Result result = LifeSpanEngine.evaluate(rs, new LifeSpanEngine.Result());
+        if (result.isEmpty()) {
+            return new LifeSpan();
         }
-
-        /* Calculate amount of energy used both recording a sleeping over the course of a day */
-        energyUsed = Math.min(86400 - totalRecCount*START_UP_TIME,totalRecLength)* getRecordCurrent(rs.getSampleRate())/3600f;
-        energyUsed += totalRecCount*START_UP_TIME*getRecordCurrent(rs.getSampleRate())/3600f;
-        energyUsed += Math.max(0,86400-totalRecCount*START_UP_TIME-totalRecLength)*SLEEP_ENERGY/3600f;
-        energyPrecision = energyUsed > 100 ? 10 : energyUsed > 50 ? 5 : energyUsed > 20 ? 2 : 1;
-        energyUsed = Math.round((float)energyUsed/(float)energyPrecision)*energyPrecision;
-
-        return new LifeSpan();
-
+        long totalRecCount = result.getTotalRecCount();
+        return new LifeSpan(totalRecCount, totalRecCount > 1, result.isUpTo(),
+                result.getFileSizeBytes(), result.getEnergyUsed());
     }
 
-
     public String getTotalMBFiles(){
             return formatFileSize(getTotalRecCount()*getFileSizeBytes());
     }
@@ -231,41 +131,4 @@ public class LifeSpan {
         return String.format("%.1f %cB", bytes / 1000.0, ci.current());
     }
 
-    private static long[] getDailyCount(RecordingSettings rs) {
-        long[] data = new long[3];
-        long periodSecs = 0;
-        long completeRecCount = 0;
-        long totalRecLength = 0;
-        long timeRemaining = 0;
-
-        /* Total number of recordings of the intended length */
-        long totalCompleteRecCount = 0;
-        /* Total number of recordings which could not be the intended length, so have been truncated */
-        long truncatedRecCount = 0;
-        /* Total length of all truncated files in seconds */
-        long truncatedRecTime = 0;
-        for (int i = 0; i < rs.getTimePeriods().size(); i++) {
-            /* Calculate how many full recording periods fit in the allotted time */
-            periodSecs = (rs.getTimePeriods().get(i).getEndMins() - rs.getTimePeriods().get(i).getStartMins()) * 60;
-            completeRecCount = (int) Math.floor((float)periodSecs / (float)(rs.getRecordDuration() + rs.getSleepDuration()));
-            /* Check if a truncated recording will fit in the rest of the period */
-            totalRecLength = completeRecCount * (rs.getRecordDuration() + rs.getSleepDuration());
-            timeRemaining = periodSecs - totalRecLength;
-            if (timeRemaining > 0) {
-                if (timeRemaining >= rs.getRecordDuration()) {
-                    completeRecCount += 1;
-                } else {
-                    truncatedRecTime += timeRemaining;
-                    truncatedRecCount += 1;
-                }
-            }
-            totalCompleteRecCount += completeRecCount;
-        }
-
-        data[0] = totalCompleteRecCount;
-        data[1] = truncatedRecCount;
-            data[2] = truncatedRecTime;
-        return data;
-    }
-
 }
@@ -0,0 +1,197 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LifeSpanCache keeps the LifeSpan of the most recently used configurations, so redrawing the
+ * estimate for settings that did not change does not recompute it.
+ * Entries are keyed on the fields the estimate depends on: the sample rate, the record and sleep
+ * durations, the duty cycle and amplitude thresholding flags and the recording periods. Changing
+ * any other field, like the gain or the LED, keeps the cached estimate.
+ *
+ * The cache is thread safe, a lookup that hits does not allocate.
+ */
+public class LifeSpanCache {
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, LifeSpan> entries;
+    /* Reused to look up the settings, copied only when a new entry is stored */
+    private final Key probe = new Key();
+    private long hitCount;
+    private long missCount;
+
+    public LifeSpanCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of configurations kept, the least recently used is evicted first
+     */
+    public LifeSpanCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, LifeSpan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, LifeSpan> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the LifeSpan of the settings, computing it only if no equivalent configuration is cached
+     * @param rs the settings
+     * @return the LifeSpan, shared with every caller of an equivalent configuration
+     */
+    public synchronized LifeSpan get(RecordingSettings rs) {
+        probe.set(rs);
+        LifeSpan lifeSpan = entries.get(probe);
+        if (lifeSpan != null) {
+            hitCount++;
+            return lifeSpan;
+        }
+        missCount++;
+        lifeSpan = LifeSpan.getLifeSpan(rs);
+        entries.put(probe.copy(), lifeSpan);
+        return lifeSpan;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Clears the hit and miss counters, the cached entries are kept
+     */
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LifeSpanCache{" +
+                "size=" + entries.size() +
+                ", capacity=" + capacity +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                '}';
+    }
+
+    /**
+     * The fields of a RecordingSettings used by LifeSpan
+     */
+    private static final class Key {
+        private int sampleRate;
+        private int recordDuration;
+        private int sleepDuration;
+        private boolean dutyEnabled;
+        private boolean amplitudeThresholdingEnabled;
+        /* Start and end minute of every period, only the first periodCount pairs are used */
+        private int[] periods = new int[2 * RecordingSettings.MAX_PERIODS];
+        private int periodCount;
+        private int hash;
+
+        private void set(RecordingSettings rs) {
+            PackedTimePeriods packed = rs.getPackedTimePeriods();
+            sampleRate = rs.getSampleRate();
+            recordDuration = rs.getRecordDuration();
+            sleepDuration = rs.getSleepDuration();
+            dutyEnabled = rs.isDutyEnabled();
+            amplitudeThresholdingEnabled = rs.isAmplitudeThresholdingEnabled();
+            periodCount = packed.size();
+            if (periods.length < 2 * periodCount) {
+                periods = new int[2 * periodCount];
+            }
+            int h = sampleRate;
+            h = 31 * h + recordDuration;
+            h = 31 * h + sleepDuration;
+            h = 31 * h + (dutyEnabled ? 1 : 0);
+            h = 31 * h + (amplitudeThresholdingEnabled ? 1 : 0);
+            for (int i = 0; i < periodCount; i++) {
+                periods[2 * i] = packed.getStartMins(i);
+                periods[2 * i + 1] = packed.getEndMins(i);
+                h = 31 * h + periods[2 * i];
+                h = 31 * h + periods[2 * i + 1];
+            }
+            hash = h;
+        }
+
+        private Key copy() {
+            Key key = new Key();
+            key.sampleRate = sampleRate;
+            key.recordDuration = recordDuration;
+            key.sleepDuration = sleepDuration;
+            key.dutyEnabled = dutyEnabled;
+            key.amplitudeThresholdingEnabled = amplitudeThresholdingEnabled;
+            key.periods = Arrays.copyOf(periods, 2 * periodCount);
+            key.periodCount = periodCount;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key that = (Key) o;
+
+            if (hash != that.hash) return false;
+            if (sampleRate != that.sampleRate) return false;
+            if (recordDuration != that.recordDuration) return false;
+            if (sleepDuration != that.sleepDuration) return false;
+            if (dutyEnabled != that.dutyEnabled) return false;
+            if (amplitudeThresholdingEnabled != that.amplitudeThresholdingEnabled) return false;
+            if (periodCount != that.periodCount) return false;
+            for (int i = 0; i < 2 * periodCount; i++) {
+                if (periods[i] != that.periods[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
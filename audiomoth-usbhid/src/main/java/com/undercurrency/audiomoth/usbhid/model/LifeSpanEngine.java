@@ -0,0 +1,245 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+/**
+ * The LifeSpanEngine computes the daily recording budget of a configuration, the number of files,
+ * their size and the energy used in a day, the figures shown by LifeSpan.
+ * The Configurations entry is resolved once per evaluation and the daily recording count uses
+ * integer arithmetic only. The file sizes and the energy keep the float arithmetic of the
+ * AudioMoth configuration app, in the same order, so the results do not change.
+ *
+ * evaluate() works on primitives and writes into a reusable Result, so sweeping many
+ * configurations does not allocate.
+ */
+public final class LifeSpanEngine {
+
+    public static final long MAX_WAV_LENGTH = 4294966806L;
+    public static final int SECONDS_IN_DAY = 86400;
+    static final int START_UP_TIME = 2;
+    static final float SLEEP_ENERGY = 0.125F;
+
+    private LifeSpanEngine() {
+    }
+
+    /**
+     * The figures of one configuration, a Result can be reused between evaluations
+     */
+    public static final class Result {
+        /* Recordings of the intended length in a day */
+        long completeRecCount;
+        /* Recordings cut short by the end of a period */
+        long truncatedRecCount;
+        /* Length in seconds of all the truncated recordings */
+        long truncatedRecTime;
+        /* Seconds recorded in a day */
+        long totalRecLength;
+        /* Bytes recorded in a day */
+        long totalSize;
+        /* Size of the largest file when there is more than one */
+        long upToSize;
+        float energyUsed;
+        float exactEnergyUsed;
+        boolean upTo;
+        boolean empty;
+
+        public long getCompleteRecCount() {
+            return completeRecCount;
+        }
+
+        public long getTruncatedRecCount() {
+            return truncatedRecCount;
+        }
+
+        public long getTruncatedRecTime() {
+            return truncatedRecTime;
+        }
+
+        public long getTotalRecCount() {
+            return completeRecCount + truncatedRecCount;
+        }
+
+        public long getTotalRecLength() {
+            return totalRecLength;
+        }
+
+        public long getTotalSize() {
+            return totalSize;
+        }
+
+        /**
+         * @return the size of one file, the largest one when there are several
+         */
+        public long getFileSizeBytes() {
+            return completeRecCount > 1 ? upToSize : totalSize;
+        }
+
+        /**
+         * @return the energy used in a day in mAh, rounded the way the configuration app shows it
+         */
+        public float getEnergyUsed() {
+            return energyUsed;
+        }
+
+        /**
+         * @return the energy used in a day in mAh, without the rounding of getEnergyUsed()
+         */
+        public float getExactEnergyUsed() {
+            return exactEnergyUsed;
+        }
+
+        /**
+         * @return true if files may be shorter than reported, amplitude thresholding is on
+         */
+        public boolean isUpTo() {
+            return upTo;
+        }
+
+        /**
+         * @return true if the configuration has no recording period
+         */
+        public boolean isEmpty() {
+            return empty;
+        }
+
+        /**
+         * @return true if a single file would exceed the WAV size limit
+         */
+        public boolean isSizeWarning() {
+            return getFileSizeBytes() > MAX_WAV_LENGTH;
+        }
+
+    }
+
+    /**
+     * Evaluates the settings with the current sample rate configurations
+     */
+    public static Result evaluate(RecordingSettings rs, Result out) {
+        Configurations config = Configurations.getConfig(rs.getSampleRate() / 1000, false);
+        return evaluate(config, rs.getRecordDuration(), rs.getSleepDuration(), rs.isDutyEnabled(),
+                rs.isAmplitudeThresholdingEnabled(), rs.getPackedTimePeriods(), out);
+    }
+
+    /**
+     * @param config the sample rate configuration, it must not be null
+     * @param recordDuration seconds of each recording of a duty cycle
+     * @param sleepDuration seconds of sleep of each duty cycle
+     * @param periods the recording periods of the day
+     * @param out receives the figures
+     * @return out
+     */
+    public static Result evaluate(Configurations config, int recordDuration, int sleepDuration, boolean dutyEnabled,
+                                  boolean amplitudeThresholdingEnabled, PackedTimePeriods periods, Result out) {
+        float recordCurrent = config.getRecordCurrent();
+        int sampleRate = config.getSampleRate();
+        byte sampleRateDivider = config.getSampleRateDivider();
+        float samplesPerSecond = (float) sampleRate / (float) sampleRateDivider;
+
+        out.completeRecCount = 0;
+        out.truncatedRecCount = 0;
+        out.truncatedRecTime = 0;
+        out.totalRecLength = 0;
+        out.totalSize = 0;
+        out.upToSize = 0;
+        out.upTo = amplitudeThresholdingEnabled;
+        out.empty = periods.size() == 0;
+
+        if (!out.empty) {
+            long recSize = 0;
+            long maxLength = 0;
+            if (dutyEnabled) {
+                dailyCount(periods, recordDuration, sleepDuration, out);
+                out.totalRecLength = (out.completeRecCount * recordDuration) + out.truncatedRecTime;
+
+                /* Calculate the size of a days worth of recordings */
+                recSize = (long) (samplesPerSecond * 2 * recordDuration);
+                long truncatedRecordingSize = (long) ((float) out.truncatedRecTime * (float) sampleRate / sampleRateDivider * 2);
+                out.totalSize = (recSize * out.completeRecCount) + truncatedRecordingSize;
+            } else {
+                out.completeRecCount = periods.size();
+                long totalRecLength = 0;
+                for (int i = 0; i < periods.size(); i++) {
+                    long length = periods.getEndMins(i) - periods.getStartMins(i);
+                    totalRecLength += length;
+                    maxLength = (length > maxLength) ? length : maxLength;
+                }
+                out.totalRecLength = totalRecLength * 60;
+                out.totalSize = (long) (samplesPerSecond * 2 * out.totalRecLength);
+            }
+            if (out.completeRecCount > 1) {
+                out.upToSize = dutyEnabled ? recSize : (long) (samplesPerSecond * 2 * maxLength * 60);
+            }
+        }
+
+        /* Calculate amount of energy used both recording a sleeping over the course of a day */
+        long totalRecCount = out.getTotalRecCount();
+        long totalRecLength = out.totalRecLength;
+        float energyUsed = Math.min(SECONDS_IN_DAY - totalRecCount * START_UP_TIME, totalRecLength) * recordCurrent / 3600f;
+        energyUsed += totalRecCount * START_UP_TIME * recordCurrent / 3600f;
+        energyUsed += Math.max(0, SECONDS_IN_DAY - totalRecCount * START_UP_TIME - totalRecLength) * SLEEP_ENERGY / 3600f;
+        int energyPrecision = energyUsed > 100 ? 10 : energyUsed > 50 ? 5 : energyUsed > 20 ? 2 : 1;
+        out.energyUsed = out.empty ? 0.0F : Math.round(energyUsed / (float) energyPrecision) * energyPrecision;
+        out.exactEnergyUsed = energyUsed;
+        return out;
+    }
+
+    /**
+     * Counts the recordings of the duty cycle in every period, the ones of the full length and the
+     * ones truncated by the end of a period, with their total length
+     */
+    static void dailyCount(PackedTimePeriods periods, int recordDuration, int sleepDuration, Result out) {
+        long cycle = recordDuration + sleepDuration;
+        long totalCompleteRecCount = 0;
+        long truncatedRecCount = 0;
+        long truncatedRecTime = 0;
+        for (int i = 0; i < periods.size(); i++) {
+            /* Calculate how many full recording periods fit in the allotted time */
+            long periodSecs = (periods.getEndMins(i) - periods.getStartMins(i)) * 60;
+            long completeRecCount = cyclesIn(periodSecs, cycle);
+            /* Check if a truncated recording will fit in the rest of the period */
+            long timeRemaining = periodSecs - completeRecCount * cycle;
+            if (timeRemaining > 0) {
+                if (timeRemaining >= recordDuration) {
+                    completeRecCount += 1;
+                } else {
+                    truncatedRecTime += timeRemaining;
+                    truncatedRecCount += 1;
+                }
+            }
+            totalCompleteRecCount += completeRecCount;
+        }
+        out.completeRecCount = totalCompleteRecCount;
+        out.truncatedRecCount = truncatedRecCount;
+        out.truncatedRecTime = truncatedRecTime;
+    }
+
+    /**
+     * floor(periodSecs / cycle) as the configuration app computes it, an empty cycle saturates
+     * the way a float division cast to int does
+     */
+    static long cyclesIn(long periodSecs, long cycle) {
+        if (cycle == 0) {
+            return periodSecs > 0 ? Integer.MAX_VALUE : periodSecs < 0 ? Integer.MIN_VALUE : 0;
+        }
+        long quotient = periodSecs / cycle;
+        if ((periodSecs % cycle != 0) && ((periodSecs < 0) != (cycle < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+}
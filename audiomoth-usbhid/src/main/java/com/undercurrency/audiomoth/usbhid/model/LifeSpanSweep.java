@@ -0,0 +1,307 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * LifeSpanSweep evaluates the LifeSpan of every combination of sample rate, record duration,
+ * sleep duration and schedule, to find the configurations that fit a battery and SD card budget.
+ * The grid is split between the threads of a ForkJoinPool and every point is computed by the
+ * LifeSpanEngine straight from the parameters, no RecordingSettings is created per point.
+ *
+ * <pre>
+ * LifeSpanSweep.Table table = new LifeSpanSweep(
+ *         new Configurations[]{Configurations.SAMPLE_RATE_48, Configurations.SAMPLE_RATE_96},
+ *         LifeSpanSweep.range(10, 300, 10), LifeSpanSweep.range(0, 600, 30),
+ *         Collections.singletonList(rs.getTimePeriods())).run();
+ * </pre>
+ */
+public class LifeSpanSweep {
+
+    /* Points evaluated by a single task before the grid is not split any further */
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    private final Configurations[] sampleRates;
+    private final int[] recordDurations;
+    private final int[] sleepDurations;
+    private final PackedTimePeriods[] schedules;
+    private boolean dutyEnabled = true;
+    private boolean amplitudeThresholdingEnabled = false;
+
+    /**
+     * @param sampleRates the sample rate configurations to try
+     * @param recordDurations the record durations to try, in seconds
+     * @param sleepDurations the sleep durations to try, in seconds
+     * @param schedules the recording periods to try, they are copied
+     */
+    public LifeSpanSweep(Configurations[] sampleRates, int[] recordDurations, int[] sleepDurations,
+                         List<? extends List<? extends TimePeriods>> schedules) {
+        if (sampleRates.length == 0 || recordDurations.length == 0 || sleepDurations.length == 0 || schedules.isEmpty()) {
+            throw new IllegalArgumentException("Every parameter needs at least one value");
+        }
+        for (Configurations config : sampleRates) {
+            if (config == null) {
+                throw new IllegalArgumentException("Null sample rate configuration");
+            }
+        }
+        long points = (long) sampleRates.length * recordDurations.length * sleepDurations.length * schedules.size();
+        if (points > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many combinations: " + points);
+        }
+        this.sampleRates = sampleRates.clone();
+        this.recordDurations = recordDurations.clone();
+        this.sleepDurations = sleepDurations.clone();
+        this.schedules = new PackedTimePeriods[schedules.size()];
+        for (int i = 0; i < this.schedules.length; i++) {
+            this.schedules[i] = new PackedTimePeriods(schedules.get(i));
+        }
+    }
+
+    /**
+     * @return the values from, from + step, ... up to and including to
+     */
+    public static int[] range(int from, int to, int step) {
+        if (step <= 0 || to < from) {
+            throw new IllegalArgumentException("Invalid range " + from + ".." + to + " step " + step);
+        }
+        int[] values = new int[(int) (((long) to - from) / step) + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from + i * step;
+        }
+        return values;
+    }
+
+    /**
+     * @return every sample rate configuration of the current firmware
+     */
+    public static Configurations[] allSampleRates() {
+        List<Configurations> configs = new ArrayList<Configurations>();
+        for (Configurations config : Configurations.values()) {
+            if (!config.name().startsWith("OLD_")) {
+                configs.add(config);
+            }
+        }
+        return configs.toArray(new Configurations[configs.size()]);
+    }
+
+    public boolean isDutyEnabled() {
+        return dutyEnabled;
+    }
+
+    /**
+     * @param dutyEnabled whether the sleep/record cycle is used, without it the durations do not matter
+     */
+    public void setDutyEnabled(boolean dutyEnabled) {
+        this.dutyEnabled = dutyEnabled;
+    }
+
+    public boolean isAmplitudeThresholdingEnabled() {
+        return amplitudeThresholdingEnabled;
+    }
+
+    public void setAmplitudeThresholdingEnabled(boolean amplitudeThresholdingEnabled) {
+        this.amplitudeThresholdingEnabled = amplitudeThresholdingEnabled;
+    }
+
+    /**
+     * Evaluates the grid on a pool shared by all the sweeps, with one thread per core
+     */
+    public Table run() {
+        return run(DefaultPool.INSTANCE);
+    }
+
+    public Table run(ForkJoinPool pool) {
+        Table table = new Table(sampleRates, recordDurations, sleepDurations, schedules.length);
+        pool.invoke(new SweepTask(this, table, 0, table.size()));
+        return table;
+    }
+
+    /**
+     * Evaluates the points from begin to end, exclusive, on the calling thread
+     */
+    void evaluate(Table table, int begin, int end) {
+        LifeSpanEngine.Result result = new LifeSpanEngine.Result();
+        for (int i = begin; i < end; i++) {
+            LifeSpanEngine.evaluate(sampleRates[table.getSampleRateIndex(i)],
+                    recordDurations[table.getRecordDurationIndex(i)],
+                    sleepDurations[table.getSleepDurationIndex(i)],
+                    dutyEnabled, amplitudeThresholdingEnabled,
+                    schedules[table.getScheduleIndex(i)], result);
+            table.energyUsed[i] = result.getEnergyUsed();
+            table.exactEnergyUsed[i] = result.getExactEnergyUsed();
+            table.totalRecCount[i] = result.getTotalRecCount();
+            table.totalSize[i] = result.getTotalSize();
+            table.fileSizeBytes[i] = result.getFileSizeBytes();
+        }
+    }
+
+    /**
+     * The LifeSpan figures of every point of a sweep, in parallel primitive arrays.
+     * Points are numbered with the schedule varying fastest, then the sleep duration, the record
+     * duration and the sample rate.
+     */
+    public static final class Table {
+        private final Configurations[] sampleRates;
+        private final int[] recordDurations;
+        private final int[] sleepDurations;
+        private final int scheduleCount;
+        final float[] energyUsed;
+        final float[] exactEnergyUsed;
+        final long[] totalRecCount;
+        final long[] totalSize;
+        final long[] fileSizeBytes;
+
+        Table(Configurations[] sampleRates, int[] recordDurations, int[] sleepDurations, int scheduleCount) {
+            this.sampleRates = sampleRates;
+            this.recordDurations = recordDurations;
+            this.sleepDurations = sleepDurations;
+            this.scheduleCount = scheduleCount;
+            int size = sampleRates.length * recordDurations.length * sleepDurations.length * scheduleCount;
+            this.energyUsed = new float[size];
+            this.exactEnergyUsed = new float[size];
+            this.totalRecCount = new long[size];
+            this.totalSize = new long[size];
+            this.fileSizeBytes = new long[size];
+        }
+
+        public int size() {
+            return energyUsed.length;
+        }
+
+        public int indexOf(int sampleRateIndex, int recordDurationIndex, int sleepDurationIndex, int scheduleIndex) {
+            return ((sampleRateIndex * recordDurations.length + recordDurationIndex) * sleepDurations.length
+                    + sleepDurationIndex) * scheduleCount + scheduleIndex;
+        }
+
+        public int getSampleRateIndex(int index) {
+            return index / (scheduleCount * sleepDurations.length * recordDurations.length);
+        }
+
+        public int getRecordDurationIndex(int index) {
+            return index / (scheduleCount * sleepDurations.length) % recordDurations.length;
+        }
+
+        public int getSleepDurationIndex(int index) {
+            return index / scheduleCount % sleepDurations.length;
+        }
+
+        public int getScheduleIndex(int index) {
+            return index % scheduleCount;
+        }
+
+        public Configurations getSampleRate(int index) {
+            return sampleRates[getSampleRateIndex(index)];
+        }
+
+        public int getRecordDuration(int index) {
+            return recordDurations[getRecordDurationIndex(index)];
+        }
+
+        public int getSleepDuration(int index) {
+            return sleepDurations[getSleepDurationIndex(index)];
+        }
+
+        /**
+         * @return the energy used in a day in mAh, rounded the way LifeSpan shows it
+         */
+        public float getEnergyUsed(int index) {
+            return energyUsed[index];
+        }
+
+        /**
+         * @return the energy used in a day in mAh, without the rounding of getEnergyUsed()
+         */
+        public float getExactEnergyUsed(int index) {
+            return exactEnergyUsed[index];
+        }
+
+        public long getTotalRecCount(int index) {
+            return totalRecCount[index];
+        }
+
+        /**
+         * @return the bytes written to the SD card in a day
+         */
+        public long getTotalSize(int index) {
+            return totalSize[index];
+        }
+
+        /**
+         * @return the size of one file, the largest one when there are several
+         */
+        public long getFileSizeBytes(int index) {
+            return fileSizeBytes[index];
+        }
+
+        /**
+         * The energy is compared without rounding, a point whose rounded figure fits but whose
+         * exact one does not is left out
+         * @return the indexes of the points using at most maxEnergy mAh and writing at most maxBytes a day
+         */
+        public int[] findWithin(float maxEnergy, long maxBytes) {
+            int[] found = new int[size()];
+            int count = 0;
+            for (int i = 0; i < found.length; i++) {
+                if (exactEnergyUsed[i] <= maxEnergy && totalSize[i] <= maxBytes) {
+                    found[count++] = i;
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+    }
+
+    /**
+     * Halves its range of points until it is small enough to evaluate directly
+     */
+    private static class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 5618207557076767903L;
+        private final LifeSpanSweep sweep;
+        private final Table table;
+        private final int begin;
+        private final int end;
+
+        private SweepTask(LifeSpanSweep sweep, Table table, int begin, int end) {
+            this.sweep = sweep;
+            this.table = table;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - begin <= SEQUENTIAL_THRESHOLD) {
+                sweep.evaluate(table, begin, end);
+                return;
+            }
+            int middle = (begin + end) >>> 1;
+            invokeAll(new SweepTask(sweep, table, begin, middle), new SweepTask(sweep, table, middle, end));
+        }
+    }
+
+    /**
+     * ForkJoinPool.commonPool() needs API 24, sweeps share this pool instead
+     */
+    private static class DefaultPool {
+        private static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * PackedTimePeriods holds the recording periods of a RecordingSettings as start/end minute pairs
+ * in a single int array, kept sorted by start and then end minute on every insert.
+ * The primitive accessors read the periods without allocating. It is not a List, periods can not
+ * be placed at an index, get() returns a copy and toList() gives the periods as TimePeriods.
+ */
+public class PackedTimePeriods implements Serializable {
+
+    private static final long serialVersionUID = 2190052450327898297L;
+    private static final int DEFAULT_CAPACITY = 5;
+
+    private int[] minutes;
+    private boolean[] localTimes;
+    private int size;
+
+    public PackedTimePeriods() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PackedTimePeriods(int capacity) {
+        minutes = new int[capacity * 2];
+        localTimes = new boolean[capacity];
+    }
+
+    public PackedTimePeriods(Collection<? extends TimePeriods> timePeriods) {
+        this(Math.max(DEFAULT_CAPACITY, timePeriods.size()));
+        addAll(timePeriods);
+    }
+
+    public PackedTimePeriods(PackedTimePeriods other) {
+        this(Math.max(DEFAULT_CAPACITY, other.size));
+        System.arraycopy(other.minutes, 0, minutes, 0, other.size * 2);
+        System.arraycopy(other.localTimes, 0, localTimes, 0, other.size);
+        size = other.size;
+    }
+
+    /**
+     * Compares two periods by start and then end minute
+     */
+    public static int compare(int startMins, int endMins, int otherStartMins, int otherEndMins) {
+        if (startMins != otherStartMins) {
+            return startMins < otherStartMins ? -1 : 1;
+        }
+        if (endMins != otherEndMins) {
+            return endMins < otherEndMins ? -1 : 1;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getStartMins(int index) {
+        checkIndex(index);
+        return minutes[index * 2];
+    }
+
+    public int getEndMins(int index) {
+        checkIndex(index);
+        return minutes[index * 2 + 1];
+    }
+
+    public boolean isLocalTime(int index) {
+        checkIndex(index);
+        return localTimes[index];
+    }
+
+    /**
+     * @return a copy of the period at index, changing it does not change these periods
+     */
+    public TimePeriods get(int index) {
+        checkIndex(index);
+        return new TimePeriods(minutes[index * 2], minutes[index * 2 + 1], localTimes[index]);
+    }
+
+    /**
+     * Inserts a period at its sorted position
+     * @return the index of the new period
+     */
+    public int add(int startMins, int endMins, boolean localTime) {
+        ensureCapacity(size + 1);
+        int index = size;
+        while (index > 0 && compare(minutes[(index - 1) * 2], minutes[(index - 1) * 2 + 1], startMins, endMins) > 0) {
+            minutes[index * 2] = minutes[(index - 1) * 2];
+            minutes[index * 2 + 1] = minutes[(index - 1) * 2 + 1];
+            localTimes[index] = localTimes[index - 1];
+            index--;
+        }
+        minutes[index * 2] = startMins;
+        minutes[index * 2 + 1] = endMins;
+        localTimes[index] = localTime;
+        size++;
+        return index;
+    }
+
+    /**
+     * Inserts a copy of the period at its sorted position
+     * @return the index of the new period
+     */
+    public int add(TimePeriods timePeriods) {
+        return add(timePeriods.getStartMins(), timePeriods.getEndMins(), timePeriods.isLocalTime());
+    }
+
+    /**
+     * Inserts copies of the periods at their sorted positions, null entries are skipped
+     */
+    public void addAll(Collection<? extends TimePeriods> timePeriods) {
+        ensureCapacity(size + timePeriods.size());
+        for (TimePeriods tp : timePeriods) {
+            if (tp != null) {
+                add(tp);
+            }
+        }
+    }
+
+    /**
+     * Removes the period at index, the following ones move down by one
+     */
+    public void remove(int index) {
+        checkIndex(index);
+        int moved = size - index - 1;
+        System.arraycopy(minutes, (index + 1) * 2, minutes, index * 2, moved * 2);
+        System.arraycopy(localTimes, index + 1, localTimes, index, moved);
+        size--;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sets the localTime flag of every period
+     */
+    public void setLocalTime(boolean localTime) {
+        for (int i = 0; i < size; i++) {
+            localTimes[i] = localTime;
+        }
+    }
+
+    /**
+     * Replaces the periods with a copy of the given ones
+     */
+    public void setAll(Collection<? extends TimePeriods> timePeriods) {
+        clear();
+        if (timePeriods != null) {
+            addAll(timePeriods);
+        }
+    }
+
+    /**
+     * @return true if there is a period with these minutes
+     */
+    public boolean contains(int startMins, int endMins) {
+        for (int i = 0; i < size; i++) {
+            if (minutes[i * 2] == startMins && minutes[i * 2 + 1] == endMins) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every period of other is also one of these periods
+     */
+    public boolean containsAll(PackedTimePeriods other) {
+        for (int i = 0; i < other.size; i++) {
+            if (!contains(other.minutes[i * 2], other.minutes[i * 2 + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a new list with a copy of every period, in sorted order
+     */
+    public ArrayList<TimePeriods> toList() {
+        ArrayList<TimePeriods> timePeriods = new ArrayList<TimePeriods>(size);
+        for (int i = 0; i < size; i++) {
+            timePeriods.add(get(i));
+        }
+        return timePeriods;
+    }
+
+    /**
+     * Two PackedTimePeriods are equal when they hold the same minutes, the localTime flags are ignored
+     * the way TimePeriods.equals() ignores them
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PackedTimePeriods)) return false;
+        PackedTimePeriods other = (PackedTimePeriods) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size * 2; i++) {
+            if (minutes[i] != other.minutes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The same value as the hashCode of toList(), computed without allocating
+     */
+    @Override
+    public int hashCode() {
+        int hashCode = 1;
+        for (int i = 0; i < size; i++) {
+            hashCode = 31 * hashCode + (31 * minutes[i * 2] + minutes[i * 2 + 1]);
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (localTimes.length < capacity) {
+            int newCapacity = Math.max(capacity, localTimes.length * 2);
+            int[] newMinutes = new int[newCapacity * 2];
+            boolean[] newLocalTimes = new boolean[newCapacity];
+            System.arraycopy(minutes, 0, newMinutes, 0, size * 2);
+            System.arraycopy(localTimes, 0, newLocalTimes, 0, size);
+            minutes = newMinutes;
+            localTimes = newLocalTimes;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -17,6 +17,10 @@
 
 package com.undercurrency.audiomoth.usbhid.model;
 
+/**
+ * The PacketLength enum lists the size of the configuration packet expected by each firmware layout,
+ * every layout is a prefix of the following one.
+ */
 public enum PacketLength {
     ZERO("0.0.0",39),
     ONE_TWO("1.2.0",40),
@@ -26,9 +30,86 @@ public enum PacketLength {
     ;
     private String firmwareVersion;
     private int packetLenght;
+    private int[] versionNumbers;
 
     PacketLength(String firmwareVersion, int packetLenght) {
         this.firmwareVersion = firmwareVersion;
         this.packetLenght = packetLenght;
+        this.versionNumbers = parseVersion(firmwareVersion);
+    }
+
+    public String getFirmwareVersion() {
+        return firmwareVersion;
+    }
+
+    public int getPacketLength() {
+        return packetLenght;
+    }
+
+    /**
+     * Finds the layout used by a firmware, the newest one that is not newer than the version
+     * @param version a semantic version like "1.2.1", null or unparseable versions get the latest layout
+     * @return the PacketLength of the firmware
+     */
+    public static PacketLength forFirmware(String version) {
+        if (version == null || !isVersion(version)) {
+            return latest();
+        }
+        int[] versionNumbers = parseVersion(version);
+        PacketLength layout = ZERO;
+        for (PacketLength candidate : VALUES) {
+            if (compareVersions(candidate.versionNumbers, versionNumbers) <= 0) {
+                layout = candidate;
+            }
+        }
+        return layout;
+    }
+
+    public static PacketLength latest() {
+        return VALUES[VALUES.length - 1];
     }
+
+    /**
+     * Compares two semantic versions number by number, missing numbers count as 0
+     * @return a negative number, zero or a positive number as a is older, equal or newer than b
+     */
+    public static int compareVersions(String a, String b) {
+        return compareVersions(parseVersion(a), parseVersion(b));
+    }
+
+    private static int compareVersions(int[] aVersionArr, int[] bVersionArr) {
+        int length = Math.max(aVersionArr.length, bVersionArr.length);
+        for (int i = 0; i < length; i++) {
+            int aVersionNum = i < aVersionArr.length ? aVersionArr[i] : 0;
+            int bVersionNum = i < bVersionArr.length ? bVersionArr[i] : 0;
+            if (aVersionNum != bVersionNum) {
+                return aVersionNum < bVersionNum ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int[] parseVersion(String version) {
+        String[] numbers = version.split("\\.");
+        int[] versionNumbers = new int[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            versionNumbers[i] = Integer.parseInt(numbers[i]);
+        }
+        return versionNumbers;
+    }
+
+    private static boolean isVersion(String version) {
+        if (version.isEmpty() || version.startsWith(".") || version.endsWith(".") || version.contains("..")) {
+            return false;
+        }
+        for (int i = 0; i < version.length(); i++) {
+            char c = version.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final PacketLength[] VALUES = values();
 }
@@ -18,8 +18,6 @@
 
 package com.undercurrency.audiomoth.usbhid.model;
 
-import android.util.Log;
-
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeComparator;
 import org.joda.time.DateTimeZone;
@@ -28,13 +26,18 @@ import org.joda.time.LocalDate;
 import org.joda.time.LocalDateTime;
 import org.joda.time.tz.UTCProvider;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.logging.Logger;
 
 import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.readDateFromByteArray;
 import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.readIntFromLittleEndian;
@@ -49,15 +52,19 @@ import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.writeShortToL
  * RecordingSettings a POJO holding all the AudioMoth settings
  */
 public class RecordingSettings implements Serializable {
-    private static final String TAG="RecordingSettings";
+    private static final Logger LOGGER = Logger.getLogger(RecordingSettings.class.getName());
     private static final long serialVersionUID = 8799656478674716638L;
-    private static final int MAX_PERIODS = 5;
+    /**
+     * Size in bytes of the configuration packet understood by firmware 1.4.x
+     */
+    public static final int PACKET_SIZE = 58;
+    static final int MAX_PERIODS = 5;
     private static final int SECONDS_IN_DAY = 86400;
     private static final int UINT16_MAX = 0xFFFF;
     private static final int UINT32_MAX = 0xFFFFFFFF;
     boolean amplitudeThresholdingEnabled;
     private transient DeviceInfo deviceInfo;
-    private ArrayList<TimePeriods> timePeriods = new ArrayList(5);
+    private PackedTimePeriods timePeriods = new PackedTimePeriods(MAX_PERIODS);
     private boolean ledEnabled;
     private boolean lowVoltageCutoffEnabled;
     private boolean batteryLevelCheckEnabled;
@@ -77,12 +84,35 @@ public class RecordingSettings implements Serializable {
     private Date firstRecordingDate;
     private Date lastRecordingDate;
 
+    /* The serialized form is the one of the first releases, with the periods as an ArrayList of
+     TimePeriods, so settings stored by an older version of the library can still be read */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("amplitudeThresholdingEnabled", boolean.class),
+            new ObjectStreamField("timePeriods", ArrayList.class),
+            new ObjectStreamField("ledEnabled", boolean.class),
+            new ObjectStreamField("lowVoltageCutoffEnabled", boolean.class),
+            new ObjectStreamField("batteryLevelCheckEnabled", boolean.class),
+            new ObjectStreamField("sampleRate", int.class),
+            new ObjectStreamField("gain", byte.class),
+            new ObjectStreamField("recordDuration", int.class),
+            new ObjectStreamField("sleepDuration", int.class),
+            new ObjectStreamField("localTime", boolean.class),
+            new ObjectStreamField("dutyEnabled", boolean.class),
+            new ObjectStreamField("passFiltersEnabled", boolean.class),
+            new ObjectStreamField("filterType", FilterType.class),
+            new ObjectStreamField("lowerFilter", int.class),
+            new ObjectStreamField("higherFilter", int.class),
+            new ObjectStreamField("amplitudeThreshold", int.class),
+            new ObjectStreamField("firstRecordingDate", Date.class),
+            new ObjectStreamField("lastRecordingDate", Date.class)
+    };
+
     public RecordingSettings() {
     }
 
     public RecordingSettings(DeviceInfo deviceInfo, ArrayList<TimePeriods> timePeriods, boolean ledEnabled, boolean lowVoltageCutoffEnabled, boolean batteryLevelCheckEnabled, int sampleRate, byte gain, short recordDuration, short sleepDuration, boolean localTime, boolean dutyEnabled, boolean passFiltersEnabled, FilterType filterType, int lowerFilter, int higherFilter, boolean amplitudeThresholdingEnabled, byte amplitudeThreshold, Date firstRecordingDate, Date lastRecordingDate) {
         this.deviceInfo = deviceInfo;
-        this.timePeriods = timePeriods;
+        this.timePeriods = new PackedTimePeriods(timePeriods);
         this.ledEnabled = ledEnabled;
         this.lowVoltageCutoffEnabled = lowVoltageCutoffEnabled;
         this.batteryLevelCheckEnabled = batteryLevelCheckEnabled;
@@ -102,95 +132,104 @@ public class RecordingSettings implements Serializable {
         this.lastRecordingDate = lastRecordingDate;
     }
 
+    /**
+     * Copies a RecordingSettings, the time periods are copied and the DeviceInfo is shared
+     *
+     * @param other the settings to copy
+     */
+    public RecordingSettings(RecordingSettings other) {
+        this.deviceInfo = other.deviceInfo;
+        this.timePeriods = new PackedTimePeriods(other.timePeriods);
+        this.ledEnabled = other.ledEnabled;
+        this.lowVoltageCutoffEnabled = other.lowVoltageCutoffEnabled;
+        this.batteryLevelCheckEnabled = other.batteryLevelCheckEnabled;
+        this.sampleRate = other.sampleRate;
+        this.gain = other.gain;
+        this.recordDuration = other.recordDuration;
+        this.sleepDuration = other.sleepDuration;
+        this.localTime = other.localTime;
+        this.dutyEnabled = other.dutyEnabled;
+        this.passFiltersEnabled = other.passFiltersEnabled;
+        this.filterType = other.filterType;
+        this.lowerFilter = other.lowerFilter;
+        this.higherFilter = other.higherFilter;
+        this.amplitudeThresholdingEnabled = other.amplitudeThresholdingEnabled;
+        this.amplitudeThreshold = other.amplitudeThreshold;
+        this.firstRecordingEnable = other.firstRecordingEnable;
+        this.lastRecordingEnable = other.lastRecordingEnable;
+        this.firstRecordingDate = other.firstRecordingDate;
+        this.lastRecordingDate = other.lastRecordingDate;
+    }
+
     /**
      * Deserializes a new RecordingSettings from a byte array
      *
      * @param serialization
      */
     public RecordingSettings(byte[] serialization) {
-        int i = 0;
-        int fecha = readIntFromLittleEndian(serialization, 0);
-        i += 4;
-        setGain(serialization[i++]); //5
-        int clockDivider = serialization[i++]; //6
-        int acquisitionCycles = serialization[i++]; //7
-        int oversampleRate = serialization[i++];//8
-        int sampleRate = readIntFromLittleEndian(serialization, i);//9
-        i += 4;
-        int sampleRateDivider = serialization[i++];
+        setGain(serialization[ConfigField.GAIN.getOffset()]);
+        int sampleRate = readIntFromLittleEndian(serialization, ConfigField.SAMPLE_RATE.getOffset());
+        int sampleRateDivider = serialization[ConfigField.SAMPLE_RATE_DIVIDER.getOffset()];
         int visibleSampleRate = sampleRate/sampleRateDivider;
         setSampleRate(visibleSampleRate);
-        setSleepDuration(readShortFromLittleEndian(serialization, i));
-        i += 2;
-        setRecordDuration(readShortFromLittleEndian(serialization, i));
-        i += 2;
-        setLedEnabled(serialization[i++] != 0);
-        int timePeriodsLength = serialization[i++];
-        setLocalTime(serialization[39]!=0);
-        ArrayList<TimePeriods> tp = new ArrayList<TimePeriods>(timePeriodsLength + 1);
-
+        setSleepDuration(readShortFromLittleEndian(serialization, ConfigField.SLEEP_DURATION.getOffset()));
+        setRecordDuration(readShortFromLittleEndian(serialization, ConfigField.RECORD_DURATION.getOffset()));
+        setLedEnabled(serialization[ConfigField.ENABLE_LED.getOffset()] != 0);
+        int timePeriodsLength = serialization[ConfigField.ACTIVE_START_STOP_PERIODS.getOffset()];
+        setLocalTime(serialization[ConfigField.TIMEZONE_HOURS.getOffset()]!=0);
+        int i = ConfigField.START_STOP_PERIODS.getOffset();
         for (int j = 0; j < timePeriodsLength; j++) {
           //  int tzOffset = isLocalTime()?calculateTimezoneOffsetMins():0;
             int intStartMins = readShortFromLittleEndian(serialization, i);
             i += 2;
             int intEndMins = readShortFromLittleEndian(serialization, i);
             i += 2;
-            tp.add(j, new TimePeriods(intStartMins, intEndMins, isLocalTime()));
+            timePeriods.add(intStartMins, intEndMins, isLocalTime());
         }
-        setTimePeriods(tp);
-        for (int k = 0; k < MAX_PERIODS - timePeriodsLength; k++) {
-            i += 4;
-        }
-        i++;
-        setLowVoltageCutoffEnabled(serialization[i++] != 0);
-        setBatteryLevelCheckEnabled(serialization[i++] == 0);
-        i++;
-        setDutyEnabled(serialization[i++] == 0);
+        setLowVoltageCutoffEnabled(serialization[ConfigField.ENABLE_LOW_VOLTAGE_CUTOFF.getOffset()] != 0);
+        setBatteryLevelCheckEnabled(serialization[ConfigField.DISABLE_BATTERY_LEVEL_DISPLAY.getOffset()] == 0);
+        setDutyEnabled(serialization[ConfigField.DISABLE_SLEEP_RECORD_CYCLE.getOffset()] == 0);
         Date startRecordingDate=null;
         if(isLocalTime()){
-            Long lStartRecordingDate = readMillisFromByteArray(serialization,i);
+            Long lStartRecordingDate = readMillisFromByteArray(serialization, ConfigField.EARLIEST_RECORDING_TIME.getOffset());
             if(lStartRecordingDate!=null) {
                 startRecordingDate = new DateTime(lStartRecordingDate, DateTimeZone.UTC).toLocalDate().toDate();
             }
         } else {
-         startRecordingDate = readDateFromByteArray(serialization, i);
+         startRecordingDate = readDateFromByteArray(serialization, ConfigField.EARLIEST_RECORDING_TIME.getOffset());
         }
         setFirstRecordingEnable(startRecordingDate!=null);
         setFirstRecordingDate(startRecordingDate);
-        i += 4;
         Date endRecordingDate=null;
         if(isLocalTime()){
-            Long lEndRecordingDate = readMillisFromByteArray(serialization,i);
+            Long lEndRecordingDate = readMillisFromByteArray(serialization, ConfigField.LATEST_RECORDING_TIME.getOffset());
             if(lEndRecordingDate!=null) {
                 DateTime dtUTC = new DateTime(lEndRecordingDate-1,DateTimeZone.UTC);
                 endRecordingDate  = dtUTC.toDateTime(DateTimeZone.getDefault()).toDate();
             }
         } else {
-            endRecordingDate = readDateFromByteArray(serialization, i);
+            endRecordingDate = readDateFromByteArray(serialization, ConfigField.LATEST_RECORDING_TIME.getOffset());
         }
         setLastRecordingEnable(endRecordingDate!=null);
         setLastRecordingDate(endRecordingDate);
-        i += 4;
-        int lowFil = readShortFromLittleEndian(serialization, i);
-        i += 2;
-        int hiFil = readShortFromLittleEndian(serialization, i);
-        i += 2;
+        int lowFil = readShortFromLittleEndian(serialization, ConfigField.LOWER_FILTER_FREQ.getOffset());
+        int hiFil = readShortFromLittleEndian(serialization, ConfigField.HIGHER_FILTER_FREQ.getOffset());
         if(lowFil==0 && hiFil==0){
             setPassFiltersEnabled(false);
         } else if(lowFil==UINT16_MAX && hiFil== UINT16_MAX){
-            Log.d(TAG,"lowFil==UINT16_MAX && highFil=UINT16_MAX" );
+            LOGGER.fine("lowFil==UINT16_MAX && highFil=UINT16_MAX");
             setPassFiltersEnabled(true);
             setFilterType(FilterType.BAND);
             setLowerFilter(0);
             setHigherFilter(this.getSampleRate()/2);
         } else if (lowFil == UINT16_MAX) {
-            Log.d(TAG,"lowFil==UINT16_MAX");
+            LOGGER.fine("lowFil==UINT16_MAX");
             setPassFiltersEnabled(true);
             setFilterType(FilterType.LOW);
             setHigherFilter(hiFil*100);
             setLowerFilter(0);
         } else if (hiFil == UINT16_MAX ) {
-            Log.d(TAG, "hiFil==UINT16_MAX");
+            LOGGER.fine("hiFil==UINT16_MAX");
             setPassFiltersEnabled(true);
             setFilterType(FilterType.HIGH);
             setHigherFilter(this.getSampleRate()/2);
@@ -204,7 +243,7 @@ public class RecordingSettings implements Serializable {
 
 
         setPassFiltersEnabled(!(getLowerFilter() == 0 && getHigherFilter() == 0));
-        setAmplitudeThreshold(readShortFromLittleEndian(serialization, i));
+        setAmplitudeThreshold(readShortFromLittleEndian(serialization, ConfigField.AMPLITUDE_THRESHOLD.getOffset()));
         setAmplitudeThresholdingEnabled(getAmplitudeThreshold() > 0);
     }
 
@@ -220,53 +259,99 @@ public class RecordingSettings implements Serializable {
      * Note: the javascript cousin of this code checks the presence in the ui of < 3 sample rate
      * settings to determine the semantic version, we will ignore this, after comparing
      * the firmware 1.4.4 to 1.3.0, the struct in the firmware differs from several fields.
-     * If it is lower to 1.4.4 it only have 3 posible configurations
+     * If it is lower to 1.4.0 it only have 3 posible configurations, see ConfigPacketCodec.usesOldSampleRates()
      * @see <a href="https://github.com/OpenAcousticDevices/AudioMoth-Configuration-App/blob/master/uiIndex.js#L217"></a>
      * an also @see <a href="https://github.com/OpenAcousticDevices/AudioMoth-Configuration-App/blob/master/constants.js#L83"></a>
      */
     public byte[] serializeToBytes() {
+        byte[] serialization = new byte[PACKET_SIZE];
+        serializeTo(serialization, 0);
+        return serialization;
+    }
+
+    /**
+     * Computes the fingerprint of the packet these settings encode to, for the firmware of their DeviceInfo.
+     * Unlike equals() it ignores the DeviceInfo and the time of serialization, two settings that
+     * configure a device the same way have the same fingerprint.
+     * @return the ConfigFingerprint of the canonical packet
+     */
+    public long getFingerprint() {
+        ConfigPacketCodec codec = ConfigPacketCodec.forSettings(this);
+        byte[] serialization = new byte[PACKET_SIZE];
+        int length = codec.encode(this, serialization, 0);
+        return ConfigFingerprint.compute(serialization, 0, length);
+    }
+
+    /**
+     * Writes the configuration packet into a caller supplied buffer, see serializeToBytes()
+     *
+     * @param serialization the destination, it must have PACKET_SIZE bytes available from offset
+     * @param offset index of the first byte of the packet
+     * @return the number of bytes written, always PACKET_SIZE
+     */
+    public int serializeTo(byte[] serialization, int offset) {
+        return serializeTo(serialization, offset, ConfigPacketCodec.forSettings(this).usesOldSampleRates());
+    }
+
+    /**
+     * Writes the configuration packet with the sample rate table chosen by the codec of the target layout
+     * @param oldSampleRates true to write the clock and divider bytes of the Configurations.OLD_SAMPLE_RATE_ entries
+     */
+    int serializeTo(byte[] serialization, int offset, boolean oldSampleRates) {
         Configurations config;
-        byte[] serialization = new byte[58];
         int unixTime = (int) (System.currentTimeMillis() / 1000);
-        int index = 0;
-        writeIntToLittleEndian(serialization, index, unixTime);
-        index += 4;
-        serialization[index++] = getGain();
-        config = Configurations.getConfig(getSampleRate() / 1000, getDeviceInfo().isOlderSemanticVersion());
-        serialization[index++] = config.getClockDivider();
-        serialization[index++] = config.getAcquisitionCycles();
-        serialization[index++] = config.getOversampleRate();
-        writeIntToLittleEndian(serialization, index, config.getSampleRate());
-        index += 4;
-        serialization[index++] = config.getSampleRateDivider();
-        writeShortToLittleEndian(serialization, index, (short) getSleepDuration());
-        index += 2;
-        writeShortToLittleEndian(serialization, index, (short) getRecordDuration());
-        index += 2;
-        serialization[index++] = (byte) (isLedEnabled() ? 1 : 0);
-        Collections.sort(timePeriods);
-        serialization[index++] = (byte) timePeriods.size();
-        for (int i = 0; i < timePeriods.size(); i++) {
+        writeIntToLittleEndian(serialization, offset + ConfigField.TIME.getOffset(), unixTime);
+        serialization[offset + ConfigField.GAIN.getOffset()] = getGain();
+        config = Configurations.getConfig(getSampleRate() / 1000, oldSampleRates);
+        serialization[offset + ConfigField.CLOCK_DIVIDER.getOffset()] = config.getClockDivider();
+        serialization[offset + ConfigField.ACQUISITION_CYCLES.getOffset()] = config.getAcquisitionCycles();
+        serialization[offset + ConfigField.OVERSAMPLE_RATE.getOffset()] = config.getOversampleRate();
+        writeIntToLittleEndian(serialization, offset + ConfigField.SAMPLE_RATE.getOffset(), config.getSampleRate());
+        serialization[offset + ConfigField.SAMPLE_RATE_DIVIDER.getOffset()] = config.getSampleRateDivider();
+        writeShortToLittleEndian(serialization, offset + ConfigField.SLEEP_DURATION.getOffset(), (short) getSleepDuration());
+        writeShortToLittleEndian(serialization, offset + ConfigField.RECORD_DURATION.getOffset(), (short) getRecordDuration());
+        serialization[offset + ConfigField.ENABLE_LED.getOffset()] = (byte) (isLedEnabled() ? 1 : 0);
+        /* The periods are kept sorted, overlapping and adjacent ones are merged on the way and
+         empty ones dropped, the firmware only has room for MAX_PERIODS */
+        int index = offset + ConfigField.START_STOP_PERIODS.getOffset();
+        int periods = 0;
+        int next = 0;
+        while (next < timePeriods.size() && periods < MAX_PERIODS) {
+            int startMins = timePeriods.getStartMins(next);
+            int endMins = timePeriods.getEndMins(next);
+            next++;
+            if (endMins == startMins) {
+                continue;
+            }
+            if (endMins > startMins) {
+                while (next < timePeriods.size() && timePeriods.getStartMins(next) <= endMins
+                        && timePeriods.getEndMins(next) >= timePeriods.getStartMins(next)) {
+                    endMins = Math.max(endMins, timePeriods.getEndMins(next));
+                    next++;
+                }
+            }
             //short minOffset = (short) (isLocalTime()?calculateTimezoneOffsetMins():0);
-            writeShortToLittleEndian(serialization, index, (short) ((short) timePeriods.get(i).getStartMins()));
+            writeShortToLittleEndian(serialization, index, (short) startMins);
             index += 2;
-            writeShortToLittleEndian(serialization, index, (short) ((short) timePeriods.get(i).getEndMins()));
+            writeShortToLittleEndian(serialization, index, (short) endMins);
             index += 2;
+            periods++;
         }
-        for (int i = 0; i < MAX_PERIODS - timePeriods.size(); i++) {
+        serialization[offset + ConfigField.ACTIVE_START_STOP_PERIODS.getOffset()] = (byte) periods;
+        for (int i = 0; i < MAX_PERIODS - periods; i++) {
             writeShortToLittleEndian(serialization, index, (short) 0);
             index += 2;
             writeShortToLittleEndian(serialization, index, (short) 0);
             index += 2;
         }
-        serialization[index++] = (byte) (isLocalTime() ? calculateTimezoneOffsetHours() : 0);
-        serialization[index++] = (byte) (isLowVoltageCutoffEnabled() ? 1 : 0);
-        serialization[index++] = (byte) (isBatteryLevelCheckEnabled() ? 0 : 1);
+        serialization[offset + ConfigField.TIMEZONE_HOURS.getOffset()] = (byte) (isLocalTime() ? calculateTimezoneOffsetHours() : 0);
+        serialization[offset + ConfigField.ENABLE_LOW_VOLTAGE_CUTOFF.getOffset()] = (byte) (isLowVoltageCutoffEnabled() ? 1 : 0);
+        serialization[offset + ConfigField.DISABLE_BATTERY_LEVEL_DISPLAY.getOffset()] = (byte) (isBatteryLevelCheckEnabled() ? 0 : 1);
         /* For non-integer timezones */
-        serialization[index++] = (byte) (isLocalTime() ? (calculateTimezoneOffsetMins() % 60) : 0);
+        serialization[offset + ConfigField.TIMEZONE_MINUTES.getOffset()] = (byte) (isLocalTime() ? (calculateTimezoneOffsetMins() % 60) : 0);
 
         /* Duty cycle disabled (default value = 0) */
-        serialization[index++] = (byte) (isDutyEnabled() ? 0 : 1);
+        serialization[offset + ConfigField.DISABLE_SLEEP_RECORD_CYCLE.getOffset()] = (byte) (isDutyEnabled() ? 0 : 1);
 
         /* Start/stop dates */
        /* DateTimeZone tzLocal = DateTimeZone.getDefault();
@@ -287,9 +372,10 @@ public class RecordingSettings implements Serializable {
             DateTime dtUTC = dt.toDateTime(DateTimeZone.UTC);
 
             earliestRecordingTime = (dtUTC.getMillis())/1000L;
-            writeLongToLittleEndian(serialization, index, earliestRecordingTime);
+            writeLongToLittleEndian(serialization, offset + ConfigField.EARLIEST_RECORDING_TIME.getOffset(), earliestRecordingTime);
+        } else {
+            writeIntToLittleEndian(serialization, offset + ConfigField.EARLIEST_RECORDING_TIME.getOffset(), 0);
         }
-        index += 4;
         if(isLastRecordingEnable() && getLastRecordingDate()!=null) {
             long lastRecordingTime = 0;
             LocalDateTime dtLocal = new LocalDateTime(getLastRecordingDate().getTime());
@@ -301,9 +387,10 @@ public class RecordingSettings implements Serializable {
 
             /* Make latestRecordingTime timestamp inclusive by setting it to the end of the chosen day */
             lastRecordingTime = (dtUTC.getMillis()+1) / 1000L;
-            writeLongToLittleEndian(serialization, index, lastRecordingTime);
+            writeLongToLittleEndian(serialization, offset + ConfigField.LATEST_RECORDING_TIME.getOffset(), lastRecordingTime);
+        } else {
+            writeIntToLittleEndian(serialization, offset + ConfigField.LATEST_RECORDING_TIME.getOffset(), 0);
         }
-        index += 4;
         /* Filter settings */
         int lowerFilter =0;
         int higherFilter = 0;
@@ -324,14 +411,11 @@ public class RecordingSettings implements Serializable {
 
             }
         }
-        writeShortToLittleEndian(serialization, index, (short) lowerFilter);
-        index += 2;
-        writeShortToLittleEndian(serialization, index, (short) higherFilter);
-        index += 2;
+        writeShortToLittleEndian(serialization, offset + ConfigField.LOWER_FILTER_FREQ.getOffset(), (short) lowerFilter);
+        writeShortToLittleEndian(serialization, offset + ConfigField.HIGHER_FILTER_FREQ.getOffset(), (short) higherFilter);
         /* CMV settings */
-        writeShortToLittleEndian(serialization, index, isAmplitudeThresholdingEnabled() ? (short) getAmplitudeThreshold() : (short) 0);
-        index += 2;
-        return serialization;
+        writeShortToLittleEndian(serialization, offset + ConfigField.AMPLITUDE_THRESHOLD.getOffset(), isAmplitudeThresholdingEnabled() ? (short) getAmplitudeThreshold() : (short) 0);
+        return PACKET_SIZE;
     }
 
     /**
@@ -439,12 +523,43 @@ public class RecordingSettings implements Serializable {
     }
 
 
+    /**
+     * The list is no longer the live field of the settings: it is a read-only snapshot and every
+     * method that would change it throws UnsupportedOperationException. Change the periods with
+     * setTimePeriods(), or through getPackedTimePeriods(). The TimePeriods in the list are copies,
+     * changing one does not change the settings either.
+     * @return the recording periods sorted by start minute
+     */
     public ArrayList<TimePeriods> getTimePeriods() {
+        return new TimePeriodsView(timePeriods);
+    }
+
+    /**
+     * @return the recording periods, with primitive accessors that do not allocate
+     */
+    public PackedTimePeriods getPackedTimePeriods() {
         return timePeriods;
     }
 
-    public void setTimePeriods(ArrayList<TimePeriods> timePeriods) {
-        this.timePeriods = timePeriods;
+    /**
+     * @return the minutes of the day covered by the recording periods
+     */
+    public ScheduleBitmap getSchedule() {
+        return ScheduleBitmap.of(timePeriods);
+    }
+
+    /**
+     * Merges overlapping and adjacent recording periods, periods crossing midnight are split in two
+     */
+    public void normalizeTimePeriods() {
+        ScheduleBitmap.normalize(timePeriods, localTime);
+    }
+
+    /**
+     * Replaces the recording periods with a sorted copy of the given ones
+     */
+    public void setTimePeriods(List<? extends TimePeriods> timePeriods) {
+        this.timePeriods.setAll(timePeriods);
     }
 
     public boolean isLedEnabled() {
@@ -606,6 +721,54 @@ public class RecordingSettings implements Serializable {
     public void setLastRecordingEnable(boolean lastRecordingEnable) {
         this.lastRecordingEnable = lastRecordingEnable;
     }
-}
-
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("amplitudeThresholdingEnabled", amplitudeThresholdingEnabled);
+        fields.put("timePeriods", timePeriods.toList());
+        fields.put("ledEnabled", ledEnabled);
+        fields.put("lowVoltageCutoffEnabled", lowVoltageCutoffEnabled);
+        fields.put("batteryLevelCheckEnabled", batteryLevelCheckEnabled);
+        fields.put("sampleRate", sampleRate);
+        fields.put("gain", gain);
+        fields.put("recordDuration", recordDuration);
+        fields.put("sleepDuration", sleepDuration);
+        fields.put("localTime", localTime);
+        fields.put("dutyEnabled", dutyEnabled);
+        fields.put("passFiltersEnabled", passFiltersEnabled);
+        fields.put("filterType", filterType);
+        fields.put("lowerFilter", lowerFilter);
+        fields.put("higherFilter", higherFilter);
+        fields.put("amplitudeThreshold", amplitudeThreshold);
+        fields.put("firstRecordingDate", firstRecordingDate);
+        fields.put("lastRecordingDate", lastRecordingDate);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        amplitudeThresholdingEnabled = fields.get("amplitudeThresholdingEnabled", false);
+        timePeriods = new PackedTimePeriods(MAX_PERIODS);
+        ArrayList<TimePeriods> periods = (ArrayList<TimePeriods>) fields.get("timePeriods", null);
+        if (periods != null) {
+            timePeriods.addAll(periods);
+        }
+        ledEnabled = fields.get("ledEnabled", false);
+        lowVoltageCutoffEnabled = fields.get("lowVoltageCutoffEnabled", false);
+        batteryLevelCheckEnabled = fields.get("batteryLevelCheckEnabled", false);
+        sampleRate = fields.get("sampleRate", 0);
+        gain = fields.get("gain", (byte) 0);
+        recordDuration = fields.get("recordDuration", 0);
+        sleepDuration = fields.get("sleepDuration", 0);
+        localTime = fields.get("localTime", false);
+        dutyEnabled = fields.get("dutyEnabled", false);
+        passFiltersEnabled = fields.get("passFiltersEnabled", false);
+        filterType = (FilterType) fields.get("filterType", null);
+        lowerFilter = fields.get("lowerFilter", 0);
+        higherFilter = fields.get("higherFilter", 0);
+        amplitudeThreshold = fields.get("amplitudeThreshold", 0);
+        firstRecordingDate = (Date) fields.get("firstRecordingDate", null);
+        lastRecordingDate = (Date) fields.get("lastRecordingDate", null);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.readIntFromLittleEndian;
+import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.readShortFromLittleEndian;
+import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.readUnsignedIntFromLittleEndian;
+
+/**
+ * The RecordingSettingsView is a flyweight over a raw AudioMoth configuration packet.
+ * Every getter decodes its field from the buffer on access, nothing else is materialized,
+ * so checking a few fields of a reply costs no allocation. The view can be re-pointed to
+ * another packet with wrap() and converted to a full RecordingSettings with toRecordingSettings().
+ *
+ * The view does not copy the buffer, it must not be used once the buffer has been reused.
+ */
+public class RecordingSettingsView {
+
+    private static final int UINT16_MAX = 0xFFFF;
+    private static final int PERIOD_SIZE = 4;
+
+    private byte[] buffer;
+    private int offset;
+
+    public RecordingSettingsView() {
+    }
+
+    /**
+     * @param buffer holds the packet
+     * @param offset index of the first byte of the packet, 1 for a SET_APP_PACKET reply
+     */
+    public RecordingSettingsView(byte[] buffer, int offset) {
+        wrap(buffer, offset);
+    }
+
+    /**
+     * Points the view to another packet
+     * @return this view
+     */
+    public RecordingSettingsView wrap(byte[] buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the unix time in seconds written when the packet was serialized
+     */
+    public long getTimestamp() {
+        return readUnsignedIntFromLittleEndian(buffer, offset + ConfigField.TIME.getOffset());
+    }
+
+    public byte getGain() {
+        return buffer[offset + ConfigField.GAIN.getOffset()];
+    }
+
+    /**
+     * @return the sample rate in Hz as shown to the user, the ADC rate divided by the divider
+     */
+    public int getSampleRate() {
+        int divider = getSampleRateDivider();
+        return divider == 0 ? 0 : getConfigSampleRate() / divider;
+    }
+
+    /**
+     * @return the ADC sample rate in Hz before the divider
+     */
+    public int getConfigSampleRate() {
+        return readIntFromLittleEndian(buffer, offset + ConfigField.SAMPLE_RATE.getOffset());
+    }
+
+    public int getSampleRateDivider() {
+        return buffer[offset + ConfigField.SAMPLE_RATE_DIVIDER.getOffset()];
+    }
+
+    public int getSleepDuration() {
+        return readShortFromLittleEndian(buffer, offset + ConfigField.SLEEP_DURATION.getOffset());
+    }
+
+    public int getRecordDuration() {
+        return readShortFromLittleEndian(buffer, offset + ConfigField.RECORD_DURATION.getOffset());
+    }
+
+    public boolean isLedEnabled() {
+        return buffer[offset + ConfigField.ENABLE_LED.getOffset()] != 0;
+    }
+
+    public int getTimePeriodCount() {
+        return buffer[offset + ConfigField.ACTIVE_START_STOP_PERIODS.getOffset()];
+    }
+
+    public int getStartMins(int period) {
+        return readShortFromLittleEndian(buffer, offset + ConfigField.START_STOP_PERIODS.getOffset() + period * PERIOD_SIZE);
+    }
+
+    public int getEndMins(int period) {
+        return readShortFromLittleEndian(buffer, offset + ConfigField.START_STOP_PERIODS.getOffset() + period * PERIOD_SIZE + 2);
+    }
+
+    public boolean isLocalTime() {
+        return buffer[offset + ConfigField.TIMEZONE_HOURS.getOffset()] != 0;
+    }
+
+    public boolean isLowVoltageCutoffEnabled() {
+        return buffer[offset + ConfigField.ENABLE_LOW_VOLTAGE_CUTOFF.getOffset()] != 0;
+    }
+
+    public boolean isBatteryLevelCheckEnabled() {
+        return buffer[offset + ConfigField.DISABLE_BATTERY_LEVEL_DISPLAY.getOffset()] == 0;
+    }
+
+    public boolean isDutyEnabled() {
+        return buffer[offset + ConfigField.DISABLE_SLEEP_RECORD_CYCLE.getOffset()] == 0;
+    }
+
+    /**
+     * @return the earliest recording time in unix seconds, 0 if it is not set
+     */
+    public long getEarliestRecordingTime() {
+        return readUnsignedIntFromLittleEndian(buffer, offset + ConfigField.EARLIEST_RECORDING_TIME.getOffset());
+    }
+
+    /**
+     * @return the latest recording time in unix seconds, 0 if it is not set
+     */
+    public long getLatestRecordingTime() {
+        return readUnsignedIntFromLittleEndian(buffer, offset + ConfigField.LATEST_RECORDING_TIME.getOffset());
+    }
+
+    public boolean isPassFiltersEnabled() {
+        return getRawLowerFilter() != 0 || getRawHigherFilter() != 0;
+    }
+
+    /**
+     * @return the filter type, or null if the filters are disabled
+     */
+    public FilterType getFilterType() {
+        int lowFil = getRawLowerFilter();
+        int hiFil = getRawHigherFilter();
+        if (lowFil == 0 && hiFil == 0) {
+            return null;
+        } else if (lowFil == UINT16_MAX && hiFil != UINT16_MAX) {
+            return FilterType.LOW;
+        } else if (hiFil == UINT16_MAX && lowFil != UINT16_MAX) {
+            return FilterType.HIGH;
+        }
+        return FilterType.BAND;
+    }
+
+    /**
+     * @return the lower filter frequency in Hz, 0 if there is none
+     */
+    public int getLowerFilter() {
+        int lowFil = getRawLowerFilter();
+        return lowFil == UINT16_MAX ? 0 : lowFil * 100;
+    }
+
+    /**
+     * @return the higher filter frequency in Hz, half the sample rate if there is none
+     */
+    public int getHigherFilter() {
+        int hiFil = getRawHigherFilter();
+        if (hiFil == UINT16_MAX) {
+            return getSampleRate() / 2;
+        }
+        return hiFil * 100;
+    }
+
+    public int getAmplitudeThreshold() {
+        return readShortFromLittleEndian(buffer, offset + ConfigField.AMPLITUDE_THRESHOLD.getOffset());
+    }
+
+    public boolean isAmplitudeThresholdingEnabled() {
+        return getAmplitudeThreshold() > 0;
+    }
+
+    /**
+     * Materializes the full RecordingSettings, the packet is copied so the result outlives the buffer
+     * @return a new RecordingSettings
+     */
+    public RecordingSettings toRecordingSettings() {
+        byte[] packet = new byte[64];
+        System.arraycopy(buffer, offset, packet, 0, RecordingSettings.PACKET_SIZE);
+        return new RecordingSettings(packet);
+    }
+
+    /**
+     * @return the ConfigFingerprint of the packet, equal to RecordingSettings.getFingerprint() of the settings it was written from
+     */
+    public long getFingerprint() {
+        return ConfigFingerprint.compute(buffer, offset, RecordingSettings.PACKET_SIZE);
+    }
+
+    /**
+     * @return a view over a private copy of the packet, safe to keep after the buffer is reused
+     */
+    public RecordingSettingsView copy() {
+        byte[] packet = new byte[RecordingSettings.PACKET_SIZE];
+        System.arraycopy(buffer, offset, packet, 0, RecordingSettings.PACKET_SIZE);
+        return new RecordingSettingsView(packet, 0);
+    }
+
+    private int getRawLowerFilter() {
+        return readShortFromLittleEndian(buffer, offset + ConfigField.LOWER_FILTER_FREQ.getOffset());
+    }
+
+    private int getRawHigherFilter() {
+        return readShortFromLittleEndian(buffer, offset + ConfigField.HIGHER_FILTER_FREQ.getOffset());
+    }
+}
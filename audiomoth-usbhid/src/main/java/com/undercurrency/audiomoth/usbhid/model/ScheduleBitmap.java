@@ -0,0 +1,331 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ScheduleBitmap holds a day of recording schedule with one bit per minute, bit m is set when the
+ * minute m (UTC, from midnight) is covered by a recording period.
+ * Union, intersection, overlap and coverage work a 64 minute word at a time, so validating a
+ * schedule while the user edits it costs 23 word operations.
+ *
+ * Periods are half open, [startMins, endMins), a period with endMins lower than startMins
+ * wraps around midnight.
+ */
+public class ScheduleBitmap {
+
+    public static final int MINUTES_IN_DAY = 1440;
+    private static final int WORDS = (MINUTES_IN_DAY + 63) >>> 6;
+
+    private final long[] words = new long[WORDS];
+
+    public ScheduleBitmap() {
+    }
+
+    public ScheduleBitmap(ScheduleBitmap other) {
+        System.arraycopy(other.words, 0, words, 0, WORDS);
+    }
+
+    public static ScheduleBitmap of(List<? extends TimePeriods> timePeriods) {
+        ScheduleBitmap bitmap = new ScheduleBitmap();
+        for (TimePeriods tp : timePeriods) {
+            bitmap.add(tp.getStartMins(), tp.getEndMins());
+        }
+        return bitmap;
+    }
+
+    public static ScheduleBitmap of(PackedTimePeriods timePeriods) {
+        ScheduleBitmap bitmap = new ScheduleBitmap();
+        for (int i = 0; i < timePeriods.size(); i++) {
+            bitmap.add(timePeriods.getStartMins(i), timePeriods.getEndMins(i));
+        }
+        return bitmap;
+    }
+
+    /**
+     * Covers the minutes of a period
+     * @param startMins first minute of the period, 0 to MINUTES_IN_DAY
+     * @param endMins minute after the period, 0 to MINUTES_IN_DAY
+     * @return this bitmap
+     */
+    public ScheduleBitmap add(int startMins, int endMins) {
+        checkMinute(startMins);
+        checkMinute(endMins);
+        if (endMins < startMins) {
+            setRange(startMins, MINUTES_IN_DAY, true);
+            setRange(0, endMins, true);
+        } else {
+            setRange(startMins, endMins, true);
+        }
+        return this;
+    }
+
+    /**
+     * Uncovers the minutes of a period
+     * @return this bitmap
+     */
+    public ScheduleBitmap remove(int startMins, int endMins) {
+        checkMinute(startMins);
+        checkMinute(endMins);
+        if (endMins < startMins) {
+            setRange(startMins, MINUTES_IN_DAY, false);
+            setRange(0, endMins, false);
+        } else {
+            setRange(startMins, endMins, false);
+        }
+        return this;
+    }
+
+    public boolean isCovered(int minute) {
+        if (minute < 0 || minute >= MINUTES_IN_DAY) {
+            return false;
+        }
+        return (words[minute >>> 6] & (1L << minute)) != 0;
+    }
+
+    /**
+     * @return a new bitmap with the minutes covered by this or the other one
+     */
+    public ScheduleBitmap union(ScheduleBitmap other) {
+        ScheduleBitmap result = new ScheduleBitmap();
+        for (int i = 0; i < WORDS; i++) {
+            result.words[i] = words[i] | other.words[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return a new bitmap with the minutes covered by both bitmaps
+     */
+    public ScheduleBitmap intersection(ScheduleBitmap other) {
+        ScheduleBitmap result = new ScheduleBitmap();
+        for (int i = 0; i < WORDS; i++) {
+            result.words[i] = words[i] & other.words[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return true if at least one minute is covered by both bitmaps
+     */
+    public boolean intersects(ScheduleBitmap other) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every minute covered by the other bitmap is covered by this one
+     */
+    public boolean contains(ScheduleBitmap other) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((other.words[i] & ~words[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of covered minutes
+     */
+    public int getCoveredMinutes() {
+        int minutes = 0;
+        for (int i = 0; i < WORDS; i++) {
+            minutes += Long.bitCount(words[i]);
+        }
+        return minutes;
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < WORDS; i++) {
+            if (words[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the whole day is covered
+     */
+    public boolean isFull() {
+        return getCoveredMinutes() == MINUTES_IN_DAY;
+    }
+
+    /**
+     * @return the number of periods toPeriods() would return, runs of covered minutes
+     */
+    public int getPeriodCount() {
+        int count = 0;
+        int minute = nextCovered(0);
+        while (minute >= 0) {
+            count++;
+            minute = nextCovered(nextUncovered(minute));
+        }
+        return count;
+    }
+
+    /**
+     * Writes the covered minutes as merged periods, sorted and never overlapping or adjacent
+     * @param timePeriods the destination, it is cleared first
+     * @param localTime the localTime flag of the new periods
+     */
+    public void toPeriods(PackedTimePeriods timePeriods, boolean localTime) {
+        timePeriods.clear();
+        int start = nextCovered(0);
+        while (start >= 0) {
+            int end = nextUncovered(start);
+            timePeriods.add(start, end, localTime);
+            start = nextCovered(end);
+        }
+    }
+
+    /**
+     * @return the covered minutes as merged periods
+     */
+    public PackedTimePeriods toPeriods() {
+        PackedTimePeriods timePeriods = new PackedTimePeriods(getPeriodCount());
+        toPeriods(timePeriods, false);
+        return timePeriods;
+    }
+
+    /**
+     * @return true if at least two of the periods cover the same minute
+     */
+    public static boolean hasOverlaps(PackedTimePeriods timePeriods) {
+        ScheduleBitmap covered = new ScheduleBitmap();
+        ScheduleBitmap period = new ScheduleBitmap();
+        for (int i = 0; i < timePeriods.size(); i++) {
+            Arrays.fill(period.words, 0L);
+            period.add(timePeriods.getStartMins(i), timePeriods.getEndMins(i));
+            if (covered.intersects(period)) {
+                return true;
+            }
+            for (int w = 0; w < WORDS; w++) {
+                covered.words[w] |= period.words[w];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the periods with their merged form, overlapping and adjacent periods become one
+     */
+    public static void normalize(PackedTimePeriods timePeriods, boolean localTime) {
+        of(timePeriods).toPeriods(timePeriods, localTime);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(words, ((ScheduleBitmap) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduleBitmap{" +
+                "coveredMinutes=" + getCoveredMinutes() +
+                ", periods=" + toPeriods() +
+                '}';
+    }
+
+    /**
+     * @return the first covered minute from minute on, -1 if there is none
+     */
+    private int nextCovered(int minute) {
+        if (minute >= MINUTES_IN_DAY) {
+            return -1;
+        }
+        int w = minute >>> 6;
+        long word = words[w] & (-1L << minute);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == WORDS) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * @return the first uncovered minute from minute on, MINUTES_IN_DAY if there is none
+     */
+    private int nextUncovered(int minute) {
+        if (minute >= MINUTES_IN_DAY) {
+            return MINUTES_IN_DAY;
+        }
+        int w = minute >>> 6;
+        long word = ~words[w] & (-1L << minute);
+        while (true) {
+            if (word != 0) {
+                return Math.min(MINUTES_IN_DAY, (w << 6) + Long.numberOfTrailingZeros(word));
+            }
+            if (++w == WORDS) {
+                return MINUTES_IN_DAY;
+            }
+            word = ~words[w];
+        }
+    }
+
+    private void setRange(int from, int to, boolean covered) {
+        if (from >= to) {
+            return;
+        }
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            applyMask(firstWord, firstMask & lastMask, covered);
+            return;
+        }
+        applyMask(firstWord, firstMask, covered);
+        for (int i = firstWord + 1; i < lastWord; i++) {
+            words[i] = covered ? -1L : 0L;
+        }
+        applyMask(lastWord, lastMask, covered);
+    }
+
+    private void applyMask(int word, long mask, boolean covered) {
+        if (covered) {
+            words[word] |= mask;
+        } else {
+            words[word] &= ~mask;
+        }
+    }
+
+    private static void checkMinute(int minute) {
+        if (minute < 0 || minute > MINUTES_IN_DAY) {
+            throw new IllegalArgumentException("Minute out of the day " + minute);
+        }
+    }
+}
@@ -88,24 +88,14 @@ public class TimePeriods implements Comparable<TimePeriods>, Serializable {
     }
 
     /**
-     * Compare two TimePeriods by its string representation
+     * Compare two TimePeriods by start and then end minute, the order of the firmware packet
      * @param otherTimePeriod
      * @return
      */
     @Override
     public int compareTo(TimePeriods otherTimePeriod) {
         if(otherTimePeriod!=null) {
-            String[] tp1 = this.toString().split(":|\\s");
-            String[] tp2 = otherTimePeriod.toString().split(":|\\s");
-            Integer h1 = Integer.valueOf(tp1[0]);
-            Integer h2 = Integer.valueOf(tp2[0]);
-            if (h1.equals(h2)) {
-                Integer m1 = Integer.valueOf(tp1[1]);
-                Integer m2 = Integer.valueOf(tp2[1]);
-                return m1.compareTo(m2);
-            } else {
-                return h1.compareTo(h2);
-            }
+            return PackedTimePeriods.compare(startMins, endMins, otherTimePeriod.startMins, otherTimePeriod.endMins);
         }
         return -1;
     }
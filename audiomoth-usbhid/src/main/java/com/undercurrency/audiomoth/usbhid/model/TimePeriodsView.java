@@ -0,0 +1,143 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The read-only list of recording periods returned by RecordingSettings.getTimePeriods().
+ * It stays an ArrayList so the getter keeps its signature, every method that would change the list
+ * throws UnsupportedOperationException. It is serialized as a plain ArrayList.
+ */
+final class TimePeriodsView extends ArrayList<TimePeriods> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<TimePeriods> readOnly;
+
+    TimePeriodsView(PackedTimePeriods timePeriods) {
+        super(timePeriods.toList());
+        this.readOnly = Collections.unmodifiableList(new ArrayList<TimePeriods>(this));
+    }
+
+    @Override
+    public boolean add(TimePeriods timePeriods) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(int index, TimePeriods element) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends TimePeriods> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends TimePeriods> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public TimePeriods set(int index, TimePeriods element) {
+        throw readOnly();
+    }
+
+    @Override
+    public TimePeriods remove(int index) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super TimePeriods> filter) {
+        throw readOnly();
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<TimePeriods> operator) {
+        throw readOnly();
+    }
+
+    @Override
+    public void sort(Comparator<? super TimePeriods> c) {
+        throw readOnly();
+    }
+
+    @Override
+    public Iterator<TimePeriods> iterator() {
+        return readOnly.iterator();
+    }
+
+    @Override
+    public ListIterator<TimePeriods> listIterator() {
+        return readOnly.listIterator();
+    }
+
+    @Override
+    public ListIterator<TimePeriods> listIterator(int index) {
+        return readOnly.listIterator(index);
+    }
+
+    @Override
+    public List<TimePeriods> subList(int fromIndex, int toIndex) {
+        return readOnly.subList(fromIndex, toIndex);
+    }
+
+    private Object writeReplace() {
+        return new ArrayList<TimePeriods>(this);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The time periods are read-only, change them with RecordingSettings.setTimePeriods()");
+    }
+}
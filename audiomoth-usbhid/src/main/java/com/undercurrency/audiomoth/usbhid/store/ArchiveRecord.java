@@ -0,0 +1,91 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import com.undercurrency.audiomoth.usbhid.model.ConfigFingerprint;
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettingsView;
+
+/**
+ * ArchiveRecord one configuration read from a ConfigArchive.
+ * The packet is zero padded to RecordingSettings.PACKET_SIZE and decoded lazily through getView(),
+ * the full RecordingSettings is only built by getRecordingSettings().
+ */
+public class ArchiveRecord {
+
+    private final long recordedAt;
+    private final DeviceInfo deviceInfo;
+    private final int packetLength;
+    private final RecordingSettingsView view;
+
+    ArchiveRecord(long recordedAt, DeviceInfo deviceInfo, byte[] packet, int packetLength) {
+        this.recordedAt = recordedAt;
+        this.deviceInfo = deviceInfo;
+        this.packetLength = packetLength;
+        this.view = new RecordingSettingsView(packet, 0);
+    }
+
+    /**
+     * @return the unix time in milliseconds when the record was written
+     */
+    public long getRecordedAt() {
+        return recordedAt;
+    }
+
+    /**
+     * @return the DeviceInfo of the unit, null if the record has none
+     */
+    public DeviceInfo getDeviceInfo() {
+        return deviceInfo;
+    }
+
+    /**
+     * @return the length of the packet in the firmware layout of the unit
+     */
+    public int getPacketLength() {
+        return packetLength;
+    }
+
+    public RecordingSettingsView getView() {
+        return view;
+    }
+
+    public long getFingerprint() {
+        return view.getFingerprint();
+    }
+
+    /**
+     * @return the settings decoded from the packet, carrying the DeviceInfo of the record
+     */
+    public RecordingSettings getRecordingSettings() {
+        RecordingSettings rs = view.toRecordingSettings();
+        rs.setDeviceInfo(deviceInfo);
+        return rs;
+    }
+
+    @Override
+    public String toString() {
+        return "ArchiveRecord{" +
+                "recordedAt=" + recordedAt +
+                ", deviceId=" + (deviceInfo == null ? null : deviceInfo.getDeviceId()) +
+                ", packetLength=" + packetLength +
+                ", fingerprint=" + ConfigFingerprint.toHexString(getFingerprint()) +
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The ConfigArchive format keeps a history of AudioMoth configurations in a compact binary stream.
+ * Each record holds the configuration packet as the firmware receives it, plus a small header
+ * with the time of the record and the DeviceInfo of the unit.
+ *
+ * <pre>
+ * header  : magic "AMCA", version (u8)
+ * record  : length (u16, bytes after this field)
+ *           recordedAt (i64, unix millis)
+ *           flags (u8, see the FLAG constants)
+ *           deviceId (8 bytes with FLAG_BINARY_DEVICE_ID, a nullable string otherwise)
+ *           firmwareVersion (3 bytes with FLAG_BINARY_FIRMWARE, a nullable string otherwise)
+ *           battery, date (nullable strings)
+ *           packetLength (u8), packet (packetLength bytes)
+ * </pre>
+ *
+ * Numbers are big endian as written by DataOutputStream, the packet keeps the little endian layout
+ * of the firmware. A nullable string is a presence byte followed by a modified UTF-8 string.
+ * The DeviceInfo fields are only present with FLAG_DEVICE_INFO.
+ * Readers skip the bytes of a record they do not understand, so later versions may append fields.
+ */
+public final class ConfigArchive {
+
+    static final byte[] MAGIC = {'A', 'M', 'C', 'A'};
+    public static final int VERSION = 1;
+    static final int FLAG_DEVICE_INFO = 0x01;
+    /**
+     * The device id is 16 hexadecimal digits, stored as 8 bytes
+     */
+    static final int FLAG_BINARY_DEVICE_ID = 0x02;
+    /**
+     * The firmware version is three numbers up to 255, stored as 3 bytes
+     */
+    static final int FLAG_BINARY_FIRMWARE = 0x04;
+    static final int DEVICE_ID_DIGITS = 16;
+    static final int MAX_RECORD_LENGTH = 0xFFFF;
+
+    private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+
+    private ConfigArchive() {
+    }
+
+    /**
+     * @return true if the id is written upper case hexadecimal, the way DeviceInfo decodes it
+     */
+    static boolean isHexDeviceId(String deviceId) {
+        if (deviceId == null || deviceId.length() != DEVICE_ID_DIGITS) {
+            return false;
+        }
+        for (int i = 0; i < deviceId.length(); i++) {
+            char c = deviceId.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'A' || c > 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes an id accepted by isHexDeviceId() as 8 bytes
+     */
+    static void writeHexDeviceId(DataOutput out, String deviceId) throws IOException {
+        for (int i = 0; i < DEVICE_ID_DIGITS; i += 2) {
+            out.writeByte((Character.digit(deviceId.charAt(i), 16) << 4) | Character.digit(deviceId.charAt(i + 1), 16));
+        }
+    }
+
+    static String readHexDeviceId(DataInput in) throws IOException {
+        char[] hexChars = new char[DEVICE_ID_DIGITS];
+        for (int i = 0; i < hexChars.length; i += 2) {
+            int v = in.readUnsignedByte();
+            hexChars[i] = HEX_ARRAY[v >>> 4];
+            hexChars[i + 1] = HEX_ARRAY[v & 0x0F];
+        }
+        return new String(hexChars);
+    }
+}
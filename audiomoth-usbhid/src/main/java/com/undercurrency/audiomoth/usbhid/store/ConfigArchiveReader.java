@@ -0,0 +1,110 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The ConfigArchiveReader reads a ConfigArchive stream one record at a time.
+ * The header is checked by the constructor, archives written by a newer major format are rejected.
+ */
+public class ConfigArchiveReader implements Closeable {
+
+    private final DataInputStream in;
+    private final int version;
+    private byte[] recordBuffer = new byte[128];
+
+    public ConfigArchiveReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        byte[] magic = new byte[ConfigArchive.MAGIC.length];
+        this.in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != ConfigArchive.MAGIC[i]) {
+                throw new IOException("Not a configuration archive");
+            }
+        }
+        version = this.in.readUnsignedByte();
+        if (version > ConfigArchive.VERSION) {
+            throw new IOException("Unsupported archive version " + version);
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the next record, or null at the end of the archive
+     * @throws EOFException if the archive ends in the middle of a record
+     */
+    public ArchiveRecord read() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        int length = (first << 8) | in.readUnsignedByte();
+        if (recordBuffer.length < length) {
+            recordBuffer = new byte[Math.max(length, recordBuffer.length * 2)];
+        }
+        in.readFully(recordBuffer, 0, length);
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(recordBuffer, 0, length));
+        long recordedAt = record.readLong();
+        int flags = record.readUnsignedByte();
+        DeviceInfo deviceInfo = null;
+        if ((flags & ConfigArchive.FLAG_DEVICE_INFO) != 0) {
+            deviceInfo = new DeviceInfo();
+            if ((flags & ConfigArchive.FLAG_BINARY_DEVICE_ID) != 0) {
+                deviceInfo.setDeviceId(ConfigArchive.readHexDeviceId(record));
+            } else {
+                deviceInfo.setDeviceId(readNullableString(record));
+            }
+            if ((flags & ConfigArchive.FLAG_BINARY_FIRMWARE) != 0) {
+                deviceInfo.setFirmwareVersion(record.readUnsignedByte() + "." + record.readUnsignedByte() + "." + record.readUnsignedByte());
+            } else {
+                deviceInfo.setFirmwareVersion(readNullableString(record));
+            }
+            deviceInfo.setBattery(readNullableString(record));
+            deviceInfo.setDate(readNullableString(record));
+        }
+        int packetLength = record.readUnsignedByte();
+        if (packetLength > RecordingSettings.PACKET_SIZE) {
+            throw new IOException("Invalid packet length " + packetLength);
+        }
+        byte[] packet = new byte[RecordingSettings.PACKET_SIZE];
+        record.readFully(packet, 0, packetLength);
+        return new ArchiveRecord(recordedAt, deviceInfo, packet, packetLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static String readNullableString(DataInputStream record) throws IOException {
+        return record.readBoolean() ? record.readUTF() : null;
+    }
+}
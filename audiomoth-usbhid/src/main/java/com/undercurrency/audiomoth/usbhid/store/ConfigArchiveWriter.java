@@ -0,0 +1,185 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import com.undercurrency.audiomoth.usbhid.model.ConfigPacketCodec;
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettingsView;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The ConfigArchiveWriter appends configurations to a ConfigArchive stream one record at a time,
+ * so a history of any size is written without holding it in memory.
+ * The header is written by the constructor, the writer is not thread safe.
+ *
+ * The firmware version of the last record is parsed once and kept, a history of the same units
+ * is written without parsing the same version string again for every record.
+ */
+public class ConfigArchiveWriter implements Closeable, Flushable {
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(128);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final byte[] packet = new byte[RecordingSettings.PACKET_SIZE];
+    private final byte[] firmwareBytes = new byte[3];
+    private boolean firmwareParsed;
+    private String firmwareVersion;
+    private ConfigPacketCodec codec;
+    private boolean binaryFirmware;
+
+    public ConfigArchiveWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out));
+        this.out.write(ConfigArchive.MAGIC);
+        this.out.writeByte(ConfigArchive.VERSION);
+    }
+
+    /**
+     * Writes the settings, encoded for the firmware of their DeviceInfo
+     * @param recordedAt unix time in milliseconds
+     */
+    public void write(long recordedAt, RecordingSettings rs) throws IOException {
+        DeviceInfo deviceInfo = rs.getDeviceInfo();
+        parseFirmware(deviceInfo == null ? null : deviceInfo.getFirmwareVersion());
+        int packetLength = codec.encode(rs, packet, 0);
+        write(recordedAt, deviceInfo, packet, 0, packetLength);
+    }
+
+    /**
+     * Writes a packet echoed by a device
+     * @param recordedAt unix time in milliseconds
+     * @param deviceInfo the unit, null if unknown
+     */
+    public void write(long recordedAt, DeviceInfo deviceInfo, RecordingSettingsView view) throws IOException {
+        parseFirmware(deviceInfo == null ? null : deviceInfo.getFirmwareVersion());
+        int packetLength = codec.getPacketLength();
+        write(recordedAt, deviceInfo, view.getBuffer(), view.getOffset(), packetLength);
+    }
+
+    /**
+     * Writes a raw packet
+     * @param packetLength the length of the packet in the firmware layout, at most RecordingSettings.PACKET_SIZE
+     */
+    public void write(long recordedAt, DeviceInfo deviceInfo, byte[] packet, int offset, int packetLength) throws IOException {
+        if (packetLength < 0 || packetLength > RecordingSettings.PACKET_SIZE) {
+            throw new IllegalArgumentException("Invalid packet length " + packetLength);
+        }
+        recordBytes.reset();
+        record.writeLong(recordedAt);
+        if (deviceInfo == null) {
+            record.writeByte(0);
+        } else {
+            String deviceId = deviceInfo.getDeviceId();
+            parseFirmware(deviceInfo.getFirmwareVersion());
+            boolean binaryDeviceId = ConfigArchive.isHexDeviceId(deviceId);
+            record.writeByte(ConfigArchive.FLAG_DEVICE_INFO
+                    | (binaryDeviceId ? ConfigArchive.FLAG_BINARY_DEVICE_ID : 0)
+                    | (binaryFirmware ? ConfigArchive.FLAG_BINARY_FIRMWARE : 0));
+            if (binaryDeviceId) {
+                ConfigArchive.writeHexDeviceId(record, deviceId);
+            } else {
+                writeNullableString(deviceId);
+            }
+            if (binaryFirmware) {
+                record.write(firmwareBytes);
+            } else {
+                writeNullableString(firmwareVersion);
+            }
+            writeNullableString(deviceInfo.getBattery());
+            writeNullableString(deviceInfo.getDate());
+        }
+        record.writeByte(packetLength);
+        record.write(packet, offset, packetLength);
+        record.flush();
+        if (recordBytes.size() > ConfigArchive.MAX_RECORD_LENGTH) {
+            throw new IOException("Record too long " + recordBytes.size());
+        }
+        out.writeShort(recordBytes.size());
+        recordBytes.writeTo(out);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Keeps the codec and the binary form of a firmware version, unless it is the one of the last record
+     */
+    private void parseFirmware(String version) {
+        if (firmwareParsed && (version == null ? firmwareVersion == null : version.equals(firmwareVersion))) {
+            return;
+        }
+        firmwareVersion = version;
+        codec = ConfigPacketCodec.forFirmware(version);
+        binaryFirmware = isByteVersion(version);
+        if (binaryFirmware) {
+            String[] numbers = version.split("\\.");
+            for (int i = 0; i < firmwareBytes.length; i++) {
+                firmwareBytes[i] = (byte) Integer.parseInt(numbers[i]);
+            }
+        }
+        firmwareParsed = true;
+    }
+
+    /**
+     * @return true if the version is three numbers up to 255 without leading zeros, as the firmware reports it
+     */
+    private static boolean isByteVersion(String version) {
+        if (version == null) {
+            return false;
+        }
+        String[] numbers = version.split("\\.", -1);
+        if (numbers.length != 3) {
+            return false;
+        }
+        for (String number : numbers) {
+            if (number.isEmpty() || number.length() > 3 || (number.length() > 1 && number.charAt(0) == '0')) {
+                return false;
+            }
+            for (int i = 0; i < number.length(); i++) {
+                if (number.charAt(i) < '0' || number.charAt(i) > '9') {
+                    return false;
+                }
+            }
+            if (Integer.parseInt(number) > 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeNullableString(String value) throws IOException {
+        record.writeBoolean(value != null);
+        if (value != null) {
+            record.writeUTF(value);
+        }
+    }
+}
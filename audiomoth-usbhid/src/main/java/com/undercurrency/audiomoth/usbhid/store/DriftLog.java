@@ -0,0 +1,53 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+/**
+ * The DriftLog format keeps the clock readings of AudioMoth units in an append-only binary stream.
+ * Each record is one comparison of a device clock with the host clock.
+ *
+ * <pre>
+ * header  : magic "AMDL", version (u8)
+ * record  : length (u8, bytes after this field)
+ *           flags (u8, see the FLAG constants)
+ *           deviceId (8 bytes with FLAG_BINARY_DEVICE_ID, a modified UTF-8 string otherwise)
+ *           hostMillis (i64, unix millis of the reading)
+ *           offsetMillis (f32, device clock minus host clock)
+ *           uncertaintyMillis (f32, half width of the offset interval)
+ * </pre>
+ *
+ * Numbers are big endian as written by DataOutputStream, a record with a binary id takes 26 bytes.
+ * Readers skip the bytes of a record they do not understand, so later versions may append fields.
+ */
+public final class DriftLog {
+
+    static final byte[] MAGIC = {'A', 'M', 'D', 'L'};
+    public static final int VERSION = 1;
+    /**
+     * The device id is 16 hexadecimal digits, stored as 8 bytes
+     */
+    static final int FLAG_BINARY_DEVICE_ID = 0x01;
+    /**
+     * The device clock was set at this reading, the offset is the residual after the set
+     */
+    static final int FLAG_CLOCK_SET = 0x02;
+    static final int MAX_RECORD_LENGTH = 0xFF;
+
+    private DriftLog() {
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The DriftLogReader reads a DriftLog stream one record at a time.
+ * The header is checked by the constructor, logs written by a newer major format are rejected.
+ *
+ * A log torn in the middle of a record, by a crash while appending, throws EOFException at that
+ * record. getCompleteLength() then gives the length of the log without it.
+ */
+public class DriftLogReader implements Closeable {
+
+    private final DataInputStream in;
+    private final int version;
+    private final byte[] recordBuffer = new byte[DriftLog.MAX_RECORD_LENGTH];
+    private long completeLength;
+
+    public DriftLogReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        byte[] magic = new byte[DriftLog.MAGIC.length];
+        this.in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != DriftLog.MAGIC[i]) {
+                throw new IOException("Not a drift log");
+            }
+        }
+        version = this.in.readUnsignedByte();
+        if (version > DriftLog.VERSION) {
+            throw new IOException("Unsupported drift log version " + version);
+        }
+        completeLength = magic.length + 1;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the next record, or null at the end of the log
+     * @throws EOFException if the log ends in the middle of a record
+     */
+    public DriftRecord read() throws IOException {
+        int length = in.read();
+        if (length < 0) {
+            return null;
+        }
+        in.readFully(recordBuffer, 0, length);
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(recordBuffer, 0, length));
+        int flags = record.readUnsignedByte();
+        String deviceId = (flags & DriftLog.FLAG_BINARY_DEVICE_ID) != 0
+                ? ConfigArchive.readHexDeviceId(record) : record.readUTF();
+        long hostMillis = record.readLong();
+        float offsetMillis = record.readFloat();
+        float uncertaintyMillis = record.readFloat();
+        completeLength += 1 + length;
+        return new DriftRecord(deviceId, hostMillis, offsetMillis, uncertaintyMillis, (flags & DriftLog.FLAG_CLOCK_SET) != 0);
+    }
+
+    /**
+     * @return the bytes of the header and of the records read so far
+     */
+    public long getCompleteLength() {
+        return completeLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The DriftLogWriter appends clock readings to a DriftLog stream.
+ * The writer is not thread safe.
+ */
+public class DriftLogWriter implements Closeable, Flushable {
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(32);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+    /**
+     * @param out the stream, positioned after the header if writeHeader is false
+     * @param writeHeader false to append to a stream that already has its header
+     */
+    public DriftLogWriter(OutputStream out, boolean writeHeader) throws IOException {
+        this.out = new DataOutputStream(out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out));
+        if (writeHeader) {
+            this.out.write(DriftLog.MAGIC);
+            this.out.writeByte(DriftLog.VERSION);
+        }
+    }
+
+    /**
+     * Opens a log file for appending, the header is written if the file is new or empty
+     */
+    public static DriftLogWriter append(File file) throws IOException {
+        boolean empty = !file.exists() || file.length() == 0;
+        return new DriftLogWriter(new FileOutputStream(file, true), empty);
+    }
+
+    public void write(DriftRecord driftRecord) throws IOException {
+        write(driftRecord.getDeviceId(), driftRecord.getHostMillis(), driftRecord.getOffsetMillis(),
+                driftRecord.getUncertaintyMillis(), driftRecord.isClockSet());
+    }
+
+    /**
+     * @param hostMillis the host time of the reading, unix millis
+     * @param offsetMillis the device clock minus the host clock
+     * @param clockSet true if the device clock was set at this reading
+     */
+    public void write(String deviceId, long hostMillis, float offsetMillis, float uncertaintyMillis, boolean clockSet) throws IOException {
+        if (deviceId == null) {
+            throw new IllegalArgumentException("A drift record needs a device id");
+        }
+        boolean binaryDeviceId = ConfigArchive.isHexDeviceId(deviceId);
+        recordBytes.reset();
+        record.writeByte((binaryDeviceId ? DriftLog.FLAG_BINARY_DEVICE_ID : 0) | (clockSet ? DriftLog.FLAG_CLOCK_SET : 0));
+        if (binaryDeviceId) {
+            ConfigArchive.writeHexDeviceId(record, deviceId);
+        } else {
+            record.writeUTF(deviceId);
+        }
+        record.writeLong(hostMillis);
+        record.writeFloat(offsetMillis);
+        record.writeFloat(uncertaintyMillis);
+        record.flush();
+        if (recordBytes.size() > DriftLog.MAX_RECORD_LENGTH) {
+            throw new IOException("Record too long " + recordBytes.size());
+        }
+        out.writeByte(recordBytes.size());
+        recordBytes.writeTo(out);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+/**
+ * One clock reading of a DriftLog
+ */
+public class DriftRecord {
+
+    private final String deviceId;
+    private final long hostMillis;
+    private final float offsetMillis;
+    private final float uncertaintyMillis;
+    private final boolean clockSet;
+
+    public DriftRecord(String deviceId, long hostMillis, float offsetMillis, float uncertaintyMillis, boolean clockSet) {
+        this.deviceId = deviceId;
+        this.hostMillis = hostMillis;
+        this.offsetMillis = offsetMillis;
+        this.uncertaintyMillis = uncertaintyMillis;
+        this.clockSet = clockSet;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * @return the host time of the reading, unix millis
+     */
+    public long getHostMillis() {
+        return hostMillis;
+    }
+
+    /**
+     * @return the device clock minus the host clock
+     */
+    public float getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    public float getUncertaintyMillis() {
+        return uncertaintyMillis;
+    }
+
+    /**
+     * @return true if the device clock was set at this reading
+     */
+    public boolean isClockSet() {
+        return clockSet;
+    }
+
+    @Override
+    public String toString() {
+        return "DriftRecord{" +
+                "deviceId='" + deviceId + '\'' +
+                ", hostMillis=" + hostMillis +
+                ", offsetMillis=" + offsetMillis +
+                ", uncertaintyMillis=" + uncertaintyMillis +
+                ", clockSet=" + clockSet +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.transport;
+
+import java.io.IOException;
+
+/**
+ * The HidTransport moves HID reports between the host and one AudioMoth.
+ * The protocol classes only talk to this interface, so they can run against a real USB
+ * connection or against a SimulatedAudioMoth on a plain JVM.
+ */
+public interface HidTransport {
+
+    /**
+     * Opens the connection, it must be called before any other method
+     * @throws IOException if the device can not be opened
+     */
+    void open() throws IOException;
+
+    /**
+     * Sends a report to the device
+     * @param report the report, opcode first
+     * @param length number of bytes to send
+     * @return the number of bytes sent, or a negative value on failure
+     */
+    int sendReport(byte[] report, int length);
+
+    /**
+     * Blocks until the next input report arrives, only one thread may receive at a time
+     * @param buffer destination of at least getReportSize() bytes
+     * @return the number of bytes received, or -1 once the transport has been closed
+     * @throws IOException if the device fails
+     */
+    int receiveReport(byte[] buffer) throws IOException;
+
+    /**
+     * @return the size in bytes of the input reports
+     */
+    int getReportSize();
+
+    /**
+     * Closes the connection and wakes up a thread blocked in receiveReport
+     */
+    void close();
+}
@@ -0,0 +1,236 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.transport;
+
+import com.undercurrency.audiomoth.usbhid.model.AudioMothOperations;
+import com.undercurrency.audiomoth.usbhid.model.PacketLength;
+
+import java.io.IOException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.readIntFromLittleEndian;
+import static com.undercurrency.audiomoth.usbhid.ByteJugglingUtils.writeIntToLittleEndian;
+
+/**
+ * The SimulatedAudioMoth is an in-process AudioMoth that answers the firmware opcodes listed in
+ * AudioMothOperations, so the protocol layer can be tested and benchmarked on a plain JVM.
+ * Every reply becomes available latencyMicros after its command was sent, mimicking the USB
+ * polling interval and the firmware processing time.
+ */
+public class SimulatedAudioMoth implements HidTransport {
+
+    public static final int REPORT_SIZE = 64;
+    public static final long DEFAULT_LATENCY_MICROS = 2000L;
+    private static final String FIRMWARE_DESCRIPTION = "AudioMoth-Firmware-Basic";
+
+    private final DelayQueue<Reply> replies = new DelayQueue<Reply>();
+    private final long latencyMicros;
+    private final long deviceId;
+    private final byte[] firmwareVersion;
+    private final byte[] configPacket;
+    private volatile byte battery = 10;
+    private volatile long clockOffsetMillis;
+    private volatile boolean open;
+    private volatile long sentReports;
+
+    public SimulatedAudioMoth() {
+        this(0x24F3190459BA5C1EL, new byte[]{1, 4, 4}, DEFAULT_LATENCY_MICROS);
+    }
+
+    /**
+     * @param deviceId the unique id reported by GET_UID and GET_APP_PACKET
+     * @param firmwareVersion major, minor and patch numbers
+     * @param latencyMicros delay between a command and its reply
+     */
+    public SimulatedAudioMoth(long deviceId, byte[] firmwareVersion, long latencyMicros) {
+        this.deviceId = deviceId;
+        this.firmwareVersion = firmwareVersion.clone();
+        this.configPacket = new byte[PacketLength.forFirmware(readFirmware(firmwareVersion)).getPacketLength()];
+        this.latencyMicros = latencyMicros;
+    }
+
+    @Override
+    public void open() throws IOException {
+        open = true;
+    }
+
+    @Override
+    public int sendReport(byte[] report, int length) {
+        if (!open || length <= 0) {
+            return -1;
+        }
+        sentReports++;
+        byte[] reply = execute(report, length);
+        if (reply != null) {
+            replies.add(new Reply(reply, System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(latencyMicros)));
+        }
+        return length;
+    }
+
+    @Override
+    public int receiveReport(byte[] buffer) throws IOException {
+        if (!open) {
+            return -1;
+        }
+        Reply reply;
+        try {
+            reply = replies.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a report");
+        }
+        if (reply.data == null) {
+            return -1;
+        }
+        int length = Math.min(reply.data.length, buffer.length);
+        System.arraycopy(reply.data, 0, buffer, 0, length);
+        return length;
+    }
+
+    @Override
+    public int getReportSize() {
+        return REPORT_SIZE;
+    }
+
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            replies.add(new Reply(null, System.nanoTime()));
+        }
+    }
+
+    /**
+     * @return the current device time in milliseconds, AudioMoth only keeps whole seconds
+     */
+    public long getDeviceTimeMillis() {
+        return System.currentTimeMillis() + clockOffsetMillis;
+    }
+
+    /**
+     * Moves the device clock, useful to simulate drift
+     * @param clockOffsetMillis difference between the device clock and the host clock
+     */
+    public void setClockOffsetMillis(long clockOffsetMillis) {
+        this.clockOffsetMillis = clockOffsetMillis;
+    }
+
+    public void setBattery(byte battery) {
+        this.battery = battery;
+    }
+
+    /**
+     * @return a copy of the last configuration packet written with SET_APP_PACKET,
+     * its length is the packet length of the firmware layout
+     */
+    public synchronized byte[] getConfigPacket() {
+        return configPacket.clone();
+    }
+
+    /**
+     * @return the number of reports received from the host
+     */
+    public long getSentReports() {
+        return sentReports;
+    }
+
+    private byte[] execute(byte[] report, int length) {
+        AudioMothOperations op = AudioMothOperations.fromOpcode(report[0]);
+        byte[] reply = new byte[REPORT_SIZE];
+        reply[0] = op.getOpcode();
+        switch (op) {
+            case USB_MSG_TYPE_GET_TIME:
+                writeIntToLittleEndian(reply, 1, deviceSeconds());
+                return reply;
+            case USB_MSG_TYPE_SET_TIME:
+                long seconds = readIntFromLittleEndian(report, 1) & 0xFFFFFFFFL;
+                clockOffsetMillis = seconds * 1000L - System.currentTimeMillis();
+                writeIntToLittleEndian(reply, 1, deviceSeconds());
+                return reply;
+            case USB_MSG_TYPE_GET_UID:
+                writeUid(reply, 1);
+                return reply;
+            case USB_MSG_TYPE_GET_BATTERY:
+                reply[1] = battery;
+                return reply;
+            case USB_MSG_TYPE_GET_APP_PACKET:
+                writeIntToLittleEndian(reply, 1, deviceSeconds());
+                writeUid(reply, 1 + 4);
+                reply[1 + 4 + 8] = battery;
+                System.arraycopy(firmwareVersion, 0, reply, 1 + 4 + 8 + 1, 3);
+                return reply;
+            case USB_MSG_TYPE_SET_APP_PACKET:
+                synchronized (this) {
+                    System.arraycopy(report, 1, configPacket, 0, Math.min(length - 1, configPacket.length));
+                    System.arraycopy(configPacket, 0, reply, 1, configPacket.length);
+                }
+                return reply;
+            case USB_MSG_TYPE_GET_FIRMWARE_VERSION:
+                System.arraycopy(firmwareVersion, 0, reply, 1, 3);
+                return reply;
+            case USB_MSG_TYPE_GET_FIRMWARE_DESCRIPTION:
+                for (int i = 0; i < FIRMWARE_DESCRIPTION.length(); i++) {
+                    reply[1 + i] = (byte) FIRMWARE_DESCRIPTION.charAt(i);
+                }
+                return reply;
+            case USB_MSG_TYPE_QUERY_BOOTLOADER:
+            case USB_MSG_TYPE_SWITCH_TO_BOOTLOADER:
+                reply[1] = 1;
+                return reply;
+            default:
+                return null;
+        }
+    }
+
+    private static String readFirmware(byte[] version) {
+        return (version[0] & 0xFF) + "." + (version[1] & 0xFF) + "." + (version[2] & 0xFF);
+    }
+
+    private int deviceSeconds() {
+        return (int) (getDeviceTimeMillis() / 1000L);
+    }
+
+    private void writeUid(byte[] buffer, int offset) {
+        for (int i = 0; i < 8; i++) {
+            buffer[offset + i] = (byte) (deviceId >>> (8 * i));
+        }
+    }
+
+    private static class Reply implements Delayed {
+        private final byte[] data;
+        private final long readyNanos;
+
+        Reply(byte[] data, long readyNanos) {
+            this.data = data;
+            this.readyNanos = readyNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            long diff = readyNanos - ((Reply) other).readyNanos;
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.transport;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbManager;
+import android.hardware.usb.UsbRequest;
+import android.os.Build;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The UsbHidTransport talks to an AudioMoth through the Android USB host API.
+ * Input reports are received with one queued UsbRequest per IN endpoint, the receiving thread
+ * sleeps in requestWait until the host controller completes one of them.
+ *
+ * The OUT route is resolved once in open(): reports go to the first OUT endpoint of the HID
+ * interfaces, or through a SET_REPORT control transfer when there is none. If the endpoint
+ * refuses a report it is sent again through the control route. A single failure, such as a
+ * timeout, does not change the route, only MAX_BULK_FAILURES consecutive refusals answered by the
+ * control route mean the endpoint is unusable, the control route is then kept for the rest of
+ * the connection.
+ */
+public class UsbHidTransport implements HidTransport {
+
+    public static final int REQUEST_SET_REPORT = 0x09;
+    public static final int REPORT_TYPE_OUTPUT = 0x0200;
+    private static final int USB_CLASS_HID = 3;
+    private static final int SEND_TIMEOUT = 250;
+    private static final int MAX_BULK_FAILURES = 3;
+
+    private final UsbManager usbManager;
+    private final UsbDevice device;
+    private final Object lock = new Object();
+    private final List<UsbInterface> interfacesList = new LinkedList<UsbInterface>();
+    private final List<UsbRequest> requests = new LinkedList<UsbRequest>();
+    private UsbDeviceConnection connection;
+    private UsbEndpoint endPointWrite;
+    private UsbInterface controlInterface;
+    private volatile boolean controlRoute;
+    private final AtomicInteger bulkFailures = new AtomicInteger();
+    private int reportSize;
+    private boolean closed;
+    private boolean receiving;
+    private boolean released;
+
+    public UsbHidTransport(UsbManager usbManager, UsbDevice device) {
+        this.usbManager = usbManager;
+        this.device = device;
+    }
+
+    @Override
+    public void open() throws IOException {
+        connection = usbManager.openDevice(device);
+        if (connection == null) {
+            throw new IOException("Unable to open " + device.getDeviceName());
+        }
+        for (int i = 0; i < device.getInterfaceCount(); i++) {
+            UsbInterface intf = device.getInterface(i);
+            if (intf.getInterfaceClass() == USB_CLASS_HID) {
+                connection.claimInterface(intf, true);
+                interfacesList.add(intf);
+            }
+        }
+        synchronized (lock) {
+            for (UsbInterface intf : interfacesList) {
+                for (int i = 0; i < intf.getEndpointCount(); i++) {
+                    UsbEndpoint endPoint = intf.getEndpoint(i);
+                    if (UsbConstants.USB_DIR_IN == endPoint.getDirection()) {
+                        queueRequest(endPoint);
+                    } else if (endPointWrite == null) {
+                        endPointWrite = endPoint;
+                    }
+                }
+            }
+        }
+        if (!interfacesList.isEmpty()) {
+            controlInterface = interfacesList.get(0);
+        }
+        controlRoute = endPointWrite == null;
+        if (requests.isEmpty()) {
+            close();
+            throw new IOException("No IN endpoint on " + device.getDeviceName());
+        }
+    }
+
+    @Override
+    public int sendReport(byte[] report, int length) {
+        if (controlRoute) {
+            return sendControlReport(report, length);
+        }
+        int status = connection.bulkTransfer(endPointWrite, report, length, SEND_TIMEOUT);
+        if (status >= 0) {
+            bulkFailures.set(0);
+            return status;
+        }
+        status = sendControlReport(report, length);
+        if (status >= 0 && bulkFailures.incrementAndGet() >= MAX_BULK_FAILURES) {
+            controlRoute = true;
+        }
+        return status;
+    }
+
+    private int sendControlReport(byte[] report, int length) {
+        if (controlInterface == null) {
+            return -1;
+        }
+        return connection.controlTransfer(0x21, REQUEST_SET_REPORT, REPORT_TYPE_OUTPUT, controlInterface.getId(), report, length, SEND_TIMEOUT);
+    }
+
+    @Override
+    public int receiveReport(byte[] buffer) throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return -1;
+            }
+            receiving = true;
+        }
+        try {
+            UsbRequest request = connection.requestWait();
+            synchronized (lock) {
+                if (closed) {
+                    return -1;
+                }
+            }
+            if (request == null) {
+                throw new IOException("requestWait failed on " + device.getDeviceName());
+            }
+            ByteBuffer received = (ByteBuffer) request.getClientData();
+            int length = Math.min(transferred(received), buffer.length);
+            received.clear();
+            received.get(buffer, 0, length);
+            received.clear();
+            if (!queue(request, received)) {
+                throw new IOException("Unable to requeue the IN request");
+            }
+            return length;
+        } finally {
+            synchronized (lock) {
+                receiving = false;
+                if (closed) {
+                    release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getReportSize() {
+        return reportSize;
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (UsbRequest request : requests) {
+                request.cancel();
+            }
+            if (!receiving) {
+                release();
+            }
+        }
+    }
+
+    public UsbDevice getDevice() {
+        return device;
+    }
+
+    private void queueRequest(UsbEndpoint endPointRead) {
+        UsbRequest request = new UsbRequest();
+        if (!request.initialize(connection, endPointRead)) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(endPointRead.getMaxPacketSize());
+        request.setClientData(buffer);
+        if (queue(request, buffer)) {
+            requests.add(request);
+            reportSize = Math.max(reportSize, buffer.capacity());
+        } else {
+            request.close();
+        }
+    }
+
+    /**
+     * Queues the whole buffer. From API 26 queue(ByteBuffer) makes requestWait set the position of
+     * the buffer to the number of bytes transferred, the deprecated queue(ByteBuffer, int) used
+     * below it leaves the position alone.
+     */
+    private static boolean queue(UsbRequest request, ByteBuffer buffer) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return request.queue(buffer);
+        }
+        return request.queue(buffer, buffer.capacity());
+    }
+
+    /**
+     * @return the length of the report completed in the buffer, a whole report before API 26
+     * where the transfer length is not reported
+     */
+    private static int transferred(ByteBuffer buffer) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return buffer.position();
+        }
+        return buffer.capacity();
+    }
+
+    private void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        for (UsbRequest request : requests) {
+            request.close();
+        }
+        requests.clear();
+        if (connection != null) {
+            for (UsbInterface intf : interfacesList) {
+                connection.releaseInterface(intf);
+            }
+            connection.close();
+        }
+    }
+}
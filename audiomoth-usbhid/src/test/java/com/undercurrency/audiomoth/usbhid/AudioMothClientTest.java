@@ -0,0 +1,161 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.transport.SimulatedAudioMoth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioMothClientTest {
+
+    private SimulatedAudioMoth device;
+    private AudioMothSession session;
+    private AudioMothClient client;
+    private RecordingSettings rs;
+
+    @Before
+    public void setUp() throws Exception {
+        device = new SimulatedAudioMoth();
+        session = new AudioMothSession(device);
+        session.open();
+        client = session.getClient();
+        DeviceInfo info = session.identify().get(1, TimeUnit.SECONDS);
+        rs = new RecordingSettings();
+        rs.setDeviceInfo(info);
+        rs.setSampleRate(32000);
+        rs.setRecordDuration(60);
+        rs.setSleepDuration(240);
+        rs.setDutyEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void unchangedSettingsOnlySetTheClock() throws Exception {
+        client.applySettingsIfChanged(rs).get(1, TimeUnit.SECONDS);
+        byte[] written = device.getConfigPacket();
+        assertTrue(client.diff(rs).isEmpty());
+
+        device.setClockOffsetMillis(-TimeUnit.HOURS.toMillis(1));
+        long sent = device.getSentReports();
+        RecordingSettings held = client.applySettingsIfChanged(new RecordingSettings(rs)).get(1, TimeUnit.SECONDS);
+
+        /* GET_APP_PACKET to identify the device, then SET_TIME */
+        assertEquals(sent + 2, device.getSentReports());
+        assertTrue(Arrays.equals(written, device.getConfigPacket()));
+        assertTrue(Math.abs(device.getDeviceTimeMillis() - System.currentTimeMillis()) < 2000L);
+        assertEquals(rs.getRecordDuration(), held.getRecordDuration());
+    }
+
+    @Test
+    public void changedSettingsAreWritten() throws Exception {
+        client.applySettingsIfChanged(rs).get(1, TimeUnit.SECONDS);
+        RecordingSettings changed = new RecordingSettings(rs);
+        changed.setSleepDuration(120);
+        assertFalse(client.diff(changed).isEmpty());
+        RecordingSettings held = client.applySettingsIfChanged(changed).get(1, TimeUnit.SECONDS);
+        assertEquals(120, held.getSleepDuration());
+        assertTrue(client.diff(changed).isEmpty());
+    }
+
+    @Test
+    public void invalidatedSettingsAreWrittenAgain() throws Exception {
+        client.applySettingsIfChanged(rs).get(1, TimeUnit.SECONDS);
+        client.invalidateSettings();
+        assertEquals(null, client.diff(rs));
+
+        /* Reconfigured elsewhere while detached */
+        RecordingSettings other = new RecordingSettings(rs);
+        other.setRecordDuration(5);
+        client.applySettings(other).get(1, TimeUnit.SECONDS);
+        client.invalidateSettings();
+
+        client.applySettingsIfChanged(rs).get(1, TimeUnit.SECONDS);
+        assertEquals(60, new RecordingSettings(Arrays.copyOf(device.getConfigPacket(), 64)).getRecordDuration());
+    }
+
+    /**
+     * The same AudioMoth plugged again, a new connection to a device that kept its configuration
+     */
+    private static AudioMothSession replug(AppliedSettingsRegistry registry, SimulatedAudioMoth device) throws Exception {
+        AudioMothSession session = new AudioMothSession(device, CommandCorrelator.DEFAULT_MAX_OUTSTANDING, registry);
+        session.open();
+        return session;
+    }
+
+    @Test
+    public void replugDoesNotRewriteAHeldConfiguration() throws Exception {
+        AppliedSettingsRegistry registry = session.getClient().getAppliedSettings();
+        client.applySettingsIfChanged(rs).get(1, TimeUnit.SECONDS);
+        session.close();
+
+        SimulatedAudioMoth replugged = new SimulatedAudioMoth();
+        AudioMothSession again = replug(registry, replugged);
+        try {
+            replugged.setClockOffsetMillis(-TimeUnit.HOURS.toMillis(1));
+            RecordingSettings held = again.getClient().applySettingsIfChanged(new RecordingSettings(rs)).get(1, TimeUnit.SECONDS);
+            assertEquals(2, replugged.getSentReports());
+            assertTrue(Arrays.equals(new byte[replugged.getConfigPacket().length], replugged.getConfigPacket()));
+            assertTrue(Math.abs(replugged.getDeviceTimeMillis() - System.currentTimeMillis()) < 2000L);
+            assertEquals(rs.getRecordDuration(), held.getRecordDuration());
+        } finally {
+            again.close();
+        }
+    }
+
+    @Test
+    public void reflashedDeviceIsWrittenAgain() throws Exception {
+        AppliedSettingsRegistry registry = session.getClient().getAppliedSettings();
+        client.applySettingsIfChanged(rs).get(1, TimeUnit.SECONDS);
+        session.close();
+
+        SimulatedAudioMoth reflashed = new SimulatedAudioMoth(0x24F3190459BA5C1EL, new byte[]{1, 3, 0}, SimulatedAudioMoth.DEFAULT_LATENCY_MICROS);
+        AudioMothSession again = replug(registry, reflashed);
+        try {
+            RecordingSettings held = again.getClient().applySettingsIfChanged(new RecordingSettings(rs)).get(1, TimeUnit.SECONDS);
+            assertEquals(2, reflashed.getSentReports());
+            assertEquals(60, held.getRecordDuration());
+            assertEquals(60, new RecordingSettings(Arrays.copyOf(reflashed.getConfigPacket(), 64)).getRecordDuration());
+        } finally {
+            again.close();
+        }
+    }
+
+    @Test
+    public void deviceInfoIsReadFromTheDevice() throws Exception {
+        RecordingSettings stale = new RecordingSettings(rs);
+        stale.setDeviceInfo(new DeviceInfo("0000000000000000", "1.4.4", "4.5V", new Date()));
+        client.applySettingsIfChanged(stale).get(1, TimeUnit.SECONDS);
+        assertTrue(client.diff(rs).isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AudioMothFutureTest {
+
+    @Test
+    public void completionReachesCallbacksAndGet() throws Exception {
+        AudioMothFuture<Integer> future = new AudioMothFuture<Integer>();
+        CountingCallback<Integer> callback = new CountingCallback<Integer>();
+        future.addCallback(callback);
+        assertTrue(future.complete(7));
+        assertFalse(future.fail(new Exception()));
+        assertEquals(Integer.valueOf(7), future.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, callback.successes.get());
+        assertEquals(0, callback.failures.get());
+    }
+
+    @Test
+    public void compositionPropagatesFailures() throws Exception {
+        AudioMothFuture<Integer> future = new AudioMothFuture<Integer>();
+        AudioMothFuture<String> chained = future.thenApply(new AudioMothFuture.Transformation<Integer, String>() {
+            @Override
+            public String apply(Integer value) throws Exception {
+                throw new IllegalStateException("bad " + value);
+            }
+        });
+        future.complete(1);
+        try {
+            chained.get(0, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void getTimesOut() throws Exception {
+        new AudioMothFuture<Integer>().get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void throwingCallbackDoesNotReachTheCompletingThread() {
+        AudioMothFuture<Integer> future = new AudioMothFuture<Integer>();
+        CountingCallback<Integer> after = new CountingCallback<Integer>();
+        future.addCallback(new CountingCallback<Integer>() {
+            @Override
+            public void onSuccess(Integer result) {
+                throw new IllegalStateException("callback failure");
+            }
+        });
+        future.addCallback(after);
+        assertTrue(future.complete(1));
+        assertEquals(1, after.successes.get());
+
+        future.addCallback(new CountingCallback<Integer>() {
+            @Override
+            public void onSuccess(Integer result) {
+                throw new IllegalStateException("late callback failure");
+            }
+        });
+    }
+
+    @Test
+    public void cancelRacingWithCompleteHasOneOutcome() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            final AudioMothFuture<Integer> future = new AudioMothFuture<Integer>();
+            final CountingCallback<Integer> callback = new CountingCallback<Integer>();
+            future.addCallback(callback);
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread completer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    future.complete(1);
+                }
+            });
+            completer.start();
+            start.countDown();
+            boolean cancelled = future.cancel(false);
+            completer.join();
+
+            assertEquals(cancelled, future.isCancelled());
+            assertEquals(1, callback.successes.get() + callback.failures.get());
+            if (cancelled) {
+                assertEquals(1, callback.failures.get());
+                try {
+                    future.get();
+                    fail();
+                } catch (CancellationException expected) {
+                    // cancelled wins
+                }
+            } else {
+                assertEquals(1, callback.successes.get());
+                assertEquals(Integer.valueOf(1), future.get());
+            }
+        }
+    }
+
+    private static class CountingCallback<T> implements AudioMothFuture.Callback<T> {
+        final AtomicInteger successes = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public void onSuccess(T result) {
+            successes.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+            failures.incrementAndGet();
+        }
+    }
+}
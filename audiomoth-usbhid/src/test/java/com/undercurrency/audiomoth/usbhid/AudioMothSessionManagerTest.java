@@ -0,0 +1,152 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.ClockSyncResult;
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.transport.SimulatedAudioMoth;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AudioMothSessionManagerTest {
+
+    private final AudioMothSessionManager manager = new AudioMothSessionManager();
+
+    @After
+    public void tearDown() {
+        manager.closeAll();
+    }
+
+    @Test
+    public void operationsFanOutToEveryDevice() throws Exception {
+        SimulatedAudioMoth first = open(1, 0x1111L);
+        SimulatedAudioMoth second = open(2, 0x2222L);
+
+        FleetResult<DeviceInfo> identified = manager.identifyAll().get(2, TimeUnit.SECONDS);
+        assertTrue(identified.isSuccessful());
+        assertEquals(2, identified.getResults().size());
+
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(48000);
+        rs.setRecordDuration(30);
+        rs.setSleepDuration(30);
+        FleetResult<RecordingSettings> applied = manager.applySettings(rs).get(2, TimeUnit.SECONDS);
+        assertTrue(applied.toString(), applied.isSuccessful());
+        assertEquals(2, applied.getResults().size());
+        assertTrue(first.getSentReports() > 1);
+        assertTrue(second.getSentReports() > 1);
+    }
+
+    @Test
+    public void devicesWithTheSameIdDoNotOverwriteEachOther() throws Exception {
+        SimulatedAudioMoth first = open(1, 0x1111L);
+        SimulatedAudioMoth second = open(2, 0x1111L);
+
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(48000);
+        FleetResult<RecordingSettings> applied = manager.applySettings(rs).get(2, TimeUnit.SECONDS);
+        assertEquals(1, applied.getResults().size());
+        assertEquals(1, applied.getFailures().size());
+        String failedKey = applied.getFailures().keySet().iterator().next();
+        assertTrue(failedKey, failedKey.startsWith("usb:"));
+        assertTrue(applied.getFailures().get(failedKey) instanceof IOException);
+        /* Only one of the two devices was identified again and written */
+        assertEquals(2, Math.abs(first.getSentReports() - second.getSentReports()));
+    }
+
+    @Test
+    public void repluggedDeviceOnlyGetsItsClockSet() throws Exception {
+        open(1, 0x1111L);
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(48000);
+        assertTrue(manager.applySettings(rs).get(2, TimeUnit.SECONDS).isSuccessful());
+        manager.close(1);
+
+        /* Back on another port, the registry of the manager still knows it */
+        SimulatedAudioMoth replugged = open(2, 0x1111L);
+        FleetResult<RecordingSettings> applied = manager.applySettings(rs).get(2, TimeUnit.SECONDS);
+        assertTrue(applied.toString(), applied.isSuccessful());
+        assertEquals(48000, applied.getResults().values().iterator().next().getSampleRate());
+        /* GET_APP_PACKET by the fan out and by the client, then SET_TIME */
+        assertEquals(3, replugged.getSentReports());
+        assertTrue(Arrays.equals(new byte[replugged.getConfigPacket().length], replugged.getConfigPacket()));
+
+        rs.setSampleRate(96000);
+        manager.applySettings(rs).get(2, TimeUnit.SECONDS);
+        assertEquals(96000, new RecordingSettings(Arrays.copyOf(replugged.getConfigPacket(), 64)).getSampleRate());
+    }
+
+    @Test(timeout = 5000)
+    public void deviceDetachedDuringApplySettingsIsAFailure() throws Exception {
+        open(1, 0x1111L);
+        openSlow(2, 0x2222L);
+        manager.identifyAll().get(2, TimeUnit.SECONDS);
+
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(48000);
+        AudioMothFuture<FleetResult<RecordingSettings>> applying = manager.applySettings(rs);
+        /* The slow device still has its commands in flight */
+        Thread.sleep(100);
+        manager.close(2);
+
+        FleetResult<RecordingSettings> applied = applying.get(2, TimeUnit.SECONDS);
+        assertEquals(1, applied.getResults().size());
+        assertEquals(1, applied.getFailures().size());
+        assertTrue(applied.getFailures().values().iterator().next() instanceof IOException);
+    }
+
+    @Test(timeout = 10000)
+    public void deviceDetachedDuringMeasureClocksIsAFailure() throws Exception {
+        open(1, 0x1111L);
+        openSlow(2, 0x2222L);
+        manager.identifyAll().get(2, TimeUnit.SECONDS);
+
+        AudioMothFuture<FleetResult<ClockSyncResult>> measuring = manager.measureClocks(new ClockSynchronizer(2, 1000L));
+        Thread.sleep(100);
+        manager.close(2);
+
+        FleetResult<ClockSyncResult> measured = measuring.get(5, TimeUnit.SECONDS);
+        assertEquals(1, measured.getResults().size());
+        assertEquals(1, measured.getFailures().size());
+        assertTrue(measured.getFailures().values().iterator().next() instanceof IOException);
+    }
+
+    private SimulatedAudioMoth open(int usbDeviceId, long deviceId) throws IOException {
+        SimulatedAudioMoth device = new SimulatedAudioMoth(deviceId, new byte[]{1, 4, 4}, SimulatedAudioMoth.DEFAULT_LATENCY_MICROS);
+        manager.open(usbDeviceId, device);
+        return device;
+    }
+
+    /**
+     * A device answering every command after 300 ms
+     */
+    private SimulatedAudioMoth openSlow(int usbDeviceId, long deviceId) throws IOException {
+        SimulatedAudioMoth device = new SimulatedAudioMoth(deviceId, new byte[]{1, 4, 4}, 300000L);
+        manager.open(usbDeviceId, device);
+        return device;
+    }
+}
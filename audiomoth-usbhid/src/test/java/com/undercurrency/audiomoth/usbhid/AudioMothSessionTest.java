@@ -0,0 +1,133 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.ConfigPacketCodec;
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.transport.SimulatedAudioMoth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the whole protocol stack, client, correlator, receive thread and transport,
+ * against a SimulatedAudioMoth
+ */
+public class AudioMothSessionTest {
+
+    private SimulatedAudioMoth device;
+    private AudioMothSession session;
+
+    @Before
+    public void setUp() throws Exception {
+        device = new SimulatedAudioMoth();
+        session = new AudioMothSession(device);
+        session.open();
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void identifyReadsTheDeviceOnce() throws Exception {
+        DeviceInfo info = session.identify().get(1, TimeUnit.SECONDS);
+        assertNotNull(info.getDeviceId());
+        assertEquals("1.4.4", info.getFirmwareVersion());
+        long sent = device.getSentReports();
+        assertSame(info, session.identify().get(1, TimeUnit.SECONDS));
+        assertEquals(sent, device.getSentReports());
+    }
+
+    @Test
+    public void setTimeMovesTheDeviceClock() throws Exception {
+        Date target = new Date(1600000000000L);
+        Date echoed = session.getClient().setTime(target).get(1, TimeUnit.SECONDS);
+        assertTrue(Math.abs(echoed.getTime() - target.getTime()) <= 1000L);
+        Date read = session.getClient().getTime().get(1, TimeUnit.SECONDS);
+        assertTrue(Math.abs(read.getTime() - target.getTime()) <= 2000L);
+    }
+
+    @Test
+    public void applySettingsWritesTheFirmwarePacket() throws Exception {
+        DeviceInfo info = session.identify().get(1, TimeUnit.SECONDS);
+        RecordingSettings rs = new RecordingSettings();
+        rs.setDeviceInfo(info);
+        rs.setSampleRate(48000);
+        rs.setGain((byte) 2);
+        rs.setRecordDuration(55);
+        rs.setSleepDuration(5);
+        rs.setDutyEnabled(true);
+        rs.setLedEnabled(true);
+
+        RecordingSettings echoed = session.getClient().applySettings(rs).get(1, TimeUnit.SECONDS);
+        assertEquals(48000, echoed.getSampleRate());
+        assertEquals(55, echoed.getRecordDuration());
+        assertEquals(5, echoed.getSleepDuration());
+
+        ConfigPacketCodec codec = ConfigPacketCodec.forSettings(rs);
+        byte[] expected = new byte[codec.getPacketLength()];
+        codec.encode(rs, expected, 0);
+        byte[] written = device.getConfigPacket();
+        /* The first four bytes hold the time the packet was encoded */
+        assertArrayEquals(Arrays.copyOfRange(expected, 4, expected.length), Arrays.copyOfRange(written, 4, written.length));
+    }
+
+    @Test(timeout = 5000)
+    public void closeFailsPendingCommands() throws Exception {
+        session.close();
+        device = new SimulatedAudioMoth(1L, new byte[]{1, 4, 4}, 2000000L);
+        session = new AudioMothSession(device);
+        session.open();
+        AudioMothFuture<Date> pending = session.getClient().getTime();
+        session.close();
+        try {
+            pending.get(1, TimeUnit.SECONDS);
+            fail("A command completed after the session was closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void pipelinedCommandsAllComplete() throws Exception {
+        AudioMothFuture<?>[] futures = new AudioMothFuture<?>[64];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = i % 2 == 0 ? session.getClient().getTime() : session.getClient().getDeviceInfo();
+        }
+        for (AudioMothFuture<?> future : futures) {
+            assertNotNull(future.get(2, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the shift-based conversions against the ByteBuffer code they replaced,
+ * on a 64 byte report like the ones decoded for every reply
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteJugglingUtilsBenchmark {
+
+    private final byte[] report = new byte[ReportBuilder.REPORT_SIZE];
+    private int value;
+
+    @Setup
+    public void setUp() {
+        new Random(8).nextBytes(report);
+        value = 0x5F5E1000;
+    }
+
+    @Benchmark
+    public int readInt() {
+        return ByteJugglingUtils.readIntFromLittleEndian(report, 1) + ByteJugglingUtils.readShortFromLittleEndian(report, 5);
+    }
+
+    @Benchmark
+    public int readIntByteBuffer() {
+        return LegacyByteJuggling.readIntFromLittleEndian(report, 1) + LegacyByteJuggling.readShortFromLittleEndian(report, 5);
+    }
+
+    @Benchmark
+    public byte[] writeInt() {
+        ByteJugglingUtils.writeIntToLittleEndian(report, 1, value);
+        ByteJugglingUtils.writeShortToLittleEndian(report, 5, (short) value);
+        return report;
+    }
+
+    @Benchmark
+    public byte[] writeIntByteBuffer() {
+        LegacyByteJuggling.writeIntToLittleEndian(report, 1, value);
+        LegacyByteJuggling.writeShortToLittleEndian(report, 5, (short) value);
+        return report;
+    }
+
+    @Benchmark
+    public Date readDate() {
+        return ByteJugglingUtils.readDateFromByteArray(report, 1);
+    }
+
+    @Benchmark
+    public Date readDateByteBuffer() {
+        return LegacyByteJuggling.readDateFromByteArray(report, 1);
+    }
+
+    @Benchmark
+    public String hexString() {
+        return ByteJugglingUtils.byteToHexString(report);
+    }
+
+    @Benchmark
+    public String hexStringLegacy() {
+        return LegacyByteJuggling.byteToHexString(report);
+    }
+}
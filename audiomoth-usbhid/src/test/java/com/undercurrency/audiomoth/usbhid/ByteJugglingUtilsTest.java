@@ -0,0 +1,82 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the shift-based conversions against the ByteBuffer implementation they replaced
+ */
+public class ByteJugglingUtilsTest {
+
+    private static final int SAMPLES = 200000;
+
+    @Test
+    public void readsMatchTheByteBufferImplementation() {
+        Random random = new Random(8);
+        byte[] buffer = new byte[16];
+        for (int i = 0; i < SAMPLES; i++) {
+            random.nextBytes(buffer);
+            int start = random.nextInt(buffer.length - 4);
+            assertEquals(LegacyByteJuggling.readShortFromLittleEndian(buffer, start), ByteJugglingUtils.readShortFromLittleEndian(buffer, start));
+            assertEquals(LegacyByteJuggling.readIntFromLittleEndian(buffer, start), ByteJugglingUtils.readIntFromLittleEndian(buffer, start));
+            assertEquals(LegacyByteJuggling.readDateFromByteArray(buffer, start), ByteJugglingUtils.readDateFromByteArray(buffer, start));
+        }
+    }
+
+    @Test
+    public void writesMatchTheByteBufferImplementation() {
+        Random random = new Random(8);
+        byte[] expected = new byte[8];
+        byte[] actual = new byte[8];
+        for (int i = 0; i < SAMPLES; i++) {
+            int value = random.nextInt();
+            LegacyByteJuggling.writeIntToLittleEndian(expected, 1, value);
+            ByteJugglingUtils.writeIntToLittleEndian(actual, 1, value);
+            assertArrayEquals(expected, actual);
+            LegacyByteJuggling.writeShortToLittleEndian(expected, 5, (short) value);
+            ByteJugglingUtils.writeShortToLittleEndian(actual, 5, (short) value);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void datesRoundTrip() {
+        byte[] buffer = new byte[5];
+        Date date = new Date(1600000000000L);
+        ByteJugglingUtils.writeDateToLittleEndian(buffer, 1, date);
+        assertEquals(date, ByteJugglingUtils.readDateFromByteArray(buffer, 1));
+        assertArrayEquals(Arrays.copyOfRange(buffer, 1, 5), ByteJugglingUtils.writeDateToByteArray(date));
+        assertNull(ByteJugglingUtils.readDateFromByteArray(new byte[4], 0));
+    }
+
+    @Test
+    public void hexMatchesTheByteBufferImplementation() {
+        byte[] buffer = new byte[64];
+        new Random(8).nextBytes(buffer);
+        assertEquals(LegacyByteJuggling.byteToHexString(buffer), ByteJugglingUtils.byteToHexString(buffer));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.ClockSyncResult;
+import com.undercurrency.audiomoth.usbhid.transport.SimulatedAudioMoth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Synchronizes the clock of a SimulatedAudioMoth, whose clock runs at a set offset from the host
+ */
+public class ClockSynchronizerTest {
+
+    /* Scheduling noise allowed on top of the measured uncertainty */
+    private static final double SLACK_MILLIS = 20;
+
+    private SimulatedAudioMoth device;
+    private AudioMothSession session;
+
+    @Before
+    public void setUp() throws Exception {
+        device = new SimulatedAudioMoth();
+        session = new AudioMothSession(device);
+        session.open();
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    private long deviceOffset() {
+        return device.getDeviceTimeMillis() - System.currentTimeMillis();
+    }
+
+    @Test(timeout = 10000)
+    public void synchronizeSetsTheClockOnASecondBoundary() throws Exception {
+        device.setClockOffsetMillis(37000500L);
+        ClockSyncResult result = new ClockSynchronizer().synchronize(session.getClient());
+
+        assertEquals(37000500.0, result.getInitialOffsetMillis(), result.getInitialUncertaintyMillis() + SLACK_MILLIS);
+        assertTrue(result.isClockSet());
+        assertEquals(0, result.getSetTime().getTime() % 1000);
+        assertTrue(result.isConsistent());
+        assertEquals(0, result.getResidualOffsetMillis(), result.getResidualUncertaintyMillis() + SLACK_MILLIS);
+        assertEquals(0, deviceOffset(), SLACK_MILLIS);
+    }
+
+    @Test(timeout = 10000)
+    public void measureLeavesTheClockAlone() throws Exception {
+        device.setClockOffsetMillis(-5250L);
+        ClockSyncResult result = new ClockSynchronizer().measure(session.getClient());
+
+        assertFalse(result.isClockSet());
+        assertNull(result.getSetTime());
+        assertTrue(result.isConsistent());
+        assertEquals(-5250.0, result.getResidualOffsetMillis(), result.getResidualUncertaintyMillis() + SLACK_MILLIS);
+        /* Probes spanning a whole second narrow the offset to the round trip */
+        assertTrue(result.getResidualUncertaintyMillis() < 100);
+        assertEquals(-5250L, deviceOffset());
+    }
+
+    @Test(timeout = 10000)
+    public void roundTripIncludesTheDeviceLatency() throws Exception {
+        session.close();
+        device = new SimulatedAudioMoth(1L, new byte[]{1, 4, 4}, 10000L);
+        session = new AudioMothSession(device);
+        session.open();
+        ClockSyncResult result = new ClockSynchronizer(4, 1000L).measure(session.getClient());
+
+        assertTrue(result.getMinRoundTripMillis() >= 10);
+        assertTrue(result.getMedianRoundTripMillis() >= result.getMinRoundTripMillis());
+        assertTrue(result.getProbeCount() > 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void atLeastOneProbeIsNeeded() {
+        new ClockSynchronizer(0, 1000L);
+    }
+}
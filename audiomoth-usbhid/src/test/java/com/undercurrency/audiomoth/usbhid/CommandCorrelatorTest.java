@@ -0,0 +1,257 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.AudioMothOperations;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommandCorrelatorTest {
+
+    private CommandCorrelator correlator;
+
+    @After
+    public void tearDown() {
+        if (correlator != null) {
+            correlator.shutdown();
+        }
+    }
+
+    @Test
+    public void repliesArePairedByOpcodeInOrder() throws Exception {
+        final List<AudioMothOperations> sent = Collections.synchronizedList(new ArrayList<AudioMothOperations>());
+        correlator = new CommandCorrelator(new CommandCorrelator.Transmitter() {
+            @Override
+            public void transmit(byte[] report, int length) {
+                sent.add(AudioMothOperations.fromOpcode(report[0]));
+            }
+        });
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_TIME, first);
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY, second);
+        awaitSent(sent, 2);
+
+        assertTrue(correlator.onReply(reply(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY)));
+        assertTrue(second.await());
+        assertEquals(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY, second.op);
+        assertEquals(1, correlator.getOutstanding());
+        assertFalse(correlator.onReply(reply(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY)));
+
+        assertTrue(correlator.onReply(reply(AudioMothOperations.USB_MSG_TYPE_GET_TIME)));
+        assertTrue(first.await());
+        assertEquals(0, correlator.getOutstanding());
+        assertEquals(AudioMothOperations.USB_MSG_TYPE_GET_TIME, sent.get(0));
+    }
+
+    @Test
+    public void waitingCommandsGoOutWhenASlotIsFreed() throws Exception {
+        final List<AudioMothOperations> sent = Collections.synchronizedList(new ArrayList<AudioMothOperations>());
+        correlator = new CommandCorrelator(new CommandCorrelator.Transmitter() {
+            @Override
+            public void transmit(byte[] report, int length) {
+                sent.add(AudioMothOperations.fromOpcode(report[0]));
+            }
+        }, 1);
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_TIME, new RecordingListener());
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_UID, new RecordingListener());
+        awaitSent(sent, 1);
+        Thread.sleep(50);
+        assertEquals(1, sent.size());
+
+        correlator.onReply(reply(AudioMothOperations.USB_MSG_TYPE_GET_TIME));
+        awaitSent(sent, 2);
+        assertEquals(AudioMothOperations.USB_MSG_TYPE_GET_UID, sent.get(1));
+    }
+
+    @Test
+    public void unansweredCommandsTimeOut() throws Exception {
+        correlator = new CommandCorrelator(new CommandCorrelator.Transmitter() {
+            @Override
+            public void transmit(byte[] report, int length) {
+            }
+        });
+        RecordingListener listener = new RecordingListener();
+        byte[] report = correlator.getReportBuilder().build(AudioMothOperations.USB_MSG_TYPE_GET_TIME);
+        correlator.submit(AudioMothOperations.USB_MSG_TYPE_GET_TIME, report, 1, 50L, listener);
+        assertTrue(listener.await());
+        assertTrue(listener.timedOut);
+        assertEquals(0, correlator.getOutstanding());
+    }
+
+    /**
+     * A blocked USB write must not stall reply handling or further submissions
+     */
+    @Test
+    public void transmissionRunsOutsideTheLockOnTheSenderThread() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final List<Thread> senders = Collections.synchronizedList(new ArrayList<Thread>());
+        correlator = new CommandCorrelator(new CommandCorrelator.Transmitter() {
+            @Override
+            public void transmit(byte[] report, int length) {
+                senders.add(Thread.currentThread());
+                if (report[0] == AudioMothOperations.USB_MSG_TYPE_GET_BATTERY.getOpcode()) {
+                    writing.countDown();
+                    try {
+                        unblock.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        RecordingListener time = new RecordingListener();
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_TIME, time);
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY, new RecordingListener());
+        assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        assertTrue(correlator.onReply(reply(AudioMothOperations.USB_MSG_TYPE_GET_TIME)));
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_UID, new RecordingListener());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(time.await());
+        assertTrue("reply handling waited " + elapsedMillis + " ms for a write", elapsedMillis < 100);
+
+        unblock.countDown();
+        for (Thread sender : senders) {
+            assertNotSame(Thread.currentThread(), sender);
+        }
+    }
+
+    @Test
+    public void shutdownFailsEveryPendingCommand() throws Exception {
+        final List<AudioMothOperations> sent = Collections.synchronizedList(new ArrayList<AudioMothOperations>());
+        correlator = new CommandCorrelator(new CommandCorrelator.Transmitter() {
+            @Override
+            public void transmit(byte[] report, int length) {
+                sent.add(AudioMothOperations.fromOpcode(report[0]));
+            }
+        }, 1);
+        RecordingListener inFlight = new RecordingListener();
+        RecordingListener waiting = new RecordingListener();
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_TIME, inFlight);
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_UID, waiting);
+        awaitSent(sent, 1);
+
+        correlator.shutdown();
+        assertTrue(inFlight.await());
+        assertTrue(inFlight.error instanceof IOException);
+        assertTrue(waiting.await());
+        assertEquals(AudioMothOperations.USB_MSG_TYPE_GET_UID, waiting.op);
+        assertTrue(waiting.error instanceof IOException);
+        assertEquals(0, correlator.getOutstanding());
+
+        RecordingListener late = new RecordingListener();
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY, late);
+        assertTrue(late.await());
+        assertTrue(late.error instanceof IOException);
+        assertFalse(correlator.onReply(reply(AudioMothOperations.USB_MSG_TYPE_GET_TIME)));
+    }
+
+    @Test
+    public void failedTransmissionFreesItsSlot() throws Exception {
+        final List<AudioMothOperations> sent = Collections.synchronizedList(new ArrayList<AudioMothOperations>());
+        final IllegalStateException unplugged = new IllegalStateException("Unplugged");
+        correlator = new CommandCorrelator(new CommandCorrelator.Transmitter() {
+            @Override
+            public void transmit(byte[] report, int length) {
+                if (report[0] == AudioMothOperations.USB_MSG_TYPE_GET_TIME.getOpcode()) {
+                    throw unplugged;
+                }
+                sent.add(AudioMothOperations.fromOpcode(report[0]));
+            }
+        }, 1);
+        RecordingListener failed = new RecordingListener();
+        RecordingListener next = new RecordingListener();
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_TIME, failed);
+        submit(AudioMothOperations.USB_MSG_TYPE_GET_UID, next);
+
+        assertTrue(failed.await());
+        assertSame(unplugged, failed.error);
+        awaitSent(sent, 1);
+        assertEquals(AudioMothOperations.USB_MSG_TYPE_GET_UID, sent.get(0));
+        assertTrue(correlator.onReply(reply(AudioMothOperations.USB_MSG_TYPE_GET_UID)));
+        assertTrue(next.await());
+        assertNull(next.error);
+    }
+
+    private void submit(AudioMothOperations op, CommandCorrelator.ReplyListener listener) {
+        correlator.submit(op, correlator.getReportBuilder().build(op), ReportBuilder.PAYLOAD_OFFSET, listener);
+    }
+
+    private static byte[] reply(AudioMothOperations op) {
+        byte[] buffer = new byte[ReportBuilder.REPORT_SIZE];
+        buffer[0] = op.getOpcode();
+        return buffer;
+    }
+
+    private static void awaitSent(List<AudioMothOperations> sent, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000L;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, sent.size());
+    }
+
+    private static class RecordingListener implements CommandCorrelator.ReplyListener {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile AudioMothOperations op;
+        private volatile boolean timedOut;
+        private volatile Throwable error;
+
+        @Override
+        public void onReply(AudioMothOperations op, byte[] buffer) {
+            this.op = op;
+            done.countDown();
+        }
+
+        @Override
+        public void onTimeout(AudioMothOperations op) {
+            this.op = op;
+            timedOut = true;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(AudioMothOperations op, Throwable error) {
+            this.op = op;
+            this.error = error;
+            done.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(1, TimeUnit.SECONDS);
+        }
+    }
+}
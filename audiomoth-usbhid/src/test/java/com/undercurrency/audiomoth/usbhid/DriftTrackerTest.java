@@ -0,0 +1,205 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.ClockSyncResult;
+import com.undercurrency.audiomoth.usbhid.model.DriftEstimate;
+import com.undercurrency.audiomoth.usbhid.store.DriftLogReader;
+import com.undercurrency.audiomoth.usbhid.transport.SimulatedAudioMoth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DriftTrackerTest {
+
+    private static final String DEVICE_ID = "24F3190459BA5C1E";
+    private static final long START = 1600000000000L;
+    private static final long HOUR = 3600000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Hourly readings of a clock drifting at ppm from initialOffset, the first one when the clock is set
+     */
+    private static void readings(DriftTracker tracker, long start, int hours, double initialOffset, double ppm) throws IOException {
+        for (int i = 0; i < hours; i++) {
+            long host = start + i * HOUR;
+            tracker.record(DEVICE_ID, host, initialOffset + ppm * 1e-6 * (host - start), 0.5, i == 0);
+        }
+    }
+
+    @Test
+    public void fitRecoversALinearDrift() throws IOException {
+        DriftTracker tracker = new DriftTracker();
+        readings(tracker, START, 120, 150, 20);
+
+        DriftEstimate estimate = tracker.getEstimate(DEVICE_ID);
+        assertEquals(120, estimate.getSampleCount());
+        assertEquals(START, estimate.getSegmentStart());
+        assertEquals(20, estimate.getDriftPpm(), 1e-3);
+        long later = START + 200 * HOUR;
+        double offset = 150 + 20e-6 * (later - START);
+        assertEquals(offset, estimate.getOffsetMillis(later), 0.01);
+        long deviceMillis = later + Math.round(offset);
+        assertEquals(later, estimate.toHostMillis(deviceMillis), 1);
+        assertEquals(later, tracker.toHostMillis(DEVICE_ID, deviceMillis), 1);
+        assertEquals(deviceMillis, estimate.toDeviceMillis(later), 1);
+    }
+
+    @Test
+    public void clockSetStartsANewPeriod() throws IOException {
+        DriftTracker tracker = new DriftTracker();
+        readings(tracker, START, 48, 150, 20);
+        long reset = START + 100 * HOUR;
+        readings(tracker, reset, 48, 0, -10);
+
+        assertEquals(-10, tracker.getEstimate(DEVICE_ID).getDriftPpm(), 1e-3);
+        assertEquals(reset, tracker.getEstimate(DEVICE_ID).getSegmentStart());
+        assertEquals(20, tracker.getEstimate(DEVICE_ID, START + HOUR).getDriftPpm(), 1e-3);
+        assertEquals(-10, tracker.getEstimate(DEVICE_ID, reset + HOUR).getDriftPpm(), 1e-3);
+
+        /* A file named before the set is corrected with the first period */
+        long before = START + 60 * HOUR;
+        long beforeDevice = before + Math.round(150 + 20e-6 * (before - START));
+        assertEquals(before, tracker.toHostMillis(DEVICE_ID, beforeDevice), 1);
+        long after = reset + 60 * HOUR;
+        long afterDevice = after + Math.round(-10e-6 * (after - reset));
+        assertEquals(after, tracker.toHostMillis(DEVICE_ID, afterDevice), 1);
+    }
+
+    @Test
+    public void logIsReplayed() throws IOException {
+        File file = new File(folder.getRoot(), "drift.amdl");
+        DriftTracker tracker = new DriftTracker(file);
+        readings(tracker, START, 24, 150, 20);
+        DriftEstimate written = tracker.getEstimate(DEVICE_ID);
+        tracker.close();
+
+        DriftTracker replayed = new DriftTracker(file);
+        DriftEstimate read = replayed.getEstimate(DEVICE_ID);
+        assertEquals(Collections.singleton(DEVICE_ID), replayed.getDeviceIds());
+        assertEquals(written.getSampleCount(), read.getSampleCount());
+        assertEquals(written.getDriftRate(), read.getDriftRate(), 0);
+        assertEquals(written.getOffsetMillis(START), read.getOffsetMillis(START), 0);
+        replayed.record(DEVICE_ID, START + 24 * HOUR, 150 + 20e-6 * 24 * HOUR, 0.5, false);
+        replayed.close();
+
+        DriftTracker appended = new DriftTracker(file);
+        assertEquals(25, appended.getEstimate(DEVICE_ID).getSampleCount());
+        appended.close();
+    }
+
+    @Test
+    public void tornRecordIsCutBeforeAppending() throws IOException {
+        File file = new File(folder.getRoot(), "drift.amdl");
+        DriftTracker tracker = new DriftTracker(file);
+        readings(tracker, START, 10, 150, 20);
+        tracker.close();
+        long complete = file.length();
+        /* A crash in the middle of the eleventh record */
+        tracker = new DriftTracker(file);
+        readings(tracker, START + 10 * HOUR, 1, 150, 20);
+        tracker.close();
+        truncate(file, complete + 9);
+
+        DriftTracker replayed = new DriftTracker(file);
+        assertEquals(10, replayed.getEstimate(DEVICE_ID).getSampleCount());
+        assertEquals(complete, file.length());
+        replayed.record(DEVICE_ID, START + 11 * HOUR, 150 + 20e-6 * 11 * HOUR, 0.5, false);
+        replayed.close();
+
+        DriftLogReader reader = new DriftLogReader(new FileInputStream(file));
+        int records = 0;
+        while (reader.read() != null) {
+            records++;
+        }
+        reader.close();
+        assertEquals(11, records);
+        DriftTracker appended = new DriftTracker(file);
+        assertEquals(11, appended.getEstimate(DEVICE_ID).getSampleCount());
+        appended.close();
+    }
+
+    @Test
+    public void tornHeaderStartsANewLog() throws IOException {
+        File file = new File(folder.getRoot(), "drift.amdl");
+        DriftTracker tracker = new DriftTracker(file);
+        tracker.close();
+        truncate(file, 2);
+
+        tracker = new DriftTracker(file);
+        assertTrue(tracker.getDeviceIds().isEmpty());
+        readings(tracker, START, 3, 0, 5);
+        tracker.close();
+        DriftTracker replayed = new DriftTracker(file);
+        assertEquals(3, replayed.getEstimate(DEVICE_ID).getSampleCount());
+        replayed.close();
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void inconsistentResultsAreLeftOut() throws IOException {
+        DriftTracker tracker = new DriftTracker();
+        ClockSyncResult result = new ClockSyncResult(START, 10, 2, 2, 0, 500, null, 3, 1, false);
+        assertFalse(tracker.record(DEVICE_ID, result));
+        assertNull(tracker.getEstimate(DEVICE_ID));
+        assertEquals(START, tracker.toHostMillis(DEVICE_ID, START));
+    }
+
+    @Test(timeout = 10000)
+    public void sessionManagerMeasuresOnConnection() throws Exception {
+        DriftTracker tracker = new DriftTracker();
+        AudioMothSessionManager manager = new AudioMothSessionManager();
+        manager.setDriftTracker(tracker, new ClockSynchronizer());
+        SimulatedAudioMoth device = new SimulatedAudioMoth();
+        device.setClockOffsetMillis(2500L);
+        try {
+            manager.open(1, device);
+            while (tracker.getDeviceIds().isEmpty()) {
+                Thread.sleep(50);
+            }
+        } finally {
+            manager.closeAll();
+        }
+        String deviceId = tracker.getDeviceIds().iterator().next();
+        DriftEstimate estimate = tracker.getEstimate(deviceId);
+        assertEquals(1, estimate.getSampleCount());
+        assertEquals(2500, estimate.getOffsetMillis(System.currentTimeMillis()), 50);
+    }
+}
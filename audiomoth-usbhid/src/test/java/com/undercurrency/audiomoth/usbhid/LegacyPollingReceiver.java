@@ -0,0 +1,75 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The receive loop AbstractUSBHIDService used before it blocked on queued UsbRequests: a bulkTransfer
+ * and then a controlTransfer, each with a 100 ms timeout, over and over whether the device talks or not.
+ * The transfers wait on an in-memory endpoint, kept as the reference of the idle test.
+ */
+final class LegacyPollingReceiver extends Thread {
+
+    static final long TRANSFER_TIMEOUT_MILLIS = 100L;
+
+    private final BlockingQueue<byte[]> endpoint = new LinkedBlockingQueue<byte[]>();
+    private final AtomicLong wakeUps = new AtomicLong();
+    private volatile boolean isStopped;
+
+    LegacyPollingReceiver() {
+        super("AudioMoth-Legacy-Receive");
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isStopped) {
+                byte[] report = transfer();
+                if (report == null) {
+                    /* The old loop fell back to a GET_REPORT control transfer */
+                    transfer();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] transfer() throws InterruptedException {
+        byte[] report = endpoint.poll(TRANSFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        wakeUps.incrementAndGet();
+        return report;
+    }
+
+    /**
+     * @return the number of times a transfer returned, with or without a report
+     */
+    long getWakeUps() {
+        return wakeUps.get();
+    }
+
+    void stopThis() {
+        isStopped = true;
+        interrupt();
+    }
+}
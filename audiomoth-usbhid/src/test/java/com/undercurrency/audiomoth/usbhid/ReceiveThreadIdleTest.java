@@ -0,0 +1,149 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.transport.HidTransport;
+import com.undercurrency.audiomoth.usbhid.transport.SimulatedAudioMoth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Idle benchmark of the receive thread against the old polling loop, kept as LegacyPollingReceiver.
+ * The thread blocks until a report arrives, so while the AudioMoth is silent it must neither wake up
+ * nor burn CPU time, where the old loop returned from a transfer every 100 ms.
+ */
+public class ReceiveThreadIdleTest {
+
+    private static final long IDLE_MILLIS = 1000L;
+    private static final long MAX_IDLE_CPU_MILLIS = 20L;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final CountingTransport transport = new CountingTransport(new SimulatedAudioMoth());
+    private AudioMothSession session;
+    private LegacyPollingReceiver legacy;
+
+    @Before
+    public void setUp() {
+        assumeTrue(threads.isThreadCpuTimeSupported());
+        threads.setThreadCpuTimeEnabled(true);
+        session = new AudioMothSession(transport);
+    }
+
+    @After
+    public void tearDown() {
+        if (session != null) {
+            session.close();
+        }
+        if (legacy != null) {
+            legacy.stopThis();
+        }
+    }
+
+    @Test
+    public void idleReceiveThreadNeitherWakesUpNorUsesCpu() throws Exception {
+        Set<Thread> before = new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+        session.open();
+        assertNotNull(session.identify().get(1, TimeUnit.SECONDS));
+        Thread receiver = findReceiveThread(before);
+        assertNotNull("receive thread not started", receiver);
+        legacy = new LegacyPollingReceiver();
+        legacy.start();
+
+        long startWakeUps = transport.getReceived();
+        long startLegacyWakeUps = legacy.getWakeUps();
+        long startCpu = threads.getThreadCpuTime(receiver.getId());
+        Thread.sleep(IDLE_MILLIS);
+        long idleCpuMillis = TimeUnit.NANOSECONDS.toMillis(threads.getThreadCpuTime(receiver.getId()) - startCpu);
+        long wakeUps = transport.getReceived() - startWakeUps;
+        long legacyWakeUps = legacy.getWakeUps() - startLegacyWakeUps;
+
+        assertEquals("receive thread woke up while idle", 0, wakeUps);
+        assertTrue("the polling loop woke up only " + legacyWakeUps + " times",
+                legacyWakeUps >= IDLE_MILLIS / LegacyPollingReceiver.TRANSFER_TIMEOUT_MILLIS / 2);
+        assertTrue("receive thread used " + idleCpuMillis + " ms of CPU while idle", idleCpuMillis <= MAX_IDLE_CPU_MILLIS);
+    }
+
+    private static Thread findReceiveThread(Set<Thread> before) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!before.contains(thread) && "AudioMoth-Receive".equals(thread.getName())) {
+                return thread;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the returns from receiveReport, every one is a wake-up of the receive thread
+     */
+    private static class CountingTransport implements HidTransport {
+        private final HidTransport delegate;
+        private final AtomicLong received = new AtomicLong();
+
+        CountingTransport(HidTransport delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void open() throws IOException {
+            delegate.open();
+        }
+
+        @Override
+        public int sendReport(byte[] report, int length) {
+            return delegate.sendReport(report, length);
+        }
+
+        @Override
+        public int receiveReport(byte[] buffer) throws IOException {
+            try {
+                return delegate.receiveReport(buffer);
+            } finally {
+                received.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int getReportSize() {
+            return delegate.getReportSize();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        long getReceived() {
+            return received.get();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ReportBufferPoolTest {
+
+    private static final int REPORT_SIZE = 64;
+    private static final int WARMUP_REPORTS = 20000;
+    private static final int MEASURED_REPORTS = 100000;
+
+    @Test
+    public void buffersAreReused() {
+        ReportBufferPool pool = new ReportBufferPool(2, REPORT_SIZE);
+        byte[] first = pool.acquire();
+        assertEquals(REPORT_SIZE, first.length);
+        assertEquals(1, pool.getAvailable());
+        pool.release(first);
+        assertEquals(2, pool.getAvailable());
+        assertSame(first, pool.acquire());
+    }
+
+    @Test
+    public void exhaustedPoolHandsOutTemporaryBuffers() {
+        ReportBufferPool pool = new ReportBufferPool(1, REPORT_SIZE);
+        byte[] pooled = pool.acquire();
+        byte[] temporary = pool.acquire();
+        assertNotSame(pooled, temporary);
+        assertEquals(REPORT_SIZE, temporary.length);
+        pool.release(pooled);
+        pool.release(temporary);
+        assertEquals(1, pool.getAvailable());
+        assertSame(pooled, pool.acquire());
+    }
+
+    @Test
+    public void foreignBuffersAreDropped() {
+        ReportBufferPool pool = new ReportBufferPool(1, REPORT_SIZE);
+        pool.release(null);
+        pool.release(new byte[REPORT_SIZE + 1]);
+        assertEquals(1, pool.getAvailable());
+    }
+
+    /**
+     * Runs the acquire, release cycle of the pool and checks that it allocates nothing per report,
+     * ReportReceiverTest checks the whole receive thread.
+     */
+    @Test
+    public void receivePathDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ReportBufferPool pool = new ReportBufferPool(8, REPORT_SIZE);
+        long checksum = receive(pool, WARMUP_REPORTS);
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        checksum += receive(pool, MEASURED_REPORTS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        double bytesPerReport = allocated / (double) MEASURED_REPORTS;
+        assertEquals(8, pool.getAvailable());
+        assertTrue("pool cycle allocated " + bytesPerReport + " bytes per report (checksum " + checksum + ")",
+                bytesPerReport < 1.0);
+    }
+
+    private static long receive(ReportBufferPool pool, int reports) {
+        long checksum = 0;
+        for (int i = 0; i < reports; i++) {
+            byte[] buffer = pool.acquire();
+            try {
+                buffer[0] = (byte) i;
+                buffer[REPORT_SIZE - 1] = (byte) (i >>> 8);
+                checksum += buffer[0] + buffer[REPORT_SIZE - 1];
+            } finally {
+                pool.release(buffer);
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.model.AudioMothOperations;
+import com.undercurrency.audiomoth.usbhid.transport.SimulatedAudioMoth;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ReportReceiverTest {
+
+    private static final int POOL_SIZE = 8;
+    private static final int WARMUP_REPORTS = 20000;
+    private static final int MEASURED_REPORTS = 100000;
+
+    private final SimulatedAudioMoth device = new SimulatedAudioMoth(0x24F3190459BA5C1EL, new byte[]{1, 4, 4}, 0L);
+    private ReportReceiver receiver;
+
+    @After
+    public void tearDown() {
+        if (receiver != null) {
+            receiver.stopReceiving();
+        }
+    }
+
+    private void send(AudioMothOperations op, int count) {
+        byte[] report = new byte[]{op.getOpcode()};
+        for (int i = 0; i < count; i++) {
+            device.sendReport(report, report.length);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void reportsReachTheListenerThroughTheDispatcher() throws Exception {
+        final CountDownLatch received = new CountDownLatch(3);
+        final AtomicLong dispatched = new AtomicLong();
+        device.open();
+        receiver = new ReportReceiver(device, POOL_SIZE, new ReportReceiver.Dispatcher() {
+            @Override
+            public void dispatch(Runnable delivery) {
+                dispatched.incrementAndGet();
+                delivery.run();
+            }
+        }, new ReportReceiver.Listener() {
+            @Override
+            public void onReport(byte[] buffer, int length) {
+                assertEquals(SimulatedAudioMoth.REPORT_SIZE, length);
+                assertEquals(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY.getOpcode(), buffer[0]);
+                received.countDown();
+            }
+        });
+        receiver.start();
+        send(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY, 3);
+        assertTrue(received.await(2, TimeUnit.SECONDS));
+        assertEquals(3, dispatched.get());
+        assertEquals(POOL_SIZE - 1, receiver.getAvailable());
+
+        receiver.stopReceiving();
+        receiver.join(2000);
+        assertEquals(POOL_SIZE, receiver.getAvailable());
+    }
+
+    /**
+     * Runs the receive thread over a SimulatedAudioMoth with its replies queued up front, and checks
+     * that receiving, dispatching and delivering a report allocates nothing on that thread
+     */
+    @Test(timeout = 30000)
+    public void receiveThreadDoesNotAllocatePerReport() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        final long[] allocated = new long[2];
+        final CountDownLatch done = new CountDownLatch(1);
+        device.open();
+        send(AudioMothOperations.USB_MSG_TYPE_GET_BATTERY, WARMUP_REPORTS + MEASURED_REPORTS);
+        receiver = new ReportReceiver(device, POOL_SIZE, new ReportReceiver.Dispatcher() {
+            @Override
+            public void dispatch(Runnable delivery) {
+                delivery.run();
+            }
+        }, new ReportReceiver.Listener() {
+            private int count;
+
+            @Override
+            public void onReport(byte[] buffer, int length) {
+                count++;
+                if (count == WARMUP_REPORTS) {
+                    allocated[0] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                } else if (count == WARMUP_REPORTS + MEASURED_REPORTS) {
+                    allocated[1] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    done.countDown();
+                }
+            }
+        });
+        receiver.start();
+        assertTrue(done.await(20, TimeUnit.SECONDS));
+
+        double bytesPerReport = (allocated[1] - allocated[0]) / (double) MEASURED_REPORTS;
+        assertTrue("receive thread allocated " + bytesPerReport + " bytes per report", bytesPerReport < 1.0);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid;
+
+import com.undercurrency.audiomoth.usbhid.transport.SimulatedAudioMoth;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Throughput benchmark that runs with the unit tests, so CI catches a regression of the pipelining.
+ * With a SimulatedAudioMoth answering every command after a fixed latency, a lock-step client is
+ * bound by one latency per command while a pipelined client overlaps up to maxOutstanding of them.
+ */
+public class SessionThroughputTest {
+
+    private static final int COMMANDS = 200;
+    private static final long LATENCY_MICROS = 2000L;
+
+    @Test
+    public void pipeliningOverlapsTheLinkLatency() throws Exception {
+        measure(CommandCorrelator.DEFAULT_MAX_OUTSTANDING);
+        long lockStep = measure(1);
+        long pipelined = measure(CommandCorrelator.DEFAULT_MAX_OUTSTANDING);
+
+        assertTrue("lock-step must pay the latency of every command", lockStep >= TimeUnit.MICROSECONDS.toNanos(COMMANDS * LATENCY_MICROS));
+        assertTrue("pipelining gained nothing: " + rate(pipelined) + " commands/s vs " + rate(lockStep) + " commands/s lock-step",
+                pipelined * 2 < lockStep);
+    }
+
+    private static long measure(int maxOutstanding) throws Exception {
+        AudioMothSession session = new AudioMothSession(new SimulatedAudioMoth(1L, new byte[]{1, 4, 4}, LATENCY_MICROS), maxOutstanding);
+        try {
+            session.open();
+            AudioMothClient client = session.getClient();
+            AudioMothFuture<?>[] futures = new AudioMothFuture<?>[COMMANDS];
+            long start = System.nanoTime();
+            for (int i = 0; i < COMMANDS; i++) {
+                futures[i] = client.getTime(5000L);
+            }
+            for (AudioMothFuture<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static long rate(long nanos) {
+        return COMMANDS * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+}
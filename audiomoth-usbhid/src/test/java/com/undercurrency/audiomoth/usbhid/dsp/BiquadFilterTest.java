@@ -0,0 +1,101 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.dsp;
+
+import com.undercurrency.audiomoth.usbhid.model.FilterType;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BiquadFilterTest {
+
+    private static final int RATE = 48000;
+
+    static float[] sine(double frequency, int sampleRate, int length, double amplitude) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return samples;
+    }
+
+    /**
+     * The peak amplitude of a tone once the filter has settled
+     */
+    private static double gain(BiquadFilter filter, double frequency) {
+        float[] samples = sine(frequency, RATE, RATE, 1);
+        filter.process(samples, 0, samples.length);
+        double peak = 0;
+        for (int i = samples.length / 2; i < samples.length; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+
+    @Test
+    public void lowPassKeepsLowTones() {
+        assertEquals(1, gain(BiquadFilter.lowPass(RATE, 4000), 200), 0.01);
+        assertEquals(Math.sqrt(0.5), gain(BiquadFilter.lowPass(RATE, 4000), 4000), 0.01);
+        assertTrue(gain(BiquadFilter.lowPass(RATE, 4000), 16000) < 0.1);
+    }
+
+    @Test
+    public void highPassKeepsHighTones() {
+        assertEquals(1, gain(BiquadFilter.highPass(RATE, 4000), 16000), 0.05);
+        assertEquals(Math.sqrt(0.5), gain(BiquadFilter.highPass(RATE, 4000), 4000), 0.01);
+        assertTrue(gain(BiquadFilter.highPass(RATE, 4000), 200) < 0.1);
+    }
+
+    @Test
+    public void bandPassHasUnitGainAtItsCentre() {
+        assertEquals(1, gain(BiquadFilter.bandPass(RATE, 2000, 8000), 4000), 0.01);
+        assertTrue(gain(BiquadFilter.bandPass(RATE, 2000, 8000), 100) < 0.1);
+        assertTrue(gain(BiquadFilter.bandPass(RATE, 2000, 8000), 23000) < 0.1);
+    }
+
+    @Test
+    public void filtersAcrossChunksLikeInOneGo() {
+        float[] whole = sine(3000, RATE, 5000, 0.5);
+        float[] chunked = whole.clone();
+        BiquadFilter.design(FilterType.BAND, RATE, 1000, 6000).process(whole, 0, whole.length);
+        BiquadFilter filter = BiquadFilter.design(FilterType.BAND, RATE, 1000, 6000);
+        for (int off = 0; off < chunked.length; off += 777) {
+            filter.process(chunked, off, Math.min(777, chunked.length - off));
+        }
+        for (int i = 0; i < whole.length; i++) {
+            assertEquals(whole[i], chunked[i], 0f);
+        }
+    }
+
+    @Test
+    public void rejectsFrequenciesOutOfRange() {
+        int[][] invalid = {{FilterType.LOW.ordinal(), 0, 0}, {FilterType.LOW.ordinal(), 0, RATE / 2},
+                {FilterType.HIGH.ordinal(), 0, 0}, {FilterType.HIGH.ordinal(), RATE / 2, 0},
+                {FilterType.BAND.ordinal(), 0, 8000}, {FilterType.BAND.ordinal(), 8000, 2000}};
+        for (int[] filter : invalid) {
+            try {
+                BiquadFilter.design(FilterType.values()[filter[0]], RATE, filter[1], filter[2]);
+                fail("Accepted " + FilterType.values()[filter[0]] + " " + filter[1] + " - " + filter[2]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
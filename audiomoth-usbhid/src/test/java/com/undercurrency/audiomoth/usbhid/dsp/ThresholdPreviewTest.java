@@ -0,0 +1,118 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.dsp;
+
+import com.undercurrency.audiomoth.usbhid.model.FilterType;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ThresholdPreviewTest {
+
+    private static final int RATE = 48000;
+
+    private static RecordingSettings settings(FilterType filterType, int lowerFilter, int higherFilter) {
+        RecordingSettings rs = new RecordingSettings();
+        rs.setPassFiltersEnabled(true);
+        rs.setFilterType(filterType);
+        rs.setLowerFilter(lowerFilter);
+        rs.setHigherFilter(higherFilter);
+        rs.setAmplitudeThresholdingEnabled(true);
+        rs.setAmplitudeThreshold(8192);
+        return rs;
+    }
+
+    /**
+     * Half a second of a loud low tone, then half a second of a loud high tone
+     */
+    private static float[] twoTones() {
+        float[] samples = new float[RATE];
+        System.arraycopy(BiquadFilterTest.sine(500, RATE, RATE / 2, 0.9), 0, samples, 0, RATE / 2);
+        System.arraycopy(BiquadFilterTest.sine(15000, RATE, RATE / 2, 0.9), 0, samples, RATE / 2, RATE / 2);
+        return samples;
+    }
+
+    private static double writtenFraction(ThresholdPreview preview) {
+        float[] samples = twoTones();
+        preview.process(samples, 0, samples.length);
+        preview.finish();
+        return preview.getWrittenFraction();
+    }
+
+    @Test
+    public void thresholdDropsQuietBlocks() {
+        float[] samples = new float[4 * ThresholdPreview.DEFAULT_BLOCK_SIZE];
+        samples[ThresholdPreview.DEFAULT_BLOCK_SIZE + 10] = 0.5f;
+        samples[3 * ThresholdPreview.DEFAULT_BLOCK_SIZE] = -0.5f;
+        ThresholdPreview preview = new ThresholdPreview(null, 8192, ThresholdPreview.DEFAULT_BLOCK_SIZE);
+        preview.process(samples, 0, 100);
+        preview.process(samples, 100, samples.length - 100);
+        preview.finish();
+        assertEquals(4, preview.getTotalBlocks());
+        assertEquals(2, preview.getWrittenBlocks());
+        assertEquals(0.5, preview.getWrittenFraction(), 0);
+        assertEquals(500L, preview.estimateBytes(1000));
+    }
+
+    @Test
+    public void filterOfTheSettingsIsApplied() {
+        assertEquals(0.5, writtenFraction(ThresholdPreview.forSettings(settings(FilterType.LOW, 0, 4000), RATE)), 0.02);
+        assertEquals(0.5, writtenFraction(ThresholdPreview.forSettings(settings(FilterType.HIGH, 8000, 0), RATE)), 0.02);
+        assertEquals(0, writtenFraction(ThresholdPreview.forSettings(settings(FilterType.BAND, 2000, 6000), RATE)), 0.02);
+    }
+
+    @Test
+    public void edgesAboveTheReferenceNyquistAreLeftOpen() {
+        /* Settings for a 384 kHz device previewed on 48 kHz audio */
+        assertEquals(1, writtenFraction(ThresholdPreview.forSettings(settings(FilterType.LOW, 0, 100000), RATE)), 0);
+        assertEquals(0.5, writtenFraction(ThresholdPreview.forSettings(settings(FilterType.BAND, 8000, 100000), RATE)), 0.02);
+        assertEquals(writtenFraction(new ThresholdPreview(BiquadFilter.highPass(RATE, 8000), 8192, ThresholdPreview.DEFAULT_BLOCK_SIZE)),
+                writtenFraction(ThresholdPreview.forSettings(settings(FilterType.BAND, 8000, 100000), RATE)), 0);
+    }
+
+    @Test
+    public void edgesAtZeroAreLeftOpen() {
+        assertEquals(1, writtenFraction(ThresholdPreview.forSettings(settings(FilterType.HIGH, 0, 0), RATE)), 0);
+        assertEquals(writtenFraction(new ThresholdPreview(BiquadFilter.lowPass(RATE, 4000), 8192, ThresholdPreview.DEFAULT_BLOCK_SIZE)),
+                writtenFraction(ThresholdPreview.forSettings(settings(FilterType.BAND, 0, 4000), RATE)), 0);
+        assertEquals(1, writtenFraction(ThresholdPreview.forSettings(settings(FilterType.BAND, 0, RATE), RATE)), 0);
+    }
+
+    @Test
+    public void filtersStoppingEverythingAreRejected() {
+        RecordingSettings[] invalid = {settings(FilterType.LOW, 0, 0), settings(FilterType.HIGH, RATE / 2, 0),
+                settings(FilterType.BAND, 30000, 60000), settings(FilterType.BAND, 6000, 2000)};
+        for (RecordingSettings rs : invalid) {
+            try {
+                ThresholdPreview.forSettings(rs, RATE);
+                fail("Accepted " + rs.getFilterType() + " " + rs.getLowerFilter() + " - " + rs.getHigherFilter());
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void disabledFilterIsIgnored() {
+        RecordingSettings rs = settings(FilterType.LOW, 0, 0);
+        rs.setPassFiltersEnabled(false);
+        assertEquals(1, writtenFraction(ThresholdPreview.forSettings(rs, RATE)), 0);
+    }
+}
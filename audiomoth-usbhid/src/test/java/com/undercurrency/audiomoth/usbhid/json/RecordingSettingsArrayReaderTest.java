@@ -0,0 +1,67 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.json;
+
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class RecordingSettingsArrayReaderTest {
+
+    @Test
+    public void readsEveryElementOfTheArray() throws Exception {
+        String array = "[" + RecordingSettingsTypeAdapterTest.REFLECTIVE_GSON + ",null,"
+                + RecordingSettingsTypeAdapterTest.TEMPLATE + "]";
+        List<RecordingSettings> read = new ArrayList<RecordingSettings>();
+        RecordingSettingsArrayReader reader = new RecordingSettingsArrayReader(new StringReader(array));
+        try {
+            while (reader.hasNext()) {
+                read.add(reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(3, read.size());
+        assertEquals(48000, read.get(0).getSampleRate());
+        assertEquals(2, read.get(0).getTimePeriods().size());
+        assertNull(read.get(1));
+        assertEquals(8000, read.get(2).getSampleRate());
+        assertEquals(AudioMothGson.create().fromJson(RecordingSettingsTypeAdapterTest.TEMPLATE, RecordingSettings.class), read.get(2));
+    }
+
+    @Test
+    public void emptyArray() throws Exception {
+        RecordingSettingsArrayReader reader = new RecordingSettingsArrayReader(new StringReader("[]"));
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nextPastTheEndFails() throws Exception {
+        RecordingSettingsArrayReader reader = new RecordingSettingsArrayReader(new StringReader("[]"));
+        reader.next();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.undercurrency.audiomoth.usbhid.model.FilterType;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.model.TimePeriods;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the JSON written by the reflective Gson serialization the test app used before the
+ * TypeAdapters, and the configuration templates of its assets
+ */
+public class RecordingSettingsTypeAdapterTest {
+
+    /**
+     * new Gson().toJson(rs) of the first releases, the TimePeriods localTime flag and the DeviceInfo were transient
+     */
+    static final String REFLECTIVE_GSON = json("{'amplitudeThresholdingEnabled':true,"
+            + "'timePeriods':[{'startMins':1380,'endMins':60},{'startMins':360,'endMins':540}],"
+            + "'ledEnabled':true,'lowVoltageCutoffEnabled':true,'batteryLevelCheckEnabled':false,'sampleRate':48000,"
+            + "'gain':3,'recordDuration':55,'sleepDuration':5,'localTime':true,'dutyEnabled':true,"
+            + "'passFiltersEnabled':true,'filterType':'band','lowerFilter':6000,'higherFilter':18000,"
+            + "'amplitudeThreshold':2048,'firstRecordingDate':'Nov 29, 2020 12:00:00 AM',"
+            + "'lastRecordingDate':'Dec 3, 2020 12:00:00 AM'}");
+
+    /**
+     * The same settings as a template of the test app assets, dates as days and no time periods
+     */
+    static final String TEMPLATE = json("{'timePeriods':[],'ledEnabled':true,'lowVoltageCutoffEnabled':true,"
+            + "'batteryLevelCheckEnabled':true,'sampleRate':8000,'gain':2,'recordDuration':55,'sleepDuration':5,"
+            + "'localTime':false,'firstRecordingDate':'2020-11-29','lastRecordingDate':null,'dutyEnabled':true,"
+            + "'passFiltersEnabled':true,'filterType':'high','lowerFilter':0,'higherFilter':4000,"
+            + "'amplitudeThresholdingEnabled':false,'amplitudeThreshold':0,'code':'243b1e7156c79ff4',"
+            + "'deviceInfo':{'battery':'4.5V','deviceId':'243B1F075CC5BC9C','firmwareVersion':'1.4.4'}}");
+
+    private final Gson gson = AudioMothGson.create();
+    private TimeZone defaultTimeZone;
+
+    static String json(String singleQuoted) {
+        return singleQuoted.replace('\'', '"');
+    }
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+        /* West of UTC, where a day read as UTC midnight falls on the day before */
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Mexico_City"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    private static LocalDate day(Date date) {
+        return new LocalDate(date.getTime());
+    }
+
+    @Test
+    public void readsTheReflectiveGsonSerialization() {
+        RecordingSettings rs = gson.fromJson(REFLECTIVE_GSON, RecordingSettings.class);
+
+        assertTrue(rs.isAmplitudeThresholdingEnabled());
+        assertEquals(2048, rs.getAmplitudeThreshold());
+        assertTrue(rs.isLedEnabled());
+        assertTrue(rs.isLowVoltageCutoffEnabled());
+        assertFalse(rs.isBatteryLevelCheckEnabled());
+        assertEquals(48000, rs.getSampleRate());
+        assertEquals(3, rs.getGain());
+        assertEquals(55, rs.getRecordDuration());
+        assertEquals(5, rs.getSleepDuration());
+        assertTrue(rs.isDutyEnabled());
+        assertTrue(rs.isPassFiltersEnabled());
+        assertEquals(FilterType.BAND, rs.getFilterType());
+        assertEquals(6000, rs.getLowerFilter());
+        assertEquals(18000, rs.getHigherFilter());
+
+        /* What fixGsonDesrialization used to patch by hand */
+        assertTrue(rs.isLocalTime());
+        assertEquals(Arrays.asList(new TimePeriods(360, 540), new TimePeriods(1380, 60)), rs.getTimePeriods());
+        for (TimePeriods tp : rs.getTimePeriods()) {
+            assertTrue(tp.isLocalTime());
+        }
+        assertTrue(rs.isFirstRecordingEnable());
+        assertTrue(rs.isLastRecordingEnable());
+        assertEquals(new LocalDate(2020, 11, 29), day(rs.getFirstRecordingDate()));
+        assertEquals(new LocalDate(2020, 12, 3), day(rs.getLastRecordingDate()));
+    }
+
+    @Test
+    public void readsTheGsonDateOfEveryPlatform() {
+        String[] dates = {"Nov 29, 2020 12:00:00 AM", "Nov 29, 2020, 12:00:00 AM", "Nov 29, 2020, 12:00:00\u202fAM",
+                "2020-11-29", "2020-11-29T00:00:00.000-06:00"};
+        for (String date : dates) {
+            RecordingSettings rs = gson.fromJson(json("{'firstRecordingDate':'" + date + "'}"), RecordingSettings.class);
+            assertEquals(date, new LocalDate(2020, 11, 29), day(rs.getFirstRecordingDate()));
+            assertTrue(date, rs.isFirstRecordingEnable());
+        }
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void invalidDatesAreRejected() {
+        gson.fromJson(json("{'firstRecordingDate':'29/11/2020'}"), RecordingSettings.class);
+    }
+
+    @Test
+    public void templateDaysAreLocalDays() {
+        RecordingSettings rs = gson.fromJson(TEMPLATE, RecordingSettings.class);
+        assertEquals(new LocalDate(2020, 11, 29), day(rs.getFirstRecordingDate()));
+        assertEquals(new LocalDate(2020, 11, 29).toDate(), rs.getFirstRecordingDate());
+        assertTrue(rs.isFirstRecordingEnable());
+        assertNull(rs.getLastRecordingDate());
+        assertFalse(rs.isLastRecordingEnable());
+        assertEquals(FilterType.HIGH, rs.getFilterType());
+        assertEquals(null, rs.getDeviceInfo());
+    }
+
+    @Test
+    public void emptyOrMissingTimePeriods() {
+        assertTrue(gson.fromJson(TEMPLATE, RecordingSettings.class).getTimePeriods().isEmpty());
+        assertTrue(gson.fromJson(json("{'sampleRate':8000}"), RecordingSettings.class).getTimePeriods().isEmpty());
+        assertTrue(gson.fromJson(json("{'timePeriods':null}"), RecordingSettings.class).getTimePeriods().isEmpty());
+        assertEquals(Arrays.asList(new TimePeriods(0, 1440)),
+                gson.fromJson(json("{'timePeriods':[null,{'endMins':1440,'startMins':0}]}"), RecordingSettings.class).getTimePeriods());
+    }
+
+    @Test
+    public void filterTypeIsWrittenAsTheReflectiveGsonDid() {
+        for (FilterType filterType : FilterType.values()) {
+            String written = gson.toJson(filterType);
+            assertEquals(new Gson().toJson(filterType), written);
+            assertEquals(filterType, gson.fromJson(written, FilterType.class));
+        }
+        assertEquals(FilterType.LOW, gson.fromJson(json("'LOW'"), FilterType.class));
+        assertNull(gson.fromJson(json("{'filterType':null}"), RecordingSettings.class).getFilterType());
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void unknownFilterTypeIsRejected() {
+        gson.fromJson(json("{'filterType':'notch'}"), RecordingSettings.class);
+    }
+
+    @Test
+    public void roundTrip() {
+        for (String source : new String[]{REFLECTIVE_GSON, TEMPLATE}) {
+            RecordingSettings rs = gson.fromJson(source, RecordingSettings.class);
+            String written = gson.toJson(rs);
+            RecordingSettings read = gson.fromJson(written, RecordingSettings.class);
+            assertEquals(rs, read);
+            assertEquals(rs.getTimePeriods(), read.getTimePeriods());
+            assertEquals(rs.getFilterType(), read.getFilterType());
+            assertEquals(day(rs.getFirstRecordingDate()), day(read.getFirstRecordingDate()));
+            assertEquals(rs.isLastRecordingEnable(), read.isLastRecordingEnable());
+            assertEquals(written, gson.toJson(read));
+        }
+        assertTrue(gson.toJson(gson.fromJson(TEMPLATE, RecordingSettings.class)).contains(json("'firstRecordingDate':'2020-11-29'")));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigFingerprintTest {
+
+    private static byte[] packet() {
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(48000);
+        rs.setGain((byte) 2);
+        rs.setRecordDuration(55);
+        rs.setSleepDuration(5);
+        rs.setLedEnabled(true);
+        rs.setTimePeriods(Arrays.asList(new TimePeriods(360, 540)));
+        return rs.serializeToBytes();
+    }
+
+    private static long fingerprint(byte[] packet) {
+        return ConfigFingerprint.compute(packet, 0, packet.length);
+    }
+
+    @Test
+    public void timeIsIgnored() {
+        byte[] packet = packet();
+        long fingerprint = fingerprint(packet);
+        for (int i = ConfigField.TIME.getOffset(); i < ConfigField.TIME.getEnd(); i++) {
+            packet[i] ^= (byte) 0xA5;
+        }
+        assertEquals(fingerprint, fingerprint(packet));
+    }
+
+    @Test
+    public void everyOtherFieldChangesIt() {
+        byte[] packet = packet();
+        long fingerprint = fingerprint(packet);
+        Set<Long> seen = new HashSet<Long>();
+        seen.add(fingerprint);
+        for (ConfigField field : ConfigField.values()) {
+            if (field == ConfigField.TIME) {
+                continue;
+            }
+            for (int i = field.getOffset(); i < field.getEnd(); i++) {
+                byte[] changed = packet.clone();
+                changed[i] ^= 1;
+                long changedFingerprint = fingerprint(changed);
+                assertNotEquals(field + " byte " + i, fingerprint, changedFingerprint);
+                assertTrue(field + " byte " + i + " collides", seen.add(changedFingerprint));
+            }
+        }
+    }
+
+    @Test
+    public void shortLayoutEqualsItsZeroPaddedForm() {
+        for (PacketLength layout : PacketLength.values()) {
+            byte[] packet = Arrays.copyOf(packet(), layout.getPacketLength());
+            byte[] padded = Arrays.copyOf(packet, RecordingSettings.PACKET_SIZE);
+            assertEquals(layout.toString(), fingerprint(padded), ConfigFingerprint.compute(packet, 0, packet.length));
+            /* The bytes past the layout are not read, whatever the buffer holds there */
+            byte[] scratch = packet();
+            Arrays.fill(scratch, layout.getPacketLength(), RecordingSettings.PACKET_SIZE, (byte) 0x5A);
+            assertEquals(layout.toString(), fingerprint(padded), ConfigFingerprint.compute(scratch, 0, layout.getPacketLength()));
+        }
+    }
+
+    @Test
+    public void offsetIsHonoured() {
+        byte[] packet = packet();
+        byte[] shifted = new byte[3 + packet.length];
+        System.arraycopy(packet, 0, shifted, 3, packet.length);
+        assertEquals(fingerprint(packet), ConfigFingerprint.compute(shifted, 3, packet.length));
+    }
+
+    @Test
+    public void hexStringHasSixteenDigits() {
+        assertEquals("0000000000000001", ConfigFingerprint.toHexString(1L));
+        assertEquals("FFFFFFFFFFFFFFFF", ConfigFingerprint.toHexString(-1L));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the sample rate fields each firmware layout gets, not only the length of its packet
+ */
+public class ConfigPacketCodecTest {
+
+    private static RecordingSettings settings(String firmwareVersion) {
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(16000);
+        rs.setDeviceInfo(new DeviceInfo("24F3190360A3B9A4", firmwareVersion, "4.5V", new Date()));
+        return rs;
+    }
+
+    private static byte[] encode(ConfigPacketCodec codec, RecordingSettings rs) {
+        byte[] packet = new byte[RecordingSettings.PACKET_SIZE];
+        assertEquals(codec.getPacketLength(), codec.encode(rs, packet, 0));
+        return packet;
+    }
+
+    private static void assertSampleRateFields(Configurations expected, byte[] packet) {
+        assertEquals(expected.getClockDivider(), packet[ConfigField.CLOCK_DIVIDER.getOffset()]);
+        assertEquals(expected.getAcquisitionCycles(), packet[ConfigField.ACQUISITION_CYCLES.getOffset()]);
+        assertEquals(expected.getOversampleRate(), packet[ConfigField.OVERSAMPLE_RATE.getOffset()]);
+        RecordingSettingsView view = new RecordingSettingsView(packet, 0);
+        assertEquals(expected.getSampleRate(), view.getConfigSampleRate());
+        assertEquals(expected.getSampleRateDivider(), view.getSampleRateDivider());
+        assertEquals(16000, view.getSampleRate());
+    }
+
+    private static void assertLayout(PacketLength layout, String firmwareVersion, Configurations expected) {
+        ConfigPacketCodec codec = ConfigPacketCodec.forFirmware(firmwareVersion);
+        assertEquals(layout, codec.getLayout());
+        assertEquals(expected.name().startsWith("OLD_"), codec.usesOldSampleRates());
+        assertSampleRateFields(expected, encode(codec, settings(firmwareVersion)));
+    }
+
+    @Test
+    public void zeroLayoutUsesTheOldSampleRates() {
+        assertLayout(PacketLength.ZERO, "1.1.0", Configurations.OLD_SAMPLE_RATE_16);
+    }
+
+    @Test
+    public void oneTwoLayoutUsesTheOldSampleRates() {
+        assertLayout(PacketLength.ONE_TWO, "1.2.0", Configurations.OLD_SAMPLE_RATE_16);
+    }
+
+    @Test
+    public void oneTwoOneLayoutUsesTheOldSampleRates() {
+        assertLayout(PacketLength.ONE_TWO_ONE, "1.2.1", Configurations.OLD_SAMPLE_RATE_16);
+    }
+
+    @Test
+    public void oneTwoTwoLayoutUsesTheOldSampleRates() {
+        assertLayout(PacketLength.ONE_TWO_TWO, "1.3.0", Configurations.OLD_SAMPLE_RATE_16);
+    }
+
+    @Test
+    public void oneFourLayoutUsesTheNewSampleRates() {
+        assertLayout(PacketLength.ONE_FOUR, "1.4.0", Configurations.SAMPLE_RATE_16);
+        assertLayout(PacketLength.ONE_FOUR, "1.4.4", Configurations.SAMPLE_RATE_16);
+    }
+
+    @Test
+    public void serializeToFollowsTheCodecOfTheDevice() {
+        byte[] packet = new byte[RecordingSettings.PACKET_SIZE];
+        settings("1.3.0").serializeTo(packet, 0);
+        assertSampleRateFields(Configurations.OLD_SAMPLE_RATE_16, packet);
+        settings("1.4.4").serializeTo(packet, 0);
+        assertSampleRateFields(Configurations.SAMPLE_RATE_16, packet);
+    }
+
+    @Test
+    public void olderSemanticVersionComparesEveryNumber() {
+        assertTrue(settings("1.3.0").getDeviceInfo().isOlderSemanticVersion());
+        assertTrue(settings("1.4.3").getDeviceInfo().isOlderSemanticVersion());
+        assertFalse(settings("1.4.4").getDeviceInfo().isOlderSemanticVersion());
+        assertFalse(settings("1.10.0").getDeviceInfo().isOlderSemanticVersion());
+    }
+}
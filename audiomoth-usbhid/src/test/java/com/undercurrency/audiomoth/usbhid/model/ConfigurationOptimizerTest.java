@@ -0,0 +1,102 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationOptimizerTest {
+
+    private static final long CARD = 32L * 1000 * 1000 * 1000;
+
+    private static List<TimePeriods> coverage() {
+        return Arrays.asList(new TimePeriods(300, 480), new TimePeriods(1080, 1260));
+    }
+
+    @Test
+    public void everySolutionFitsTheExactDailyBudget() {
+        LifeSpanEngine.Result result = new LifeSpanEngine.Result();
+        PackedTimePeriods coverage = new PackedTimePeriods(coverage());
+        int checked = 0;
+        for (float battery = 500f; battery <= 6000f; battery += 137f) {
+            for (int days = 5; days <= 120; days += 23) {
+                ConfigurationOptimizer optimizer = new ConfigurationOptimizer(battery, CARD, days, coverage());
+                for (ConfigurationOptimizer.Solution solution : optimizer.optimize()) {
+                    LifeSpanEngine.evaluate(solution.getConfiguration(), solution.getRecordDuration(),
+                            solution.getSleepDuration(), true, false, coverage, result);
+                    assertTrue(solution + " uses " + result.getExactEnergyUsed() + " mAh of " + optimizer.getDailyEnergyBudget(),
+                            result.getExactEnergyUsed() <= optimizer.getDailyEnergyBudget());
+                    assertTrue(result.getTotalSize() <= optimizer.getDailyStorageBudget());
+                    assertEquals(result.getExactEnergyUsed(), solution.getEnergyUsed(), 0f);
+                    assertEquals(result.getTotalRecLength(), solution.getRecordedSeconds());
+                    checked++;
+                }
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void solutionsRecordTheLongestDurationThatFits() {
+        ConfigurationOptimizer optimizer = new ConfigurationOptimizer(2600f, CARD, 30, coverage());
+        LifeSpanEngine.Result result = new LifeSpanEngine.Result();
+        PackedTimePeriods coverage = new PackedTimePeriods(coverage());
+        List<ConfigurationOptimizer.Solution> solutions = optimizer.optimize();
+        assertFalse(solutions.isEmpty());
+        for (ConfigurationOptimizer.Solution solution : solutions) {
+            if (solution.getSleepDuration() == 0) {
+                continue;
+            }
+            LifeSpanEngine.evaluate(solution.getConfiguration(), solution.getRecordDuration() + 1,
+                    solution.getSleepDuration() - 1, true, false, coverage, result);
+            assertTrue(result.getExactEnergyUsed() > optimizer.getDailyEnergyBudget()
+                    || result.getTotalSize() > optimizer.getDailyStorageBudget() || result.isSizeWarning());
+        }
+    }
+
+    @Test
+    public void solutionsGoDownInRateAndUpInRecordedSeconds() {
+        List<ConfigurationOptimizer.Solution> solutions = new ConfigurationOptimizer(1200f, CARD, 60, coverage()).optimize();
+        for (int i = 1; i < solutions.size(); i++) {
+            assertTrue(solutions.get(i).getSampleRate() < solutions.get(i - 1).getSampleRate());
+            assertTrue(solutions.get(i).getRecordedSeconds() > solutions.get(i - 1).getRecordedSeconds());
+        }
+    }
+
+    @Test
+    public void solutionsBecomeSettingsWithTheCoverage() {
+        List<ConfigurationOptimizer.Solution> solutions = new ConfigurationOptimizer(2600f, CARD, 30, coverage()).optimize();
+        RecordingSettings rs = solutions.get(0).toRecordingSettings();
+        assertEquals(new ArrayList<TimePeriods>(coverage()), rs.getTimePeriods());
+        assertEquals(solutions.get(0).getSampleRate(), rs.getSampleRate());
+        assertTrue(rs.isDutyEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyCoverageIsRejected() {
+        new ConfigurationOptimizer(2600f, CARD, 30, Collections.<TimePeriods>emptyList());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DeploymentSimulatorTest {
+
+    private static final DateTimeZone NEW_YORK = DateTimeZone.forID("America/New_York");
+    /* West of UTC and without daylight saving, local midnight is 05:00 UTC */
+    private static final DateTimeZone UTC_MINUS_5 = DateTimeZone.forOffsetHours(-5);
+
+    private static RecordingSettings settings() {
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(48000);
+        rs.setRecordDuration(55);
+        rs.setSleepDuration(5);
+        rs.setDutyEnabled(true);
+        /* 10:00 to 12:00 UTC, never cut by a local midnight at UTC-5 */
+        rs.setTimePeriods(Arrays.asList(new TimePeriods(600, 720)));
+        return rs;
+    }
+
+    private static LifeSpanEngine.Result fullDay(RecordingSettings rs) {
+        return LifeSpanEngine.evaluate(Configurations.getConfig(rs.getSampleRate() / 1000, false), rs.getRecordDuration(),
+                rs.getSleepDuration(), rs.isDutyEnabled(), rs.isAmplitudeThresholdingEnabled(),
+                new PackedTimePeriods(rs.getTimePeriods()), new LifeSpanEngine.Result());
+    }
+
+    @Test
+    public void recordingDatesAreTakenInTheZone() {
+        RecordingSettings rs = settings();
+        /* Late evening in New York, already the next day in UTC */
+        rs.setFirstRecordingEnable(true);
+        rs.setFirstRecordingDate(new LocalDateTime(2020, 6, 10, 22, 0).toDateTime(NEW_YORK).toDate());
+        rs.setLastRecordingEnable(true);
+        rs.setLastRecordingDate(new LocalDateTime(2020, 6, 20, 22, 0).toDateTime(NEW_YORK).toDate());
+
+        DeploymentForecast forecast = new DeploymentSimulator(rs, NEW_YORK).simulate();
+        assertEquals(11, forecast.getDayCount());
+        assertEquals(new LocalDate(2020, 6, 10), forecast.getDate(0));
+        assertEquals(new LocalDate(2020, 6, 20), forecast.getDate(10));
+    }
+
+    @Test
+    public void daysAreLocalDays() {
+        RecordingSettings rs = settings();
+        LifeSpanEngine.Result full = fullDay(rs);
+        DeploymentForecast forecast = new DeploymentSimulator(rs, UTC_MINUS_5)
+                .simulate(new LocalDate(2020, 6, 1), new LocalDate(2020, 6, 10));
+
+        assertEquals(10, forecast.getDayCount());
+        for (int day = 0; day < forecast.getDayCount(); day++) {
+            assertEquals(new LocalDate(2020, 6, 1 + day), forecast.getDate(day));
+            assertEquals(new LocalDate(2020, 6, 1 + day).toDateTimeAtStartOfDay(UTC_MINUS_5).getMillis(), forecast.getDayStart(day));
+            assertEquals(full.getExactEnergyUsed(), forecast.getEnergyUsed(day), 1e-4);
+            assertEquals(full.getTotalSize(), forecast.getBytes(day));
+            assertEquals(full.getTotalRecCount(), forecast.getTotalRecCount(day));
+        }
+        assertEquals(10 * full.getTotalSize(), forecast.getTotalBytes());
+    }
+
+    @Test
+    public void depletionDateIsLocalMidnight() {
+        RecordingSettings rs = settings();
+        DeploymentSimulator simulator = new DeploymentSimulator(rs, UTC_MINUS_5);
+        /* Runs out during the fourth day */
+        simulator.setBatteryCapacity(3.5f * fullDay(rs).getExactEnergyUsed());
+        simulator.setCardCapacity(5 * fullDay(rs).getTotalSize() + 1);
+        DeploymentForecast forecast = simulator.simulate(new LocalDate(2020, 6, 1), new LocalDate(2020, 6, 10));
+
+        assertEquals(3, forecast.getDepletionDay());
+        assertEquals(new LocalDate(2020, 6, 4).toDateTimeAtStartOfDay(UTC_MINUS_5), forecast.getDepletionDate());
+        assertEquals(0, forecast.getDepletionDate().getMillisOfDay());
+        assertEquals(5, forecast.getCardFullDay());
+        assertEquals(new LocalDate(2020, 6, 6).toDateTimeAtStartOfDay(UTC_MINUS_5), forecast.getCardFullDate());
+    }
+
+    @Test
+    public void daylightSavingChangeShortensTheDay() {
+        RecordingSettings rs = settings();
+        rs.setTimePeriods(Arrays.asList(new TimePeriods(0, 1440)));
+        DeploymentForecast forecast = new DeploymentSimulator(rs, NEW_YORK)
+                .simulate(new LocalDate(2020, 3, 7), new LocalDate(2020, 3, 9));
+
+        assertEquals(3, forecast.getDayCount());
+        assertEquals(24L * DateTimeConstants.MILLIS_PER_HOUR, forecast.getDayStart(1) - forecast.getDayStart(0));
+        assertEquals(23L * DateTimeConstants.MILLIS_PER_HOUR, forecast.getDayStart(2) - forecast.getDayStart(1));
+        /* Recording around the clock, the short day uses less */
+        assertEquals(23.0 / 24.0, forecast.getEnergyUsed(1) / forecast.getEnergyUsed(0), 0.01);
+        assertNull(forecast.getDepletionDate());
+    }
+}
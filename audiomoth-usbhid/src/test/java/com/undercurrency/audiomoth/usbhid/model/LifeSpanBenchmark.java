@@ -0,0 +1,93 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of LifeSpan.getLifeSpan() and of the LifeSpanEngine against the implementation
+ * they replaced, over the same random settings as LifeSpanGoldenTest
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LifeSpanBenchmark {
+
+    private static final int SETTINGS = 1000;
+
+    private final List<RecordingSettings> settings = new ArrayList<RecordingSettings>();
+    private final LifeSpanEngine.Result result = new LifeSpanEngine.Result();
+
+    @Setup
+    public void setUp() {
+        settings.clear();
+        for (RecordingSettings rs : LifeSpanGoldenTest.randomSettings(7L, 2 * SETTINGS)) {
+            try {
+                LegacyLifeSpan.getLifeSpan(rs);
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (settings.size() < SETTINGS) {
+                settings.add(rs);
+            }
+        }
+    }
+
+    @Benchmark
+    public long legacyLifeSpan() {
+        long count = 0;
+        for (int i = 0; i < settings.size(); i++) {
+            count += LegacyLifeSpan.getLifeSpan(settings.get(i)).getTotalRecCount();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long lifeSpan() {
+        long count = 0;
+        for (int i = 0; i < settings.size(); i++) {
+            count += LifeSpan.getLifeSpan(settings.get(i)).getTotalRecCount();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long engine() {
+        long count = 0;
+        for (int i = 0; i < settings.size(); i++) {
+            count += LifeSpanEngine.evaluate(settings.get(i), result).getTotalRecCount();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class LifeSpanCacheTest {
+
+    private static RecordingSettings settings() {
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(48000);
+        rs.setRecordDuration(55);
+        rs.setSleepDuration(5);
+        rs.setDutyEnabled(true);
+        List<TimePeriods> periods = new ArrayList<TimePeriods>();
+        periods.add(new TimePeriods(300, 420));
+        periods.add(new TimePeriods(1080, 1260));
+        rs.setTimePeriods(periods);
+        return rs;
+    }
+
+    @Test
+    public void fieldsTheEstimateIgnoresKeepTheCachedLifeSpan() {
+        LifeSpanCache cache = new LifeSpanCache();
+        RecordingSettings rs = settings();
+        LifeSpan lifeSpan = cache.get(rs);
+
+        rs.setGain((byte) 4);
+        rs.setLedEnabled(true);
+        rs.setPassFiltersEnabled(true);
+
+        assertSame(lifeSpan, cache.get(rs));
+        assertSame(lifeSpan, cache.get(settings()));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void everyFieldOfTheKeyMissesTheCache() {
+        LifeSpanCache cache = new LifeSpanCache();
+        LifeSpan lifeSpan = cache.get(settings());
+        List<RecordingSettings> changed = new ArrayList<RecordingSettings>();
+        RecordingSettings rs = settings();
+        rs.setSampleRate(96000);
+        changed.add(rs);
+        rs = settings();
+        rs.setRecordDuration(60);
+        changed.add(rs);
+        rs = settings();
+        rs.setSleepDuration(10);
+        changed.add(rs);
+        rs = settings();
+        rs.setDutyEnabled(false);
+        changed.add(rs);
+        rs = settings();
+        rs.setAmplitudeThresholdingEnabled(true);
+        changed.add(rs);
+        rs = settings();
+        rs.getPackedTimePeriods().remove(1);
+        changed.add(rs);
+        rs = settings();
+        rs.getPackedTimePeriods().add(0, 60, false);
+        changed.add(rs);
+
+        for (RecordingSettings other : changed) {
+            LifeSpan otherLifeSpan = cache.get(other);
+            assertNotSame(lifeSpan, otherLifeSpan);
+            assertEquals(LifeSpan.getLifeSpan(other).toString(), otherLifeSpan.toString());
+        }
+        assertEquals(0, cache.getHitCount());
+        assertEquals(changed.size() + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void changingTheSettingsDoesNotChangeTheStoredKey() {
+        LifeSpanCache cache = new LifeSpanCache();
+        RecordingSettings rs = settings();
+        LifeSpan lifeSpan = cache.get(rs);
+        rs.getPackedTimePeriods().clear();
+        cache.get(rs);
+
+        assertSame(lifeSpan, cache.get(settings()));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        LifeSpanCache cache = new LifeSpanCache(2);
+        RecordingSettings first = settings();
+        RecordingSettings second = settings();
+        second.setSleepDuration(10);
+        RecordingSettings third = settings();
+        third.setSleepDuration(20);
+
+        LifeSpan firstLifeSpan = cache.get(first);
+        LifeSpan secondLifeSpan = cache.get(second);
+        assertSame(firstLifeSpan, cache.get(first));
+        cache.get(third);
+
+        assertEquals(2, cache.size());
+        assertSame(firstLifeSpan, cache.get(first));
+        assertNotSame(secondLifeSpan, cache.get(second));
+    }
+
+    @Test
+    public void cachedLifeSpansMatchTheComputedOnes() {
+        /* More configurations than entries, so lookups both hit and evict */
+        LifeSpanCache cache = new LifeSpanCache(8);
+        List<RecordingSettings> settings = new ArrayList<RecordingSettings>();
+        for (RecordingSettings rs : LifeSpanGoldenTest.randomSettings(11L, 100)) {
+            try {
+                LifeSpan.getLifeSpan(rs);
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (settings.size() < 12) {
+                settings.add(rs);
+            }
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            RecordingSettings rs = settings.get(random.nextInt(settings.size()));
+            LifeSpan expected = LifeSpan.getLifeSpan(rs);
+            LifeSpan actual = cache.get(rs);
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(expected.getFileSizeBytes(), actual.getFileSizeBytes());
+        }
+        assertTrue(cache.getHitCount() > 0);
+        assertTrue(cache.getMissCount() > settings.size());
+        assertEquals(8, cache.size());
+    }
+
+    @Test
+    public void hitsDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        LifeSpanCache cache = new LifeSpanCache();
+        RecordingSettings rs = settings();
+        long checksum = 0;
+        for (int i = 0; i < 20000; i++) {
+            checksum += cache.get(rs).getTotalRecCount();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            checksum += cache.get(rs).getTotalRecCount();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        double bytesPerHit = allocated / 100000.0;
+        assertTrue("a hit allocated " + bytesPerHit + " bytes (checksum " + checksum + ")", bytesPerHit < 1.0);
+    }
+}
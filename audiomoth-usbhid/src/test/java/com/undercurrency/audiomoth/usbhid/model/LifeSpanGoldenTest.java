@@ -0,0 +1,124 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import com.undercurrency.audiomoth.usbhid.json.AudioMothGson;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that LifeSpan.getLifeSpan() gives the same results as the implementation it replaced,
+ * on random settings and on the configurations shipped with the test app
+ */
+public class LifeSpanGoldenTest {
+
+    private static final int RANDOM_SETTINGS = 50000;
+    private static final int[] RATES = {8, 16, 32, 48, 96, 192, 250, 384, 7, 0};
+
+    /**
+     * Random settings, with now and then an unknown sample rate, empty periods and out of range durations
+     */
+    static List<RecordingSettings> randomSettings(long seed, int count) {
+        Random random = new Random(seed);
+        List<RecordingSettings> settings = new ArrayList<RecordingSettings>(count);
+        for (int i = 0; i < count; i++) {
+            RecordingSettings rs = new RecordingSettings();
+            rs.setSampleRate(RATES[random.nextInt(i % 50 == 0 ? RATES.length : RATES.length - 2)] * 1000);
+            int periods = random.nextInt(6);
+            List<TimePeriods> timePeriods = new ArrayList<TimePeriods>();
+            for (int j = 0; j < periods; j++) {
+                int startMins = random.nextInt(1440);
+                int endMins = random.nextInt(20) == 0 ? startMins : random.nextInt(1441);
+                timePeriods.add(new TimePeriods(startMins, endMins));
+            }
+            rs.setTimePeriods(timePeriods);
+            int mode = random.nextInt(10);
+            if (mode == 0) {
+                rs.setRecordDuration(0);
+                rs.setSleepDuration(random.nextBoolean() ? 0 : 5);
+            } else if (mode == 1) {
+                rs.setRecordDuration(random.nextInt(100000) - 50000);
+                rs.setSleepDuration(random.nextInt(100000) - 50000);
+            } else {
+                rs.setRecordDuration(1 + random.nextInt(mode < 5 ? 120 : 65535));
+                rs.setSleepDuration(random.nextInt(mode < 5 ? 120 : 65535));
+            }
+            rs.setDutyEnabled(random.nextInt(4) != 0);
+            rs.setAmplitudeThresholdingEnabled(random.nextInt(3) == 0);
+            settings.add(rs);
+        }
+        return settings;
+    }
+
+    @Test
+    public void randomSettingsMatchTheLegacyLifeSpan() {
+        for (RecordingSettings rs : randomSettings(42L, RANDOM_SETTINGS)) {
+            assertSameLifeSpan(rs);
+        }
+    }
+
+    @Test
+    public void testAppConfigurationsMatchTheLegacyLifeSpan() throws IOException {
+        /* Unit tests run from the module directory */
+        File[] configs = new File("../testapp/src/main/assets").listFiles();
+        Assume.assumeTrue(configs != null && configs.length > 0);
+        for (File config : configs) {
+            Reader reader = new FileReader(config);
+            try {
+                assertSameLifeSpan(AudioMothGson.create().fromJson(reader, RecordingSettings.class));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static void assertSameLifeSpan(RecordingSettings rs) {
+        LegacyLifeSpan expected;
+        try {
+            expected = LegacyLifeSpan.getLifeSpan(rs);
+        } catch (RuntimeException e) {
+            try {
+                LifeSpan.getLifeSpan(rs);
+            } catch (RuntimeException actual) {
+                assertEquals(e.getClass(), actual.getClass());
+                return;
+            }
+            throw new AssertionError("Expected " + e + " for " + rs);
+        }
+        LifeSpan actual = LifeSpan.getLifeSpan(rs);
+        String message = rs.toString();
+        assertEquals(message, expected.getTotalRecCount(), actual.getTotalRecCount());
+        assertEquals(message, expected.isPlural(), actual.isPlural());
+        assertEquals(message, expected.isUpTo(), actual.isUpTo());
+        assertEquals(message, expected.getFileSizeBytes(), actual.getFileSizeBytes());
+        assertEquals(message, expected.getFileSizeInUnits(), actual.getFileSizeInUnits());
+        assertEquals(message, expected.getTotalMBFiles(), actual.getTotalMBFiles());
+        assertEquals(message, Float.floatToIntBits(expected.getEnergyUsed()), Float.floatToIntBits(actual.getEnergyUsed()));
+    }
+}
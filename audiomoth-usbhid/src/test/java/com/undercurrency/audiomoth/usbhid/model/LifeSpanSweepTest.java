@@ -0,0 +1,128 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LifeSpanSweepTest {
+
+    private static List<List<TimePeriods>> schedules() {
+        List<List<TimePeriods>> schedules = new ArrayList<List<TimePeriods>>();
+        schedules.add(Arrays.asList(new TimePeriods(300, 420), new TimePeriods(1080, 1260)));
+        schedules.add(Arrays.asList(new TimePeriods(0, 1440)));
+        schedules.add(Arrays.asList(new TimePeriods(1380, 60)));
+        return schedules;
+    }
+
+    private static LifeSpanSweep sweep() {
+        return new LifeSpanSweep(LifeSpanSweep.allSampleRates(), LifeSpanSweep.range(5, 300, 5),
+                LifeSpanSweep.range(0, 600, 15), schedules());
+    }
+
+    @Test
+    public void everyPointMatchesTheEngine() {
+        LifeSpanSweep sweep = sweep();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        LifeSpanSweep.Table table;
+        try {
+            table = sweep.run(pool);
+        } finally {
+            pool.shutdown();
+        }
+        List<List<TimePeriods>> schedules = schedules();
+        LifeSpanEngine.Result result = new LifeSpanEngine.Result();
+        for (int i = 0; i < table.size(); i++) {
+            LifeSpanEngine.evaluate(table.getSampleRate(i), table.getRecordDuration(i), table.getSleepDuration(i),
+                    true, false, new PackedTimePeriods(schedules.get(table.getScheduleIndex(i))), result);
+            assertEquals(result.getEnergyUsed(), table.getEnergyUsed(i), 0f);
+            assertEquals(result.getExactEnergyUsed(), table.getExactEnergyUsed(i), 0f);
+            assertEquals(result.getTotalRecCount(), table.getTotalRecCount(i));
+            assertEquals(result.getTotalSize(), table.getTotalSize(i));
+            assertEquals(result.getFileSizeBytes(), table.getFileSizeBytes(i));
+        }
+    }
+
+    @Test
+    public void indexesRoundTrip() {
+        LifeSpanSweep.Table table = sweep().run();
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(i, table.indexOf(table.getSampleRateIndex(i), table.getRecordDurationIndex(i),
+                    table.getSleepDurationIndex(i), table.getScheduleIndex(i)));
+        }
+    }
+
+    @Test
+    public void findWithinComparesTheExactEnergy() {
+        LifeSpanSweep.Table table = sweep().run();
+        /* A budget equal to a rounded figure that is below the exact one */
+        float budget = -1f;
+        for (int i = 0; i < table.size() && budget < 0f; i++) {
+            if (table.getEnergyUsed(i) < table.getExactEnergyUsed(i)) {
+                budget = table.getEnergyUsed(i);
+            }
+        }
+        assertTrue(budget >= 0f);
+        long maxBytes = Long.MAX_VALUE;
+        int[] found = table.findWithin(budget, maxBytes);
+        boolean[] within = new boolean[table.size()];
+        for (int i : found) {
+            assertTrue(table.getExactEnergyUsed(i) <= budget);
+            within[i] = true;
+        }
+        boolean roundedOnly = false;
+        for (int i = 0; i < table.size(); i++) {
+            if (!within[i]) {
+                assertTrue(table.getExactEnergyUsed(i) > budget);
+                roundedOnly |= table.getEnergyUsed(i) <= budget;
+            }
+        }
+        assertTrue(roundedOnly);
+    }
+
+    @Test
+    public void findWithinChecksTheDailyBytes() {
+        LifeSpanSweep.Table table = sweep().run();
+        long maxBytes = 500L * 1000 * 1000;
+        for (int i : table.findWithin(Float.MAX_VALUE, maxBytes)) {
+            assertTrue(table.getTotalSize(i) <= maxBytes);
+        }
+        assertEquals(table.size(), table.findWithin(Float.MAX_VALUE, Long.MAX_VALUE).length);
+    }
+
+    @Test
+    public void rangeIncludesBothEnds() {
+        assertArrayEquals(new int[]{10, 20, 30}, LifeSpanSweep.range(10, 30, 10));
+        assertArrayEquals(new int[]{10, 20}, LifeSpanSweep.range(10, 29, 10));
+        assertFalse(Arrays.asList(LifeSpanSweep.allSampleRates()).contains(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyParametersAreRejected() {
+        new LifeSpanSweep(new Configurations[0], LifeSpanSweep.range(5, 10, 5), LifeSpanSweep.range(0, 10, 5), schedules());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackedTimePeriodsTest {
+
+    @Test
+    public void periodsStaySortedByStartAndEndMinute() {
+        PackedTimePeriods periods = new PackedTimePeriods(1);
+        assertEquals(0, periods.add(600, 900, false));
+        assertEquals(0, periods.add(60, 300, false));
+        assertEquals(1, periods.add(60, 400, true));
+        assertEquals(3, periods.add(new TimePeriods(1000, 1200)));
+
+        assertEquals(Arrays.asList(new TimePeriods(60, 300), new TimePeriods(60, 400),
+                new TimePeriods(600, 900), new TimePeriods(1000, 1200)), periods.toList());
+        assertTrue(periods.isLocalTime(1));
+        periods.remove(1);
+        assertEquals(3, periods.size());
+        assertEquals(600, periods.getStartMins(1));
+        assertFalse(periods.contains(60, 400));
+    }
+
+    @Test
+    public void copiesDoNotShareTheirMinutes() {
+        PackedTimePeriods periods = new PackedTimePeriods(Arrays.asList(new TimePeriods(600, 900), new TimePeriods(60, 120)));
+        PackedTimePeriods copy = new PackedTimePeriods(periods);
+        periods.get(0).setStartMins(0);
+        copy.add(1300, 1400, false);
+
+        assertEquals(60, periods.getStartMins(0));
+        assertEquals(2, periods.size());
+        assertTrue(copy.containsAll(periods));
+        assertFalse(periods.containsAll(copy));
+    }
+
+    @Test
+    public void hashCodeMatchesTheListOfPeriods() {
+        List<TimePeriods> list = new ArrayList<TimePeriods>();
+        list.add(new TimePeriods(60, 120));
+        list.add(new TimePeriods(600, 900));
+        PackedTimePeriods periods = new PackedTimePeriods(list);
+
+        assertEquals(list.hashCode(), periods.hashCode());
+        assertEquals(periods, new PackedTimePeriods(list));
+        assertEquals(list.toString(), periods.toString());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PacketLengthTest {
+
+    @Test
+    public void firmwareGetsTheNewestLayoutNotNewerThanItself() {
+        assertEquals(PacketLength.ZERO, PacketLength.forFirmware("1.1.9"));
+        assertEquals(PacketLength.ONE_TWO, PacketLength.forFirmware("1.2.0"));
+        assertEquals(PacketLength.ONE_TWO_ONE, PacketLength.forFirmware("1.2.1"));
+        assertEquals(PacketLength.ONE_TWO_TWO, PacketLength.forFirmware("1.3"));
+        assertEquals(PacketLength.ONE_FOUR, PacketLength.forFirmware("1.4.4"));
+        assertEquals(PacketLength.ONE_FOUR, PacketLength.forFirmware("1.10.0"));
+    }
+
+    @Test
+    public void unknownFirmwareGetsTheLatestLayout() {
+        assertEquals(PacketLength.latest(), PacketLength.forFirmware(null));
+        assertEquals(PacketLength.latest(), PacketLength.forFirmware(""));
+        assertEquals(PacketLength.latest(), PacketLength.forFirmware("1..2"));
+        assertEquals(PacketLength.latest(), PacketLength.forFirmware("v1.2"));
+    }
+
+    @Test
+    public void missingNumbersCompareAsZero() {
+        assertEquals(0, PacketLength.compareVersions("1.2", "1.2.0"));
+        assertTrue(PacketLength.compareVersions("1.2.1", "1.10") < 0);
+        assertTrue(PacketLength.compareVersions("2", "1.9.9") > 0);
+    }
+}
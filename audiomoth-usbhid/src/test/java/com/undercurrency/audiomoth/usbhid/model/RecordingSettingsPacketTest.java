@@ -0,0 +1,96 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that RecordingSettings and RecordingSettingsView agree on the ConfigField layout
+ */
+public class RecordingSettingsPacketTest {
+
+    private static RecordingSettings settings() {
+        RecordingSettings rs = new RecordingSettings();
+        rs.setSampleRate(96000);
+        rs.setGain((byte) 3);
+        rs.setRecordDuration(300);
+        rs.setSleepDuration(600);
+        rs.setLedEnabled(true);
+        rs.setDutyEnabled(true);
+        rs.setLowVoltageCutoffEnabled(true);
+        rs.setBatteryLevelCheckEnabled(false);
+        rs.setPassFiltersEnabled(true);
+        rs.setFilterType(FilterType.BAND);
+        rs.setLowerFilter(2000);
+        rs.setHigherFilter(12000);
+        rs.setAmplitudeThresholdingEnabled(true);
+        rs.setAmplitudeThreshold(512);
+        List<TimePeriods> periods = new ArrayList<TimePeriods>();
+        periods.add(new TimePeriods(1080, 1260));
+        periods.add(new TimePeriods(300, 420));
+        rs.setTimePeriods(periods);
+        return rs;
+    }
+
+    @Test
+    public void serializedFieldsSitAtTheirConfigFieldOffsets() {
+        byte[] buffer = new byte[1 + RecordingSettings.PACKET_SIZE];
+        assertEquals(RecordingSettings.PACKET_SIZE, settings().serializeTo(buffer, 1));
+        RecordingSettingsView view = new RecordingSettingsView(buffer, 1);
+
+        assertEquals(3, view.getGain());
+        assertEquals(96000, view.getSampleRate());
+        assertEquals(300, view.getRecordDuration());
+        assertEquals(600, view.getSleepDuration());
+        assertTrue(view.isLedEnabled());
+        assertTrue(view.isDutyEnabled());
+        assertTrue(view.isLowVoltageCutoffEnabled());
+        assertFalse(view.isBatteryLevelCheckEnabled());
+        assertEquals(2, view.getTimePeriodCount());
+        assertEquals(300, view.getStartMins(0));
+        assertEquals(420, view.getEndMins(0));
+        assertEquals(1080, view.getStartMins(1));
+        assertEquals(FilterType.BAND, view.getFilterType());
+        assertEquals(2000, view.getLowerFilter());
+        assertEquals(12000, view.getHigherFilter());
+        assertEquals(512, view.getAmplitudeThreshold());
+        assertEquals(0L, view.getEarliestRecordingTime());
+    }
+
+    @Test
+    public void packetRoundTrips() {
+        RecordingSettings rs = settings();
+        RecordingSettings back = new RecordingSettings(rs.serializeToBytes());
+        assertEquals(rs.getSampleRate(), back.getSampleRate());
+        assertEquals(rs.getRecordDuration(), back.getRecordDuration());
+        assertEquals(rs.getSleepDuration(), back.getSleepDuration());
+        assertEquals(rs.getLowerFilter(), back.getLowerFilter());
+        assertEquals(rs.getHigherFilter(), back.getHigherFilter());
+        assertEquals(rs.getAmplitudeThreshold(), back.getAmplitudeThreshold());
+        assertEquals(2, back.getTimePeriods().size());
+        assertEquals(rs.getFingerprint(), back.getFingerprint());
+        assertEquals(rs.getFingerprint(), new RecordingSettingsView(rs.serializeToBytes(), 0).getFingerprint());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that RecordingSettings serialized by the first releases, with an ArrayList of periods,
+ * and by this one can be read by each other
+ */
+public class RecordingSettingsSerializationTest {
+
+    @Test
+    public void readsSettingsSerializedWithAnArrayListOfPeriods() throws Exception {
+        com.undercurrency.audiomoth.usbhid.model.baseline.RecordingSettings old = new com.undercurrency.audiomoth.usbhid.model.baseline.RecordingSettings();
+        old.timePeriods.add(new TimePeriods(1080, 1260));
+        old.timePeriods.add(new TimePeriods(300, 420));
+        old.sampleRate = 48000;
+        old.gain = 2;
+        old.recordDuration = 55;
+        old.sleepDuration = 5;
+        old.dutyEnabled = true;
+        old.passFiltersEnabled = true;
+        old.filterType = FilterType.BAND;
+        old.lowerFilter = 2000;
+        old.higherFilter = 12000;
+        old.amplitudeThresholdingEnabled = true;
+        old.amplitudeThreshold = 512;
+        old.firstRecordingDate = new Date(1600000000000L);
+
+        RecordingSettings rs = (RecordingSettings) roundTrip(old, RecordingSettings.class);
+
+        assertEquals(Arrays.asList(new TimePeriods(300, 420), new TimePeriods(1080, 1260)), rs.getTimePeriods());
+        assertEquals(2, rs.getPackedTimePeriods().size());
+        assertEquals(48000, rs.getSampleRate());
+        assertEquals(2, rs.getGain());
+        assertEquals(55, rs.getRecordDuration());
+        assertEquals(5, rs.getSleepDuration());
+        assertTrue(rs.isDutyEnabled());
+        assertEquals(FilterType.BAND, rs.getFilterType());
+        assertEquals(2000, rs.getLowerFilter());
+        assertEquals(12000, rs.getHigherFilter());
+        assertTrue(rs.isAmplitudeThresholdingEnabled());
+        assertEquals(512, rs.getAmplitudeThreshold());
+        assertEquals(new Date(1600000000000L), rs.getFirstRecordingDate());
+    }
+
+    @Test
+    public void writesThePeriodsAsAnArrayList() throws Exception {
+        RecordingSettings rs = new RecordingSettings();
+        ArrayList<TimePeriods> periods = new ArrayList<TimePeriods>();
+        periods.add(new TimePeriods(600, 900));
+        periods.add(new TimePeriods(60, 120));
+        rs.setTimePeriods(periods);
+        rs.setSampleRate(96000);
+        rs.setSleepDuration(30);
+
+        com.undercurrency.audiomoth.usbhid.model.baseline.RecordingSettings old =
+                (com.undercurrency.audiomoth.usbhid.model.baseline.RecordingSettings) roundTrip(rs, com.undercurrency.audiomoth.usbhid.model.baseline.RecordingSettings.class);
+
+        assertEquals(Arrays.asList(new TimePeriods(60, 120), new TimePeriods(600, 900)), old.timePeriods);
+        assertEquals(96000, old.sampleRate);
+        assertEquals(30, old.sleepDuration);
+    }
+
+    @Test
+    public void roundTripsKeepTheSettings() throws Exception {
+        RecordingSettings rs = new RecordingSettings();
+        ArrayList<TimePeriods> periods = new ArrayList<TimePeriods>();
+        periods.add(new TimePeriods(600, 900));
+        periods.add(new TimePeriods(60, 120));
+        rs.setTimePeriods(periods);
+        rs.setSampleRate(32000);
+        rs.setLedEnabled(true);
+
+        RecordingSettings back = (RecordingSettings) roundTrip(rs, RecordingSettings.class);
+
+        assertEquals(rs, back);
+        assertEquals(rs.getPackedTimePeriods(), back.getPackedTimePeriods());
+        back.getPackedTimePeriods().add(0, 30, false);
+        assertEquals(3, back.getTimePeriods().size());
+    }
+
+    /**
+     * Serializes the object and reads it back as an instance of target, which must have the same simple name
+     */
+    private static Object roundTrip(Object object, final Class<?> target) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        InputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        return new ObjectInputStream(in) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                if (desc.getName().endsWith(".RecordingSettings")) {
+                    return target;
+                }
+                return super.resolveClass(desc);
+            }
+        }.readObject();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduleBitmapTest {
+
+    private static PackedTimePeriods periods(int... minutes) {
+        PackedTimePeriods timePeriods = new PackedTimePeriods();
+        for (int i = 0; i < minutes.length; i += 2) {
+            timePeriods.add(minutes[i], minutes[i + 1], false);
+        }
+        return timePeriods;
+    }
+
+    private static List<TimePeriods> list(int... minutes) {
+        return periods(minutes).toList();
+    }
+
+    @Test
+    public void wrapAroundPeriodIsSplitAtMidnight() {
+        ScheduleBitmap bitmap = new ScheduleBitmap().add(1380, 60);
+        assertEquals(120, bitmap.getCoveredMinutes());
+        assertTrue(bitmap.isCovered(1439));
+        assertTrue(bitmap.isCovered(0));
+        assertTrue(bitmap.isCovered(59));
+        assertFalse(bitmap.isCovered(60));
+        assertFalse(bitmap.isCovered(1379));
+        assertEquals(list(0, 60, 1380, 1440), bitmap.toPeriods().toList());
+
+        bitmap.remove(1430, 10);
+        assertEquals(list(10, 60, 1380, 1430), bitmap.toPeriods().toList());
+    }
+
+    @Test
+    public void adjacentPeriodsMerge() {
+        PackedTimePeriods timePeriods = periods(60, 120, 120, 180, 300, 360);
+        assertFalse(ScheduleBitmap.hasOverlaps(timePeriods));
+        ScheduleBitmap.normalize(timePeriods, false);
+        assertEquals(list(60, 180, 300, 360), timePeriods.toList());
+    }
+
+    @Test
+    public void overlappingPeriodsMerge() {
+        PackedTimePeriods timePeriods = periods(60, 180, 120, 240, 200, 210);
+        assertTrue(ScheduleBitmap.hasOverlaps(timePeriods));
+        ScheduleBitmap.normalize(timePeriods, true);
+        assertEquals(1, timePeriods.size());
+        assertEquals(60, timePeriods.getStartMins(0));
+        assertEquals(240, timePeriods.getEndMins(0));
+        assertTrue(timePeriods.isLocalTime(0));
+        assertFalse(ScheduleBitmap.hasOverlaps(timePeriods));
+    }
+
+    @Test
+    public void wrapAroundPeriodOverlapsTheEarlyMorning() {
+        assertTrue(ScheduleBitmap.hasOverlaps(periods(1380, 60, 30, 90)));
+        assertFalse(ScheduleBitmap.hasOverlaps(periods(1380, 60, 60, 90)));
+    }
+
+    @Test
+    public void lastMinuteOfTheDay() {
+        ScheduleBitmap full = new ScheduleBitmap().add(0, ScheduleBitmap.MINUTES_IN_DAY);
+        assertTrue(full.isFull());
+        assertEquals(list(0, 1440), full.toPeriods().toList());
+        assertFalse(full.isCovered(ScheduleBitmap.MINUTES_IN_DAY));
+        assertFalse(full.isCovered(-1));
+
+        ScheduleBitmap last = new ScheduleBitmap().add(1439, 1440);
+        assertEquals(1, last.getCoveredMinutes());
+        assertTrue(last.isCovered(1439));
+        assertEquals(list(1439, 1440), last.toPeriods().toList());
+        assertFalse(last.intersects(new ScheduleBitmap().add(0, 1439)));
+        assertTrue(new ScheduleBitmap().add(1439, 1440).equals(new ScheduleBitmap().add(1439, 0)));
+
+        assertTrue(new ScheduleBitmap().add(600, 600).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minutesPastTheDayAreRejected() {
+        new ScheduleBitmap().add(0, ScheduleBitmap.MINUTES_IN_DAY + 1);
+    }
+
+    @Test
+    public void unionAndIntersection() {
+        ScheduleBitmap morning = new ScheduleBitmap().add(360, 720);
+        ScheduleBitmap midday = new ScheduleBitmap().add(600, 900);
+
+        ScheduleBitmap union = morning.union(midday);
+        assertEquals(list(360, 900), union.toPeriods().toList());
+        assertTrue(union.contains(morning));
+        assertTrue(union.contains(midday));
+        assertFalse(morning.contains(union));
+
+        ScheduleBitmap intersection = morning.intersection(midday);
+        assertEquals(list(600, 720), intersection.toPeriods().toList());
+        assertTrue(morning.intersects(midday));
+        assertFalse(morning.intersects(new ScheduleBitmap().add(720, 780)));
+        assertTrue(morning.intersection(new ScheduleBitmap().add(720, 780)).isEmpty());
+    }
+
+    @Test
+    public void toPeriodsRoundTrip() {
+        List<TimePeriods> schedule = Arrays.asList(new TimePeriods(1380, 60), new TimePeriods(63, 64),
+                new TimePeriods(127, 129), new TimePeriods(500, 700), new TimePeriods(650, 800));
+        ScheduleBitmap bitmap = ScheduleBitmap.of(schedule);
+        PackedTimePeriods merged = bitmap.toPeriods();
+        assertEquals(list(0, 60, 63, 64, 127, 129, 500, 800, 1380, 1440), merged.toList());
+        assertEquals(merged.size(), bitmap.getPeriodCount());
+        assertEquals(bitmap, ScheduleBitmap.of(merged));
+        assertEquals(bitmap.hashCode(), ScheduleBitmap.of(merged.toList()).hashCode());
+        assertEquals(bitmap.getCoveredMinutes(), new ScheduleBitmap(bitmap).getCoveredMinutes());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TimePeriodsViewTest {
+
+    private static RecordingSettings settings() {
+        RecordingSettings rs = new RecordingSettings();
+        rs.setTimePeriods(Arrays.asList(new TimePeriods(1080, 1260), new TimePeriods(300, 420)));
+        return rs;
+    }
+
+    private static void assertReadOnly(Runnable change) {
+        try {
+            change.run();
+            fail("The time periods were changed");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void changesFailLoudly() {
+        RecordingSettings rs = settings();
+        final ArrayList<TimePeriods> periods = rs.getTimePeriods();
+        assertEquals(Arrays.asList(new TimePeriods(300, 420), new TimePeriods(1080, 1260)), periods);
+
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                periods.add(new TimePeriods(0, 60));
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                periods.set(0, new TimePeriods(0, 60));
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                periods.remove(0);
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                periods.clear();
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                Iterator<TimePeriods> it = periods.iterator();
+                it.next();
+                it.remove();
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                periods.subList(0, 1).clear();
+            }
+        });
+        assertReadOnly(new Runnable() {
+            @Override
+            public void run() {
+                periods.listIterator().add(new TimePeriods(0, 60));
+            }
+        });
+        assertEquals(2, rs.getPackedTimePeriods().size());
+    }
+
+    @Test
+    public void setTimePeriodsTakesAnEditedCopy() {
+        RecordingSettings rs = settings();
+        List<TimePeriods> edited = new ArrayList<TimePeriods>(rs.getTimePeriods());
+        edited.add(new TimePeriods(0, 60));
+        rs.setTimePeriods(edited);
+        assertEquals(3, rs.getTimePeriods().size());
+        assertEquals(new TimePeriods(0, 60), rs.getTimePeriods().get(0));
+    }
+
+    @Test
+    public void serializedAsAPlainArrayList() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(settings().getTimePeriods());
+        out.close();
+        Object read = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertSame(ArrayList.class, read.getClass());
+        assertEquals(settings().getTimePeriods(), read);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.model.baseline;
+
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.FilterType;
+import com.undercurrency.audiomoth.usbhid.model.TimePeriods;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * The serialized shape of RecordingSettings in the first releases, the periods were an ArrayList.
+ * It has the same simple name and serialVersionUID, so streams can be resolved to either class.
+ */
+public class RecordingSettings implements Serializable {
+    private static final long serialVersionUID = 8799656478674716638L;
+    public boolean amplitudeThresholdingEnabled;
+    public transient DeviceInfo deviceInfo;
+    public ArrayList<TimePeriods> timePeriods = new ArrayList<TimePeriods>(5);
+    public boolean ledEnabled;
+    public boolean lowVoltageCutoffEnabled;
+    public boolean batteryLevelCheckEnabled;
+    public int sampleRate;
+    public byte gain;
+    public int recordDuration;
+    public int sleepDuration;
+    public boolean localTime;
+    public boolean dutyEnabled;
+    public boolean passFiltersEnabled;
+    public FilterType filterType;
+    public int lowerFilter;
+    public int higherFilter;
+    public int amplitudeThreshold;
+    public transient boolean firstRecordingEnable;
+    public transient boolean lastRecordingEnable;
+    public Date firstRecordingDate;
+    public Date lastRecordingDate;
+}
@@ -0,0 +1,134 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.model.TimePeriods;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of a ConfigArchive against Java serialization of the same RecordingSettings,
+ * writing and reading back a history of RECORDS configurations of a fleet
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigArchiveBenchmark {
+
+    static final int RECORDS = 10000;
+
+    private final List<RecordingSettings> history = new ArrayList<RecordingSettings>();
+    private byte[] archive;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        history.clear();
+        history.addAll(history(RECORDS));
+        archive = writeArchive();
+        serialized = writeSerialized();
+    }
+
+    static List<RecordingSettings> history(int records) {
+        List<RecordingSettings> history = new ArrayList<RecordingSettings>();
+        for (int i = 0; i < records; i++) {
+            RecordingSettings rs = new RecordingSettings();
+            ArrayList<TimePeriods> timePeriods = new ArrayList<TimePeriods>();
+            timePeriods.add(new TimePeriods(600, 900));
+            timePeriods.add(new TimePeriods(60 + i % 100, 300));
+            rs.setTimePeriods(timePeriods);
+            rs.setSampleRate(48000);
+            rs.setGain((byte) (i % 5));
+            rs.setRecordDuration((short) 55);
+            rs.setSleepDuration((short) (5 + i % 7));
+            rs.setDutyEnabled(true);
+            rs.setDeviceInfo(new DeviceInfo(String.format("%016X", 0x24F3190459BA0000L + i % 50), "1.4.4", "4.5V", new Date(1600000000000L)));
+            history.add(rs);
+        }
+        return history;
+    }
+
+    @Benchmark
+    public byte[] writeArchive() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConfigArchiveWriter writer = new ConfigArchiveWriter(bytes);
+        for (int i = 0; i < history.size(); i++) {
+            writer.write(1600000000000L + i, history.get(i));
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int readArchive() throws IOException {
+        ConfigArchiveReader reader = new ConfigArchiveReader(new ByteArrayInputStream(archive));
+        int gain = 0;
+        ArchiveRecord record;
+        while ((record = reader.read()) != null) {
+            gain += record.getRecordingSettings().getGain();
+        }
+        return gain;
+    }
+
+    @Benchmark
+    public byte[] writeSerialized() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (int i = 0; i < history.size(); i++) {
+            out.writeLong(1600000000000L + i);
+            out.writeObject(history.get(i));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int readSerialized() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        int gain = 0;
+        for (int i = 0; i < RECORDS; i++) {
+            in.readLong();
+            gain += ((RecordingSettings) in.readObject()).getGain();
+        }
+        return gain;
+    }
+}
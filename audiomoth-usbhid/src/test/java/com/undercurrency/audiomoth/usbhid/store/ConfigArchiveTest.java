@@ -0,0 +1,90 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
+import com.undercurrency.audiomoth.usbhid.model.PacketLength;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
+import com.undercurrency.audiomoth.usbhid.model.RecordingSettingsView;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Round trips of a ConfigArchive, with the firmware of the units changing between records
+ */
+public class ConfigArchiveTest {
+
+    private static final String[] FIRMWARE = {"1.4.4", "1.4.4", "1.2.0", "01.4.4", "1.3", "1.2.0", "1.2.2", "1.4.4"};
+
+    @Test
+    public void recordsKeepTheirDeviceInfoAndPacketWhenTheFirmwareChanges() throws IOException {
+        List<RecordingSettings> history = ConfigArchiveBenchmark.history(FIRMWARE.length);
+        for (int i = 0; i < FIRMWARE.length; i++) {
+            history.get(i).getDeviceInfo().setFirmwareVersion(FIRMWARE[i]);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConfigArchiveWriter writer = new ConfigArchiveWriter(bytes);
+        for (int i = 0; i < history.size(); i++) {
+            writer.write(i, history.get(i));
+        }
+        writer.write(99L, null, history.get(0).serializeToBytes(), 0, PacketLength.ONE_TWO.getPacketLength());
+        writer.close();
+
+        ConfigArchiveReader reader = new ConfigArchiveReader(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < history.size(); i++) {
+            RecordingSettings rs = history.get(i);
+            ArchiveRecord record = reader.read();
+            assertEquals(i, record.getRecordedAt());
+            assertEquals(rs.getDeviceInfo().getDeviceId(), record.getDeviceInfo().getDeviceId());
+            assertEquals(FIRMWARE[i], record.getDeviceInfo().getFirmwareVersion());
+            assertEquals(rs.getDeviceInfo().getBattery(), record.getDeviceInfo().getBattery());
+            assertEquals(PacketLength.forFirmware(FIRMWARE[i]).getPacketLength(), record.getPacketLength());
+            assertEquals(rs.getFingerprint(), record.getFingerprint());
+            assertEquals(rs.getSleepDuration(), record.getView().getSleepDuration());
+        }
+        ArchiveRecord raw = reader.read();
+        assertNull(raw.getDeviceInfo());
+        assertEquals(PacketLength.ONE_TWO.getPacketLength(), raw.getPacketLength());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void echoedPacketsUseTheLayoutOfTheirFirmware() throws IOException {
+        RecordingSettings rs = ConfigArchiveBenchmark.history(1).get(0);
+        byte[] packet = rs.serializeToBytes();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConfigArchiveWriter writer = new ConfigArchiveWriter(bytes);
+        writer.write(1L, new DeviceInfo("24F3190459BA5C1E", "1.2.1", null, new Date(0L)), new RecordingSettingsView(packet, 0));
+        writer.write(2L, rs.getDeviceInfo(), new RecordingSettingsView(packet, 0));
+        writer.close();
+
+        ConfigArchiveReader reader = new ConfigArchiveReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(PacketLength.ONE_TWO_ONE.getPacketLength(), reader.read().getPacketLength());
+        assertEquals(PacketLength.ONE_FOUR.getPacketLength(), reader.read().getPacketLength());
+        assertNull(reader.read());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  (c)  Copyright 2020 Undercurrency
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.undercurrency.audiomoth.usbhid.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class DriftLogTest {
+
+    private static final String HEX_ID = "24F3190459BA5C1E";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void assertRecord(DriftRecord expected, DriftRecord actual) {
+        assertEquals(expected.getDeviceId(), actual.getDeviceId());
+        assertEquals(expected.getHostMillis(), actual.getHostMillis());
+        assertEquals(expected.getOffsetMillis(), actual.getOffsetMillis(), 0f);
+        assertEquals(expected.getUncertaintyMillis(), actual.getUncertaintyMillis(), 0f);
+        assertEquals(expected.isClockSet(), actual.isClockSet());
+    }
+
+    @Test
+    public void recordsRoundTrip() throws IOException {
+        DriftRecord[] records = {
+                new DriftRecord(HEX_ID, 1600000000123L, 1.25f, 0.5f, true),
+                new DriftRecord(HEX_ID, 1600086400456L, 38.75f, 0.75f, false),
+                new DriftRecord("usb:1001", 1600000000789L, -12.5f, 1f, false)};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DriftLogWriter writer = new DriftLogWriter(out, true);
+        for (DriftRecord record : records) {
+            writer.write(record);
+        }
+        writer.close();
+        /* Header, two binary id records of 26 bytes and a string id one of 28, length bytes included */
+        assertEquals(DriftLog.MAGIC.length + 1 + 2 * 26 + 28, out.size());
+
+        DriftLogReader reader = new DriftLogReader(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(DriftLog.VERSION, reader.getVersion());
+        for (DriftRecord record : records) {
+            assertRecord(record, reader.read());
+        }
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void appendKeepsASingleHeader() throws IOException {
+        File file = new File(folder.getRoot(), "drift.amdl");
+        for (int i = 0; i < 3; i++) {
+            DriftLogWriter writer = DriftLogWriter.append(file);
+            writer.write(HEX_ID, 1000L * i, i, 0.5f, i == 0);
+            writer.close();
+        }
+        DriftLogReader reader = new DriftLogReader(new FileInputStream(file));
+        for (int i = 0; i < 3; i++) {
+            DriftRecord record = reader.read();
+            assertEquals(1000L * i, record.getHostMillis());
+            assertEquals(i == 0, record.isClockSet());
+        }
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void unknownTrailingFieldsAreSkipped() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(DriftLog.MAGIC);
+        out.writeByte(DriftLog.VERSION);
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeByte(DriftLog.FLAG_CLOCK_SET);
+        record.writeUTF("usb:7");
+        record.writeLong(42L);
+        record.writeFloat(3f);
+        record.writeFloat(0.5f);
+        record.writeInt(0xCAFE);
+        out.writeByte(recordBytes.size());
+        recordBytes.writeTo(out);
+        DriftLogWriter writer = new DriftLogWriter(out, false);
+        writer.write("usb:8", 43L, 4f, 0.5f, false);
+        writer.close();
+
+        DriftLogReader reader = new DriftLogReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertRecord(new DriftRecord("usb:7", 42L, 3f, 0.5f, true), reader.read());
+        assertRecord(new DriftRecord("usb:8", 43L, 4f, 0.5f, false), reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void truncatedRecordIsAnError() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DriftLogWriter writer = new DriftLogWriter(out, true);
+        writer.write(HEX_ID, 1L, 0f, 0f, false);
+        writer.close();
+        byte[] bytes = out.toByteArray();
+        DriftLogReader reader = new DriftLogReader(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)));
+        try {
+            reader.read();
+            fail("Read a truncated record");
+        } catch (EOFException expected) {
+            assertEquals(DriftLog.MAGIC.length + 1, reader.getCompleteLength());
+        }
+    }
+
+    @Test
+    public void otherStreamsAreRejected() {
+        byte[][] invalid = {"AMCA\u0001".getBytes(), {'A', 'M', 'D', 'L', DriftLog.VERSION + 1}};
+        for (byte[] bytes : invalid) {
+            try {
+                new DriftLogReader(new ByteArrayInputStream(bytes));
+                fail("Accepted " + Arrays.toString(bytes));
+            } catch (IOException expected) {
+                assertFalse(expected instanceof EOFException);
+            }
+        }
+    }
+}
@@ -47,16 +47,16 @@ import com.undercurrency.audiomoth.usbhid.events.PrepareDevicesListEvent;
 import com.undercurrency.audiomoth.usbhid.events.SelectDeviceEvent;
 import com.undercurrency.audiomoth.usbhid.events.ShowDevicesListEvent;
 import com.undercurrency.audiomoth.usbhid.events.USBDataReceiveEvent;
+import com.undercurrency.audiomoth.usbhid.json.AudioMothGson;
 import com.undercurrency.audiomoth.usbhid.model.DeviceInfo;
 import com.undercurrency.audiomoth.usbhid.model.LifeSpan;
+import com.undercurrency.audiomoth.usbhid.model.LifeSpanCache;
 import com.undercurrency.audiomoth.usbhid.model.RecordingSettings;
-import com.undercurrency.audiomoth.usbhid.model.TimePeriods;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 
 import de.greenrobot.event.EventBus;
@@ -81,6 +81,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
     private RecordingSettings rsIn;
     private RecordingSettings rsOut;
+    private final LifeSpanCache lifeSpanCache = new LifeSpanCache();
 
     public static String getJsonFromAssets(Context ctx, String pathToJson) {
         InputStream rawInput;
@@ -183,11 +184,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         if (v == btnConfigurar) {
             if (deviceSelected) {
                 String ultrasonic = getJsonFromAssets(this, pathToJson);
-                Gson gson = new GsonBuilder().setPrettyPrinting().create();
+                Gson gson = AudioMothGson.registerTypeAdapters(new GsonBuilder()).setPrettyPrinting().create();
                 rs = gson.fromJson(ultrasonic, RecordingSettings.class);
                 rsIn = gson.fromJson(ultrasonic,RecordingSettings.class);
                 rs.setDeviceInfo(deviceInfo);
-                fixGsonDesrialization(rs);
                 //byte[] packet = rs.serializeToBytes();
                 eventBus.post(new AudioMothConfigEvent(rs));
                 //eventBus.post(new USBDataSendEvent(packet));
@@ -199,7 +199,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             eventBus.post(new AudioMothSetDateEvent(new Date()));
         } else if (v == btnSerialize) {
             String jsonString = getJsonFromAssets(this, pathToJson);
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
+            Gson gson = AudioMothGson.registerTypeAdapters(new GsonBuilder()).setPrettyPrinting().create();
             RecordingSettings rsTest = gson.fromJson(jsonString, RecordingSettings.class);
             rsTest.setDeviceInfo(new DeviceInfo("CAFEBABE", "1.4.4", "4.5", new Date()));
             byte[] arr = rsTest.serializeToBytes();
@@ -213,7 +213,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             Log.d("json rsDeserialize", json);
             Log.v(TAG, byteToHexString(arr));
             Log.v(TAG, "Equals = " + (rsDeserialize.equals(rsTest)?"YES":"NO"));
-            LifeSpan ls = LifeSpan.getLifeSpan(rsTest);
+            LifeSpan ls = lifeSpanCache.get(rsTest);
             Log.d(TAG, ls.toString());
 
         }
@@ -250,8 +250,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         Log.d(TAG, "AudioMothConfigReceiveEvent");
         if (event.getRecordingSettings() != null) {
             rsOut = event.getRecordingSettings();
-            fixGsonDesrialization(rsOut);
-            Gson gson = new Gson();
+            Gson gson = AudioMothGson.create();
             String json = gson.toJson(event.getRecordingSettings());
             Log.d(TAG, json);
             tvJson.append(json);
@@ -303,15 +302,4 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         builder.show();
     }
 
-    private void fixGsonDesrialization(RecordingSettings rsLoaded) {
-       rsLoaded.setFirstRecordingEnable(rsLoaded.getFirstRecordingDate()!=null);
-       rsLoaded.setLastRecordingEnable(rsLoaded.getLastRecordingDate()!=null);
-        if(rsLoaded.isLocalTime()) {
-            ArrayList<TimePeriods> tp = rsLoaded.getTimePeriods();
-            for(TimePeriods t : tp){
-                t.setLocalTime(true);
-            }
-        }
-    }
-
 }
\ No newline at end of file